@@ -59,4 +59,10 @@ public interface CompilableTruffleAST {
      * Gets a descriptive name for this call target.
      */
     String getName();
+
+    /**
+     * Determines if the current compilation of this AST is a first tier compilation, which trades
+     * the quality of the generated code for a shorter compilation time.
+     */
+    boolean isFirstTierCompilation();
 }
@@ -158,6 +158,15 @@ public class TruffleCompilerOptions {
     @Option(help = "Delay compilation after a node replacement", type = OptionType.Expert)
     public static final OptionKey<Integer> TruffleReplaceReprofileCount = new OptionKey<>(3);
 
+    @Option(help = "Number of invalidations of a call target in a row after which its compilation speculates less and the delay of its recompilation doubles with every further invalidation (0 = no back-off)", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleInvalidationBackoffThreshold = new OptionKey<>(5);
+
+    @Option(help = "Number of invalidations of a call target in a row after which it is never compiled again (0 = no limit)", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleInvalidationBackoffLimit = new OptionKey<>(0);
+
+    @Option(help = "Maximum number of milliseconds between two invalidations of a call target for them to count as invalidations in a row", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleInvalidationBackoffInterval = new OptionKey<>(10000);
+
     @Option(help = "Enable automatic inlining of call targets", type = OptionType.Debug)
     public static final OptionKey<Boolean> TruffleFunctionInlining = new OptionKey<>(true);
 
@@ -203,9 +212,27 @@ public class TruffleCompilerOptions {
     @Option(help = "Enable asynchronous truffle compilation in background thread", type = OptionType.Expert)
     public static final OptionKey<Boolean> TruffleBackgroundCompilation = new OptionKey<>(true);
 
-    @Option(help = "Manually set the number of compiler threads", type = OptionType.Expert)
+    @Option(help = "Manually set the number of compiler threads (0 = adapt the number of compiler threads to the length of the compilation queue)", type = OptionType.Expert)
     public static final OptionKey<Integer> TruffleCompilerThreads = new OptionKey<>(0);
 
+    @Option(help = "Maximum number of compiler threads if the number of compiler threads is adapted to the length of the compilation queue (0 = 2 if at least 4 processors are available, 1 otherwise)", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleCompilerThreadsMax = new OptionKey<>(0);
+
+    @Option(help = "Number of queued compilations per additional compiler thread if the number of compiler threads is adapted to the length of the compilation queue", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleCompilerThreadsQueueDepth = new OptionKey<>(8);
+
+    @Option(help = "Maximum percentage of the available processors spent compiling call targets that reached their compilation threshold (100 = no limit)", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleCompilationCPUShare = new OptionKey<>(100);
+
+    @Option(help = "Drop call targets from the background compilation queue if they were not executed for this many milliseconds while waiting to be compiled (0 = never drop)", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleCompilationQueueColdTimeout = new OptionKey<>(0);
+
+    @Option(help = "File in which the call targets compiled by this process are recorded so that later processes running the same guest code compile them early", type = OptionType.Expert)
+    public static final OptionKey<String> TruffleCompilationCacheFile = new OptionKey<>("");
+
+    @Option(help = "Number of invocations or loop iterations after which a call target recorded in the TruffleCompilationCacheFile is compiled", type = OptionType.Expert)
+    public static final OptionKey<Integer> TruffleCompilationCacheThreshold = new OptionKey<>(10);
+
     @Option(help = "Enable inlining across Truffle boundary", type = OptionType.Expert)
     public static final OptionKey<Boolean> TruffleInlineAcrossTruffleBoundary = new OptionKey<>(false);
 
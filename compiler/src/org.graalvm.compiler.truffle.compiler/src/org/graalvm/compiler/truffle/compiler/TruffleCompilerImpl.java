@@ -69,6 +69,9 @@ import org.graalvm.compiler.debug.MemUseTrackerKey;
 import org.graalvm.compiler.debug.TimerKey;
 import org.graalvm.compiler.lir.asm.CompilationResultBuilderFactory;
 import org.graalvm.compiler.lir.phases.LIRSuites;
+import org.graalvm.compiler.loop.phases.LoopFullUnrollPhase;
+import org.graalvm.compiler.loop.phases.LoopPeelingPhase;
+import org.graalvm.compiler.loop.phases.LoopUnswitchingPhase;
 import org.graalvm.compiler.nodes.Cancellable;
 import org.graalvm.compiler.nodes.StructuredGraph;
 import org.graalvm.compiler.nodes.StructuredGraph.AllowAssumptions;
@@ -77,8 +80,11 @@ import org.graalvm.compiler.nodes.graphbuilderconf.GraphBuilderConfiguration.Byt
 import org.graalvm.compiler.nodes.graphbuilderconf.GraphBuilderConfiguration.Plugins;
 import org.graalvm.compiler.options.EnumOptionKey;
 import org.graalvm.compiler.options.OptionValues;
+import org.graalvm.compiler.phases.BasePhase;
 import org.graalvm.compiler.phases.OptimisticOptimizations;
 import org.graalvm.compiler.phases.PhaseSuite;
+import org.graalvm.compiler.phases.common.IterativeConditionalEliminationPhase;
+import org.graalvm.compiler.phases.common.inlining.InliningPhase;
 import org.graalvm.compiler.phases.tiers.HighTierContext;
 import org.graalvm.compiler.phases.tiers.Suites;
 import org.graalvm.compiler.phases.util.Providers;
@@ -92,6 +98,7 @@ import org.graalvm.compiler.truffle.common.TruffleDebugJavaMethod;
 import org.graalvm.compiler.truffle.common.TruffleInliningPlan;
 import org.graalvm.compiler.truffle.compiler.nodes.TruffleAssumption;
 import org.graalvm.compiler.truffle.compiler.phases.InstrumentPhase;
+import org.graalvm.compiler.virtual.phases.ea.PartialEscapePhase;
 
 import jdk.vm.ci.code.BailoutException;
 import jdk.vm.ci.code.CompilationRequest;
@@ -114,6 +121,11 @@ public abstract class TruffleCompilerImpl implements TruffleCompiler {
 
     protected final Providers providers;
     protected final Suites suites;
+    /**
+     * The {@link #suites} without the most expensive optimizations, used for first tier
+     * compilations.
+     */
+    protected final Suites firstTierSuites;
     protected final GraphBuilderConfiguration config;
     protected final LIRSuites lirSuites;
     protected final PartialEvaluator partialEvaluator;
@@ -132,6 +144,7 @@ public abstract class TruffleCompilerImpl implements TruffleCompiler {
         this.snippetReflection = snippetReflection;
         this.providers = backend.getProviders();
         this.suites = suites;
+        this.firstTierSuites = createFirstTierSuites(suites);
         this.lirSuites = lirSuites;
         this.codeInstallationTaskFactory = new TrufflePostCodeInstallationTaskFactory();
         backend.addCodeInstallationTask(codeInstallationTaskFactory);
@@ -147,6 +160,20 @@ public abstract class TruffleCompilerImpl implements TruffleCompiler {
         this.partialEvaluator = createPartialEvaluator();
     }
 
+    @SuppressWarnings("unchecked")
+    private static Suites createFirstTierSuites(Suites suites) {
+        Suites result = suites.copy();
+        PhaseSuite<HighTierContext> highTier = result.getHighTier();
+        for (Class<?> phaseClass : new Class<?>[]{InliningPhase.class, IterativeConditionalEliminationPhase.class, LoopFullUnrollPhase.class, LoopPeelingPhase.class,
+                        LoopUnswitchingPhase.class, PartialEscapePhase.class}) {
+            while (highTier.removePhase((Class<? extends BasePhase<? super HighTierContext>>) phaseClass)) {
+                // remove all instances
+            }
+        }
+        result.setImmutable();
+        return result;
+    }
+
     private ResolvedJavaType[] getSkippedExceptionTypes(TruffleCompilerRuntime runtime) {
         final MetaAccessProvider metaAccess = providers.getMetaAccess();
         ResolvedJavaType[] head = metaAccess.lookupJavaTypes(new Class<?>[]{
@@ -419,8 +446,9 @@ public abstract class TruffleCompilerImpl implements TruffleCompiler {
                         DebugCloseable c = CompilationMemUse.start(debug)) {
 
             CompilationResult compilationResult = createCompilationResult(name, graph.compilationId());
-            result = GraalCompiler.compileGraph(graph, graph.method(), providers, backend, graphBuilderSuite, Optimizations, graph.getProfilingInfo(), suites, lirSuites, compilationResult,
-                            CompilationResultBuilderFactory.Default, false);
+            Suites selectedSuites = compilable.isFirstTierCompilation() ? firstTierSuites : suites;
+            result = GraalCompiler.compileGraph(graph, graph.method(), providers, backend, graphBuilderSuite, Optimizations, graph.getProfilingInfo(), selectedSuites, lirSuites,
+                            compilationResult, CompilationResultBuilderFactory.Default, false);
         } catch (Throwable e) {
             throw debug.handle(e);
         }
@@ -31,6 +31,8 @@ import org.graalvm.compiler.nodes.Cancellable;
 public final class CancellableCompileTask implements Cancellable {
     private volatile Future<?> future;
     private boolean cancelled;
+    private final long queuedTime = System.nanoTime();
+    private volatile long startedTime;
 
     // This cannot be done in the constructor because the CancellableCompileTask needs to be
     // passed down to the compiler through a Runnable inner class.
@@ -68,6 +70,19 @@ public final class CancellableCompileTask implements Cancellable {
         }
     }
 
+    void reportStarted() {
+        startedTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the time in nanoseconds this task waited in the compilation queue, or the time it has
+     * been waiting so far if it did not start yet.
+     */
+    public long getQueueWaitTime() {
+        long started = startedTime;
+        return (started != 0 ? started : System.nanoTime()) - queuedTime;
+    }
+
     public boolean isRunning() {
         assert future != null;
         return !(future.isDone() || future.isCancelled());
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.runtime;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Work queue of the background compiler threads that hands out the hottest queued call target
+ * first. The hotness of a call target is its live {@linkplain OptimizedCompilationProfile
+ * call-and-loop count} plus the number of calls of its first tier code, which keep growing while
+ * the call target waits in the queue. The order is therefore decided when a compiler thread takes
+ * the next task rather than when a task is queued, which is cheap compared to the compilation that
+ * follows. Call targets with equal counts are compiled in the order in which they were queued.
+ *
+ * A call target whose count did not grow for {@code coldTimeout} nanoseconds while waiting in the
+ * queue has gone cold and is dropped from the queue if its task {@linkplain Task#droppable allows
+ * it}. Its compilation is deferred until it becomes hot again.
+ *
+ * If the queue has a {@link Budget}, droppable tasks are only handed out while the compiler
+ * threads stay within their share of the available processors. Once the budget is exhausted, the
+ * compiler threads only take tasks that someone may be waiting for until the budget has been
+ * replenished.
+ */
+public final class CompilationTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * A compilation task of a single call target.
+     */
+    public static final class Task extends FutureTask<Void> {
+        private final WeakReference<OptimizedCallTarget> target;
+        /**
+         * Whether the task was queued because the call target reached its compilation threshold,
+         * as opposed to an explicit request for compilation that someone may be waiting for.
+         */
+        private final boolean droppable;
+
+        /** The budget that the compilation is charged to, or {@code null}. */
+        private final Budget budget;
+
+        private long sequence;
+        private int lastCount;
+        private long lastGrowthTime;
+
+        public Task(Runnable body, OptimizedCallTarget target, boolean droppable, Budget budget) {
+            super(body, null);
+            this.target = new WeakReference<>(target);
+            this.droppable = droppable;
+            this.budget = budget;
+            this.lastCount = count(target);
+            this.lastGrowthTime = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                super.run();
+            } finally {
+                if (budget != null) {
+                    budget.charge(System.nanoTime() - start);
+                }
+            }
+        }
+
+        private static int count(OptimizedCallTarget callTarget) {
+            OptimizedCompilationProfile profile = callTarget == null ? null : callTarget.getCompilationProfile();
+            return profile == null ? 0 : profile.getInterpreterCallAndLoopCount() + profile.getFirstTierCallCount();
+        }
+
+        /**
+         * Samples the profile of the call target and returns whether it has gone cold.
+         */
+        private boolean update(long now, long coldTimeout) {
+            int count = count(target.get());
+            if (count != lastCount) {
+                lastCount = count;
+                lastGrowthTime = now;
+                return false;
+            }
+            return droppable && coldTimeout > 0 && now - lastGrowthTime > coldTimeout;
+        }
+
+        private boolean isHotterThan(Task other) {
+            return lastCount > other.lastCount || (lastCount == other.lastCount && sequence < other.sequence);
+        }
+
+        private void drop() {
+            OptimizedCallTarget callTarget = target.get();
+            if (callTarget != null && GraalTruffleRuntime.getRuntime().cancelInstalledTask(callTarget, null, "Call target went cold in the compilation queue")) {
+                callTarget.getCompilationProfile().reportDroppedFromQueue(callTarget);
+            } else {
+                cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Limits the time spent compiling to a share of the available processors. The budget is
+     * replenished with the elapsed wall-clock time multiplied by that share and is charged with the
+     * time of each compilation, which approximates its CPU time since the compiler threads rarely
+     * block. Up to one second of unused budget can be saved for bursts of compilations.
+     */
+    public static final class Budget {
+        private final double processors;
+        private final long maximum;
+        private long balance;
+        private long lastUpdate;
+
+        public Budget(double processors) {
+            this.processors = processors;
+            this.maximum = (long) (processors * TimeUnit.SECONDS.toNanos(1));
+            this.balance = maximum;
+            this.lastUpdate = System.nanoTime();
+        }
+
+        public synchronized void charge(long nanos) {
+            update();
+            balance -= nanos;
+        }
+
+        public synchronized boolean isExhausted() {
+            update();
+            return balance <= 0;
+        }
+
+        private void update() {
+            long now = System.nanoTime();
+            balance = Math.min(maximum, balance + (long) ((now - lastUpdate) * processors));
+            lastUpdate = now;
+        }
+    }
+
+    /**
+     * How long a compiler thread waits before it checks again whether an exhausted budget has been
+     * replenished.
+     */
+    private static final long THROTTLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final List<Runnable> elements = new ArrayList<>();
+    private final long coldTimeout;
+    private final Budget budget;
+    private long nextSequence;
+
+    public CompilationTaskQueue(long coldTimeout, TimeUnit unit, Budget budget) {
+        this.coldTimeout = unit.toNanos(coldTimeout);
+        this.budget = budget;
+    }
+
+    Budget getBudget() {
+        return budget;
+    }
+
+    @Override
+    public boolean offer(Runnable e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            if (e instanceof Task) {
+                ((Task) e).sequence = nextSequence++;
+            }
+            elements.add(e);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable e) {
+        offer(e);
+    }
+
+    @Override
+    public boolean offer(Runnable e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        Runnable result;
+        do {
+            List<Task> dropped = new ArrayList<>();
+            lock.lockInterruptibly();
+            try {
+                while (elements.isEmpty()) {
+                    notEmpty.await();
+                }
+                result = select(dropped, isThrottled());
+                if (result == null && dropped.isEmpty()) {
+                    /* Only throttled tasks are left. */
+                    notEmpty.awaitNanos(THROTTLE_INTERVAL);
+                }
+            } finally {
+                lock.unlock();
+            }
+            dropAll(dropped);
+        } while (result == null);
+        return result;
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        Runnable result;
+        do {
+            List<Task> dropped = new ArrayList<>();
+            lock.lockInterruptibly();
+            try {
+                while (elements.isEmpty()) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                result = select(dropped, isThrottled());
+                if (result == null && dropped.isEmpty()) {
+                    /* Only throttled tasks are left. */
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(Math.min(nanos, THROTTLE_INTERVAL));
+                }
+            } finally {
+                lock.unlock();
+            }
+            dropAll(dropped);
+        } while (result == null);
+        return result;
+    }
+
+    @Override
+    public Runnable poll() {
+        List<Task> dropped = new ArrayList<>();
+        Runnable result;
+        lock.lock();
+        try {
+            result = select(dropped, isThrottled());
+        } finally {
+            lock.unlock();
+        }
+        dropAll(dropped);
+        return result;
+    }
+
+    private boolean isThrottled() {
+        return budget != null && budget.isExhausted();
+    }
+
+    /**
+     * Removes and returns the hottest element, or {@code null} if there is none. Finished and cold
+     * tasks are removed from the queue on the way; the cold ones are added to {@code dropped} so
+     * that they can be cancelled after the lock has been released. If {@code throttled} is set,
+     * droppable tasks stay in the queue and are not returned.
+     */
+    private Runnable select(List<Task> dropped, boolean throttled) {
+        assert lock.isHeldByCurrentThread();
+        long now = System.nanoTime();
+        Task best = null;
+        int bestIndex = -1;
+        int size = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            Runnable element = elements.get(i);
+            if (!(element instanceof Task)) {
+                /* Tasks that are not compilations are never reordered. */
+                elements.subList(size, i).clear();
+                elements.remove(size);
+                return element;
+            }
+            Task task = (Task) element;
+            if (task.isDone()) {
+                continue;
+            }
+            if (task.update(now, coldTimeout)) {
+                dropped.add(task);
+                continue;
+            }
+            if ((!throttled || !task.droppable) && (best == null || task.isHotterThan(best))) {
+                best = task;
+                bestIndex = size;
+            }
+            elements.set(size++, task);
+        }
+        elements.subList(size, elements.size()).clear();
+        if (best != null) {
+            elements.remove(bestIndex);
+        }
+        return best;
+    }
+
+    private static void dropAll(List<Task> dropped) {
+        for (Task task : dropped) {
+            task.drop();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return elements.isEmpty() ? null : elements.get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            return elements.remove(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return elements.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = Math.min(maxElements, elements.size());
+            List<Runnable> drained = elements.subList(0, n);
+            c.addAll(drained);
+            drained.clear();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the queue. Removing through the iterator removes the
+     * element from the queue.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(elements);
+        } finally {
+            lock.unlock();
+        }
+        Iterator<Runnable> iterator = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = iterator.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                CompilationTaskQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+}
@@ -28,10 +28,16 @@ import static java.util.Collections.singletonList;
 import static org.graalvm.compiler.debug.DebugContext.DEFAULT_LOG_STREAM;
 import static org.graalvm.compiler.debug.DebugContext.NO_GLOBAL_METRIC_VALUES;
 import static org.graalvm.compiler.serviceprovider.GraalServices.Java8OrEarlier;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleBackgroundCompilation;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilation;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilationCPUShare;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilationExceptionsAreThrown;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilationQueueColdTimeout;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompileOnly;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilerThreads;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilerThreadsMax;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilerThreadsQueueDepth;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TrufflePerformanceWarningsAreFatal;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleProfilingEnabled;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleUseFrameWithoutBoxing;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.getValue;
@@ -43,7 +49,12 @@ import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.invoke.MethodHandle;
 import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -52,8 +63,8 @@ import java.util.ServiceLoader;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -156,27 +167,176 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
         truffleCompiler = null;
     }
 
-    protected static class BackgroundCompileQueue {
-        private final ExecutorService compilationExecutor;
+    public static class BackgroundCompileQueue {
+        /**
+         * How long an idle compiler thread is kept alive if the number of compiler threads is
+         * adapted to the length of the compilation queue.
+         */
+        private static final long KEEP_ALIVE_SECONDS = 10;
+
+        private final ThreadPoolExecutor compilationExecutor;
+        private final CompilationTaskQueue compilationQueue;
+        /**
+         * The maximum number of compiler threads, or 0 if the number of compiler threads was
+         * selected manually.
+         */
+        private final int maxThreads;
+        private final int queueDepthPerThread;
 
         public BackgroundCompileQueue() {
             CompilerThreadFactory factory = new CompilerThreadFactory("TruffleCompilerThread");
 
+            int availableProcessors = availableProcessors();
+            int cpuShare = Math.max(1, Math.min(100, TruffleCompilerOptions.getValue(TruffleCompilationCPUShare)));
+            CompilationTaskQueue.Budget budget = cpuShare < 100 ? new CompilationTaskQueue.Budget(availableProcessors * cpuShare / 100.0) : null;
+            int coldTimeout = TruffleCompilerOptions.getValue(TruffleCompilationQueueColdTimeout);
+            compilationQueue = new CompilationTaskQueue(coldTimeout, TimeUnit.MILLISECONDS, budget);
+
             int selectedProcessors = TruffleCompilerOptions.getValue(TruffleCompilerThreads);
+            queueDepthPerThread = Math.max(1, TruffleCompilerOptions.getValue(TruffleCompilerThreadsQueueDepth));
             if (selectedProcessors == 0) {
-                // No manual selection made, check how many processors are available.
-                int availableProcessors = Runtime.getRuntime().availableProcessors();
-                if (availableProcessors >= 4) {
-                    selectedProcessors = 2;
+                // No manual selection made, start with a single thread and add more as the queue grows.
+                int selectedMaxThreads = TruffleCompilerOptions.getValue(TruffleCompilerThreadsMax);
+                if (selectedMaxThreads <= 0) {
+                    // each compiler thread holds a compiler, use two threads only with enough processors
+                    selectedMaxThreads = availableProcessors >= 4 ? 2 : 1;
                 }
+                maxThreads = Math.max(1, Math.min(selectedMaxThreads, availableProcessors * cpuShare / 100));
+                compilationExecutor = new ThreadPoolExecutor(1, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, compilationQueue, factory);
+                compilationExecutor.allowCoreThreadTimeOut(true);
+            } else {
+                maxThreads = 0;
+                compilationExecutor = new ThreadPoolExecutor(selectedProcessors, selectedProcessors, 0L, TimeUnit.MILLISECONDS, compilationQueue, factory);
             }
-            selectedProcessors = Math.max(1, selectedProcessors);
-            compilationExecutor = Executors.newFixedThreadPool(selectedProcessors, factory);
         }
 
         public ExecutorService getCompilationExecutor() {
             return compilationExecutor;
         }
+
+        /**
+         * Queues a compilation task. A task that a new compiler thread is started for goes through
+         * the queue too, so that the hottest queued task is always compiled first.
+         */
+        void submit(CompilationTaskQueue.Task task) {
+            if (compilationExecutor.isShutdown()) {
+                throw new RejectedExecutionException("The compiler threads were shut down");
+            }
+            compilationQueue.offer(task);
+            compilationExecutor.prestartCoreThread();
+            adjustCompilerThreads();
+        }
+
+        /**
+         * Adapts the number of compiler threads to the length of the compilation queue. Surplus
+         * threads terminate once they become idle.
+         */
+        void adjustCompilerThreads() {
+            if (maxThreads == 0) {
+                return;
+            }
+            int threads = Math.min(maxThreads, 1 + compilationQueue.size() / queueDepthPerThread);
+            if (threads != compilationExecutor.getCorePoolSize()) {
+                compilationExecutor.setCorePoolSize(threads);
+            }
+        }
+
+        /**
+         * Returns the number of processors available to this process, taking the CPU quota of its
+         * cgroup into account, which older JDKs ignore.
+         */
+        static int availableProcessors() {
+            int processors = Runtime.getRuntime().availableProcessors();
+            double quota = readCpuQuota();
+            if (quota > 0) {
+                processors = (int) Math.max(1, Math.min(processors, Math.ceil(quota)));
+            }
+            return processors;
+        }
+
+        /**
+         * Returns the number of processors that the CPU quotas of the cgroup of this process and of
+         * its ancestors allow, or {@code 0} if there is no quota. The cgroup is looked up in
+         * {@code /proc/self/cgroup}. If it is not visible below the mount point of the cgroup file
+         * system, as in containers that mount only their own cgroup, the quota at the mount point is
+         * used.
+         */
+        private static double readCpuQuota() {
+            try {
+                Path selfCgroup = Paths.get("/proc/self/cgroup");
+                if (!Files.isReadable(selfCgroup)) {
+                    return 0;
+                }
+                String unifiedCgroup = null;
+                for (String line : Files.readAllLines(selfCgroup, StandardCharsets.US_ASCII)) {
+                    String[] fields = line.split(":", 3);
+                    if (fields.length != 3) {
+                        continue;
+                    }
+                    if (fields[0].equals("0") && fields[1].isEmpty()) {
+                        unifiedCgroup = fields[2];
+                    } else if (Arrays.asList(fields[1].split(",")).contains("cpu")) {
+                        // a cgroup v1 cpu controller takes precedence over the unified hierarchy
+                        Path mount = Paths.get("/sys/fs/cgroup", fields[1]);
+                        if (!Files.isDirectory(mount)) {
+                            mount = Paths.get("/sys/fs/cgroup/cpu");
+                        }
+                        return readCpuQuota(mount, fields[2], false);
+                    }
+                }
+                Path unifiedMount = Paths.get("/sys/fs/cgroup");
+                if (unifiedCgroup != null && Files.exists(unifiedMount.resolve("cgroup.controllers"))) {
+                    return readCpuQuota(unifiedMount, unifiedCgroup, true);
+                }
+            } catch (IOException | NumberFormatException e) {
+                // No usable quota, fall back to the processors reported by the VM.
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the number of processors that the CPU quotas of a cgroup and of its ancestors up to
+         * the mount point of the cgroup file system allow, or {@code 0} if there is no quota.
+         */
+        public static double readCpuQuota(Path mount, String cgroup, boolean unified) throws IOException {
+            Path directory = mount.resolve(cgroup.startsWith("/") ? cgroup.substring(1) : cgroup).normalize();
+            if (!directory.startsWith(mount) || !Files.isDirectory(directory)) {
+                directory = mount;
+            }
+            double result = 0;
+            for (Path d = directory; d != null && d.startsWith(mount); d = d.getParent()) {
+                double quota = unified ? readCpuMax(d) : readCfsQuota(d);
+                if (quota > 0 && (result == 0 || quota < result)) {
+                    result = quota;
+                }
+            }
+            return result;
+        }
+
+        private static double readCpuMax(Path directory) throws IOException {
+            Path cpuMax = directory.resolve("cpu.max");
+            if (Files.isReadable(cpuMax)) {
+                String[] fields = new String(Files.readAllBytes(cpuMax), StandardCharsets.US_ASCII).trim().split("\\s+");
+                if (fields.length == 2 && !fields[0].equals("max")) {
+                    return quota(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+                }
+            }
+            return 0;
+        }
+
+        private static double readCfsQuota(Path directory) throws IOException {
+            Path quota = directory.resolve("cpu.cfs_quota_us");
+            Path period = directory.resolve("cpu.cfs_period_us");
+            if (Files.isReadable(quota) && Files.isReadable(period)) {
+                return quota(Long.parseLong(new String(Files.readAllBytes(quota), StandardCharsets.US_ASCII).trim()),
+                                Long.parseLong(new String(Files.readAllBytes(period), StandardCharsets.US_ASCII).trim()));
+            }
+            return 0;
+        }
+
+        private static double quota(long quota, long period) {
+            return quota > 0 && period > 0 ? (double) quota / period : 0;
+        }
     }
 
     private Object cachedIncludesExcludes;
@@ -186,6 +346,7 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
     private final GraalTruffleRuntimeListenerDispatcher listeners = new GraalTruffleRuntimeListenerDispatcher();
 
     protected volatile TruffleCompiler truffleCompiler;
+    private volatile TruffleCompilationCache compilationCache;
     protected LoopNodeFactory loopNodeFactory;
     protected CallMethods callMethods;
 
@@ -426,9 +587,17 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
         TraceSplittingListener.install(this);
         StatisticsListener.install(this);
         TraceASTCompilationListener.install(this);
+        compilationCache = TruffleCompilationCache.install(this);
         installShutdownHooks();
     }
 
+    /**
+     * Returns the compilation cache, or {@code null} if no cache file is specified.
+     */
+    TruffleCompilationCache getCompilationCache() {
+        return compilationCache;
+    }
+
     protected void installShutdownHooks() {
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
     }
@@ -709,7 +878,8 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
     protected void doCompile(OptionValues options, OptimizedCallTarget callTarget, Cancellable task) {
         listeners.onCompilationStarted(callTarget);
         TruffleCompiler compiler = getTruffleCompiler();
-        TruffleInlining inlining = new TruffleInlining(callTarget, new DefaultInliningPolicy());
+        // first tier compilations do not inline
+        TruffleInlining inlining = callTarget.isFirstTierCompilation() ? new TruffleInlining(Collections.emptyList()) : new TruffleInlining(callTarget, new DefaultInliningPolicy());
         CompilationIdentifier compilationId = compiler.getCompilationIdentifier(callTarget);
         try (DebugContext debug = compilationId != null ? compiler.openDebugContext(options, compilationId, callTarget) : null) {
             try (Scope s = debug != null ? debug.scope("Truffle", new TruffleDebugJavaMethod(callTarget)) : null) {
@@ -773,9 +943,10 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
         final WeakReference<OptimizedCallTarget> weakCallTarget = new WeakReference<>(optimizedCallTarget);
         final OptionValues optionOverrides = TruffleCompilerOptions.getCurrentOptionOverrides();
         CancellableCompileTask cancellable = new CancellableCompileTask();
-        cancellable.setFuture(l.compilationExecutor.submit(new Runnable() {
+        CompilationTaskQueue.Task task = new CompilationTaskQueue.Task(new Runnable() {
             @Override
             public void run() {
+                cancellable.reportStarted();
                 OptimizedCallTarget callTarget = weakCallTarget.get();
                 if (callTarget != null) {
                     try (TruffleOptionsOverrideScope scope = optionOverrides != null ? overrideOptions(optionOverrides.getMap()) : null) {
@@ -786,12 +957,26 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
                     }
                 }
             }
-        }));
+        }, optimizedCallTarget, isDroppableFromQueue(optimizedCallTarget), l.compilationQueue.getBudget());
+        cancellable.setFuture(task);
+        l.submit(task);
         // task and future must never diverge from each other
         assert cancellable.getFuture() != null;
         return cancellable;
     }
 
+    /**
+     * A compilation may be dropped from the queue when the call target goes cold only if it was
+     * triggered by the profile of the call target and nobody waits for it to finish.
+     */
+    private static boolean isDroppableFromQueue(OptimizedCallTarget optimizedCallTarget) {
+        OptimizedCompilationProfile profile = optimizedCallTarget.getCompilationProfile();
+        boolean mayBeAsynchronous = TruffleCompilerOptions.getValue(TruffleBackgroundCompilation) && !TruffleCompilerOptions.getValue(TrufflePerformanceWarningsAreFatal) &&
+                        !TruffleCompilerOptions.getValue(TruffleCompilationExceptionsAreThrown);
+        return mayBeAsynchronous && profile != null && profile.getCompilationCallThreshold() > 0 &&
+                        profile.getInterpreterCallAndLoopCount() >= profile.getCompilationCallAndLoopThreshold();
+    }
+
     public void finishCompilation(OptimizedCallTarget optimizedCallTarget, Future<?> future, boolean mayBeAsynchronous) {
         getListener().onCompilationQueued(optimizedCallTarget);
 
@@ -877,12 +1062,7 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
     }
 
     public int getCompilationQueueSize() {
-        ExecutorService executor = getCompileQueue().compilationExecutor;
-        if (executor instanceof ThreadPoolExecutor) {
-            return ((ThreadPoolExecutor) executor).getQueue().size();
-        } else {
-            return 0;
-        }
+        return getCompileQueue().compilationQueue.size();
     }
 
     public boolean isCompiling(OptimizedCallTarget optimizedCallTarget) {
@@ -150,6 +150,19 @@ public interface GraalTruffleRuntimeListener {
     default void onCompilationInvalidated(OptimizedCallTarget target, Object source, CharSequence reason) {
     }
 
+    /**
+     * Notifies this object when {@code target} keeps being invalidated and the runtime therefore
+     * backs off from compiling it.
+     *
+     * @param target the call target that keeps being invalidated
+     * @param invalidations the number of invalidations of {@code target} in a row
+     * @param reprofileCount the number of calls and loop iterations in the interpreter before
+     *            {@code target} is compiled again, or -1 if it is no longer compiled
+     * @param reason a textual description of the back-off
+     */
+    default void onCompilationBackoff(OptimizedCallTarget target, int invalidations, int reprofileCount, CharSequence reason) {
+    }
+
     /**
      * Notifies this object when {@code target} has just deoptimized and is now executing in the
      * Truffle interpreter instead of executing compiled code.
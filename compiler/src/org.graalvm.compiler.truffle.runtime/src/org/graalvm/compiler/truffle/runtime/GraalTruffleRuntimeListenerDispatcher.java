@@ -110,6 +110,13 @@ final class GraalTruffleRuntimeListenerDispatcher extends ArrayList<GraalTruffle
         }
     }
 
+    @Override
+    public void onCompilationBackoff(OptimizedCallTarget target, int invalidations, int reprofileCount, CharSequence reason) {
+        for (GraalTruffleRuntimeListener l : this) {
+            l.onCompilationBackoff(target, invalidations, reprofileCount, reason);
+        }
+    }
+
     @Override
     public void onCompilationDeoptimized(OptimizedCallTarget target, Frame frame) {
         for (GraalTruffleRuntimeListener l : this) {
@@ -176,7 +176,7 @@ public final class OptimizedAssumption extends AbstractAssumption implements For
                     logInvalidatedDependency(dependency, message);
                 }
                 if (callTarget != null) {
-                    callTarget.getCompilationProfile().reportInvalidated();
+                    callTarget.getCompilationProfile().reportInvalidated(callTarget);
                 }
             }
             e = e.next;
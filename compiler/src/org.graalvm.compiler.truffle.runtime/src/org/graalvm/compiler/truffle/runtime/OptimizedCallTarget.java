@@ -28,6 +28,7 @@ import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.CompilerOptions;
 import com.oracle.truffle.api.OptimizationFailedException;
 import com.oracle.truffle.api.ReplaceObserver;
@@ -104,6 +105,20 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
     private volatile SpeculationLog speculationLog;
     private volatile int callSitesKnown;
     private volatile CancellableCompileTask compilationTask;
+    /**
+     * Whether the current or last compilation of this call target is a first tier compilation. The
+     * first tier code counts its invocations to trigger the second tier compilation.
+     */
+    @CompilationFinal private volatile boolean firstTierCompilation;
+    /**
+     * The address of the first tier code that the current second tier compilation is going to
+     * replace, or {@code 0}. If that code is still installed when the compilation task ends, the
+     * second tier compilation was dropped, cancelled or failed and the call target is in the first
+     * tier again.
+     */
+    private volatile long replacedFirstTierCode;
+    /** The key of this call target in the {@link TruffleCompilationCache}, computed on first use. */
+    private volatile String compilationCacheKey;
     /**
      * When this call target is inlined, the inlining {@link InstalledCode} registers this
      * assumption. It gets invalidated when a node rewrite in this call target is performed. This
@@ -255,6 +270,9 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
         if (CompilerDirectives.inCompiledCode() && profile != null) {
             args = profile.injectArgumentProfile(originalArguments);
         }
+        if (CompilerDirectives.inCompiledCode() && firstTierCompilation && profile != null) {
+            profile.firstTierCall(this);
+        }
         Object result = callProxy(createFrame(getRootNode().getFrameDescriptor(), args));
 
         if (profile != null) {
@@ -298,7 +316,12 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
                 this.uninitializedRootNode = NodeUtil.cloneNode(rootNode);
             }
             tvmci.onFirstExecution(this);
-            this.compilationProfile = createCompilationProfile();
+            OptimizedCompilationProfile profile = createCompilationProfile();
+            TruffleCompilationCache cache = runtime().getCompilationCache();
+            if (cache != null) {
+                cache.onProfileCreated(this, profile);
+            }
+            this.compilationProfile = profile;
         }
     }
 
@@ -316,7 +339,19 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
      * the background. Use {@link #isCompiling()} to find out whether it is actually compiling.
      */
     public final boolean compile() {
-        if (isValid()) {
+        return compile(false);
+    }
+
+    /**
+     * Compiles this call target in the second tier, replacing the first tier code.
+     */
+    @TruffleBoundary
+    final void compileSecondTier() {
+        compile(true);
+    }
+
+    private boolean compile(boolean secondTier) {
+        if (isValid() && !(secondTier && firstTierCompilation)) {
             return true;
         }
         if (!isCompiling()) {
@@ -328,13 +363,18 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
             // Do not try to compile this target concurrently,
             // but do not block other threads if compilation is not asynchronous.
             synchronized (this) {
-                if (isValid()) {
+                if (isValid() && !(secondTier && firstTierCompilation)) {
                     return true;
                 }
                 if (this.compilationProfile == null) {
                     initialize();
                 }
                 if (!isCompiling()) {
+                    this.replacedFirstTierCode = secondTier && isValid() ? getCodeAddress() : 0;
+                    this.firstTierCompilation = !secondTier && isMultiTier();
+                    if (firstTierCompilation) {
+                        compilationProfile.resetFirstTierCallCount();
+                    }
                     this.compilationTask = task = runtime().submitForCompilation(this);
                 }
             }
@@ -352,6 +392,15 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
         return false;
     }
 
+    private boolean isMultiTier() {
+        return !(rootNode instanceof OptimizedOSRLoopNode.OSRRootNode) && getOptionValue(PolyglotCompilerOptions.MultiTier);
+    }
+
+    @Override
+    public final boolean isFirstTierCompilation() {
+        return firstTierCompilation;
+    }
+
     public final boolean isCompiling() {
         CancellableCompileTask task = getCompilationTask();
         if (task != null) {
@@ -397,6 +446,22 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
         runtime().cancelInstalledTask(this, source, reason);
     }
 
+    /**
+     * Notifies this call target that the runtime discarded its machine code on its own, e.g., to
+     * make room in a bounded code cache. The code was not wrong, so this does not count as an
+     * invalidation for the back-off, but the call target is profiled again before it is recompiled.
+     *
+     * @param reason a textual description of the reason why the machine code was discarded
+     */
+    protected final void onCodeEvicted(CharSequence reason) {
+        cachedNonTrivialNodeCount = -1;
+        runtime().getListener().onCompilationInvalidated(this, null, reason);
+        OptimizedCompilationProfile profile = this.compilationProfile;
+        if (profile != null) {
+            profile.reportEvicted();
+        }
+    }
+
     OptimizedCallTarget cloneUninitialized() {
         assert sourceCallTarget == null;
         if (compilationProfile == null) {
@@ -570,7 +635,7 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
         if (profile != null) {
             profile.reportNodeReplaced();
             if (cancelInstalledTask(newNode, reason)) {
-                profile.reportInvalidated();
+                profile.reportInvalidated(this);
             }
         }
         return false;
@@ -668,8 +733,34 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
         return compilationTask;
     }
 
+    /**
+     * Returns the time in nanoseconds the current compilation of this call target waited in the
+     * compilation queue, or {@code 0} if this call target is not being compiled.
+     */
+    public final long getCompilationQueueWaitTime() {
+        CancellableCompileTask task = compilationTask;
+        return task != null ? task.getQueueWaitTime() : 0;
+    }
+
     public void resetCompilationTask() {
         this.compilationTask = null;
+        long firstTierCode = replacedFirstTierCode;
+        if (firstTierCode != 0) {
+            replacedFirstTierCode = 0;
+            if (isValid() && getCodeAddress() == firstTierCode) {
+                // count the calls of the first tier code again to retry the second tier
+                compilationProfile.resetFirstTierCallCount();
+                firstTierCompilation = true;
+            }
+        }
+    }
+
+    String getCompilationCacheKey() {
+        return compilationCacheKey;
+    }
+
+    void setCompilationCacheKey(String key) {
+        this.compilationCacheKey = key;
     }
 
     public <T> T getOptionValue(OptionKey<T> key) {
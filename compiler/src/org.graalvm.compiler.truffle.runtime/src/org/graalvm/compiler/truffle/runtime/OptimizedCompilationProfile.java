@@ -26,6 +26,9 @@ package org.graalvm.compiler.truffle.runtime;
 
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleArgumentTypeSpeculation;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompileImmediately;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationBackoffInterval;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationBackoffLimit;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationBackoffThreshold;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationReprofileCount;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleMinInvokeThreshold;
 import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleReplaceReprofileCount;
@@ -36,6 +39,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.graalvm.compiler.truffle.common.TruffleCompilerOptions;
 import org.graalvm.options.OptionValues;
@@ -54,12 +58,21 @@ public class OptimizedCompilationProfile {
      * Number of times an installed code for this tree was seen invalidated.
      */
     private int invalidationCount;
+    /**
+     * Number of invalidations in a row, i.e., no more than
+     * {@code TruffleInvalidationBackoffInterval} apart from each other.
+     */
+    private int invalidationsInARow;
+    private long lastInvalidationTime;
+    private boolean reduceSpeculation;
     private int deferredCount;
 
     private int interpreterCallCount;
     private int interpreterCallAndLoopCount;
     private int compilationCallThreshold;
     private int compilationCallAndLoopThreshold;
+    private int firstTierCallCount;
+    @CompilationFinal private int secondTierCompilationThreshold;
 
     private long timestamp;
 
@@ -85,15 +98,27 @@ public class OptimizedCompilationProfile {
 
     public OptimizedCompilationProfile(OptionValues options) {
         int callThreshold = TruffleCompilerOptions.getValue(TruffleMinInvokeThreshold);
-        int callAndLoopThreshold = PolyglotCompilerOptions.getValue(options, PolyglotCompilerOptions.CompilationThreshold);
+        int callAndLoopThreshold = getCompilationThreshold(options);
         assert callThreshold >= 0;
         assert callAndLoopThreshold >= 0;
         boolean compileImmediately = TruffleCompilerOptions.getValue(TruffleCompileImmediately);
         this.compilationCallThreshold = compileImmediately ? 0 : Math.min(callThreshold, callAndLoopThreshold);
         this.compilationCallAndLoopThreshold = compileImmediately ? 0 : callAndLoopThreshold;
+        this.secondTierCompilationThreshold = PolyglotCompilerOptions.getValue(options, PolyglotCompilerOptions.SecondTierCompilationThreshold);
         this.timestamp = System.nanoTime();
     }
 
+    /**
+     * Returns the number of invocations and loop iterations in the interpreter after which a call
+     * target is compiled, in the first tier if multi-tier compilation is enabled.
+     */
+    static int getCompilationThreshold(OptionValues options) {
+        if (PolyglotCompilerOptions.getValue(options, PolyglotCompilerOptions.MultiTier)) {
+            return PolyglotCompilerOptions.getValue(options, PolyglotCompilerOptions.FirstTierCompilationThreshold);
+        }
+        return PolyglotCompilerOptions.getValue(options, PolyglotCompilerOptions.CompilationThreshold);
+    }
+
     @Override
     public String toString() {
         return String.format("CompilationProfile(callCount=%d/%d, callAndLoopCount=%d/%d)", interpreterCallCount, compilationCallThreshold, interpreterCallAndLoopCount,
@@ -277,16 +302,92 @@ public class OptimizedCompilationProfile {
         compilationFailed = true;
     }
 
+    final void reportCachedCompilation(int threshold) {
+        // compiled by an earlier process, compile again as soon as the nodes are specialized
+        if (compilationCallThreshold == 0) { // TruffleCompileImmediately
+            return;
+        }
+        compilationCallThreshold = Math.min(compilationCallThreshold, threshold);
+        compilationCallAndLoopThreshold = Math.min(compilationCallAndLoopThreshold, threshold);
+    }
+
     final void reportLoopCount(int count) {
         interpreterCallAndLoopCount += count;
     }
 
-    final void reportInvalidated() {
+    final void reportInvalidated(OptimizedCallTarget callTarget) {
         invalidationCount++;
         int reprofile = TruffleCompilerOptions.getValue(TruffleInvalidationReprofileCount);
+        int backoffThreshold = TruffleCompilerOptions.getValue(TruffleInvalidationBackoffThreshold);
+        if (backoffThreshold > 0) {
+            long now = System.nanoTime();
+            if (now - lastInvalidationTime > TimeUnit.MILLISECONDS.toNanos(TruffleCompilerOptions.getValue(TruffleInvalidationBackoffInterval))) {
+                invalidationsInARow = 0;
+            }
+            lastInvalidationTime = now;
+            if (++invalidationsInARow >= backoffThreshold) {
+                reprofile = backoff(callTarget, reprofile, invalidationsInARow - backoffThreshold + 1);
+            }
+        }
         ensureProfiling(reprofile, reprofile);
     }
 
+    final void reportEvicted() {
+        // the code was discarded to make room, profile again before recompiling
+        int reprofile = TruffleCompilerOptions.getValue(TruffleInvalidationReprofileCount);
+        ensureProfiling(reprofile, reprofile);
+    }
+
+    /**
+     * Backs off from a call target that is compiled and invalidated over and over again: each
+     * further invalidation doubles the delay of its recompilation, the first one also reduces the
+     * speculation of its next compilation. If {@code TruffleInvalidationBackoffLimit} is set, the
+     * call target is never compiled again once there are that many invalidations in a row.
+     */
+    private int backoff(OptimizedCallTarget callTarget, int reprofile, int backoffs) {
+        GraalTruffleRuntimeListener listener = GraalTruffleRuntime.getRuntime().getListener();
+        int limit = TruffleCompilerOptions.getValue(TruffleInvalidationBackoffLimit);
+        if (limit > 0 && invalidationsInARow >= limit) {
+            if (!compilationFailed) {
+                compilationFailed = true;
+                listener.onCompilationBackoff(callTarget, invalidationsInARow, -1, "Invalidated too often, compilation disabled");
+            }
+            return reprofile;
+        }
+        int backoffReprofile = Math.max(1, reprofile) << Math.min(backoffs, 20);
+        if (backoffs == 1) {
+            /*
+             * Invalidating the profile assumptions here would invalidate dependent code while an
+             * assumption is being invalidated, so this is done before the next compilation.
+             */
+            reduceSpeculation = true;
+            listener.onCompilationBackoff(callTarget, invalidationsInARow, backoffReprofile, "Invalidated repeatedly, speculation reduced");
+        } else {
+            listener.onCompilationBackoff(callTarget, invalidationsInARow, backoffReprofile, "Invalidated repeatedly");
+        }
+        return backoffReprofile;
+    }
+
+    /**
+     * Stops speculating on the profiled argument, return and exception types of the call target.
+     */
+    private void reduceSpeculation() {
+        reduceSpeculation = false;
+        if (profiledArgumentTypesAssumption == null) {
+            profiledArgumentTypesAssumption = createInvalidAssumption("Profiled Argument Types");
+        } else {
+            profiledArgumentTypesAssumption.invalidate();
+        }
+        profiledArgumentTypes = null;
+        if (profiledReturnTypeAssumption == null) {
+            profiledReturnTypeAssumption = createInvalidAssumption("Profiled Return Type");
+        } else {
+            profiledReturnTypeAssumption.invalidate();
+        }
+        profiledReturnType = null;
+        exceptionType = Object.class;
+    }
+
     final void reportNodeReplaced() {
         // delay compilation until tree is deemed stable enough
         int replaceBackoff = TruffleCompilerOptions.getValue(TruffleReplaceReprofileCount);
@@ -300,12 +401,32 @@ public class OptimizedCompilationProfile {
             // check if call target is hot enough to get compiled, but took not too long to get hot
             int callThreshold = compilationCallThreshold; // 0 if TruffleCompileImmediately
             if ((intCallCount >= callThreshold && intAndLoopCallCount >= compilationCallAndLoopThreshold && !isDeferredCompile(callTarget)) || callThreshold == 0) {
+                if (reduceSpeculation) {
+                    reduceSpeculation();
+                }
                 return callTarget.compile();
             }
         }
         return false;
     }
 
+    final void reportDroppedFromQueue(OptimizedCallTarget target) {
+        // the call target went cold while queued, wait until it gets hot again
+        deferCompilation(target);
+        firstTierCallCount = 0;
+    }
+
+    final void firstTierCall(OptimizedCallTarget callTarget) {
+        // only the call that reaches the threshold leaves the first tier code
+        if (++firstTierCallCount == secondTierCompilationThreshold && !compilationFailed) {
+            callTarget.compileSecondTier();
+        }
+    }
+
+    final void resetFirstTierCallCount() {
+        firstTierCallCount = 0;
+    }
+
     private boolean isDeferredCompile(OptimizedCallTarget target) {
         // Workaround for https://bugs.eclipse.org/bugs/show_bug.cgi?id=440019
         int threshold = target.getOptionValue(PolyglotCompilerOptions.QueueTimeThreshold);
@@ -325,19 +446,20 @@ public class OptimizedCompilationProfile {
 
         long timeElapsed = System.nanoTime() - time;
         if (timeElapsed > (threshold * 1_000_000L)) {
-
-            int callThreshold = TruffleCompilerOptions.getValue(TruffleMinInvokeThreshold);
-            int callAndLoopThreshold = PolyglotCompilerOptions.getValue(target.getRootNode(), PolyglotCompilerOptions.CompilationThreshold);
-
-            // defer compilation
-            ensureProfiling(0, Math.min(callThreshold, callAndLoopThreshold));
-            timestamp = System.nanoTime();
-            deferredCount++;
+            deferCompilation(target);
             return true;
         }
         return false;
     }
 
+    private void deferCompilation(OptimizedCallTarget target) {
+        int callThreshold = TruffleCompilerOptions.getValue(TruffleMinInvokeThreshold);
+        int callAndLoopThreshold = getCompilationThreshold(PolyglotCompilerOptions.getPolyglotValues(target.getRootNode()));
+        ensureProfiling(0, Math.min(callThreshold, callAndLoopThreshold));
+        timestamp = System.nanoTime();
+        deferredCount++;
+    }
+
     private void initializeProfiledArgumentTypes(Object[] args) {
         CompilerAsserts.neverPartOfCompilation();
         if (TruffleCompilerOptions.getValue(TruffleArgumentTypeSpeculation)) {
@@ -421,6 +543,10 @@ public class OptimizedCompilationProfile {
         return invalidationCount;
     }
 
+    public int getInvalidationsInARow() {
+        return invalidationsInARow;
+    }
+
     public int getInterpreterCallAndLoopCount() {
         return interpreterCallAndLoopCount;
     }
@@ -429,6 +555,10 @@ public class OptimizedCompilationProfile {
         return interpreterCallCount;
     }
 
+    public int getFirstTierCallCount() {
+        return firstTierCallCount;
+    }
+
     public int getDeferredCount() {
         return deferredCount;
     }
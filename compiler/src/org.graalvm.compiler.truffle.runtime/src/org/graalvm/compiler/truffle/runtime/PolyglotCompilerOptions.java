@@ -58,6 +58,18 @@ public final class PolyglotCompilerOptions {
                     category = OptionCategory.EXPERT)
     public static final OptionKey<Integer> QueueTimeThreshold = new OptionKey<>(50000);
 
+    @Option(help = "Compile guest language roots in two tiers: first without inlining and with a reduced set of optimizations, then fully optimized once the first tier code is hot.",
+                    category = OptionCategory.EXPERT)
+    public static final OptionKey<Boolean> MultiTier = new OptionKey<>(false);
+
+    @Option(help = "Minimum number of invocations or loop iterations needed to compile a guest language root in the first tier. Only used if multi-tier compilation is enabled.",
+                    category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> FirstTierCompilationThreshold = new OptionKey<>(100);
+
+    @Option(help = "Minimum number of invocations of the first tier code needed to compile a guest language root in the second tier. Only used if multi-tier compilation is enabled.",
+                    category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> SecondTierCompilationThreshold = new OptionKey<>(10000);
+
     /*
      * TODO planned options:
      *
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.runtime;
+
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilationCacheFile;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilationCacheThreshold;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilerListener.CompilationResultInfo;
+import org.graalvm.compiler.truffle.common.TruffleCompilerListener.GraphInfo;
+import org.graalvm.compiler.truffle.common.TruffleCompilerOptions;
+
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Records which call targets were compiled by this process, so that a later process running the
+ * same guest code can compile them early.
+ *
+ * Call targets are identified by a digest of their uninitialized AST and the characters of their
+ * source section, which is stable across processes. When a call target that was compiled in an
+ * earlier process is executed for the first time, its compilation thresholds are lowered to
+ * {@link TruffleCompilerOptions#TruffleCompilationCacheThreshold}. It still executes a few times in
+ * the interpreter first so that its nodes are specialized before partial evaluation. Failures are
+ * not recorded, because they depend on the profile of one run: the entry of a call target whose
+ * compilation failed permanently is removed, and the call target is compiled as usual by later
+ * processes. An entry whose call target does not match the recorded name and node count is ignored,
+ * and so is a file that was written by a different VM.
+ */
+public final class TruffleCompilationCache extends AbstractGraalTruffleRuntimeListener {
+
+    private static final String HEADER = "# Truffle compilation cache, version 3, ";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final class Entry {
+        final int nodeCount;
+        final String name;
+
+        Entry(int nodeCount, String name) {
+            this.nodeCount = nodeCount;
+            this.name = name;
+        }
+    }
+
+    private final Path file;
+    private final int threshold;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    private TruffleCompilationCache(GraalTruffleRuntime runtime, Path file) {
+        super(runtime);
+        this.file = file;
+        this.threshold = TruffleCompilerOptions.getValue(TruffleCompilationCacheThreshold);
+    }
+
+    /**
+     * Installs the compilation cache if a cache file is specified, and returns it.
+     */
+    static TruffleCompilationCache install(GraalTruffleRuntime runtime) {
+        String fileName = TruffleCompilerOptions.getValue(TruffleCompilationCacheFile);
+        if (fileName.isEmpty()) {
+            return null;
+        }
+        TruffleCompilationCache cache = load(runtime, Paths.get(fileName));
+        runtime.addListener(cache);
+        return cache;
+    }
+
+    /**
+     * Creates a compilation cache that is stored in the given file, and loads the file if it
+     * exists. The cache is not registered as a listener of the runtime.
+     */
+    public static TruffleCompilationCache load(GraalTruffleRuntime runtime, Path file) {
+        TruffleCompilationCache cache = new TruffleCompilationCache(runtime, file);
+        cache.load();
+        return cache;
+    }
+
+    private static String vmVersion() {
+        return System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version");
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.equals(HEADER + vmVersion())) {
+                runtime.log("[truffle] Ignoring compilation cache " + file + " written by a different VM");
+                return;
+            }
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length == 3) {
+                    entries.put(parts[0], new Entry(Integer.parseInt(parts[1]), unescape(parts[2])));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            runtime.log("[truffle] Ignoring malformed compilation cache " + file + ": " + e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes the cache to a temporary file next to the cache file and moves it into place, so that
+     * processes that exit at the same time do not write to the same file and the last one wins.
+     */
+    private void store() {
+        Path temporary = null;
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(HEADER + vmVersion());
+                writer.newLine();
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    writer.write(e.getKey() + " " + entry.nodeCount + " " + escape(entry.name));
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            runtime.log("[truffle] Could not write compilation cache " + file + ": " + e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // the temporary file is left behind, the cache file is intact
+                }
+            }
+        }
+    }
+
+    /**
+     * Escapes line breaks in a name, so that each entry is one line of the file.
+     */
+    private static String escape(String name) {
+        return name.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String escaped) {
+        StringBuilder name = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                name.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                name.append(c);
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Called when the profile of a call target has been created, i.e., before its first execution.
+     */
+    public void onProfileCreated(OptimizedCallTarget target, OptimizedCompilationProfile profile) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Entry entry = entries.get(key(target));
+        if (entry != null && entry.nodeCount == target.getUninitializedNodeCount() && entry.name.equals(name(target))) {
+            profile.reportCachedCompilation(threshold);
+        }
+    }
+
+    @Override
+    public void onCompilationSuccess(OptimizedCallTarget target, TruffleInlining inliningDecision, GraphInfo graph, CompilationResultInfo result) {
+        if (target.getSourceCallTarget() != null) {
+            // splits share the entry of their source call target
+            return;
+        }
+        Entry previous = entries.put(key(target), new Entry(target.getUninitializedNodeCount(), name(target)));
+        if (previous == null) {
+            modified = true;
+        }
+    }
+
+    @Override
+    public void onCompilationFailed(OptimizedCallTarget target, String reason, boolean bailout, boolean permanentBailout) {
+        if (bailout && permanentBailout && target.getSourceCallTarget() == null && entries.remove(key(target)) != null) {
+            modified = true;
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        if (modified) {
+            store();
+        }
+    }
+
+    /**
+     * Returns the digest of the uninitialized AST of a call target. The key is computed once per
+     * call target, before its first execution or after its compilation, so it must not depend on
+     * node specializations.
+     */
+    private static String key(OptimizedCallTarget target) {
+        String key = target.getCompilationCacheKey();
+        if (key == null) {
+            key = computeKey(target);
+            target.setCompilationCacheKey(key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the name of a call target. Unlike the string representation of the call target, it
+     * does not change when the call target is compiled and contains no identity hash code, so it is
+     * the same in every process.
+     */
+    private static String name(OptimizedCallTarget target) {
+        RootNode rootNode = target.getRootNode();
+        String name = rootNode.getName();
+        return name != null ? name : rootNode.getClass().getName();
+    }
+
+    private static String computeKey(OptimizedCallTarget target) {
+        RootNode rootNode = target.getRootNode();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalError(e);
+        }
+        update(digest, rootNode.getClass().getName());
+        update(digest, name(target));
+        SourceSection section = rootNode.getSourceSection();
+        if (section != null && section.isAvailable()) {
+            update(digest, section.getSource().getName());
+            update(digest, section.getCharacters());
+        }
+        byte[] bytes = digest.digest();
+        char[] key = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            key[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            key[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(key);
+    }
+
+    private static void update(MessageDigest digest, CharSequence value) {
+        digest.update(value.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
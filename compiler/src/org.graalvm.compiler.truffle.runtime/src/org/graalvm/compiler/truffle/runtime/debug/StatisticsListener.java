@@ -64,8 +64,11 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
 
     private int compilations;
     private int invalidations;
+    private int backoffs;
+    private int compilationsDisabled;
     private int failures;
     private int success;
+    private int firstTierSuccess;
     private int queues;
     private int dequeues;
     private int splits;
@@ -73,6 +76,7 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
     private final IntSummaryStatistics deferCompilations = new IntSummaryStatistics();
     private final LongSummaryStatistics timeToQueue = new LongSummaryStatistics();
     private final LongSummaryStatistics timeToCompilation = new LongSummaryStatistics();
+    private final LongSummaryStatistics timeInQueue = new LongSummaryStatistics();
 
     private final IntSummaryStatistics nodeCount = new IntSummaryStatistics();
     private final IntSummaryStatistics nodeCountTrivial = new IntSummaryStatistics();
@@ -95,6 +99,8 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
     private final LongSummaryStatistics compilationTimeTruffleTier = new LongSummaryStatistics();
     private final LongSummaryStatistics compilationTimeGraalTier = new LongSummaryStatistics();
     private final LongSummaryStatistics compilationTimeCodeInstallation = new LongSummaryStatistics();
+    private final LongSummaryStatistics compilationTimeFirstTier = new LongSummaryStatistics();
+    private final LongSummaryStatistics compilationTimeSecondTier = new LongSummaryStatistics();
 
     private final IntSummaryStatistics truffleTierNodeCount = new IntSummaryStatistics();
     private final IdentityStatistics<String> truffleTierNodeStatistics = new IdentityStatistics<>();
@@ -151,6 +157,15 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
         invalidations++;
     }
 
+    @Override
+    public synchronized void onCompilationBackoff(OptimizedCallTarget target, int invalidations, int reprofileCount, CharSequence reason) {
+        if (reprofileCount < 0) {
+            compilationsDisabled++;
+        } else {
+            backoffs++;
+        }
+    }
+
     @Override
     public synchronized void onCompilationStarted(OptimizedCallTarget target) {
         compilations++;
@@ -161,6 +176,7 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
             deferCompilations.accept(profile.getDeferredCount());
             timeToCompilation.accept(times.compilationStarted - profile.getTimestamp());
         }
+        timeInQueue.accept(target.getCompilationQueueWaitTime());
     }
 
     @Override
@@ -223,6 +239,12 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
         compilationTimeTruffleTier.accept(times.truffleTierFinished - times.compilationStarted);
         compilationTimeGraalTier.accept(times.graalTierFinished - times.truffleTierFinished);
         compilationTimeCodeInstallation.accept(compilationDone - times.graalTierFinished);
+        if (target.isFirstTierCompilation()) {
+            firstTierSuccess++;
+            compilationTimeFirstTier.accept(compilationDone - times.compilationStarted);
+        } else {
+            compilationTimeSecondTier.accept(compilationDone - times.compilationStarted);
+        }
 
         compilationResultCodeSize.accept(result.getTargetCodeSize());
         compilationResultTotalFrameSize.accept(result.getTotalFrameSize());
@@ -251,9 +273,13 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
         rt.log("Truffle runtime statistics:");
         printStatistic(rt, "Compilations", compilations);
         printStatistic(rt, "  Success", success);
+        printStatistic(rt, "    First Tier", firstTierSuccess);
+        printStatistic(rt, "    Second Tier", success - firstTierSuccess);
         printStatistic(rt, "  Failed", failures);
         printStatistic(rt, "  Interrupted", compilations - (success + failures));
         printStatistic(rt, "Invalidated", invalidations);
+        printStatistic(rt, "  Backed Off", backoffs);
+        printStatistic(rt, "  Compilation Disabled", compilationsDisabled);
         printStatistic(rt, "Queues", queues);
         printStatistic(rt, "Dequeues", dequeues);
         printStatistic(rt, "Splits", splits);
@@ -265,11 +291,14 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
 
         printStatisticTime(rt, "Time to queue", timeToQueue);
         printStatisticTime(rt, "Time to compilation", timeToCompilation);
+        printStatisticTime(rt, "Time in queue", timeInQueue);
 
         printStatisticTime(rt, "Compilation time", compilationTime);
         printStatisticTime(rt, "  Truffle Tier", compilationTimeTruffleTier);
         printStatisticTime(rt, "  Graal Tier", compilationTimeGraalTier);
         printStatisticTime(rt, "  Code Installation", compilationTimeCodeInstallation);
+        printStatisticTime(rt, "  First Tier Success", compilationTimeFirstTier);
+        printStatisticTime(rt, "  Second Tier Success", compilationTimeSecondTier);
 
         printStatistic(rt, "Truffle node count", nodeCount);
         printStatistic(rt, "  Trivial", nodeCountTrivial);
@@ -38,6 +38,7 @@ import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
 import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntimeListener;
 import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
 import org.graalvm.compiler.truffle.runtime.OptimizedDirectCallNode;
+import org.graalvm.compiler.truffle.runtime.PolyglotCompilerOptions;
 import org.graalvm.compiler.truffle.runtime.TruffleInlining;
 
 import com.oracle.truffle.api.frame.Frame;
@@ -137,6 +138,10 @@ public final class TraceCompilationListener extends AbstractGraalTruffleRuntimeL
                         (timeCompilationFinished - compilation.timeCompilationStarted) / 1e6, //
                         (compilation.timePartialEvaluationFinished - compilation.timeCompilationStarted) / 1e6, //
                         (timeCompilationFinished - compilation.timePartialEvaluationFinished) / 1e6));
+        if (target.getOptionValue(PolyglotCompilerOptions.MultiTier)) {
+            properties.put("Tier", target.isFirstTierCompilation() ? 1 : 2);
+        }
+        properties.put("QueueTime", String.format("%5.0fms", target.getCompilationQueueWaitTime() / 1e6));
         properties.put("DirectCallNodes", String.format("I %4d/D %4d", inlinedCalls, dispatchedCalls));
         properties.put("GraalNodes", String.format("%5d/%5d", compilation.nodeCountPartialEval, nodeCountLowered));
         properties.put("CodeSize", result.getTargetCodeSize());
@@ -163,6 +168,15 @@ public final class TraceCompilationListener extends AbstractGraalTruffleRuntimeL
         runtime.logEvent(0, "opt invalidated", target.toString(), properties);
     }
 
+    @Override
+    public void onCompilationBackoff(OptimizedCallTarget target, int invalidations, int reprofileCount, CharSequence reason) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("Invalidations", invalidations);
+        properties.put("Reprofile", reprofileCount < 0 ? "never" : reprofileCount);
+        properties.put("Reason", reason);
+        runtime.logEvent(0, "opt backoff", target.toString(), properties);
+    }
+
     private static void addSourceInfo(Map<String, Object> properties, Object source) {
         if (source != null) {
             properties.put("SourceClass", source.getClass().getSimpleName());
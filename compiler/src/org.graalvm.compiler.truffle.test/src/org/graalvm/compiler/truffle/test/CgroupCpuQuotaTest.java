@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime.BackgroundCompileQueue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests how the CPU quota that limits the number of Truffle compiler threads is read from a cgroup
+ * file system, which is simulated by a temporary directory tree.
+ */
+public class CgroupCpuQuotaTest {
+
+    private static final double DELTA = 1e-9;
+
+    private Path mount;
+
+    @Before
+    public void createMount() throws IOException {
+        mount = Files.createTempDirectory("cgroup");
+    }
+
+    @After
+    public void deleteMount() throws IOException {
+        try (Stream<Path> files = Files.walk(mount)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private void write(String cgroup, String fileName, String contents) throws IOException {
+        Path directory = mount.resolve(cgroup);
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(fileName), (contents + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testUnified() throws IOException {
+        write(".", "cpu.max", "max 100000");
+        write("user.slice", "cpu.max", "max 100000");
+        write("user.slice/app.scope", "cpu.max", "150000 100000");
+        Assert.assertEquals(1.5, BackgroundCompileQueue.readCpuQuota(mount, "/user.slice/app.scope", true), DELTA);
+        Assert.assertEquals(0, BackgroundCompileQueue.readCpuQuota(mount, "/user.slice", true), DELTA);
+        Assert.assertEquals(0, BackgroundCompileQueue.readCpuQuota(mount, "/", true), DELTA);
+    }
+
+    /**
+     * The quota of a cgroup is also limited by the quotas of its ancestors.
+     */
+    @Test
+    public void testUnifiedAncestorLimits() throws IOException {
+        write("limited", "cpu.max", "50000 100000");
+        write("limited/child", "cpu.max", "400000 100000");
+        write("limited/child/grandchild", "cpu.max", "max 100000");
+        Assert.assertEquals(0.5, BackgroundCompileQueue.readCpuQuota(mount, "/limited/child/grandchild", true), DELTA);
+    }
+
+    /**
+     * A container that mounts only its own cgroup sees the quota of its cgroup at the mount point,
+     * while {@code /proc/self/cgroup} names the cgroup as seen from the host.
+     */
+    @Test
+    public void testCgroupNotVisible() throws IOException {
+        write(".", "cpu.max", "200000 100000");
+        Assert.assertEquals(2, BackgroundCompileQueue.readCpuQuota(mount, "/system.slice/docker-0123.scope", true), DELTA);
+        Assert.assertEquals(2, BackgroundCompileQueue.readCpuQuota(mount, "/../../outside", true), DELTA);
+    }
+
+    @Test
+    public void testVersion1() throws IOException {
+        write(".", "cpu.cfs_quota_us", "-1");
+        write(".", "cpu.cfs_period_us", "100000");
+        write("docker/0123", "cpu.cfs_quota_us", "250000");
+        write("docker/0123", "cpu.cfs_period_us", "100000");
+        Assert.assertEquals(2.5, BackgroundCompileQueue.readCpuQuota(mount, "/docker/0123", false), DELTA);
+        Assert.assertEquals(0, BackgroundCompileQueue.readCpuQuota(mount, "/", false), DELTA);
+        /* The files of the other cgroup version are ignored. */
+        Assert.assertEquals(0, BackgroundCompileQueue.readCpuQuota(mount, "/docker/0123", true), DELTA);
+    }
+
+    @Test
+    public void testNoQuotaFiles() throws IOException {
+        Files.createDirectories(mount.resolve("empty"));
+        Assert.assertEquals(0, BackgroundCompileQueue.readCpuQuota(mount, "/empty", true), DELTA);
+        Assert.assertEquals(0, BackgroundCompileQueue.readCpuQuota(mount, "/empty", false), DELTA);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.compiler.truffle.runtime.CompilationTaskQueue;
+import org.graalvm.compiler.truffle.runtime.CompilationTaskQueue.Budget;
+import org.graalvm.compiler.truffle.runtime.CompilationTaskQueue.Task;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.nodes.RootNode;
+
+public class CompilationTaskQueueTest extends TestWithSynchronousCompiling {
+
+    private static final GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    /**
+     * Creates a call target and calls it {@code calls} times, which stays below the compilation
+     * threshold.
+     */
+    private static OptimizedCallTarget createTarget(String name, int calls) {
+        OptimizedCallTarget target = (OptimizedCallTarget) runtime.createCallTarget(RootNode.createConstantNode(name));
+        for (int i = 0; i < calls; i++) {
+            target.call();
+        }
+        return target;
+    }
+
+    private static CompilationTaskQueue createQueue(long coldTimeout) {
+        return new CompilationTaskQueue(coldTimeout, TimeUnit.MILLISECONDS, null);
+    }
+
+    @Test
+    public void testHottestFirst() {
+        CompilationTaskQueue queue = createQueue(0);
+        Task cold = new Task(NO_OP, createTarget("cold", 1), true, null);
+        Task hot = new Task(NO_OP, createTarget("hot", 5), true, null);
+        Task warm = new Task(NO_OP, createTarget("warm", 3), true, null);
+        queue.offer(cold);
+        queue.offer(hot);
+        queue.offer(warm);
+        Assert.assertSame(hot, queue.poll());
+        Assert.assertSame(warm, queue.poll());
+        Assert.assertSame(cold, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    /**
+     * The hotness of a call target is sampled when a task is taken, so a call target that is called
+     * while it waits in the queue overtakes the others.
+     */
+    @Test
+    public void testHotnessGrowsWhileQueued() {
+        CompilationTaskQueue queue = createQueue(0);
+        OptimizedCallTarget growing = createTarget("growing", 1);
+        Task first = new Task(NO_OP, createTarget("first", 3), true, null);
+        Task second = new Task(NO_OP, growing, true, null);
+        queue.offer(first);
+        queue.offer(second);
+        for (int i = 0; i < 4; i++) {
+            growing.call();
+        }
+        Assert.assertSame(second, queue.poll());
+        Assert.assertSame(first, queue.poll());
+    }
+
+    @Test
+    public void testEqualHotnessInQueueOrder() {
+        CompilationTaskQueue queue = createQueue(0);
+        Task[] tasks = new Task[4];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Task(NO_OP, createTarget("target" + i, 2), true, null);
+            queue.offer(tasks[i]);
+        }
+        for (Task task : tasks) {
+            Assert.assertSame(task, queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+    }
+
+    /**
+     * A droppable task whose call target was not called for longer than the cold timeout is
+     * cancelled and removed from the queue. A task that is not droppable, because someone may wait
+     * for it, is kept however cold its call target is.
+     */
+    @Test
+    public void testColdTasksDropped() throws InterruptedException {
+        final long coldTimeout = 10;
+        CompilationTaskQueue queue = createQueue(coldTimeout);
+        Task droppable = new Task(NO_OP, createTarget("droppable", 5), true, null);
+        Task notDroppable = new Task(NO_OP, createTarget("notDroppable", 1), false, null);
+        OptimizedCallTarget called = createTarget("called", 1);
+        Task calledTask = new Task(NO_OP, called, true, null);
+        queue.offer(droppable);
+        queue.offer(notDroppable);
+        queue.offer(calledTask);
+
+        Thread.sleep(5 * coldTimeout);
+        called.call();
+        Assert.assertSame(calledTask, queue.poll());
+        Assert.assertTrue(droppable.isCancelled());
+        Assert.assertSame(notDroppable, queue.poll());
+        Assert.assertFalse(notDroppable.isCancelled());
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testNoColdTimeout() throws InterruptedException {
+        CompilationTaskQueue queue = createQueue(0);
+        Task task = new Task(NO_OP, createTarget("target", 1), true, null);
+        queue.offer(task);
+        Thread.sleep(20);
+        Assert.assertSame(task, queue.poll());
+        Assert.assertFalse(task.isCancelled());
+    }
+
+    /**
+     * Elements that are not compilation tasks are handed out in queue order before any task behind
+     * them.
+     */
+    @Test
+    public void testOtherElementsInQueueOrder() {
+        CompilationTaskQueue queue = createQueue(0);
+        Task task = new Task(NO_OP, createTarget("target", 5), true, null);
+        queue.offer(NO_OP);
+        queue.offer(task);
+        Assert.assertSame(NO_OP, queue.poll());
+        Assert.assertSame(task, queue.poll());
+    }
+
+    /**
+     * The budget starts with up to one second of saved processor time, is charged with the time of
+     * each compilation and is replenished with the elapsed time multiplied by its share of the
+     * processors.
+     */
+    @Test
+    public void testBudget() throws InterruptedException {
+        Budget budget = new Budget(0.5);
+        Assert.assertFalse(budget.isExhausted());
+        budget.charge(TimeUnit.MILLISECONDS.toNanos(510));
+        Assert.assertTrue(budget.isExhausted());
+        Thread.sleep(100);
+        Assert.assertFalse(budget.isExhausted());
+
+        /* At most one second of unused processor time is saved. */
+        Budget small = new Budget(0.01);
+        Thread.sleep(100);
+        small.charge(TimeUnit.MICROSECONDS.toNanos(10500));
+        Assert.assertTrue(small.isExhausted());
+    }
+
+    /**
+     * A task is charged to its budget when it runs, also if it was never queued.
+     */
+    @Test
+    public void testTaskChargesBudget() {
+        Budget budget = new Budget(0.01);
+        Task task = new Task(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }, createTarget("target", 1), true, budget);
+        Assert.assertFalse(budget.isExhausted());
+        task.run();
+        Assert.assertTrue(budget.isExhausted());
+    }
+
+    /**
+     * While the budget is exhausted, only tasks that are not droppable are handed out, however hot
+     * the droppable ones are. The droppable tasks stay in the queue until the budget has been
+     * replenished.
+     */
+    @Test
+    public void testThrottled() throws InterruptedException {
+        Budget budget = new Budget(0.01);
+        CompilationTaskQueue queue = new CompilationTaskQueue(0, TimeUnit.MILLISECONDS, budget);
+        Task droppable = new Task(NO_OP, createTarget("droppable", 5), true, budget);
+        Task notDroppable = new Task(NO_OP, createTarget("notDroppable", 1), false, budget);
+        queue.offer(droppable);
+        queue.offer(notDroppable);
+
+        /* Replenishing 1ms takes 100ms. */
+        budget.charge(TimeUnit.MILLISECONDS.toNanos(11));
+        Assert.assertSame(notDroppable, queue.poll());
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(1, queue.size());
+        Assert.assertFalse(droppable.isCancelled());
+
+        Assert.assertSame(droppable, queue.poll(10, TimeUnit.SECONDS));
+        Assert.assertFalse(budget.isExhausted());
+    }
+}
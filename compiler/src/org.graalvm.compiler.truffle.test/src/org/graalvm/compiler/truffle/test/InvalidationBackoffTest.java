@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleFunctionInlining;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationBackoffInterval;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationBackoffLimit;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationBackoffThreshold;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleInvalidationReprofileCount;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilerOptions;
+import org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleOptionsOverrideScope;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntimeListener;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.graalvm.compiler.truffle.runtime.OptimizedCompilationProfile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.RootNode;
+
+public class InvalidationBackoffTest extends TestWithSynchronousCompiling {
+
+    private static final int REPROFILE = 3;
+    private static final int BACKOFF_THRESHOLD = 2;
+    private static final int BACKOFF_LIMIT = 4;
+    private static final int MAX_CALLS = 1000;
+    private static final Object[] ARGUMENTS = {42};
+
+    private static final GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+
+    private static final class InvalidatedRootNode extends RootNode {
+        @CompilationFinal private Assumption assumption = Truffle.getRuntime().createAssumption();
+
+        InvalidatedRootNode() {
+            super(null);
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            return assumption.isValid() ? frame.getArguments()[0] : null;
+        }
+
+        void invalidate() {
+            Assumption invalidated = assumption;
+            assumption = Truffle.getRuntime().createAssumption();
+            invalidated.invalidate();
+        }
+    }
+
+    private static final class CallerRootNode extends RootNode {
+        @Child private DirectCallNode callNode;
+
+        CallerRootNode(OptimizedCallTarget target) {
+            super(null);
+            this.callNode = Truffle.getRuntime().createDirectCallNode(target);
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            return callNode.call(ARGUMENTS);
+        }
+    }
+
+    private static final class Backoff {
+        final int invalidations;
+        final int reprofileCount;
+
+        Backoff(int invalidations, int reprofileCount) {
+            this.invalidations = invalidations;
+            this.reprofileCount = reprofileCount;
+        }
+    }
+
+    /**
+     * Invalidates a call target over and over again: from the {@code BACKOFF_THRESHOLD}th
+     * invalidation in a row on, each invalidation doubles the calls needed for its recompilation,
+     * the first of them reduces the speculation on its argument types, and after
+     * {@code BACKOFF_LIMIT} invalidations it is no longer compiled.
+     */
+    @Test
+    @SuppressWarnings("try")
+    public void testRepeatedInvalidation() {
+        try (TruffleOptionsOverrideScope scope = TruffleCompilerOptions.overrideOptions(TruffleInvalidationReprofileCount, REPROFILE, TruffleInvalidationBackoffThreshold, BACKOFF_THRESHOLD,
+                        TruffleInvalidationBackoffLimit, BACKOFF_LIMIT, TruffleFunctionInlining, false)) {
+            InvalidatedRootNode rootNode = new InvalidatedRootNode();
+            OptimizedCallTarget target = (OptimizedCallTarget) runtime.createCallTarget(rootNode);
+            OptimizedCallTarget caller = (OptimizedCallTarget) runtime.createCallTarget(new CallerRootNode(target));
+
+            List<Backoff> backoffs = new ArrayList<>();
+            GraalTruffleRuntimeListener listener = new GraalTruffleRuntimeListener() {
+                @Override
+                public void onCompilationBackoff(OptimizedCallTarget backedOff, int invalidations, int reprofileCount, CharSequence reason) {
+                    if (backedOff == target) {
+                        backoffs.add(new Backoff(invalidations, reprofileCount));
+                    }
+                }
+            };
+            runtime.addListener(listener);
+            try {
+                int expectedReprofile = REPROFILE;
+                for (int invalidations = 1; invalidations < BACKOFF_LIMIT; invalidations++) {
+                    int calls = callUntilCompiled(caller, target);
+                    if (invalidations > 1) {
+                        Assert.assertEquals(expectedReprofile, calls);
+                    }
+                    OptimizedCompilationProfile profile = target.getCompilationProfile();
+                    Assert.assertEquals(invalidations <= BACKOFF_THRESHOLD, profile.isValidArgumentProfile(ARGUMENTS));
+
+                    rootNode.invalidate();
+                    assertNotCompiled(target);
+                    Assert.assertEquals(invalidations, profile.getInvalidationCount());
+                    Assert.assertEquals(invalidations, profile.getInvalidationsInARow());
+                    expectedReprofile = invalidations < BACKOFF_THRESHOLD ? REPROFILE : REPROFILE << (invalidations - BACKOFF_THRESHOLD + 1);
+                    Assert.assertEquals(expectedReprofile, profile.getCompilationCallAndLoopThreshold() - profile.getInterpreterCallAndLoopCount());
+                    Assert.assertEquals(Math.max(0, invalidations - BACKOFF_THRESHOLD + 1), backoffs.size());
+                    if (invalidations >= BACKOFF_THRESHOLD) {
+                        Backoff last = backoffs.get(backoffs.size() - 1);
+                        Assert.assertEquals(invalidations, last.invalidations);
+                        Assert.assertEquals(expectedReprofile, last.reprofileCount);
+                    }
+                }
+
+                callUntilCompiled(caller, target);
+                rootNode.invalidate();
+                Assert.assertEquals(BACKOFF_LIMIT - BACKOFF_THRESHOLD + 1, backoffs.size());
+                Backoff last = backoffs.get(backoffs.size() - 1);
+                Assert.assertEquals(BACKOFF_LIMIT, last.invalidations);
+                Assert.assertEquals(-1, last.reprofileCount);
+                for (int i = 0; i < MAX_CALLS; i++) {
+                    caller.call();
+                }
+                assertNotCompiled(target);
+            } finally {
+                runtime.removeListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Invalidates a call target more often than {@code BACKOFF_LIMIT}, but each time more than
+     * {@code TruffleInvalidationBackoffInterval} after the previous invalidation: the count of
+     * invalidations in a row starts over every time, so there is no back-off and the call target is
+     * recompiled after the usual reprofiling every time.
+     */
+    @Test
+    @SuppressWarnings("try")
+    public void testInvalidationsOutsideInterval() throws InterruptedException {
+        final int interval = 1;
+        try (TruffleOptionsOverrideScope scope = TruffleCompilerOptions.overrideOptions(TruffleInvalidationReprofileCount, REPROFILE, TruffleInvalidationBackoffThreshold, BACKOFF_THRESHOLD,
+                        TruffleInvalidationBackoffLimit, BACKOFF_LIMIT, TruffleInvalidationBackoffInterval, interval, TruffleFunctionInlining, false)) {
+            InvalidatedRootNode rootNode = new InvalidatedRootNode();
+            OptimizedCallTarget target = (OptimizedCallTarget) runtime.createCallTarget(rootNode);
+            OptimizedCallTarget caller = (OptimizedCallTarget) runtime.createCallTarget(new CallerRootNode(target));
+
+            List<Backoff> backoffs = new ArrayList<>();
+            GraalTruffleRuntimeListener listener = new GraalTruffleRuntimeListener() {
+                @Override
+                public void onCompilationBackoff(OptimizedCallTarget backedOff, int invalidations, int reprofileCount, CharSequence reason) {
+                    if (backedOff == target) {
+                        backoffs.add(new Backoff(invalidations, reprofileCount));
+                    }
+                }
+            };
+            runtime.addListener(listener);
+            try {
+                for (int invalidations = 1; invalidations <= 2 * BACKOFF_LIMIT; invalidations++) {
+                    int calls = callUntilCompiled(caller, target);
+                    if (invalidations > 1) {
+                        Assert.assertEquals(REPROFILE, calls);
+                    }
+                    OptimizedCompilationProfile profile = target.getCompilationProfile();
+                    Assert.assertTrue(profile.isValidArgumentProfile(ARGUMENTS));
+
+                    Thread.sleep(10 * interval);
+                    rootNode.invalidate();
+                    assertNotCompiled(target);
+                    Assert.assertEquals(invalidations, profile.getInvalidationCount());
+                    Assert.assertEquals(1, profile.getInvalidationsInARow());
+                    Assert.assertEquals(REPROFILE, profile.getCompilationCallAndLoopThreshold() - profile.getInterpreterCallAndLoopCount());
+                }
+                Assert.assertTrue(backoffs.isEmpty());
+                callUntilCompiled(caller, target);
+            } finally {
+                runtime.removeListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Calls the target through the caller until it is compiled and returns the number of calls.
+     */
+    private static int callUntilCompiled(OptimizedCallTarget caller, OptimizedCallTarget target) {
+        int calls = 0;
+        while (!target.isValid()) {
+            Assert.assertTrue("not compiled after " + MAX_CALLS + " calls", calls < MAX_CALLS);
+            Assert.assertEquals(ARGUMENTS[0], caller.call());
+            calls++;
+        }
+        assertCompiled(target);
+        return calls;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilerOptions;
+import org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleOptionsOverrideScope;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntimeListener;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.graalvm.polyglot.Context;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.sl.SLLanguage;
+
+public class MultiTierCompilationTest {
+
+    private static final int FIRST_TIER_THRESHOLD = 10;
+    private static final int SECOND_TIER_THRESHOLD = 10;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private static final GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+
+    /**
+     * A call target whose second tier compilation is cancelled must stay in the first tier and get
+     * to the second tier with the next calls of its first tier code.
+     */
+    @Test
+    @SuppressWarnings("try")
+    public void testSecondTierAfterCancelledSecondTier() throws Exception {
+        try (TruffleOptionsOverrideScope scope = TruffleCompilerOptions.overrideOptions(TruffleCompilerOptions.TruffleBackgroundCompilation, true)) {
+            Context context = Context.newBuilder("sl").option("compiler.MultiTier", "true").option("compiler.FirstTierCompilationThreshold",
+                            String.valueOf(FIRST_TIER_THRESHOLD)).option("compiler.SecondTierCompilationThreshold", String.valueOf(SECOND_TIER_THRESHOLD)).build();
+            context.enter();
+            try {
+                context.eval("sl", "function test() {}");
+                OptimizedCallTarget target = (OptimizedCallTarget) SLLanguage.getCurrentContext().getFunctionRegistry().getFunction("test").getCallTarget();
+
+                callAndWaitForCompilation(target, FIRST_TIER_THRESHOLD);
+                Assert.assertTrue(target.isValid());
+                Assert.assertTrue(target.isFirstTierCompilation());
+                long firstTierCode = target.getCodeAddress();
+
+                CountDownLatch secondTierStarted = new CountDownLatch(1);
+                CountDownLatch cancelled = new CountDownLatch(1);
+                GraalTruffleRuntimeListener listener = new GraalTruffleRuntimeListener() {
+                    @Override
+                    public void onCompilationStarted(OptimizedCallTarget compiled) {
+                        if (compiled == target && !compiled.isFirstTierCompilation()) {
+                            secondTierStarted.countDown();
+                            try {
+                                cancelled.await();
+                            } catch (InterruptedException e) {
+                                throw new AssertionError(e);
+                            }
+                        }
+                    }
+                };
+                runtime.addListener(listener);
+                try {
+                    for (int i = 0; i < SECOND_TIER_THRESHOLD; i++) {
+                        target.call();
+                    }
+                    Assert.assertTrue(secondTierStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+                    runtime.cancelInstalledTask(target, null, "Cancelled by test");
+                } finally {
+                    cancelled.countDown();
+                }
+                try {
+                    runtime.waitForCompilation(target, TIMEOUT);
+                } finally {
+                    // the listeners must not change while the compiler thread notifies them
+                    runtime.removeListener(listener);
+                }
+                Assert.assertTrue(target.isValid());
+                Assert.assertEquals(firstTierCode, target.getCodeAddress());
+                Assert.assertTrue(target.isFirstTierCompilation());
+
+                callAndWaitForCompilation(target, SECOND_TIER_THRESHOLD);
+                Assert.assertTrue(target.isValid());
+                Assert.assertNotEquals(firstTierCode, target.getCodeAddress());
+                Assert.assertFalse(target.isFirstTierCompilation());
+            } finally {
+                context.leave();
+                context.close();
+            }
+        }
+    }
+
+    private static void callAndWaitForCompilation(OptimizedCallTarget target, int calls) throws Exception {
+        for (int i = 0; i < calls; i++) {
+            target.call();
+        }
+        runtime.waitForCompilation(target, TIMEOUT);
+    }
+}
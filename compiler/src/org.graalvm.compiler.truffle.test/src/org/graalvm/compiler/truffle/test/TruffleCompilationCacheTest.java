@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilationCacheThreshold;
+import static org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleCompilationThreshold;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilerOptions;
+import org.graalvm.compiler.truffle.common.TruffleCompilerOptions.TruffleOptionsOverrideScope;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.graalvm.compiler.truffle.runtime.OptimizedCompilationProfile;
+import org.graalvm.compiler.truffle.runtime.TruffleCompilationCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * Records compilations in a {@link TruffleCompilationCache}, stores it and loads it again, as a
+ * later process would.
+ */
+public class TruffleCompilationCacheTest extends TestWithSynchronousCompiling {
+
+    private static final int CACHE_THRESHOLD = 2;
+    private static final int MAX_CALLS = 1000;
+
+    private static final GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+
+    private static final class ChildNode extends Node {
+    }
+
+    /** A root node whose name and node count are chosen by the test. */
+    private static final class CachedRootNode extends RootNode {
+        private final String name;
+        @Children private final ChildNode[] children;
+
+        CachedRootNode(String name, int numChildren) {
+            super(null);
+            this.name = name;
+            this.children = new ChildNode[numChildren];
+            for (int i = 0; i < numChildren; i++) {
+                children[i] = new ChildNode();
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            return children.length;
+        }
+    }
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("truffle-compilation-cache");
+        file = directory.resolve("cache");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    /**
+     * A compiled call target is compiled early by the next process, unless the call target of the
+     * next process has a different node count or its compilation failed permanently.
+     */
+    @Test
+    @SuppressWarnings("try")
+    public void testRoundTrip() throws IOException {
+        try (TruffleOptionsOverrideScope scope = TruffleCompilerOptions.overrideOptions(TruffleCompilationCacheThreshold, CACHE_THRESHOLD)) {
+            TruffleCompilationCache recording = TruffleCompilationCache.load(runtime, file);
+            OptimizedCallTarget bailout;
+            runtime.addListener(recording);
+            try {
+                callUntilCompiled(new CachedRootNode("compiled", 1));
+                bailout = callUntilCompiled(new CachedRootNode("bailout", 1));
+            } finally {
+                runtime.removeListener(recording);
+            }
+            recording.onCompilationFailed(bailout, "permanent bailout", true, true);
+            recording.onShutdown();
+            Assert.assertEquals("no temporary file must be left", Collections.singletonList(file), listDirectory());
+
+            TruffleCompilationCache reloaded = TruffleCompilationCache.load(runtime, file);
+            assertThreshold(reloaded, new CachedRootNode("compiled", 1), true);
+            assertThreshold(reloaded, new CachedRootNode("compiled", 2), false);
+            assertThreshold(reloaded, new CachedRootNode("bailout", 1), false);
+            assertThreshold(reloaded, new CachedRootNode("never compiled", 1), false);
+
+            /* An entry whose recorded name does not match is ignored as well. */
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            Assert.assertEquals(2, lines.size());
+            String entry = lines.get(1);
+            Assert.assertTrue(entry, entry.endsWith(" compiled"));
+            lines.set(1, entry.substring(0, entry.length() - "compiled".length()) + "renamed");
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            TruffleCompilationCache renamed = TruffleCompilationCache.load(runtime, file);
+            assertThreshold(renamed, new CachedRootNode("compiled", 1), false);
+        }
+    }
+
+    /**
+     * An unmodified cache is not written again.
+     */
+    @Test
+    public void testUnmodified() throws IOException {
+        TruffleCompilationCache cache = TruffleCompilationCache.load(runtime, file);
+        cache.onShutdown();
+        Assert.assertEquals(Collections.emptyList(), listDirectory());
+    }
+
+    private List<Path> listDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private static OptimizedCallTarget callUntilCompiled(RootNode rootNode) {
+        OptimizedCallTarget target = (OptimizedCallTarget) runtime.createCallTarget(rootNode);
+        for (int calls = 0; !target.isValid(); calls++) {
+            Assert.assertTrue("not compiled after " + MAX_CALLS + " calls", calls < MAX_CALLS);
+            target.call();
+        }
+        assertCompiled(target);
+        return target;
+    }
+
+    private static void assertThreshold(TruffleCompilationCache cache, RootNode rootNode, boolean cached) {
+        OptimizedCallTarget target = (OptimizedCallTarget) runtime.createCallTarget(rootNode);
+        OptimizedCompilationProfile profile = target.getCompilationProfile();
+        cache.onProfileCreated(target, profile);
+        int expected = cached ? CACHE_THRESHOLD : TruffleCompilerOptions.getValue(TruffleCompilationThreshold);
+        Assert.assertEquals(rootNode.getName(), expected, profile.getCompilationCallAndLoopThreshold());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package micro.benchmarks;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import micro.benchmarks.SimpleSyncBenchmark.Person;
+import micro.benchmarks.SimpleSyncBenchmark.ThreadState;
+
+/**
+ * Benchmarks cost of synchronization in legacy collections, of nested synchronization, and of
+ * contended synchronization, in addition to the non-contended synchronization of
+ * {@link SimpleSyncBenchmark}, whose state classes it shares.
+ */
+public class LegacySyncBenchmark extends BenchmarkBase {
+
+    private static final int N = 100;
+
+    @State(Scope.Thread)
+    public static class LocalState {
+        Person person = new Person(22);
+        StringBuffer buffer = new StringBuffer();
+        Vector<Integer> vector = new Vector<>();
+        Hashtable<Integer, Integer> table = new Hashtable<>();
+    }
+
+    @Benchmark
+    @Warmup(iterations = 20)
+    public int stringBufferAppend(LocalState state) {
+        StringBuffer buffer = state.buffer;
+        buffer.setLength(0);
+        for (int i = 0; i < N; ++i) {
+            buffer.append('a');
+        }
+        return buffer.length();
+    }
+
+    @Benchmark
+    @Warmup(iterations = 20)
+    public int vectorAddGet(LocalState state) {
+        Vector<Integer> vector = state.vector;
+        vector.clear();
+        for (int i = 0; i < N; ++i) {
+            vector.add(i);
+        }
+        int sum = 0;
+        for (int i = 0; i < N; ++i) {
+            sum += vector.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @Warmup(iterations = 20)
+    public int hashtablePutGet(LocalState state) {
+        Hashtable<Integer, Integer> table = state.table;
+        for (int i = 0; i < N; ++i) {
+            table.put(i, i);
+        }
+        int sum = 0;
+        for (int i = 0; i < N; ++i) {
+            sum += table.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @Warmup(iterations = 20)
+    public int nestedGetAge(LocalState state) {
+        Person person = state.person;
+        synchronized (person) {
+            return person.getAge();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    @Warmup(iterations = 20)
+    public int contendedGetAndIncAge(ThreadState state) {
+        Person person = state.person;
+        synchronized (person) {
+            int oldAge = person.getAge();
+            person.setAge(oldAge + 1);
+            return oldAge;
+        }
+    }
+}
@@ -98,7 +98,7 @@ else:
     # Disable the check for JDK-8 graal version.
     GRAAL_COMPILER_FLAGS += ['-Dsubstratevm.IgnoreGraalVersionCheck=true']
 
-IMAGE_ASSERTION_FLAGS = ['-H:+VerifyGraalGraphs', '-H:+VerifyGraalGraphEdges', '-H:+VerifyPhases']
+IMAGE_ASSERTION_FLAGS = ['-H:+VerifyGraalGraphs', '-H:+VerifyGraalGraphEdges', '-H:+VerifyPhases', '-H:+VerifyImageHeapWrite']
 suite = mx.suite('substratevm')
 svmSuites = [suite]
 
@@ -561,6 +561,10 @@ native_image_context.hosted_assertions = ['-J-ea', '-J-esa']
 def svm_gate_body(args, tasks):
     # Debug GR-8964 on Darwin gates
     debug_gr_8964 = (mx.get_os() == 'darwin')
+    with Task('compiler phase unittests', tasks, tags=[GraalTags.test]) as t:
+        if t:
+            mx_unittest.unittest(['com.oracle.svm.core.graal.test'])
+
     build_native_image_image()
     with native_image_context(IMAGE_ASSERTION_FLAGS, debug_gr_8964=debug_gr_8964) as native_image:
         with Task('image demos', tasks, tags=[GraalTags.helloworld]) as t:
@@ -572,7 +576,36 @@ def svm_gate_body(args, tasks):
 
         with Task('native unittests', tasks, tags=[GraalTags.test]) as t:
             if t:
-                native_junit(native_image)
+                # VM inspection is needed by HeapDumpTest
+                native_junit(native_image, build_args=['-H:+AllowVMInspection'])
+
+        with Task('runtime code cache', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                # RuntimeCodeCacheTest compiles at run time, which needs Truffle on the image builder boot class path
+                truffle_api = mx.distribution('truffle:TRUFFLE_API').path
+                native_junit(native_image, unittest_args=['com.oracle.svm.test.RuntimeCodeCacheTest'],
+                             build_args=['-J-Xbootclasspath/a:' + truffle_api, '-H:Features=com.oracle.svm.test.RuntimeCodeCacheTest$TestFeature'])
+
+        with Task('image heap card remembered set', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_junit(native_image, unittest_args=['com.oracle.svm.test.BootImageCardTableTest'], build_args=['-H:+BootImageCardRememberedSet'])
+
+        with Task('allocation sampling', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_junit(native_image, unittest_args=['com.oracle.svm.test.AllocationSamplerTest'], build_args=['-H:+AllocationSampling'])
+
+        with Task('image layout profile', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                imagelayoutprofile(native_image)
+
+        with Task('instrumentation profile', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                instrumentationprofile(native_image)
+
+        with Task('isolates with image heap mapped from file', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                cinterfacetutorial(native_image, ['-H:+SpawnIsolates', '-H:+MapImageHeapFromFile'])
+                isolatebenchmark(native_image, ['100'], build_args=['-H:+MapImageHeapFromFile'])
 
         with Task('JavaScript', tasks, tags=[GraalTags.js]) as t:
             if t:
@@ -747,6 +780,140 @@ def cinterfacetutorial(native_image, args=None):
     # Start the C executable
     mx.run([buildDir + '/cinterfacetutorial'])
 
+def isolatebenchmark(native_image, args=None, build_args=None):
+    """Measure the throughput of creating and tearing down isolates, with and without an isolate pool"""
+
+    args = [] if args is None else args
+    build_args = [] if build_args is None else build_args
+    tutorial_proj = mx.dependency('com.oracle.svm.tutorial')
+    cSourceDir = join(tutorial_proj.dir, 'native')
+
+    for poolSize in [0, 16]:
+        buildDir = join(svmbuild_dir(), tutorial_proj.name, 'isolatebenchmark-pool' + str(poolSize))
+        if exists(buildDir):
+            remove_tree(buildDir)
+        mkpath(buildDir)
+
+        native_image(['--shared', '-H:Path=' + buildDir, '-H:Name=libcinterfacetutorial',
+                      '-H:+SpawnIsolates', '-H:IsolatePoolSize=' + str(poolSize),
+                      '-H:CLibraryPath=' + tutorial_proj.dir, '-cp', tutorial_proj.output_dir()] + build_args)
+
+        mx.run(['cc', '-O2', join(cSourceDir, 'isolatebenchmark.c'),
+                '-I' + buildDir,
+                '-L' + buildDir, '-lcinterfacetutorial',
+                '-ldl', '-Wl,-rpath,' + buildDir,
+                '-o', join(buildDir, 'isolatebenchmark')])
+
+        mx.log('Isolate pool size ' + str(poolSize) + ':')
+        mx.run([join(buildDir, 'isolatebenchmark')] + args)
+
+def imagelayoutprofile(native_image, args=None):
+    """Record an image layout profile with a training run of an image and build the image again with the profile"""
+
+    args = [] if args is None else args
+    path = join(svmbuild_dir(), 'imagelayoutprofile')
+    if exists(path):
+        remove_tree(path)
+    mkpath(path)
+    hello_file = join(path, 'HelloWorld.java')
+    output = 'Hello from Substrate VM'
+    with open(hello_file, 'w') as fp:
+        fp.write('public class HelloWorld { public static void main(String[] args) { System.out.println("' + output + '"); } }')
+    mx.run(['javac', hello_file])
+
+    def _run_image(image):
+        actualOutput = []
+        mx.run([image], out=actualOutput.append)
+        if actualOutput != [output + '\n']:
+            mx.abort('Wrong output of ' + image + ': ' + str(actualOutput))
+
+    profile = join(path, 'image-layout.profile')
+    recording_image = native_image(['-H:Path=' + path, '-H:Name=helloworld-recording', '-cp', path, 'HelloWorld',
+                                    '-H:+RecordImageLayoutProfile', '-R:ImageLayoutProfileOutput=' + profile] + args)
+    _run_image(recording_image)
+    layout_map = recording_image + '.layoutmap'
+    if not exists(profile) or not exists(layout_map):
+        mx.abort('The recording image did not write ' + profile + ' and ' + layout_map)
+    with open(profile) as fp:
+        lines = [line.split() for line in fp]
+    text_ranges = itertools.takewhile(lambda parts: parts[0] != 'region', itertools.dropwhile(lambda parts: parts[:2] != ['region', 'text'], lines[1:]))
+    if len(list(text_ranges)) == 0:
+        mx.abort('The image layout profile ' + profile + ' lists no touched code')
+
+    warnings = []
+    def _collect_warnings(line):
+        mx.log(line.rstrip())
+        if 'image layout profile' in line:
+            warnings.append(line)
+    profiled_image = native_image(['-H:Path=' + path, '-H:Name=helloworld-profiled', '-cp', path, 'HelloWorld',
+                                   '-H:ImageLayoutProfile=' + profile, '-H:ImageLayoutMap=' + layout_map] + args, out=_collect_warnings, err=_collect_warnings)
+    if warnings:
+        mx.abort('The image layout profile was not applied: ' + ''.join(warnings))
+    _run_image(profiled_image)
+
+def instrumentationprofile(native_image, args=None):
+    """Build an instrumented image, run it to write a profile and build the image again with the profile"""
+
+    args = [] if args is None else args
+    path = join(svmbuild_dir(), 'instrumentationprofile')
+    if exists(path):
+        remove_tree(path)
+    mkpath(path)
+    main_class = 'ProfiledHello'
+    source_file = join(path, main_class + '.java')
+    with open(source_file, 'w') as fp:
+        fp.write('public class ProfiledHello {\n'
+                 '    interface Greeter { String greet(); }\n'
+                 '    static final class Hello implements Greeter { public String greet() { return "Hello"; } }\n'
+                 '    static final class Bye implements Greeter { public String greet() { return "Bye"; } }\n'
+                 '    public static void main(String[] args) {\n'
+                 '        Greeter[] greeters = {new Hello(), new Bye()};\n'
+                 '        int hellos = 0;\n'
+                 '        for (int i = 0; i < 1000; i++) {\n'
+                 '            if (greeters[i % 10 == 0 ? 1 : 0].greet().equals("Hello")) {\n'
+                 '                hellos++;\n'
+                 '            }\n'
+                 '        }\n'
+                 '        System.out.println("Hello from Substrate VM " + hellos);\n'
+                 '    }\n'
+                 '}\n')
+    mx.run(['javac', source_file])
+    output = 'Hello from Substrate VM 900'
+
+    def _run_image(image):
+        actualOutput = []
+        mx.run([image], out=actualOutput.append, cwd=path)
+        if actualOutput != [output + '\n']:
+            mx.abort('Wrong output of ' + image + ': ' + str(actualOutput))
+
+    profile = join(path, 'instrumentation.iprof')
+    instrumented_image = native_image(['-H:Path=' + path, '-H:Name=profiledhello-instrumented', '-cp', path, main_class,
+                                       '-H:+ProfileInstrumentation', '-R:ProfileInstrumentationOutput=' + profile] + args)
+    _run_image(instrumented_image)
+    if not exists(profile):
+        mx.abort('The instrumented image did not write ' + profile)
+
+    # Each line is the count, the method, the bytecode index, the kind of counter and, for receivers, the type
+    main_method = main_class + '.main(java.lang.String[])void'
+    counts = collections.defaultdict(int)
+    with open(profile) as fp:
+        for line in fp:
+            parts = line.rstrip('\n').split('\t')
+            if len(parts) >= 4 and parts[1] == main_method:
+                counts[tuple(parts[3:])] += int(parts[0])
+    expected_receivers = {main_class + '$Hello': 900, main_class + '$Bye': 100}
+    for receiver, expected in expected_receivers.items():
+        if counts[('receiver', receiver)] != expected:
+            mx.abort('The instrumentation profile ' + profile + ' counts ' + str(counts[('receiver', receiver)]) + ' calls on ' + receiver + ' instead of ' + str(expected))
+    if counts[('executed',)] == 0 or counts[('taken',)] == 0:
+        mx.abort('The instrumentation profile ' + profile + ' counts no branches of ' + main_method)
+
+    profiled_image = native_image(['-H:Path=' + path, '-H:Name=profiledhello-profiled', '-cp', path, main_class,
+                                   '-H:InstrumentationProfile=' + profile] + args)
+    _run_image(profiled_image)
+    if exists(join(path, 'default.iprof')):
+        mx.abort('The image built with the profile is still instrumented')
+
 def helloworld(native_image, args=None):
     args = [] if args is None else args
     helloworld_internal(native_image, svmbuild_dir(), ['javac'], args)
@@ -944,6 +1111,8 @@ mx.update_commands(suite, {
     'build': [build, ''],
     'helloworld' : [lambda args: native_image_context_run(helloworld, args), ''],
     'cinterfacetutorial' : [lambda args: native_image_context_run(cinterfacetutorial, args), ''],
+    'isolatebenchmark' : [lambda args: native_image_context_run(isolatebenchmark, args), '[iterations] [prefill]'],
+    'imagelayoutprofile' : [lambda args: native_image_context_run(imagelayoutprofile, args), '[image build options]'],
     'fetch-languages': [lambda args: fetch_languages(args, early_exit=False), ''],
     'benchmark': [benchmark, '--vmargs [vmargs] --runargs [runargs] suite:benchname'],
     'native-image': [native_image_on_jvm, ''],
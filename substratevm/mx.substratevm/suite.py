@@ -250,12 +250,27 @@ suite = {
             "findbugs": "false",
         },
 
+        "com.oracle.svm.core.graal.test": {
+            "subDir": "src",
+            "sourceDirs": ["src"],
+            "dependencies": [
+                "com.oracle.svm.core.graal",
+                "compiler:GRAAL_TEST",
+            ],
+            "checkstyle": "com.oracle.svm.core",
+            "workingSets": "SVM",
+            "javaCompliance": "8+",
+            "findbugs": "false",
+        },
+
         "com.oracle.svm.test": {
             "subDir": "src",
             "sourceDirs": ["src"],
             "dependencies": [
                 "mx:JUNIT_TOOL",
                 "sdk:GRAAL_SDK",
+                "com.oracle.svm.graal",
+                "com.oracle.svm.core.genscavenge",
             ],
             "checkstyle": "com.oracle.svm.core",
             "workingSets": "SVM",
@@ -623,6 +638,18 @@ suite = {
             ]
         },
 
+        "SVM_GRAAL_TESTS" : {
+          "relpath" : True,
+          "dependencies" : [
+            "com.oracle.svm.core.graal.test",
+          ],
+          "distDependencies": [
+            "SVM",
+            "compiler:GRAAL_TEST",
+          ],
+          "testDistribution" : True,
+        },
+
         "SVM_TESTS" : {
           "relpath" : True,
           "dependencies" : [
@@ -631,6 +658,7 @@ suite = {
           "distDependencies": [
             "mx:JUNIT_TOOL",
             "sdk:GRAAL_SDK",
+            "SVM",
           ],
           "testDistribution" : True,
         },
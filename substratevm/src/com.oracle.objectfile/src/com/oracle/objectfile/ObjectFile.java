@@ -29,7 +29,6 @@ import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -1186,18 +1185,47 @@ public abstract class ObjectFile {
     private final Map<Element, List<BuildDependency>> dependenciesByDependingElement = new IdentityHashMap<>();
     private final Map<Element, List<BuildDependency>> dependenciesByDependedOnElement = new IdentityHashMap<>();
 
+    /**
+     * Writes the elements of this object file to the channel with positional writes, in parallel.
+     * Unlike a mapping of the whole file, this needs no address space for the file and leaves no
+     * mapping behind that would keep the file open.
+     */
     public final void write(FileChannel outputChannel) {
         List<Element> sortedObjectFileElements = new ArrayList<>();
         int totalSize = bake(sortedObjectFileElements);
         try {
-            ByteBuffer buffer = outputChannel.map(MapMode.READ_WRITE, 0, totalSize);
-            writeBuffer(sortedObjectFileElements, buffer);
+            sortedObjectFileElements.parallelStream().forEach(e -> writeElement(outputChannel, e));
+            if (outputChannel.size() < totalSize) {
+                /* Trailing padding that no element covers. */
+                writeFully(outputChannel, ByteBuffer.allocate(1), totalSize - 1);
+            }
             outputChannel.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private void writeElement(FileChannel outputChannel, Element e) {
+        int off = (int) decisionsTaken.get(e).getDecision(LayoutDecision.Kind.OFFSET).getValue();
+        int expectedSize = (int) decisionsTaken.get(e).getDecidedValue(LayoutDecision.Kind.SIZE);
+        byte[] content = (byte[]) decisionsTaken.get(e).getDecidedValue(LayoutDecision.Kind.CONTENT);
+        if (content.length != expectedSize) {
+            throw new IllegalStateException("For element " + e + ", expected size " + expectedSize + " but emitted size " + content.length);
+        }
+        try {
+            writeFully(outputChannel, ByteBuffer.wrap(content), off);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void writeFully(FileChannel outputChannel, ByteBuffer buffer, long position) throws IOException {
+        long currentPosition = position;
+        while (buffer.hasRemaining()) {
+            currentPosition += outputChannel.write(buffer, currentPosition);
+        }
+    }
+
     /*
      * We keep track of what build dependencies have been created, so that the factory in
      * BuildDependency can query for duplicates. This logic is package-access: it is not needed by
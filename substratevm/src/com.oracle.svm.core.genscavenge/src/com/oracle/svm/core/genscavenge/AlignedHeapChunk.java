@@ -458,57 +458,57 @@ public class AlignedHeapChunk extends HeapChunk {
         final UnsignedWord memorySize = objectsLimit.subtract(objectsStart);
         final UnsignedWord indexLimit = CardTable.indexLimitForMemorySize(memorySize);
         trace.string("  objectsStart: ").hex(objectsStart).string("  objectsLimit: ").hex(objectsLimit).string("  indexLimit: ").unsigned(indexLimit);
-        for (UnsignedWord index = WordFactory.zero(); index.belowThan(indexLimit); index = index.add(1)) {
+        /* Visit the objects covered by each dirty card, skipping over runs of clean cards. */
+        UnsignedWord index = CardTable.nextDirtyIndex(cardTableStart, WordFactory.zero(), indexLimit);
+        while (index.belowThan(indexLimit)) {
             trace.newline().string("  ").string("  index: ").unsigned(index);
-            /* If the card is dirty, visit the objects it covers. */
-            if (CardTable.isDirtyEntryAtIndex(cardTableStart, index)) {
-                final Pointer cardLimit = CardTable.indexToMemoryPointer(objectsStart, index.add(1));
-                final Pointer crossingOntoPointer = FirstObjectTable.getPreciseFirstObjectPointer(fotStart, objectsStart, objectsLimit, index);
-                final Object crossingOntoObject = crossingOntoPointer.toObject();
-                if (trace.isEnabled()) {
-                    final Pointer cardStart = CardTable.indexToMemoryPointer(objectsStart, index);
-                    trace.string("    ").string("  cardStart: ").hex(cardStart);
-                    trace.string("  cardLimit: ").hex(cardLimit);
-                    trace.string("  crossingOntoObject: ").object(crossingOntoObject);
-                    trace.string("  end: ").hex(LayoutEncoding.getObjectEnd(crossingOntoObject));
-                    if (LayoutEncoding.isArray(crossingOntoObject)) {
-                        trace.string("  array length: ").signed(KnownIntrinsics.readArrayLength(crossingOntoObject));
-                    }
-                }
-                trace.newline();
-                /*
-                 * Iterate through the objects on that card. Find the start of the
-                 * imprecisely-marked card.
-                 */
-                final Pointer impreciseStart = FirstObjectTable.getImpreciseFirstObjectPointer(fotStart, objectsStart, objectsLimit, index);
-                /*
-                 * Walk the objects to the end of an object, even if that is past cardLimit, because
-                 * these are imprecise cards.
-                 */
-                Pointer ptr = impreciseStart;
-                final Pointer walkLimit = PointerUtils.min(cardLimit, objectsLimit);
-                trace.string("    ");
-                trace.string("  impreciseStart: ").hex(impreciseStart);
-                trace.string("  walkLimit: ").hex(walkLimit);
-                while (ptr.belowThan(walkLimit)) {
-                    trace.newline().string("      ");
-                    trace.string("  ptr: ").hex(ptr);
-                    final Object obj = ptr.toObject();
-                    final Pointer objEnd = LayoutEncoding.getObjectEnd(obj);
-                    trace.string("  obj: ").object(obj);
-                    trace.string("  objEnd: ").hex(objEnd);
-                    /* Visit the object. */
-                    if (!visitor.visitObjectInline(obj)) {
-                        final Log failureLog = Log.log().string("[AlignedHeapChunk.walkDirtyObjects:");
-                        failureLog.string("  visitor.visitObject fails").string("  obj: ").object(obj).string("]").newline();
-                        return false;
-                    }
-                    ptr = objEnd;
+            final Pointer cardLimit = CardTable.indexToMemoryPointer(objectsStart, index.add(1));
+            final Pointer crossingOntoPointer = FirstObjectTable.getPreciseFirstObjectPointer(fotStart, objectsStart, objectsLimit, index);
+            final Object crossingOntoObject = crossingOntoPointer.toObject();
+            if (trace.isEnabled()) {
+                final Pointer cardStart = CardTable.indexToMemoryPointer(objectsStart, index);
+                trace.string("    ").string("  cardStart: ").hex(cardStart);
+                trace.string("  cardLimit: ").hex(cardLimit);
+                trace.string("  crossingOntoObject: ").object(crossingOntoObject);
+                trace.string("  end: ").hex(LayoutEncoding.getObjectEnd(crossingOntoObject));
+                if (LayoutEncoding.isArray(crossingOntoObject)) {
+                    trace.string("  array length: ").signed(KnownIntrinsics.readArrayLength(crossingOntoObject));
                 }
-                if (clean) {
-                    CardTable.cleanEntryAtIndex(cardTableStart, index);
+            }
+            trace.newline();
+            /*
+             * Iterate through the objects on that card. Find the start of the imprecisely-marked
+             * card.
+             */
+            final Pointer impreciseStart = FirstObjectTable.getImpreciseFirstObjectPointer(fotStart, objectsStart, objectsLimit, index);
+            /*
+             * Walk the objects to the end of an object, even if that is past cardLimit, because
+             * these are imprecise cards.
+             */
+            Pointer ptr = impreciseStart;
+            final Pointer walkLimit = PointerUtils.min(cardLimit, objectsLimit);
+            trace.string("    ");
+            trace.string("  impreciseStart: ").hex(impreciseStart);
+            trace.string("  walkLimit: ").hex(walkLimit);
+            while (ptr.belowThan(walkLimit)) {
+                trace.newline().string("      ");
+                trace.string("  ptr: ").hex(ptr);
+                final Object obj = ptr.toObject();
+                final Pointer objEnd = LayoutEncoding.getObjectEnd(obj);
+                trace.string("  obj: ").object(obj);
+                trace.string("  objEnd: ").hex(objEnd);
+                /* Visit the object. */
+                if (!visitor.visitObjectInline(obj)) {
+                    final Log failureLog = Log.log().string("[AlignedHeapChunk.walkDirtyObjects:");
+                    failureLog.string("  visitor.visitObject fails").string("  obj: ").object(obj).string("]").newline();
+                    return false;
                 }
+                ptr = objEnd;
+            }
+            if (clean) {
+                CardTable.cleanEntryAtIndex(cardTableStart, index);
             }
+            index = CardTable.nextDirtyIndex(cardTableStart, index.add(1), indexLimit);
         }
         trace.string("]").newline();
         return true;
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.genscavenge;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.heap.NativeImageInfo;
+import com.oracle.svm.core.heap.ObjectVisitor;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.util.PointerUtils;
+
+/**
+ * A card remembered set for the writable reference partition of the native image heap.
+ *
+ * Without it, every collection visits every object of that partition, because any of them might
+ * have been made to reference a young object. With {@link HeapOptions#BootImageCardRememberedSet},
+ * those objects carry header bits that make the post-write barrier dirty a card in this table, so
+ * an incremental collection only visits the objects on dirty cards. Complete collections still
+ * visit the whole partition, because they move the old objects that it references.
+ *
+ * The tables are allocated in native memory at the end of the first collection, which visits the
+ * whole partition anyway, and freed when the isolate is torn down. Until then and afterwards, the
+ * post-write barrier ignores native image heap objects. The
+ * native image heap does not have a {@link FirstObjectTable}, but its objects never move, so a
+ * table of the offset of the first object that starts on each card is computed once, along with
+ * the card table.
+ */
+public final class BootImageCardTable {
+
+    @Fold
+    static boolean isEnabled() {
+        return HeapOptions.BootImageCardRememberedSet.getValue();
+    }
+
+    /** The start of the covered memory: the first object of the writable reference partition. */
+    private Pointer memoryStart;
+    /** The end of the last object of the writable reference partition. */
+    private Pointer memoryLimit;
+    private UnsignedWord indexLimit;
+    /** The card table, or null if it has not been allocated (yet). */
+    private Pointer cardTable;
+    /** For each card, the offset from {@link #memoryStart} of the first object that starts on it. */
+    private Pointer firstObjectTable;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    BootImageCardTable() {
+        memoryStart = WordFactory.nullPointer();
+        memoryLimit = WordFactory.nullPointer();
+        indexLimit = WordFactory.zero();
+        cardTable = WordFactory.nullPointer();
+        firstObjectTable = WordFactory.nullPointer();
+    }
+
+    boolean isInitialized() {
+        return cardTable.isNonNull();
+    }
+
+    /**
+     * Dirty the card corresponding to the given native image heap object.
+     *
+     * This has to be fast, because it is used by the post-write barrier.
+     */
+    public void dirtyCardForObject(Object object) {
+        final Pointer table = cardTable;
+        if (table.isNull()) {
+            /* The next collection visits all the objects anyway. */
+            return;
+        }
+        final Pointer objectPointer = Word.objectToUntrackedPointer(object);
+        assert memoryStart.belowOrEqual(objectPointer) && objectPointer.belowThan(memoryLimit) : "Object is not in the writable reference partition.";
+        CardTable.dirtyEntryAtIndex(table, CardTable.memoryOffsetToIndex(objectPointer.subtract(memoryStart)));
+    }
+
+    /**
+     * Clean all the cards, after a collection has visited all the objects of the partition.
+     * Allocates the tables on the first call. If they can not be allocated, the collector keeps
+     * visiting all the objects.
+     */
+    void cleanAll() {
+        VMOperation.guaranteeInProgress("Should only be called from the collector.");
+        if (!isInitialized() && !initialize()) {
+            return;
+        }
+        CardTable.cleanTableToIndex(cardTable, indexLimit);
+    }
+
+    /** Visit the objects that start on dirty cards, optionally cleaning the cards. */
+    boolean walkDirtyObjects(ObjectVisitor visitor, boolean clean) {
+        VMOperation.guaranteeInProgress("Should only be called from the collector.");
+        assert isInitialized();
+        UnsignedWord index = CardTable.nextDirtyIndex(cardTable, WordFactory.zero(), indexLimit);
+        while (index.belowThan(indexLimit)) {
+            /*
+             * The barrier dirties the card of the start of an object, so visit the objects that
+             * start on the card, to their ends.
+             */
+            final Pointer walkLimit = PointerUtils.min(CardTable.indexToMemoryPointer(memoryStart, index.add(1)), memoryLimit);
+            Pointer ptr = memoryStart.add(WordFactory.unsigned(firstObjectTable.readInt(index.multiply(Integer.BYTES))));
+            while (ptr.belowThan(walkLimit)) {
+                final Object obj = ptr.toObject();
+                if (!visitor.visitObjectInline(obj)) {
+                    return false;
+                }
+                ptr = LayoutEncoding.getObjectEnd(obj);
+            }
+            if (clean) {
+                CardTable.cleanEntryAtIndex(cardTable, index);
+            }
+            index = CardTable.nextDirtyIndex(cardTable, index.add(1), indexLimit);
+        }
+        return true;
+    }
+
+    /** Free the tables. The next collection visits all the objects and allocates them again. */
+    void tearDown() {
+        final Pointer cards = cardTable;
+        if (cards.isNull()) {
+            return;
+        }
+        /* Unpublish the card table first, so the barrier ignores the partition again. */
+        cardTable = WordFactory.nullPointer();
+        UnmanagedMemory.free(cards);
+        UnmanagedMemory.free(firstObjectTable);
+        firstObjectTable = WordFactory.nullPointer();
+    }
+
+    private boolean initialize() {
+        final Log trace = Log.noopLog().string("[BootImageCardTable.initialize:");
+        final Object firstObject = NativeImageInfo.firstWritableReferenceObject;
+        final Object lastObject = NativeImageInfo.lastWritableReferenceObject;
+        if (firstObject == null || lastObject == null) {
+            trace.string("  no writable reference partition]").newline();
+            return false;
+        }
+        final Pointer start = Word.objectToUntrackedPointer(firstObject);
+        final Pointer limit = LayoutEncoding.getObjectEnd(lastObject);
+        final UnsignedWord memorySize = limit.subtract(start);
+        if (memorySize.aboveThan(WordFactory.unsigned(Integer.MAX_VALUE))) {
+            /* The offsets in the first object table are ints. */
+            trace.string("  partition too large: ").unsigned(memorySize).string("]").newline();
+            return false;
+        }
+        final UnsignedWord limitIndex = CardTable.indexLimitForMemorySize(memorySize);
+        final Pointer cards = UnmanagedMemory.malloc(CardTable.tableSizeForMemorySize(memorySize));
+        final Pointer offsets = UnmanagedMemory.malloc(limitIndex.multiply(Integer.BYTES));
+        if (cards.isNull() || offsets.isNull()) {
+            trace.string("  can not allocate tables]").newline();
+            if (cards.isNonNull()) {
+                UnmanagedMemory.free(cards);
+            }
+            if (offsets.isNonNull()) {
+                UnmanagedMemory.free(offsets);
+            }
+            return false;
+        }
+        /* Record the first object that starts at or after the start of each card. */
+        UnsignedWord index = WordFactory.zero();
+        Pointer ptr = start;
+        while (ptr.belowThan(limit)) {
+            while (index.belowThan(limitIndex) && CardTable.indexToMemoryPointer(start, index).belowOrEqual(ptr)) {
+                offsets.writeInt(index.multiply(Integer.BYTES), (int) ptr.subtract(start).rawValue());
+                index = index.add(1);
+            }
+            ptr = LayoutEncoding.getObjectEnd(ptr.toObject());
+        }
+        /* Cards on which no object starts are walked to their (empty) end. */
+        while (index.belowThan(limitIndex)) {
+            offsets.writeInt(index.multiply(Integer.BYTES), (int) memorySize.rawValue());
+            index = index.add(1);
+        }
+        memoryStart = start;
+        memoryLimit = limit;
+        indexLimit = limitIndex;
+        firstObjectTable = offsets;
+        /* Publish the card table last: the barrier ignores the partition until it is set. */
+        cardTable = cards;
+        trace.string("  start: ").hex(start).string("  limit: ").hex(limit).string("  indexLimit: ").unsigned(limitIndex).string("]").newline();
+        return true;
+    }
+
+    public static final class TestingBackDoor {
+
+        private TestingBackDoor() {
+            /* No instances. */
+        }
+
+        @Fold
+        public static boolean isEnabled() {
+            return BootImageCardTable.isEnabled();
+        }
+
+        public static boolean isInitialized() {
+            return HeapImpl.getHeapImpl().getBootImageCardTable().isInitialized();
+        }
+
+        /** Once the tables exist, incremental collections visit only the objects on dirty cards. */
+        public static void collectIncrementally() {
+            HeapImpl.getHeapImpl().getGCImpl().collectIncrementally("BootImageCardTable.TestingBackDoor");
+        }
+
+        /** Free the tables in a safepoint, because other threads may run the barrier. */
+        public static void tearDown() {
+            VMOperation.enqueueBlockingSafepoint("BootImageCardTable.tearDown", HeapImpl.getHeapImpl().getBootImageCardTable()::tearDown);
+        }
+    }
+}
@@ -87,6 +87,12 @@ public final class CardTable {
     /** The values for an entry. */
     private static final int DIRTY_ENTRY = 0;
     private static final int CLEAN_ENTRY = 1;
+    /**
+     * The number of entries that fit in a word, and the value of a word of entries that are all
+     * clean. Most cards are clean, so the table is cleaned and searched a word at a time.
+     */
+    private static final int ENTRIES_PER_WORD = Long.BYTES / ENTRY_BYTES;
+    private static final long CLEAN_WORD = 0x0101010101010101L * CLEAN_ENTRY;
 
     /** A LocationIdentity to distinguish card locations from other locations. */
     public static final LocationIdentity CARD_REMEMBERED_SET_LOCATION = NamedLocationIdentity.mutable("CardRememberedSet");
@@ -109,6 +115,40 @@ public final class CardTable {
         return isDirtyEntry(readEntryAtIndex(table, index));
     }
 
+    /**
+     * Find the first dirty entry in a table at or after a starting index.
+     *
+     * After a collection all the cards are clean, so between collections only the few cards that
+     * have been stored into are dirty. Where the table is word-aligned, runs of clean entries are
+     * skipped a word at a time, which makes looking for the dirty cards of a large old generation
+     * much cheaper than reading each entry.
+     *
+     * @return The index of the first dirty entry in [startIndex .. indexLimit), or indexLimit if
+     *         all of those entries are clean.
+     */
+    static UnsignedWord nextDirtyIndex(Pointer table, UnsignedWord startIndex, UnsignedWord indexLimit) {
+        VMOperation.guaranteeInProgress("Should only be called from the collector.");
+        return nextDirtyIndexUnchecked(table, startIndex, indexLimit);
+    }
+
+    private static UnsignedWord nextDirtyIndexUnchecked(Pointer table, UnsignedWord startIndex, UnsignedWord indexLimit) {
+        UnsignedWord index = startIndex;
+        while (index.belowThan(indexLimit)) {
+            final UnsignedWord offset = indexToTableOffset(index);
+            if (index.add(ENTRIES_PER_WORD).belowOrEqual(indexLimit) && PointerUtils.isAMultiple(table.add(offset), WordFactory.unsigned(Long.BYTES))) {
+                if (table.readLong(offset) == CLEAN_WORD) {
+                    index = index.add(ENTRIES_PER_WORD);
+                    continue;
+                }
+            }
+            if (isDirtyEntryAtIndexUnchecked(table, index)) {
+                return index;
+            }
+            index = index.add(1);
+        }
+        return indexLimit;
+    }
+
     static boolean containsReferenceToYoungSpace(Object obj) {
         final ReferenceToYoungObjectVisitor referenceToYoungObjectVisitor = getReferenceToYoungObjectVisitor();
         return referenceToYoungObjectVisitor.containsReferenceToYoungObject(obj);
@@ -123,8 +163,19 @@ public final class CardTable {
 
     /** Initialize a table to "clean". */
     static Pointer cleanTableToIndex(Pointer table, UnsignedWord indexLimit) {
-        for (UnsignedWord index = WordFactory.unsigned(0); index.belowThan(indexLimit); index = index.add(1)) {
+        UnsignedWord index = WordFactory.unsigned(0);
+        /* Clean whole words of entries, if the table is word-aligned, ... */
+        if (PointerUtils.isAMultiple(table, WordFactory.unsigned(Long.BYTES))) {
+            final UnsignedWord wordIndexLimit = UnsignedUtils.roundDown(indexLimit, WordFactory.unsigned(ENTRIES_PER_WORD));
+            while (index.belowThan(wordIndexLimit)) {
+                table.writeLong(indexToTableOffset(index), CLEAN_WORD, CARD_REMEMBERED_SET_LOCATION);
+                index = index.add(ENTRIES_PER_WORD);
+            }
+        }
+        /* ... and then any remaining entries one at a time. */
+        while (index.belowThan(indexLimit)) {
             cleanEntryAtIndex(table, index);
+            index = index.add(1);
         }
         return table;
     }
@@ -579,5 +630,10 @@ public final class CardTable {
         public static Pointer cleanTableToIndex(Pointer table, UnsignedWord maxIndex) {
             return CardTable.cleanTableToIndex(table, maxIndex);
         }
+
+        public static UnsignedWord nextDirtyIndex(Pointer table, UnsignedWord startIndex, UnsignedWord indexLimit) {
+            /* Bypass VMOperation.inProgress check for testing. */
+            return CardTable.nextDirtyIndexUnchecked(table, startIndex, indexLimit);
+        }
     }
 }
@@ -29,11 +29,13 @@ import org.graalvm.nativeimage.Feature.FeatureAccess;
 import org.graalvm.nativeimage.Platform;
 import org.graalvm.nativeimage.Platforms;
 import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.option.HostedOptionKey;
 import com.oracle.svm.core.option.RuntimeOptionKey;
 import com.oracle.svm.core.util.TimeUtils;
+import com.oracle.svm.core.util.UnsignedUtils;
 
 /** A collection policy to decide when to collect incrementally or completely. */
 public abstract class CollectionPolicy {
@@ -52,6 +54,15 @@ public abstract class CollectionPolicy {
          */
         @Option(help = "Percentage of time that should be spent in young generation collections.")//
         public static final RuntimeOptionKey<Integer> PercentTimeInIncrementalCollection = new RuntimeOptionKey<>(50);
+
+        @Option(help = "The pause time goal in milliseconds for incremental collections of the Adaptive collection policy, or 0 for no goal.")//
+        public static final RuntimeOptionKey<Long> AdaptiveMaximumPauseMillis = new RuntimeOptionKey<>(100L);
+
+        @Option(help = "The percentage of time the Adaptive collection policy aims to spend in collections at most.")//
+        public static final RuntimeOptionKey<Integer> AdaptivePercentTimeInCollection = new RuntimeOptionKey<>(5);
+
+        @Option(help = "The percentage by which the Adaptive collection policy grows or shrinks the young generation at a time.")//
+        public static final RuntimeOptionKey<Integer> AdaptiveYoungGenerationStepPercent = new RuntimeOptionKey<>(20);
     }
 
     @Platforms(Platform.HOSTED_ONLY.class)
@@ -72,6 +83,21 @@ public abstract class CollectionPolicy {
 
     public abstract void nameToLog(Log log);
 
+    /**
+     * Called after each collection chosen by this policy, once the {@link GCImpl.Accounting} has
+     * been updated. By default, policies do not adapt.
+     */
+    public void afterCollection(@SuppressWarnings("unused") boolean completeCollection) {
+    }
+
+    /**
+     * The number of bytes allocated in the young generation after which an incremental collection
+     * is caused. By default, this is the maximum size of the young generation.
+     */
+    public UnsignedWord getYoungGenerationSize() {
+        return HeapPolicy.getMaximumYoungGenerationSize();
+    }
+
     protected static GCImpl.Accounting getAccounting() {
         return HeapImpl.getHeapImpl().getGCImpl().getAccounting();
     }
@@ -297,4 +323,70 @@ public abstract class CollectionPolicy {
             return veto;
         }
     }
+
+    /**
+     * A collection policy that decides on complete collections like {@link BySpaceAndTime}, and
+     * that resizes the young generation after each incremental collection from the accounting of
+     * that collection. If an incremental collection took longer than the pause time goal, the young
+     * generation shrinks, so that the next one has less to scavenge. Otherwise, if the collection
+     * took more than the goal percentage of the time since the previous collection, the young
+     * generation grows, so that collections happen less often. The young generation stays between
+     * one aligned chunk and the maximum young generation size, so the decisions about complete
+     * collections, which assume the maximum size, stay valid. If the young generation size was set
+     * with `-Xmn`, it is not adapted.
+     */
+    public static class Adaptive extends BySpaceAndTime {
+
+        /** The adapted young generation size, or zero if it has not been adapted yet. */
+        private UnsignedWord youngGenerationSize = WordFactory.zero();
+
+        @Override
+        public UnsignedWord getYoungGenerationSize() {
+            final UnsignedWord maxYoungSize = HeapPolicy.getMaximumYoungGenerationSize();
+            if (youngGenerationSize.equal(WordFactory.zero()) || HeapPolicy.isMaximumYoungGenerationSizeSet()) {
+                return maxYoungSize;
+            }
+            return UnsignedUtils.min(youngGenerationSize, maxYoungSize);
+        }
+
+        @Override
+        public void afterCollection(boolean completeCollection) {
+            if (completeCollection || HeapPolicy.isMaximumYoungGenerationSizeSet()) {
+                /*
+                 * The time of a complete collection depends mostly on the old generation, and an
+                 * explicit young generation size is respected.
+                 */
+                return;
+            }
+            final Log trace = Log.noopLog().string("[CollectionPolicy.Adaptive.afterCollection:");
+            final long pauseNanos = getAccounting().getLastCollectionNanos();
+            final long mutatorNanos = getAccounting().getLastMutatorNanos();
+            final long pauseGoalNanos = TimeUtils.millisToNanos(Options.AdaptiveMaximumPauseMillis.getValue());
+            final long weightedIntervalNanos = TimeUtils.weightedNanos(Options.AdaptivePercentTimeInCollection.getValue(), mutatorNanos + pauseNanos);
+            final UnsignedWord chunkSize = HeapPolicy.getAlignedHeapChunkSize();
+            final UnsignedWord youngSize = getYoungGenerationSize();
+            final UnsignedWord step = youngSize.unsignedDivide(100).multiply(Options.AdaptiveYoungGenerationStepPercent.getValue());
+            UnsignedWord newYoungSize = youngSize;
+            if (pauseGoalNanos > 0L && TimeUtils.nanoTimeLessThan(pauseGoalNanos, pauseNanos)) {
+                newYoungSize = (youngSize.aboveThan(step) ? youngSize.subtract(step) : chunkSize);
+            } else if (TimeUtils.nanoTimeLessThan(weightedIntervalNanos, pauseNanos)) {
+                newYoungSize = youngSize.add(step);
+            }
+            final UnsignedWord maxYoungSize = UnsignedUtils.max(chunkSize, UnsignedUtils.roundDown(HeapPolicy.getMaximumYoungGenerationSize(), chunkSize));
+            youngGenerationSize = UnsignedUtils.min(UnsignedUtils.max(UnsignedUtils.roundUp(newYoungSize, chunkSize), chunkSize), maxYoungSize);
+            trace.string("  pauseNanos: ").signed(pauseNanos)
+                            .string("  mutatorNanos: ").signed(mutatorNanos)
+                            .string("  pauseGoalNanos: ").signed(pauseGoalNanos)
+                            .string("  weightedIntervalNanos: ").signed(weightedIntervalNanos)
+                            .string("  youngSize: ").unsigned(youngSize)
+                            .string("  newYoungSize: ").unsigned(youngGenerationSize)
+                            .string("]").newline();
+        }
+
+        @Override
+        public void nameToLog(Log log) {
+            log.string("adaptive: ").signed(Options.AdaptiveMaximumPauseMillis.getValue()).string(" msec pause goal, ")
+                            .signed(Options.AdaptivePercentTimeInCollection.getValue()).string("% time in collections goal");
+        }
+    }
 }
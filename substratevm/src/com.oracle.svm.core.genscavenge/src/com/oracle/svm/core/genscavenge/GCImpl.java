@@ -108,6 +108,10 @@ public class GCImpl implements GC {
      * A policy instance for collectCompletely(String).
      */
     private final CollectionPolicy alwaysCompletelyInstance;
+    /**
+     * A policy instance for collectIncrementally(String).
+     */
+    private final CollectionPolicy onlyIncrementallyInstance;
 
     /** Accounting for this collection. */
     private final Accounting accounting;
@@ -159,6 +163,7 @@ public class GCImpl implements GC {
         this.frameWalker = FramePointerMapWalker.factory(greyToBlackObjRefVisitor);
         this.greyToBlackObjectVisitor = GreyToBlackObjectVisitor.factory(greyToBlackObjRefVisitor);
         this.alwaysCompletelyInstance = new CollectionPolicy.OnlyCompletely();
+        this.onlyIncrementallyInstance = new CollectionPolicy.OnlyIncrementally();
         this.collectionInProgress = Latch.factory("Collection in progress");
         this.oldGenerationSizeExceeded = new OutOfMemoryError("Garbage-collected heap size exceeded.");
         this.unpinnedObjectReferenceWalkerException = new UnpinnedObjectReferenceWalkerException();
@@ -310,10 +315,12 @@ public class GCImpl implements GC {
                 }
             }
 
+            HeapChunkProvider.get().freeExcessAlignedChunks();
             CommittedMemoryProvider.get().afterGarbageCollection(completeCollection);
         }
 
-        getAccounting().afterCollection(completeCollection, collectionTimer);
+        getAccounting().afterCollection(completeCollection, collectionTimer, mutatorTimer);
+        getPolicy().afterCollection(completeCollection);
 
         trace.string("  Verify after: ");
         try (Timer vat = verifyAfterTimer.open()) {
@@ -399,6 +406,11 @@ public class GCImpl implements GC {
                 verboseGCLog.string("  policy: ");
                 getPolicy().nameToLog(verboseGCLog);
                 verboseGCLog.string("  type: ").string(completeCollection ? "complete" : "incremental");
+                verboseGCLog.newline();
+                verboseGCLog.string("  committed: ").unsigned(heap.getCommittedChunkBytes())
+                                .string("  used: ").unsigned(heap.getUsedChunkBytes())
+                                .string("  unused: ").unsigned(heap.getUnusedChunkBytes())
+                                .string("  released total: ").unsigned(heap.getTotalReleasedChunkBytes());
                 if (HeapOptions.PrintHeapShape.getValue()) {
                     heap.report(verboseGCLog);
                 }
@@ -515,6 +527,17 @@ public class GCImpl implements GC {
         }
     }
 
+    /** Collect only the young generation, regardless of the policy. For testing. */
+    void collectIncrementally(final String cause) {
+        final CollectionPolicy oldPolicy = getPolicy();
+        try {
+            setPolicy(onlyIncrementallyInstance);
+            collect(cause);
+        } finally {
+            setPolicy(oldPolicy);
+        }
+    }
+
     /**
      * Scavenge, either just from dirty roots or from all roots.
      *
@@ -783,15 +806,31 @@ public class GCImpl implements GC {
         final Log trace = Log.noopLog().string("[blackenBootImageRoots:").newline();
         try (Timer bbirt = blackenBootImageRootsTimer.open()) {
             try (GreyToBlackObjRefVisitor.Counters gtborv = greyToBlackObjRefVisitor.openCounters()) {
-                /* Walk through the native image heap roots. */
-                Pointer cur = Word.objectToUntrackedPointer(NativeImageInfo.firstWritableReferenceObject);
-                final Pointer last = Word.objectToUntrackedPointer(NativeImageInfo.lastWritableReferenceObject);
-                while (cur.belowOrEqual(last)) {
-                    Object obj = cur.toObject();
-                    if (obj != null) {
-                        greyToBlackObjectVisitor.visitObjectInline(obj);
+                final BootImageCardTable cardTable = HeapImpl.getHeapImpl().getBootImageCardTable();
+                if (!completeCollection && cardTable.isInitialized()) {
+                    /*
+                     * Only the native image heap objects that have been written since the last
+                     * collection can reference young objects.
+                     */
+                    cardTable.walkDirtyObjects(greyToBlackObjectVisitor, true);
+                } else {
+                    /* Walk through the native image heap roots. */
+                    Pointer cur = Word.objectToUntrackedPointer(NativeImageInfo.firstWritableReferenceObject);
+                    final Pointer last = Word.objectToUntrackedPointer(NativeImageInfo.lastWritableReferenceObject);
+                    while (cur.belowOrEqual(last)) {
+                        Object obj = cur.toObject();
+                        if (obj != null) {
+                            greyToBlackObjectVisitor.visitObjectInline(obj);
+                        }
+                        cur = LayoutEncoding.getObjectEnd(obj);
+                    }
+                    if (BootImageCardTable.isEnabled()) {
+                        /*
+                         * Cards dirtied later in this collection, e.g., by reference discovery,
+                         * stay dirty for the next one.
+                         */
+                        cardTable.cleanAll();
                     }
-                    cur = LayoutEncoding.getObjectEnd(obj);
                 }
             }
         }
@@ -1020,7 +1059,7 @@ public class GCImpl implements GC {
         return accounting;
     }
 
-    private CollectionPolicy getPolicy() {
+    CollectionPolicy getPolicy() {
         return policy;
     }
 
@@ -1149,6 +1188,9 @@ public class GCImpl implements GC {
         private UnsignedWord normalChunkBytes;
         private UnsignedWord promotedTotalChunkBytes;
         private UnsignedWord copiedTotalChunkBytes;
+        /* Measures of the most recent collection and of the mutator interval before it. */
+        private long lastCollectionNanos;
+        private long lastMutatorNanos;
         /* Before and after measures. */
         private UnsignedWord youngChunkBytesBefore;
         private UnsignedWord oldChunkBytesBefore;
@@ -1185,6 +1227,8 @@ public class GCImpl implements GC {
             this.promotedTotalChunkBytes = WordFactory.zero();
             this.collectedTotalChunkBytes = WordFactory.zero();
             this.copiedTotalChunkBytes = WordFactory.zero();
+            this.lastCollectionNanos = 0L;
+            this.lastMutatorNanos = 0L;
             this.history = 0;
             this.youngChunkBytesBefore = WordFactory.zero();
             this.oldChunkBytesBefore = WordFactory.zero();
@@ -1248,6 +1292,14 @@ public class GCImpl implements GC {
             return copiedTotalChunkBytes;
         }
 
+        long getLastCollectionNanos() {
+            return lastCollectionNanos;
+        }
+
+        long getLastMutatorNanos() {
+            return lastMutatorNanos;
+        }
+
         UnsignedWord getCollectedTotalChunkBytes() {
             return collectedTotalChunkBytes;
         }
@@ -1389,7 +1441,9 @@ public class GCImpl implements GC {
             trace.string("]").newline();
         }
 
-        void afterCollection(boolean completeCollection, Timer collectionTimer) {
+        void afterCollection(boolean completeCollection, Timer collectionTimer, Timer mutatorTimer) {
+            lastCollectionNanos = collectionTimer.getCollectedNanos();
+            lastMutatorNanos = mutatorTimer.getLastIntervalNanos();
             if (completeCollection) {
                 afterCompleteCollection(collectionTimer);
             } else {
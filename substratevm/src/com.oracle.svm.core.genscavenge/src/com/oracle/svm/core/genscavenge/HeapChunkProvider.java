@@ -41,16 +41,23 @@ import com.oracle.svm.core.genscavenge.UnalignedHeapChunk.UnalignedHeader;
 import com.oracle.svm.core.jdk.UninterruptibleUtils;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.os.CommittedMemoryProvider;
+import com.oracle.svm.core.os.VirtualMemoryProvider;
+import com.oracle.svm.core.thread.VMOperation;
 import com.oracle.svm.core.thread.VMThreads;
 import com.oracle.svm.core.util.AtomicUnsigned;
+import com.oracle.svm.core.util.UnsignedUtils;
 
 /**
  * Allocates and frees the memory for aligned and unaligned heap chunks. The methods are
  * thread-safe, so no locking is necessary when calling them.
  *
  * Memory for aligned chunks is not immediately released to the OS. Up to
- * {@link HeapPolicy#getMinimumHeapSize()} chunks are saved in an unused chunk list. Memory for
- * unaligned chunks is released immediately.
+ * {@link HeapPolicy#getMinimumHeapSize()} chunks, optionally no more than
+ * {@link HeapPolicyOptions#UnusedAlignedChunkHeadroomPercent} of the young generation, are saved in
+ * an unused chunk list, and any excess is released after each collection. Optionally, unused chunks
+ * that were not needed for a {@linkplain HeapPolicyOptions#UnusedAlignedChunkReleasePeriodMillis
+ * period} are released even without a collection. Memory for unaligned chunks is released
+ * immediately.
  */
 class HeapChunkProvider {
 
@@ -69,6 +76,16 @@ class HeapChunkProvider {
      */
     private final AtomicUnsigned bytesInUnusedAlignedChunks;
 
+    /** The number of bytes of unused aligned chunks that were returned to the operating system. */
+    private final AtomicUnsigned bytesOfFreedAlignedChunks;
+
+    /**
+     * The lowest number of bytes in unused aligned chunks since the last periodic release. That many
+     * bytes of unused chunks were not needed during the whole period. Updated without
+     * synchronization, since an approximate value is good enough.
+     */
+    private UnsignedWord unusedAlignedChunksLowWaterMark;
+
     /**
      * The time of the first allocation, as the basis for computing deltas.
      *
@@ -80,6 +97,8 @@ class HeapChunkProvider {
     protected HeapChunkProvider() {
         unusedAlignedChunks = new UninterruptibleUtils.AtomicPointer<>();
         bytesInUnusedAlignedChunks = new AtomicUnsigned();
+        bytesOfFreedAlignedChunks = new AtomicUnsigned();
+        unusedAlignedChunksLowWaterMark = WordFactory.zero();
     }
 
     /**
@@ -137,6 +156,11 @@ class HeapChunkProvider {
             }
             log().string("  new chunk: ").hex(result).newline();
 
+            if (HeapPolicyOptions.AlignedHeapChunkLargePages.getValue()) {
+                /* Before the chunk is first touched, so the pages are not faulted in small. */
+                VirtualMemoryProvider.get().adviseLargePages(result, chunkSize);
+            }
+
             initializeChunk(result, chunkSize);
             resetAlignedHeapChunk(result);
         }
@@ -162,8 +186,7 @@ class HeapChunkProvider {
             cleanAlignedChunk(chunk);
             pushUnusedAlignedChunk(chunk);
         } else {
-            log().string("  release memory to the OS").newline();
-            CommittedMemoryProvider.get().free(chunk, HeapPolicy.getAlignedHeapChunkSize(), HeapPolicy.getAlignedHeapChunkAlignment(), false);
+            freeAlignedChunk(chunk);
         }
         log().string("  ]").newline();
     }
@@ -171,22 +194,121 @@ class HeapChunkProvider {
     /** Should I keep another aligned chunk on the free list? */
     private boolean keepAlignedChunk() {
         final Log trace = Log.noopLog().string("[HeapChunkProvider.keepAlignedChunk:");
-        final UnsignedWord minimumHeapSize = HeapPolicy.getMinimumHeapSize();
-        final UnsignedWord heapChunkBytes = HeapImpl.getHeapImpl().getUsedChunkBytes();
         final UnsignedWord unusedChunkBytes = bytesInUnusedAlignedChunks.get();
-        final UnsignedWord bytesInUse = heapChunkBytes.add(unusedChunkBytes);
-        /* If I am under the minimum heap size, then I can keep this chunk. */
-        final boolean result = bytesInUse.belowThan(minimumHeapSize);
+        final UnsignedWord headroom = getUnusedAlignedChunkHeadroom();
+        final boolean result = unusedChunkBytes.belowThan(headroom);
         trace
-                        .string("  minimumHeapSize: ").unsigned(minimumHeapSize)
-                        .string("  heapChunkBytes: ").unsigned(heapChunkBytes)
                         .string("  unusedBytes: ").unsigned(unusedChunkBytes)
-                        .string("  bytesInUse: ").unsigned(bytesInUse)
+                        .string("  headroom: ").unsigned(headroom)
                         .string("  returns: ").bool(result)
                         .string(" ]").newline();
         return result;
     }
 
+    /**
+     * The number of bytes of unused aligned chunks that are worth keeping: as much as fills up the
+     * heap to the minimum heap size. If {@link HeapPolicyOptions#UnusedAlignedChunkHeadroomPercent}
+     * is set, no more than that percentage of the young generation, since that is what gets
+     * allocated before the next collection.
+     */
+    private static UnsignedWord getUnusedAlignedChunkHeadroom() {
+        final UnsignedWord minimumHeapSize = HeapPolicy.getMinimumHeapSize();
+        final UnsignedWord heapChunkBytes = HeapImpl.getHeapImpl().getUsedChunkBytes();
+        if (heapChunkBytes.aboveOrEqual(minimumHeapSize)) {
+            return WordFactory.zero();
+        }
+        final UnsignedWord belowMinimumHeapSize = minimumHeapSize.subtract(heapChunkBytes);
+        final int headroomPercent = HeapPolicyOptions.UnusedAlignedChunkHeadroomPercent.getValue();
+        if (headroomPercent <= 0) {
+            return belowMinimumHeapSize;
+        }
+        final UnsignedWord youngPercentage = HeapPolicy.getMaximumYoungGenerationSize().unsignedDivide(100).multiply(headroomPercent);
+        return UnsignedUtils.min(belowMinimumHeapSize, youngPercentage);
+    }
+
+    /**
+     * Return unused aligned chunks beyond the {@linkplain #getUnusedAlignedChunkHeadroom headroom}
+     * to the operating system. Chunks are recycled while spaces are released during a collection,
+     * when the heap still holds the chunks of the spaces that are not yet released, so this is
+     * called once the collection is done.
+     */
+    void freeExcessAlignedChunks() {
+        final Log trace = Log.noopLog().string("[HeapChunkProvider.freeExcessAlignedChunks:");
+        VMOperation.guaranteeInProgress("Should only be called from the collector.");
+        final UnsignedWord headroom = getUnusedAlignedChunkHeadroom();
+        trace.string("  unusedBytes: ").unsigned(bytesInUnusedAlignedChunks.get()).string("  headroom: ").unsigned(headroom);
+        while (bytesInUnusedAlignedChunks.get().aboveThan(headroom)) {
+            final AlignedHeader chunk = popUnusedAlignedChunk();
+            if (chunk.isNull()) {
+                break;
+            }
+            freeAlignedChunk(chunk);
+        }
+        trace.string("  unusedBytes after: ").unsigned(bytesInUnusedAlignedChunks.get()).string("]").newline();
+    }
+
+    private void freeAlignedChunk(AlignedHeader chunk) {
+        log().string("  release memory to the OS").newline();
+        if (CommittedMemoryProvider.get().free(chunk, HeapPolicy.getAlignedHeapChunkSize(), HeapPolicy.getAlignedHeapChunkAlignment(), false)) {
+            bytesOfFreedAlignedChunks.addAndGet(HeapPolicy.getAlignedHeapChunkSize());
+        }
+    }
+
+    /**
+     * Return the unused aligned chunks that were not needed since the previous call to the operating
+     * system, even if no collection happened in between.
+     */
+    void freeIdleAlignedChunks() {
+        final Log trace = Log.noopLog().string("[HeapChunkProvider.freeIdleAlignedChunks:");
+        VMOperation.guaranteeInProgress("Should only be called in a VMOperation.");
+        final UnsignedWord chunkSize = HeapPolicy.getAlignedHeapChunkSize();
+        UnsignedWord idleBytes = unusedAlignedChunksLowWaterMark;
+        trace.string("  unusedBytes: ").unsigned(bytesInUnusedAlignedChunks.get()).string("  idleBytes: ").unsigned(idleBytes);
+        while (idleBytes.aboveOrEqual(chunkSize)) {
+            final AlignedHeader chunk = popUnusedAlignedChunk();
+            if (chunk.isNull()) {
+                break;
+            }
+            freeAlignedChunk(chunk);
+            idleBytes = idleBytes.subtract(chunkSize);
+        }
+        unusedAlignedChunksLowWaterMark = bytesInUnusedAlignedChunks.get();
+        trace.string("  unusedBytes after: ").unsigned(bytesInUnusedAlignedChunks.get()).string("]").newline();
+    }
+
+    /**
+     * Start a daemon thread that periodically calls {@link #freeIdleAlignedChunks()}, if
+     * {@link HeapPolicyOptions#UnusedAlignedChunkReleasePeriodMillis} asks for it.
+     */
+    static void startIdleAlignedChunkRelease() {
+        final long periodMillis = HeapPolicyOptions.UnusedAlignedChunkReleasePeriodMillis.getValue();
+        if (periodMillis <= 0L || !SubstrateOptions.MultiThreaded.getValue()) {
+            return;
+        }
+        final Thread thread = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(periodMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                VMOperation.enqueueBlockingSafepoint("HeapChunkProvider.freeIdleAlignedChunks", () -> get().freeIdleAlignedChunks());
+            }
+        }, "Idle Heap Chunk Release");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** The number of bytes in unused aligned chunks, which are committed but hold no objects. */
+    UnsignedWord getBytesInUnusedChunks() {
+        return bytesInUnusedAlignedChunks.get();
+    }
+
+    /** The total number of bytes of aligned chunks that have been returned to the OS. */
+    UnsignedWord getTotalBytesOfFreedChunks() {
+        return bytesOfFreedAlignedChunks.get();
+    }
+
     /** Clean a chunk before putting it on a free list. */
     private static void cleanAlignedChunk(AlignedHeader alignedChunk) {
         resetAlignedHeapChunk(alignedChunk);
@@ -241,7 +363,10 @@ class HeapChunkProvider {
             return WordFactory.nullPointer();
         } else {
             /* Successfully popped an unused chunk from the list. */
-            bytesInUnusedAlignedChunks.subtractAndGet(HeapPolicy.getAlignedHeapChunkSize());
+            final UnsignedWord unusedBytes = bytesInUnusedAlignedChunks.subtractAndGet(HeapPolicy.getAlignedHeapChunkSize());
+            if (unusedBytes.belowThan(unusedAlignedChunksLowWaterMark)) {
+                unusedAlignedChunksLowWaterMark = unusedBytes;
+            }
             log().string("  new list top: ").hex(unusedAlignedChunks.get()).string("  list bytes ").signed(bytesInUnusedAlignedChunks.get()).newline();
             return result;
         }
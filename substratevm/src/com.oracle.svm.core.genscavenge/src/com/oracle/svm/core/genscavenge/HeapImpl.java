@@ -99,6 +99,7 @@ public class HeapImpl extends Heap {
         this.oldGeneration = new OldGeneration("OldGeneration");
         this.gcImpl = new GCImpl(access);
         this.objectHeaderImpl = new ObjectHeaderImpl();
+        this.bootImageCardTable = new BootImageCardTable();
         this.heapPolicy = new HeapPolicy(access);
         this.pinHead = new AtomicReference<>();
         /* Pre-allocate verifiers for use during collection. */
@@ -173,6 +174,12 @@ public class HeapImpl extends Heap {
         }
     }
 
+    @Override
+    public void walkObjectsInVMOperation(ObjectVisitor visitor) {
+        VMOperation.guaranteeInProgress("HeapImpl.walkObjectsInVMOperation must be called from a VMOperation.");
+        doWalkObjects(visitor);
+    }
+
     static class ObjectVisitorWalkerOperation extends VMOperation implements AutoCloseable {
 
         /** A lazily-initialized visitor. */
@@ -243,6 +250,18 @@ public class HeapImpl extends Heap {
         return objectHeaderImpl;
     }
 
+    /** State: The card remembered set for the writable part of the native image heap. */
+    private final BootImageCardTable bootImageCardTable;
+
+    public BootImageCardTable getBootImageCardTable() {
+        return bootImageCardTable;
+    }
+
+    @Override
+    public void tearDown() {
+        bootImageCardTable.tearDown();
+    }
+
     /** State: Who handles garbage collection. */
     private final GCImpl gcImpl;
 
@@ -414,6 +433,26 @@ public class HeapImpl extends Heap {
         return youngBytes.add(oldBytes);
     }
 
+    /** Returns the size (in bytes) of the chunks that are unused but not yet returned to the OS. */
+    UnsignedWord getUnusedChunkBytes() {
+        return chunkProvider.getBytesInUnusedChunks();
+    }
+
+    /** Returns the size (in bytes) of all committed chunks, whether used or unused. */
+    UnsignedWord getCommittedChunkBytes() {
+        return getUsedChunkBytes().add(getUnusedChunkBytes());
+    }
+
+    /** Returns the total size (in bytes) of the unused chunks that were ever returned to the OS. */
+    UnsignedWord getTotalReleasedChunkBytes() {
+        return chunkProvider.getTotalBytesOfFreedChunks();
+    }
+
+    /** Starts the periodic release of unused chunks at run time, if it is enabled. */
+    public static void startIdleChunkRelease() {
+        HeapChunkProvider.startIdleAlignedChunkRelease();
+    }
+
     UnsignedWord getYoungUsedChunkBytes() {
         final Space.Accounting young = getYoungGeneration().getSpace().getAccounting();
         return young.getAlignedChunkBytes().add(young.getUnalignedChunkBytes());
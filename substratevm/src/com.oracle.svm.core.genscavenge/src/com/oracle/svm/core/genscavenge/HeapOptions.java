@@ -33,6 +33,9 @@ public class HeapOptions {
     @Option(help = "Use a card remembered set heap for GC")//
     public static final HostedOptionKey<Boolean> UseCardRememberedSetHeap = new HostedOptionKey<>(true);
 
+    @Option(help = "Use a card remembered set for the writable part of the native image heap, so incremental collections only visit the image heap objects that have been written.")//
+    public static final HostedOptionKey<Boolean> BootImageCardRememberedSet = new HostedOptionKey<>(false);
+
     @Option(help = "Print the shape of the heap before and after each collection, if +VerboseGC.")//
     public static final RuntimeOptionKey<Boolean> PrintHeapShape = new RuntimeOptionKey<>(false);
 
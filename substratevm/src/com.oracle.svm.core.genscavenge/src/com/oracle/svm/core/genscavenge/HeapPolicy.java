@@ -188,6 +188,11 @@ public class HeapPolicy {
         return result;
     }
 
+    /** Whether the maximum young generation size was set with `-Xmn` or explicitly. */
+    public static boolean isMaximumYoungGenerationSizeSet() {
+        return maximumYoungGenerationSize.aboveThan(WordFactory.zero()) || XOptions.getXmn().getEpoch() > 0;
+    }
+
     /** Set the maximum young generation size, returning the previous value. */
     public static UnsignedWord setMaximumYoungGenerationSize(UnsignedWord value) {
         final UnsignedWord result = maximumYoungGenerationSize;
@@ -270,10 +275,18 @@ public class HeapPolicy {
         return result;
     }
 
+    /** The size of the large pages that aligned chunks are backed with, if requested. */
+    static final long ALIGNED_HEAP_CHUNK_LARGE_PAGE_SIZE = 2L * 1024L * 1024L;
+
     /** The size of an aligned chunk as an Unsigned. */
     @Fold
     public static UnsignedWord getAlignedHeapChunkSize() {
-        return WordFactory.unsigned(HeapPolicyOptions.AlignedHeapChunkSize.getValue());
+        long size = HeapPolicyOptions.AlignedHeapChunkSize.getValue();
+        if (HeapPolicyOptions.AlignedHeapChunkLargePages.getValue()) {
+            /* A large page must neither be shared by chunks nor cross chunk boundaries. */
+            size = (size + ALIGNED_HEAP_CHUNK_LARGE_PAGE_SIZE - 1) / ALIGNED_HEAP_CHUNK_LARGE_PAGE_SIZE * ALIGNED_HEAP_CHUNK_LARGE_PAGE_SIZE;
+        }
+        return WordFactory.unsigned(size);
     }
 
     /** The alignment of an aligned chunk as an Unsigned. */
@@ -339,6 +352,16 @@ public class HeapPolicy {
             /* TODO: An Unsigned might not fit in a long. */
             return HeapPolicy.getLargeArrayThreshold().rawValue();
         }
+
+        /** The number of bytes in the chunks that hold objects. */
+        public static long getUsedChunkBytes() {
+            return HeapImpl.getHeapImpl().getUsedChunkBytes().rawValue();
+        }
+
+        /** The number of bytes in the unused aligned chunks that are kept for future allocation. */
+        public static long getUnusedChunkBytes() {
+            return HeapImpl.getHeapImpl().getUnusedChunkBytes().rawValue();
+        }
     }
 
     /**
@@ -401,7 +424,7 @@ public class HeapPolicy {
             public void maybeCauseCollection() {
                 final HeapImpl heap = HeapImpl.getHeapImpl();
                 /* Has there been enough allocation to provoke a collection? */
-                if (bytesAllocatedSinceLastCollection.get().aboveOrEqual(getMaximumYoungGenerationSize())) {
+                if (bytesAllocatedSinceLastCollection.get().aboveOrEqual(heap.getGCImpl().getPolicy().getYoungGenerationSize())) {
                     heap.getGCImpl().collectWithoutAllocating("CollectOnAllocation.Sometimes");
                 }
             }
@@ -437,7 +460,7 @@ public class HeapPolicy {
         }
 
         public static UnsignedWord collectScepticallyThreshold() {
-            return getMaximumYoungGenerationSize().subtract(WordFactory.unsigned(HeapPolicyOptions.UserRequestedGCThreshold.getValue()));
+            return HeapImpl.getHeapImpl().getGCImpl().getPolicy().getYoungGenerationSize().subtract(WordFactory.unsigned(HeapPolicyOptions.UserRequestedGCThreshold.getValue()));
         }
     }
 }
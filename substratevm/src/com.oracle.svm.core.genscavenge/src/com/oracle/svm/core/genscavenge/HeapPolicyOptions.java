@@ -37,6 +37,15 @@ public class HeapPolicyOptions {
     @Option(help = "The maximum heap size as percent of physical memory") //
     public static final RuntimeOptionKey<Integer> MaximumHeapSizePercent = new RuntimeOptionKey<>(80);
 
+    @Option(help = "The percentage of the young generation size that may be kept in unused aligned chunks after a collection instead of returning them to the operating system, or 0 to keep unused aligned chunks up to the minimum heap size.") //
+    public static final RuntimeOptionKey<Integer> UnusedAlignedChunkHeadroomPercent = new RuntimeOptionKey<>(0);
+
+    @Option(help = "Advise the operating system to back aligned chunks with large pages, such as transparent huge pages on Linux. Rounds the aligned chunk size up to a multiple of 2MB, the large page size, so that every chunk consists of whole large pages.") //
+    public static final HostedOptionKey<Boolean> AlignedHeapChunkLargePages = new HostedOptionKey<>(false);
+
+    @Option(help = "The period in milliseconds after which unused aligned chunks that were not needed during the whole period are returned to the operating system, even without a collection, or 0 to only return them after collections.") //
+    public static final RuntimeOptionKey<Long> UnusedAlignedChunkReleasePeriodMillis = new RuntimeOptionKey<>(0L);
+
     @Option(help = "The size of an aligned chunk.") //
     public static final HostedOptionKey<Long> AlignedHeapChunkSize = new HostedOptionKey<>(1L * 1024L * 1024L);
 
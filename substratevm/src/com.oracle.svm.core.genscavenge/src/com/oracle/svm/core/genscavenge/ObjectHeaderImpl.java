@@ -109,9 +109,10 @@ import com.oracle.svm.core.util.VMError;
  * </tr>
  * <tr>
  * <td>1 0 1</td>
- * <td>--</td>
- * <td>--</td>
- * <td>This value is unused.</td>
+ * <td>Yes</td>
+ * <td>native image</td>
+ * <td>Objects in the writable reference partition of the native image heap, with
+ * {@link HeapOptions#BootImageCardRememberedSet}.</td>
  * </tr>
  * <tr>
  * <tr>
@@ -137,7 +138,7 @@ public class ObjectHeaderImpl extends ObjectHeader {
     private static final UnsignedWord NO_REMEMBERED_SET_UNALIGNED   = WordFactory.unsigned(0b010);  // 2 or a.
     private static final UnsignedWord CARD_REMEMBERED_SET_UNALIGNED = WordFactory.unsigned(0b011);  // 3 or b.
     private static final UnsignedWord UNUSED_100                    = WordFactory.unsigned(0b100);  // 4 or c.
-    private static final UnsignedWord UNUSED_101                    = WordFactory.unsigned(0b101);  // 5 or d.
+    private static final UnsignedWord BOOT_IMAGE_REMEMBERED_SET     = WordFactory.unsigned(0b101);  // 5 or d.
     private static final UnsignedWord BOOT_IMAGE                    = WordFactory.unsigned(0b110);  // 6 or e.
     private static final UnsignedWord FORWARDED                     = WordFactory.unsigned(0b111);  // 7 or f.
     // @formatter:on
@@ -145,6 +146,7 @@ public class ObjectHeaderImpl extends ObjectHeader {
     // Masks for write barriers.
     private static final UnsignedWord MASK_REMEMBERED_SET = CARD_REMEMBERED_SET_ALIGNED.and(CARD_REMEMBERED_SET_UNALIGNED);
     private static final UnsignedWord MASK_UNALIGNED = NO_REMEMBERED_SET_UNALIGNED.and(CARD_REMEMBERED_SET_UNALIGNED);
+    private static final UnsignedWord MASK_BOOT_IMAGE = BOOT_IMAGE_REMEMBERED_SET.and(BOOT_IMAGE);
 
     /** Constructor for subclasses. */
     @Platforms(Platform.HOSTED_ONLY.class)
@@ -257,7 +259,7 @@ public class ObjectHeaderImpl extends ObjectHeader {
     }
 
     protected boolean isBootImageHeaderBits(UnsignedWord headerBits) {
-        return ObjectHeaderImpl.headerBitsEqual(headerBits, BOOT_IMAGE);
+        return ObjectHeaderImpl.headerBitsEqual(headerBits, BOOT_IMAGE) || ObjectHeaderImpl.headerBitsEqual(headerBits, BOOT_IMAGE_REMEMBERED_SET);
     }
 
     @Platforms(Platform.HOSTED_ONLY.class)
@@ -267,6 +269,16 @@ public class ObjectHeaderImpl extends ObjectHeader {
         return (l | BOOT_IMAGE.rawValue());
     }
 
+    @Platforms(Platform.HOSTED_ONLY.class)
+    @Override
+    public long setBootImageWithRememberedSetOnLong(long l) {
+        if (!BootImageCardTable.isEnabled()) {
+            return setBootImageOnLong(l);
+        }
+        assert (l & BITS_MASK.rawValue()) == 0 : "Object header bits must be zero";
+        return (l | BOOT_IMAGE_REMEMBERED_SET.rawValue());
+    }
+
     protected boolean isCardRememberedSetAlignedHeaderBits(UnsignedWord headerBits) {
         return ObjectHeaderImpl.headerBitsEqual(headerBits, CARD_REMEMBERED_SET_ALIGNED);
     }
@@ -346,7 +358,7 @@ public class ObjectHeaderImpl extends ObjectHeader {
      */
 
     protected boolean isNonHeapAllocatedHeaderBits(UnsignedWord headerBits) {
-        return (headerBits.equal(BOOT_IMAGE));
+        return (headerBits.equal(BOOT_IMAGE) || headerBits.equal(BOOT_IMAGE_REMEMBERED_SET));
     }
 
     @Override
@@ -435,6 +447,18 @@ public class ObjectHeaderImpl extends ObjectHeader {
         return header.and(MASK_UNALIGNED).notEqual(0);
     }
 
+    /**
+     * Is this the header of a native image heap object?
+     *
+     * Note: the header can only be from an object with a remembered set.
+     *
+     * @param header the full header to be examined.
+     * @return true if the object is in the native image heap, false otherwise.
+     */
+    public static boolean isBootImageObjectWithRememberedSet(UnsignedWord header) {
+        return header.and(MASK_BOOT_IMAGE).notEqual(0);
+    }
+
     /*
      * Forwarding pointer methods.
      */
@@ -494,8 +518,6 @@ public class ObjectHeaderImpl extends ObjectHeader {
             return "BOOT_IMAGE";
         } else if (headerBits.equal(UNUSED_100)) {
             return "UNUSED_100";
-        } else if (headerBits.equal(UNUSED_101)) {
-            return "UNUSED_101";
         } else if (isCardRememberedSetAlignedHeaderBits(headerBits)) {
             return "CARD_REMEMBERED_SET_ALIGNED";
         } else if (isCardRememberedSetUnalignedHeaderBits(headerBits)) {
@@ -579,6 +601,8 @@ public class ObjectHeaderImpl extends ObjectHeader {
             headerBitsClassification = 4;
         } else if (headerBits.equal(BOOT_IMAGE)) {
             headerBitsClassification = 5;
+        } else if (headerBits.equal(BOOT_IMAGE_REMEMBERED_SET)) {
+            headerBitsClassification = 7;
         } else if (headerBits.equal(FORWARDED)) {
             headerBitsClassification = 6;
         } else {
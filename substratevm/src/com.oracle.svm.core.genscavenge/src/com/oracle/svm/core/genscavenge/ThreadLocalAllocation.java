@@ -41,11 +41,13 @@ import org.graalvm.word.UnsignedWord;
 import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.allocationprofile.AllocationSampler;
 import com.oracle.svm.core.annotate.RestrictHeapAccess;
 import com.oracle.svm.core.annotate.Uninterruptible;
 import com.oracle.svm.core.deopt.DeoptTester;
 import com.oracle.svm.core.genscavenge.AlignedHeapChunk.AlignedHeader;
 import com.oracle.svm.core.genscavenge.UnalignedHeapChunk.UnalignedHeader;
+import com.oracle.svm.core.heap.HeapDumpWriter;
 import com.oracle.svm.core.heap.ObjectVisitor;
 import com.oracle.svm.core.hub.DynamicHub;
 import com.oracle.svm.core.hub.LayoutEncoding;
@@ -133,12 +135,24 @@ public final class ThreadLocalAllocation {
     /** Slow path of instance allocation snippet. */
     @SubstrateForeignCallTarget
     private static Object slowPathNewInstance(DynamicHub hub) {
+        /* The bytes that the fast path allocated in the allocation chunk that is about to be replaced. */
+        final UnsignedWord sampledBytes = AllocationSampler.isSupported() ? getAllocationChunkUsedBytes(regularTLAB.getAddress()) : WordFactory.zero();
         /* Allocation might cause a collection. */
         final UnsignedWord gcEpoch = HeapImpl.getHeapImpl().getGCImpl().possibleCollectionPrologue();
         /* Allocate the requested instance. */
-        final Object result = slowPathNewInstanceWithoutAllocating(hub);
+        final Object result;
+        try {
+            result = slowPathNewInstanceWithoutAllocating(hub);
+        } catch (OutOfMemoryError e) {
+            HeapDumpWriter.onOutOfMemoryError();
+            throw e;
+        }
         /* Allow the collector to do stuff now that allocation, etc., is allowed. */
         HeapImpl.getHeapImpl().getGCImpl().possibleCollectionEpilogue(gcEpoch);
+        if (AllocationSampler.isSupported()) {
+            UnsignedWord bytes = sampledBytes.add(LayoutEncoding.getInstanceSize(hub.getLayoutEncoding()));
+            AllocationSampler.afterSlowPathAllocation(result, bytes, KnownIntrinsics.readCallerStackPointer(), KnownIntrinsics.readReturnAddress());
+        }
         return result;
     }
 
@@ -200,12 +214,29 @@ public final class ThreadLocalAllocation {
             throw new NegativeArraySizeException();
         }
 
+        /* The bytes that the fast path allocated in the allocation chunk that might be replaced. */
+        final UnsignedWord sampledBytes = AllocationSampler.isSupported() ? getAllocationChunkUsedBytes(regularTLAB.getAddress()) : WordFactory.zero();
         /* Allocation might cause a collection. */
         final UnsignedWord gcEpoch = HeapImpl.getHeapImpl().getGCImpl().possibleCollectionPrologue();
         /* Allocate the requested array. */
-        final Object result = slowPathNewArrayWithoutAllocating(hub, length);
+        final Object result;
+        try {
+            result = slowPathNewArrayWithoutAllocating(hub, length);
+        } catch (OutOfMemoryError e) {
+            HeapDumpWriter.onOutOfMemoryError();
+            throw e;
+        }
         /* Allow the collector to do stuff now that allocation, etc., is allowed. */
         HeapImpl.getHeapImpl().getGCImpl().possibleCollectionEpilogue(gcEpoch);
+        if (AllocationSampler.isSupported()) {
+            /*
+             * A large array does not replace the allocation chunk, so the bytes allocated in it are
+             * charged at the next refill instead.
+             */
+            UnsignedWord size = LayoutEncoding.getArraySize(hub.getLayoutEncoding(), length);
+            UnsignedWord bytes = size.aboveOrEqual(HeapPolicy.getLargeArrayThreshold()) ? size : sampledBytes.add(size);
+            AllocationSampler.afterSlowPathAllocation(result, bytes, KnownIntrinsics.readCallerStackPointer(), KnownIntrinsics.readReturnAddress());
+        }
         return result;
     }
 
@@ -582,6 +613,18 @@ public final class ThreadLocalAllocation {
         }
     }
 
+    /**
+     * Returns the bytes allocated in the current allocation chunk of the TLAB, or zero if the TLAB
+     * has no allocation chunk, for example because a collection retired it.
+     */
+    private static UnsignedWord getAllocationChunkUsedBytes(Descriptor tlab) {
+        Pointer allocationTop = tlab.getAllocationTop(TOP_IDENTITY);
+        if (allocationTop.isNull()) {
+            return WordFactory.zero();
+        }
+        return allocationTop.subtract(AlignedHeapChunk.getAlignedHeapChunkStart(tlab.getAlignedChunk()));
+    }
+
     /**
      * Add a new allocation chunk at the front of the TLAB's aligned chunks.
      */
@@ -51,6 +51,8 @@ import org.graalvm.word.UnsignedWord;
 import com.oracle.svm.core.annotate.AutomaticFeature;
 import com.oracle.svm.core.genscavenge.AlignedHeapChunk;
 import com.oracle.svm.core.genscavenge.CardTable;
+import com.oracle.svm.core.genscavenge.HeapImpl;
+import com.oracle.svm.core.genscavenge.HeapOptions;
 import com.oracle.svm.core.genscavenge.ObjectHeaderImpl;
 import com.oracle.svm.core.genscavenge.UnalignedHeapChunk;
 import com.oracle.svm.core.graal.snippets.NodeLoweringProvider;
@@ -73,6 +75,12 @@ public class BarrierSnippets extends SubstrateTemplates implements Snippets {
         return ImageSingletons.lookup(BarrierSnippetCounters.class);
     }
 
+    /** Without the card remembered set, no image heap object has a remembered set bit. */
+    @Fold
+    static boolean hasBootImageCardRememberedSet() {
+        return HeapOptions.BootImageCardRememberedSet.getValue();
+    }
+
     protected static BarrierSnippets factory(OptionValues options, Iterable<DebugHandlersFactory> factories, Providers providers, SnippetReflectionProvider snippetReflection) {
         return new BarrierSnippets(options, factories, providers, snippetReflection);
     }
@@ -105,6 +113,13 @@ public class BarrierSnippets extends SubstrateTemplates implements Snippets {
         final boolean unaligned = ObjectHeaderImpl.isHeapObjectUnaligned(objectHeader);
         if (BranchProbabilityNode.probability(BranchProbabilityNode.LIKELY_PROBABILITY, !unaligned)) {
             // Next most likely (?): aligned objects.
+            if (hasBootImageCardRememberedSet() &&
+                            BranchProbabilityNode.probability(BranchProbabilityNode.NOT_FREQUENT_PROBABILITY, ObjectHeaderImpl.isBootImageObjectWithRememberedSet(objectHeader))) {
+                // Native image heap objects are not in chunks.
+                counters().postWriteBarrierBootImage.inc();
+                HeapImpl.getHeapImpl().getBootImageCardTable().dirtyCardForObject(fixedObject);
+                return;
+            }
             counters().postWriteBarrierAligned.inc();
             AlignedHeapChunk.dirtyCardForObjectOfAlignedHeapChunk(fixedObject);
             return;
@@ -154,6 +169,10 @@ public class BarrierSnippets extends SubstrateTemplates implements Snippets {
         public static long getPostWriteBarrierUnalignedCount() {
             return counters().postWriteBarrierUnaligned.getValue();
         }
+
+        public static long getPostWriteBarrierBootImageCount() {
+            return counters().postWriteBarrierBootImage.getValue();
+        }
     }
 }
 
@@ -162,6 +181,7 @@ class BarrierSnippetCounters {
     final Counter postWriteBarrier = new Counter(counters, "postWriteBarrier", "post-write barriers");
     final Counter postWriteBarrierAligned = new Counter(counters, "postWriteBarrierAligned", "aligned object path of post-write barriers");
     final Counter postWriteBarrierUnaligned = new Counter(counters, "postWriteBarrierUnaligned", "unaligned object path of post-write barriers");
+    final Counter postWriteBarrierBootImage = new Counter(counters, "postWriteBarrierBootImage", "native image heap object path of post-write barriers");
 }
 
 @AutomaticFeature
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.graal.test;
+
+import org.graalvm.compiler.core.test.GraalCompilerTest;
+import org.graalvm.compiler.nodes.BeginNode;
+import org.graalvm.compiler.nodes.ConstantNode;
+import org.graalvm.compiler.nodes.IfNode;
+import org.graalvm.compiler.nodes.LoopEndNode;
+import org.graalvm.compiler.nodes.SafepointNode;
+import org.graalvm.compiler.nodes.StructuredGraph;
+import org.graalvm.compiler.nodes.StructuredGraph.AllowAssumptions;
+import org.graalvm.compiler.nodes.calc.AndNode;
+import org.graalvm.compiler.nodes.calc.IntegerEqualsNode;
+import org.graalvm.compiler.phases.common.CanonicalizerPhase;
+import org.graalvm.compiler.phases.common.LoopSafepointInsertionPhase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.svm.core.graal.phases.CountedLoopSafepointPhase;
+
+public class CountedLoopSafepointPhaseTest extends GraalCompilerTest {
+
+    private static final int SAFEPOINT_INTERVAL = 64;
+    private static final int SHORT_LOOP_MAX_ITERATIONS = 1000;
+
+    public static int shortLoopSnippet(int x) {
+        int sum = 0;
+        for (int i = 0; i < 100; i++) {
+            sum += i * x;
+        }
+        return sum;
+    }
+
+    public static int longLoopSnippet(int x) {
+        int sum = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            sum += i * x;
+        }
+        return sum;
+    }
+
+    public static int unknownLoopSnippet(int n, int x) {
+        int sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += i * x;
+        }
+        return sum;
+    }
+
+    /**
+     * Both options default to 0, which keeps the safepoint check on every iteration of every loop.
+     */
+    @Test
+    public void testDefault() {
+        Assert.assertEquals(0, (int) CountedLoopSafepointPhase.Options.CountedLoopSafepointInterval.getDefaultValue());
+        Assert.assertEquals(0, (int) CountedLoopSafepointPhase.Options.ShortCountedLoopMaxIterations.getDefaultValue());
+        for (String snippet : new String[]{"shortLoopSnippet", "longLoopSnippet", "unknownLoopSnippet"}) {
+            assertUnguardedSafepoint(compile(snippet, 0, 0));
+        }
+    }
+
+    @Test
+    public void testShortLoop() {
+        Assert.assertEquals(0, compile("shortLoopSnippet", 0, SHORT_LOOP_MAX_ITERATIONS).getNodes(SafepointNode.TYPE).count());
+        Assert.assertEquals(0, compile("shortLoopSnippet", SAFEPOINT_INTERVAL, SHORT_LOOP_MAX_ITERATIONS).getNodes(SafepointNode.TYPE).count());
+        assertUnguardedSafepoint(compile("shortLoopSnippet", 0, 99));
+        assertUnguardedSafepoint(compile("longLoopSnippet", 0, SHORT_LOOP_MAX_ITERATIONS));
+        assertUnguardedSafepoint(compile("unknownLoopSnippet", 0, SHORT_LOOP_MAX_ITERATIONS));
+    }
+
+    @Test
+    public void testInterval() {
+        assertGuardedSafepoint(compile("longLoopSnippet", SAFEPOINT_INTERVAL, 0));
+        assertGuardedSafepoint(compile("longLoopSnippet", SAFEPOINT_INTERVAL, SHORT_LOOP_MAX_ITERATIONS));
+        assertGuardedSafepoint(compile("unknownLoopSnippet", SAFEPOINT_INTERVAL, SHORT_LOOP_MAX_ITERATIONS));
+        assertGuardedSafepoint(compile("shortLoopSnippet", SAFEPOINT_INTERVAL, 0));
+    }
+
+    /**
+     * Runs the phase like the mid tier of an image does, just before the safepoints are inserted.
+     */
+    private StructuredGraph compile(String snippet, int safepointInterval, int shortLoopMaxIterations) {
+        StructuredGraph graph = parseEager(snippet, AllowAssumptions.NO);
+        new CanonicalizerPhase().apply(graph, getDefaultHighTierContext());
+        new CountedLoopSafepointPhase(safepointInterval, shortLoopMaxIterations).apply(graph);
+        new LoopSafepointInsertionPhase().apply(graph);
+        return graph;
+    }
+
+    private static void assertUnguardedSafepoint(StructuredGraph graph) {
+        Assert.assertEquals(1, graph.getNodes(SafepointNode.TYPE).count());
+        SafepointNode safepoint = graph.getNodes(SafepointNode.TYPE).first();
+        Assert.assertTrue(safepoint.next() instanceof LoopEndNode);
+        Assert.assertTrue(graph.getNodes(AndNode.TYPE).isEmpty());
+    }
+
+    /**
+     * The only safepoint is checked when the low bits of the counter are zero, and no loop end
+     * checks on its own.
+     */
+    private static void assertGuardedSafepoint(StructuredGraph graph) {
+        Assert.assertEquals(1, graph.getNodes(SafepointNode.TYPE).count());
+        SafepointNode safepoint = graph.getNodes(SafepointNode.TYPE).first();
+        Assert.assertTrue(safepoint.predecessor() instanceof BeginNode);
+        IfNode ifNode = (IfNode) safepoint.predecessor().predecessor();
+        Assert.assertEquals(safepoint.predecessor(), ifNode.trueSuccessor());
+
+        IntegerEqualsNode condition = (IntegerEqualsNode) ifNode.condition();
+        AndNode lowBits = (AndNode) condition.getX();
+        Assert.assertEquals(SAFEPOINT_INTERVAL - 1, ((ConstantNode) lowBits.getY()).asJavaConstant().asLong());
+        Assert.assertEquals(0, ((ConstantNode) condition.getY()).asJavaConstant().asLong());
+
+        for (LoopEndNode loopEnd : graph.getNodes(LoopEndNode.TYPE)) {
+            Assert.assertFalse(loopEnd.canSafepoint());
+        }
+    }
+}
@@ -331,6 +331,15 @@ public class InstalledCodeBuilder {
             metaInfoAllocator.close();
         }
 
+        if (installedCode.isValid()) {
+            /*
+             * The code is replaced with new code, e.g., with the code of a higher compilation tier.
+             * The previous code must not stay in the code cache without an installed code that
+             * refers to it.
+             */
+            CodeInfoTable.invalidateInstalledCode(installedCode);
+        }
+
         Throwable[] errorBox = {null};
         VMOperation.enqueueBlockingSafepoint("Install code", () -> {
             try {
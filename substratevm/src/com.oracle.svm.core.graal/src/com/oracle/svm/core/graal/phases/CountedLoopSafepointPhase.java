@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.graal.phases;
+
+import org.graalvm.compiler.core.common.type.IntegerStamp;
+import org.graalvm.compiler.debug.DebugCloseable;
+import org.graalvm.compiler.loop.CountedLoopInfo;
+import org.graalvm.compiler.loop.InductionVariable;
+import org.graalvm.compiler.loop.InductionVariable.Direction;
+import org.graalvm.compiler.loop.LoopEx;
+import org.graalvm.compiler.loop.LoopsData;
+import org.graalvm.compiler.nodes.BeginNode;
+import org.graalvm.compiler.nodes.ConstantNode;
+import org.graalvm.compiler.nodes.EndNode;
+import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.IfNode;
+import org.graalvm.compiler.nodes.LogicNode;
+import org.graalvm.compiler.nodes.LoopEndNode;
+import org.graalvm.compiler.nodes.MergeNode;
+import org.graalvm.compiler.nodes.NodeView;
+import org.graalvm.compiler.nodes.SafepointNode;
+import org.graalvm.compiler.nodes.StructuredGraph;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.calc.AndNode;
+import org.graalvm.compiler.nodes.calc.IntegerEqualsNode;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.phases.Phase;
+
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.util.UserError;
+
+import jdk.vm.ci.code.CodeUtil;
+
+/**
+ * Reduces the cost of the safepoint checks in innermost counted loops. It must run before
+ * {@link org.graalvm.compiler.phases.common.LoopSafepointInsertionPhase}, which adds a check to
+ * every loop end that can safepoint.
+ * <ul>
+ * <li>A loop with constant bounds that runs at most {@link Options#ShortCountedLoopMaxIterations}
+ * times gets no checks at all: it cannot delay a safepoint for long.
+ * <li>A loop whose counter steps by one checks for a safepoint only on the iterations where the low
+ * bits of the counter are zero, i.e., once every {@link Options#CountedLoopSafepointInterval}
+ * iterations. Unlike strip mining, this does not need to restructure the loop, and it works for
+ * loops whose counter could overflow.
+ * </ul>
+ * Other loops keep a check on every back edge. Both reductions delay safepoints, so they are off by
+ * default.
+ */
+public class CountedLoopSafepointPhase extends Phase {
+
+    public static class Options {
+        @Option(help = "Check for a safepoint only once every this many iterations of innermost counted loops, a power of 2. 0 or 1 checks on every iteration.")//
+        public static final HostedOptionKey<Integer> CountedLoopSafepointInterval = new HostedOptionKey<>(0);
+
+        @Option(help = "Do not check for safepoints in innermost counted loops that run at most this many times, 0 to always check.")//
+        public static final HostedOptionKey<Integer> ShortCountedLoopMaxIterations = new HostedOptionKey<>(0);
+    }
+
+    private final int safepointInterval;
+    private final long shortLoopMaxIterations;
+
+    public CountedLoopSafepointPhase(int safepointInterval, long shortLoopMaxIterations) {
+        UserError.guarantee(safepointInterval <= 1 || CodeUtil.isPowerOf2(safepointInterval), "CountedLoopSafepointInterval must be a power of 2: %d", safepointInterval);
+        this.safepointInterval = safepointInterval;
+        this.shortLoopMaxIterations = shortLoopMaxIterations;
+    }
+
+    @Override
+    public boolean checkContract() {
+        // the size / cost after is highly dynamic and dependent on the graph, thus we do not verify
+        // costs for this phase
+        return false;
+    }
+
+    @Override
+    protected void run(StructuredGraph graph) {
+        LoopsData loops = new LoopsData(graph);
+        loops.detectedCountedLoops();
+        for (LoopEx loop : loops.countedLoops()) {
+            if (!loop.loop().getChildren().isEmpty()) {
+                continue;
+            }
+            CountedLoopInfo counted = loop.counted();
+            if (isShort(counted)) {
+                loop.loopBegin().disableSafepoint();
+            } else if (safepointInterval > 1 && isUnitStride(counted.getCounter())) {
+                for (LoopEndNode loopEnd : loop.loopBegin().loopEnds().snapshot()) {
+                    if (loopEnd.canSafepoint()) {
+                        addIntervalSafepoint(graph, loopEnd, counted.getCounter());
+                    }
+                }
+            }
+        }
+        loops.deleteUnusedNodes();
+    }
+
+    private boolean isShort(CountedLoopInfo counted) {
+        if (shortLoopMaxIterations <= 0 || !counted.isConstantMaxTripCount() || !neverOverflows(counted)) {
+            return false;
+        }
+        long tripCount = counted.constantMaxTripCount().asLong();
+        return 0 <= tripCount && tripCount <= shortLoopMaxIterations;
+    }
+
+    /** Whether the counter reaches the limit before it can wrap around, for a constant limit. */
+    private static boolean neverOverflows(CountedLoopInfo counted) {
+        InductionVariable counter = counted.getCounter();
+        int bits = counted.getStamp().getBits();
+        long end = counted.getLimit().asJavaConstant().asLong();
+        long stride = counter.constantStride();
+        long slack = counted.isLimitIncluded() ? 1 : 0;
+        if (counter.direction() == Direction.Up) {
+            return end <= CodeUtil.maxValue(bits) - (stride - 1) - slack;
+        } else {
+            return end >= CodeUtil.minValue(bits) + (1 - stride) + slack;
+        }
+    }
+
+    private static boolean isUnitStride(InductionVariable counter) {
+        return counter.isConstantStride() && Math.abs(counter.constantStride()) == 1;
+    }
+
+    /**
+     * Replace the safepoint check at a loop end with one that only runs when the low bits of the
+     * counter are zero. Since the counter steps by one, that is once every interval iterations.
+     */
+    @SuppressWarnings("try")
+    private void addIntervalSafepoint(StructuredGraph graph, LoopEndNode loopEnd, InductionVariable counter) {
+        try (DebugCloseable s = loopEnd.withNodeSourcePosition()) {
+            ValueNode value = counter.valueNode();
+            IntegerStamp stamp = (IntegerStamp) value.stamp(NodeView.DEFAULT);
+            ValueNode lowBits = graph.unique(new AndNode(value, ConstantNode.forIntegerStamp(stamp, safepointInterval - 1, graph)));
+            LogicNode condition = graph.unique(new IntegerEqualsNode(lowBits, ConstantNode.forIntegerStamp(stamp, 0, graph)));
+
+            SafepointNode safepoint = graph.add(new SafepointNode());
+            EndNode checkEnd = graph.add(new EndNode());
+            safepoint.setNext(checkEnd);
+            BeginNode checkBegin = graph.add(new BeginNode());
+            checkBegin.setNext(safepoint);
+            EndNode skipEnd = graph.add(new EndNode());
+            BeginNode skipBegin = graph.add(new BeginNode());
+            skipBegin.setNext(skipEnd);
+            IfNode ifNode = graph.add(new IfNode(condition, checkBegin, skipBegin, 1.0 / safepointInterval));
+
+            FixedWithNextNode predecessor = (FixedWithNextNode) loopEnd.predecessor();
+            predecessor.setNext(ifNode);
+            MergeNode merge = graph.add(new MergeNode());
+            merge.addForwardEnd(checkEnd);
+            merge.addForwardEnd(skipEnd);
+            merge.setNext(loopEnd);
+
+            loopEnd.disableSafepoint();
+        }
+    }
+}
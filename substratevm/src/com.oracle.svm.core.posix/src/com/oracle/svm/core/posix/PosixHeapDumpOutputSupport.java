@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.posix;
+
+import java.io.FileDescriptor;
+
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.heap.HeapDumpWriter;
+import com.oracle.svm.core.posix.headers.Fcntl;
+import com.oracle.svm.core.posix.headers.Unistd;
+
+@AutomaticFeature
+@Platforms({Platform.LINUX.class, Platform.DARWIN.class})
+class PosixHeapDumpOutputSupportFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return HeapDumpWriter.isSupported();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(HeapDumpWriter.OutputSupport.class, new PosixHeapDumpOutputSupport());
+    }
+}
+
+public class PosixHeapDumpOutputSupport implements HeapDumpWriter.OutputSupport {
+
+    @Override
+    public boolean write(FileDescriptor fd, Pointer bytes, UnsignedWord length) {
+        return PosixUtils.writeBytes(fd, WordFactory.pointer(bytes.rawValue()), length);
+    }
+
+    @Override
+    public boolean create(FileDescriptor fd, CCharPointer path) {
+        /* Like HotSpot, never overwrite an existing file. */
+        int handle = Fcntl.open(path, Fcntl.O_WRONLY() | Fcntl.O_CREAT() | Fcntl.O_EXCL(), 0600);
+        PosixUtils.setFD(fd, handle);
+        return handle != -1;
+    }
+
+    @Override
+    public void close(FileDescriptor fd) {
+        int handle = PosixUtils.getFD(fd);
+        if (handle != -1) {
+            Unistd.close(handle);
+            PosixUtils.setFD(fd, -1);
+        }
+    }
+
+    @Override
+    public int getProcessID() {
+        return PosixUtils.getpid();
+    }
+}
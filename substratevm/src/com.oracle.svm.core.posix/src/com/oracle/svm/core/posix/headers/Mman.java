@@ -234,14 +234,6 @@ public class Mman {
     // @CConstant
     // public static native int MADV_UNMERGEABLE();
     //
-    // /** Worth backing with hugepages. */
-    // @CConstant
-    // public static native int MADV_HUGEPAGE();
-    //
-    // /** Not worth backing with hugepages. */
-    // @CConstant
-    // public static native int MADV_NOHUGEPAGE();
-    //
     // /** Explicity exclude from the core dump, overrides the coredump filter bits. */
     // @CConstant
     // public static native int MADV_DONTDUMP();
@@ -254,6 +246,16 @@ public class Mman {
     // @CConstant
     // public static native int MADV_HWPOISON();
 
+    /** Worth backing with hugepages. */
+    @CConstant
+    @Platforms(Platform.LINUX.class)
+    public static native int MADV_HUGEPAGE();
+
+    /** Not worth backing with hugepages. */
+    @CConstant
+    @Platforms(Platform.LINUX.class)
+    public static native int MADV_NOHUGEPAGE();
+
     /* The POSIX people had to invent similar names for the same things. */
 
     /** No further special treatment. */
@@ -384,5 +386,8 @@ public class Mman {
 
         @CFunction(transition = Transition.NO_TRANSITION)
         public static native int mprotect(PointerBase addr, UnsignedWord len, int prot);
+
+        @CFunction(transition = Transition.NO_TRANSITION)
+        public static native int madvise(PointerBase addr, UnsignedWord len, int advice);
     }
 }
@@ -74,4 +74,7 @@ public class UnistdNoTransitions {
     @CFunction(transition = Transition.NO_TRANSITION)
     public static native SignedWord lseek(int fd, SignedWord offset, int whence);
 
+    @CFunction(transition = Transition.NO_TRANSITION)
+    public static native SignedWord pread(int fd, PointerBase buf, UnsignedWord nbytes, long offset);
+
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.posix.linux;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageInfo;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+import org.graalvm.nativeimage.c.type.WordPointer;
+import org.graalvm.word.LocationIdentity;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.Isolates;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.c.CGlobalData;
+import com.oracle.svm.core.c.CGlobalDataFactory;
+import com.oracle.svm.core.os.ImageHeapFile;
+import com.oracle.svm.core.os.VirtualMemoryProvider;
+import com.oracle.svm.core.posix.headers.Dlfcn;
+import com.oracle.svm.core.posix.headers.Fcntl;
+import com.oracle.svm.core.posix.headers.UnistdNoTransitions;
+
+@Platforms(Platform.LINUX.class)
+@AutomaticFeature
+class LinuxImageHeapFileFeature implements Feature {
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        if (!ImageSingletons.contains(ImageHeapFile.class)) {
+            ImageSingletons.add(ImageHeapFile.class, new LinuxImageHeapFile());
+        }
+    }
+}
+
+/**
+ * Finds the image heap in the ELF file of the executable or shared library. The object that
+ * contains the image heap and its load address are determined with {@code dladdr}, and the file
+ * offset is derived from the program header of the loadable segment that contains the image heap.
+ * The result, including the open file descriptor, is determined once and then kept for the
+ * lifetime of the process.
+ */
+@Platforms(Platform.LINUX.class)
+public class LinuxImageHeapFile implements ImageHeapFile {
+    private static final int STATE_UNKNOWN = 0;
+    private static final int STATE_IN_PROGRESS = 1;
+    private static final int STATE_FOUND = 2;
+    private static final int STATE_UNAVAILABLE = 3;
+
+    private static final CGlobalData<Pointer> STATE = CGlobalDataFactory.createWord();
+    private static final CGlobalData<WordPointer> FILE_DESCRIPTOR = CGlobalDataFactory.createWord();
+    private static final CGlobalData<WordPointer> FILE_OFFSET = CGlobalDataFactory.createWord();
+    private static final CGlobalData<CCharPointer> PROC_SELF_EXE = CGlobalDataFactory.createCString("/proc/self/exe");
+
+    /* Layout of the 64-bit ELF header and program header, see elf.h. */
+    private static final int EHDR_SIZE = 64;
+    private static final int EHDR_PHOFF = 32;
+    private static final int EHDR_PHENTSIZE = 54;
+    private static final int EHDR_PHNUM = 56;
+    private static final int PHDR_SIZE = 56;
+    private static final int PHDR_TYPE = 0;
+    private static final int PHDR_OFFSET = 8;
+    private static final int PHDR_VADDR = 16;
+    private static final int PHDR_FILESZ = 32;
+    private static final int PT_LOAD = 1;
+    private static final int ELFCLASS64 = 2;
+
+    @Fold
+    static boolean isExecutable() {
+        return ImageInfo.isExecutable();
+    }
+
+    @Override
+    @Uninterruptible(reason = "Still being initialized.")
+    public boolean locate(WordPointer fileHandle, WordPointer fileOffset) {
+        Pointer state = STATE.get();
+        if (state.readInt(0) == STATE_UNKNOWN && state.logicCompareAndSwapInt(0, STATE_UNKNOWN, STATE_IN_PROGRESS, LocationIdentity.ANY_LOCATION)) {
+            Dlfcn.Dl_info info = StackValue.get(Dlfcn.Dl_info.class);
+            int fd = -1;
+            long offset = -1;
+            if (Dlfcn.NoTransitions.dladdr(Isolates.IMAGE_HEAP_BEGIN.get(), info) != 0) {
+                fd = openImageFile(info);
+                if (fd >= 0) {
+                    offset = findImageHeapOffset(fd, info);
+                }
+            }
+            if (offset >= 0) {
+                FILE_DESCRIPTOR.get().write(WordFactory.signed(fd));
+                FILE_OFFSET.get().write(WordFactory.unsigned(offset));
+                state.writeInt(0, STATE_FOUND, LocationIdentity.ANY_LOCATION);
+            } else {
+                if (fd >= 0) {
+                    UnistdNoTransitions.close(fd);
+                }
+                state.writeInt(0, STATE_UNAVAILABLE, LocationIdentity.ANY_LOCATION);
+            }
+        }
+        /* While another thread is still looking, the caller just falls back to copying. */
+        if (state.readInt(0) != STATE_FOUND) {
+            return false;
+        }
+        fileHandle.write(FILE_DESCRIPTOR.get().read());
+        fileOffset.write(FILE_OFFSET.get().read());
+        return true;
+    }
+
+    @Uninterruptible(reason = "Still being initialized.")
+    private static int openImageFile(Dlfcn.Dl_info info) {
+        /* For the main executable, dladdr only reports argv[0]. */
+        CCharPointer path = PROC_SELF_EXE.get();
+        if (!isExecutable()) {
+            if (info.dli_fname().isNull()) {
+                return -1;
+            }
+            path = info.dli_fname();
+        }
+        return Fcntl.NoTransitions.open(path, Fcntl.O_RDONLY(), 0);
+    }
+
+    /** Returns the page-aligned offset of the image heap in the file, or -1. */
+    @Uninterruptible(reason = "Still being initialized.")
+    private static long findImageHeapOffset(int fd, Dlfcn.Dl_info info) {
+        Pointer ehdr = StackValue.get(EHDR_SIZE);
+        if (!readFully(fd, ehdr, EHDR_SIZE, 0) || ehdr.readByte(0) != 0x7f || ehdr.readByte(1) != 'E' || ehdr.readByte(2) != 'L' || ehdr.readByte(3) != 'F' || ehdr.readByte(4) != ELFCLASS64) {
+            return -1;
+        }
+        long phoff = ehdr.readLong(EHDR_PHOFF);
+        int phentsize = ehdr.readShort(EHDR_PHENTSIZE) & 0xFFFF;
+        int phnum = ehdr.readShort(EHDR_PHNUM) & 0xFFFF;
+        if (phentsize < PHDR_SIZE) {
+            return -1;
+        }
+
+        /*
+         * The load address reported by dladdr is where the lowest loadable segment is mapped, which
+         * gives the difference between virtual addresses in the file and in memory.
+         */
+        Pointer phdr = StackValue.get(PHDR_SIZE);
+        long pageSize = VirtualMemoryProvider.get().getGranularity().rawValue();
+        long lowestVaddr = -1;
+        for (int i = 0; i < phnum; i++) {
+            if (!readFully(fd, phdr, PHDR_SIZE, phoff + (long) i * phentsize)) {
+                return -1;
+            }
+            if (phdr.readInt(PHDR_TYPE) == PT_LOAD) {
+                long vaddr = phdr.readLong(PHDR_VADDR) & -pageSize;
+                if (lowestVaddr == -1 || Long.compareUnsigned(vaddr, lowestVaddr) < 0) {
+                    lowestVaddr = vaddr;
+                }
+            }
+        }
+        if (lowestVaddr == -1) {
+            return -1;
+        }
+        long loadBias = info.dli_fbase().rawValue() - lowestVaddr;
+        Word begin = Isolates.IMAGE_HEAP_BEGIN.get();
+        UnsignedWord size = Isolates.IMAGE_HEAP_END.get().subtract(begin);
+        long heapVaddr = begin.rawValue() - loadBias;
+
+        for (int i = 0; i < phnum; i++) {
+            if (!readFully(fd, phdr, PHDR_SIZE, phoff + (long) i * phentsize)) {
+                return -1;
+            }
+            if (phdr.readInt(PHDR_TYPE) != PT_LOAD) {
+                continue;
+            }
+            long segmentVaddr = phdr.readLong(PHDR_VADDR);
+            long segmentFileSize = phdr.readLong(PHDR_FILESZ);
+            long offsetInSegment = heapVaddr - segmentVaddr;
+            /* The image heap must be entirely backed by the file, not partially by zero pages. */
+            if (offsetInSegment >= 0 && offsetInSegment + size.rawValue() <= segmentFileSize) {
+                long offset = phdr.readLong(PHDR_OFFSET) + offsetInSegment;
+                return (offset % pageSize == 0) ? offset : -1;
+            }
+        }
+        return -1;
+    }
+
+    @Uninterruptible(reason = "Still being initialized.")
+    private static boolean readFully(int fd, Pointer buffer, int size, long offset) {
+        return UnistdNoTransitions.pread(fd, buffer, WordFactory.unsigned(size), offset).equal(size);
+    }
+}
@@ -24,10 +24,13 @@
  */
 package com.oracle.svm.core.posix.linux;
 
+import static com.oracle.svm.core.posix.headers.Mman.MADV_HUGEPAGE;
+import static com.oracle.svm.core.posix.headers.Mman.MADV_RANDOM;
 import static com.oracle.svm.core.posix.headers.Mman.MAP_32BIT;
 import static com.oracle.svm.core.posix.headers.Mman.MAP_ANON;
 import static com.oracle.svm.core.posix.headers.Mman.MAP_FAILED;
 import static com.oracle.svm.core.posix.headers.Mman.MAP_PRIVATE;
+import static com.oracle.svm.core.posix.headers.Mman.NoTransitions.madvise;
 import static com.oracle.svm.core.posix.headers.Mman.NoTransitions.mmap;
 import static org.graalvm.word.WordFactory.nullPointer;
 
@@ -56,4 +59,17 @@ public class LinuxVirtualMemoryProvider extends PosixVirtualMemoryProvider {
         }
         return super.commit(start, nbytes, access);
     }
+
+    @Override
+    @Uninterruptible(reason = "May be called from uninterruptible code.", mayBeInlined = true)
+    public int adviseLargePages(PointerBase start, UnsignedWord nbytes) {
+        /* Transparent huge pages, which need neither privileges nor a reserved pool of pages. */
+        return madvise(start, nbytes, MADV_HUGEPAGE());
+    }
+
+    @Override
+    public int adviseRandomAccess(PointerBase start, UnsignedWord nbytes) {
+        /* Disables read-ahead, and on recent kernels also the mapping of neighbouring pages. */
+        return madvise(start, nbytes, MADV_RANDOM());
+    }
 }
@@ -67,6 +67,15 @@ public abstract class MemoryWalker {
          */
         @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Must not allocate while visiting memory.")
         <T> boolean visitRuntimeCompiledMethod(T runtimeMethod, RuntimeCompiledMethodAccess<T> access);
+
+        /**
+         * Visit the cache of runtime compiled code as a whole, before its methods are visited.
+         * Return true if visiting should continue, else false.
+         */
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Must not allocate while visiting memory.")
+        default <T> boolean visitRuntimeCodeCache(T runtimeCodeCache, RuntimeCodeCacheAccess<T> access) {
+            return true;
+        }
     }
 
     /** A set of access methods for visiting regions of the native image heap. */
@@ -138,4 +147,20 @@ public abstract class MemoryWalker {
         /** Return the name of the runtime compiled method. */
         String getName(T runtimeCompiledMethod);
     }
+
+    /** A set of access methods for visiting the cache of runtime compiled code. */
+    public interface RuntimeCodeCacheAccess<T> {
+
+        /** Return the total size of the code of the installed runtime compiled methods. */
+        UnsignedWord getUsedBytes(T runtimeCodeCache);
+
+        /** Return the maximum size of the code cache, or zero if it is not limited. */
+        UnsignedWord getCapacityBytes(T runtimeCodeCache);
+
+        /** Return the number of installed runtime compiled methods. */
+        long getMethodCount(T runtimeCodeCache);
+
+        /** Return the number of methods that have been evicted to stay within the capacity. */
+        long getEvictedMethodCount(T runtimeCodeCache);
+    }
 }
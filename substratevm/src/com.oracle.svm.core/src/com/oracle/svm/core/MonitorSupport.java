@@ -55,6 +55,13 @@ import com.oracle.svm.core.util.VMError;
  * (and thus need a monitor) and assigns a monitor offset to point to the slot for the monitor. The
  * monitor is implemented with a {@link ReentrantLock}.
  * <p>
+ * Until a monitor slot is needed for contention, recursive locking, or {@link #wait()} and
+ * {@link #notify()}, it holds a thin lock instead: {@code null} when the object is unlocked, or the
+ * {@link Thread} that holds the lock. Locking and unlocking a thin lock is a single
+ * compare-and-swap that does not allocate. Any other use inflates the thin lock to a
+ * {@link ReentrantLock} that is held by the same thread, and the slot keeps that lock from then
+ * on.
+ * <p>
  * There are a few exceptions: {@link String} and {@link DynamicHub} objects never have monitor
  * fields because we want instances in the image heap to be immutable. Arrays never have monitor
  * fields because it would increase the size of every array and it is not possible to distinguish
@@ -62,28 +69,22 @@ import com.oracle.svm.core.util.VMError;
  * UniverseBuilder.canHaveMonitorFields(AnalysisType) for details.
  * <p>
  * Synchronization on {@link String}, arrays, and other types not detected by the static analysis
- * (like synchronization via JNI) fall back to a monitor stored in {@link #additionalMonitors}.
+ * (like synchronization via JNI) fall back to a monitor stored in {@link #additionalMonitors},
+ * which is striped so that unrelated objects rarely contend for it.
  * <p>
  * Because so few objects are receivers of {@link #wait()} and {@link #notify()} calls[citation
  * needed], condition variables for those objects are kept in {@link #additionalConditions}.
  */
 public class MonitorSupport {
 
-    /**
-     * Secondary storage for monitor slots.
-     *
-     * Synchronized to prevent concurrent access and modification.
-     */
-    private final Map<Object, ReentrantLock> additionalMonitors = new WeakHashMap<>();
-    private final ReentrantLock additionalMonitorsLock = new ReentrantLock();
+    /** The number of stripes of the secondary storage. Must be a power of 2. */
+    private static final int ADDITIONAL_STRIPES = 64;
 
-    /**
-     * Secondary storage for condition variable slots.
-     *
-     * Synchronized to prevent concurrent access and modification.
-     */
-    private final Map<Object, Condition> additionalConditions = new WeakHashMap<>();
-    private final ReentrantLock additionalConditionsLock = new ReentrantLock();
+    /** Secondary storage for monitor slots. */
+    private final StripedWeakHashMap<ReentrantLock> additionalMonitors = new StripedWeakHashMap<>(ADDITIONAL_STRIPES);
+
+    /** Secondary storage for condition variable slots. */
+    private final StripedWeakHashMap<Condition> additionalConditions = new StripedWeakHashMap<>(ADDITIONAL_STRIPES);
 
     /**
      * Implements the monitorenter bytecode. The null check for the parameter must have already been
@@ -101,6 +102,11 @@ public class MonitorSupport {
 
         ReentrantLock lockObject = null;
         try {
+            final int monitorOffset = getMonitorOffset(obj);
+            if (monitorOffset != 0 && UnsafeAccess.UNSAFE.compareAndSwapObject(obj, monitorOffset, null, Thread.currentThread())) {
+                /* The fast path: the object was not locked and now has a thin lock. */
+                return;
+            }
             lockObject = ImageSingletons.lookup(MonitorSupport.class).getOrCreateMonitor(obj, true);
             lockObject.lock();
         } catch (Throwable ex) {
@@ -135,6 +141,11 @@ public class MonitorSupport {
 
         ReentrantLock lockObject = null;
         try {
+            final int monitorOffset = getMonitorOffset(obj);
+            if (monitorOffset != 0 && UnsafeAccess.UNSAFE.compareAndSwapObject(obj, monitorOffset, Thread.currentThread(), null)) {
+                /* The fast path: the current thread released its thin lock. */
+                return;
+            }
             lockObject = ImageSingletons.lookup(MonitorSupport.class).getOrCreateMonitor(obj, true);
             lockObject.unlock();
         } catch (Throwable ex) {
@@ -162,9 +173,7 @@ public class MonitorSupport {
             msg.append("  lock: ");
             appendObject(msg, lockObject);
 
-            Target_java_util_concurrent_locks_ReentrantLock lockObjectTarget = KnownIntrinsics.unsafeCast(lockObject, Target_java_util_concurrent_locks_ReentrantLock.class);
-            Target_java_util_concurrent_locks_AbstractOwnableSynchronizer sync = KnownIntrinsics.unsafeCast(lockObjectTarget.sync, Target_java_util_concurrent_locks_AbstractOwnableSynchronizer.class);
-
+            Target_java_util_concurrent_locks_AbstractOwnableSynchronizer sync = getSync(lockObject);
             if (sync != null) {
                 msg.append("  sync: ");
                 appendObject(msg, sync);
@@ -200,13 +209,23 @@ public class MonitorSupport {
             return;
         }
 
-        Target_java_util_concurrent_locks_ReentrantLock lock = KnownIntrinsics.unsafeCast(getOrCreateMonitor(obj, true), Target_java_util_concurrent_locks_ReentrantLock.class);
-        Target_java_util_concurrent_locks_AbstractOwnableSynchronizer sync = KnownIntrinsics.unsafeCast(lock.sync, Target_java_util_concurrent_locks_AbstractOwnableSynchronizer.class);
+        final int monitorOffset = getMonitorOffset(obj);
+        if (monitorOffset != 0 && readMonitorField(obj, monitorOffset) instanceof Thread) {
+            /* A thin lock: the slot holds the owner, and there are no waiting threads to notice. */
+            UnsafeAccess.UNSAFE.putObjectVolatile(obj, monitorOffset, thread);
+            return;
+        }
 
+        Target_java_util_concurrent_locks_AbstractOwnableSynchronizer sync = getSync(getOrCreateMonitor(obj, true));
         VMError.guarantee(sync.getExclusiveOwnerThread() != null, "Cannot patch the exclusiveOwnerThread of an object that is not locked");
         sync.setExclusiveOwnerThread(thread);
     }
 
+    private static Target_java_util_concurrent_locks_AbstractOwnableSynchronizer getSync(ReentrantLock lockObject) {
+        Target_java_util_concurrent_locks_ReentrantLock lock = KnownIntrinsics.unsafeCast(lockObject, Target_java_util_concurrent_locks_ReentrantLock.class);
+        return KnownIntrinsics.unsafeCast(lock.sync, Target_java_util_concurrent_locks_AbstractOwnableSynchronizer.class);
+    }
+
     /**
      * Implements {@link Thread#holdsLock}.
      */
@@ -222,9 +241,13 @@ public class MonitorSupport {
             return true;
         }
 
-        ReentrantLock lockObject = getOrCreateMonitor(obj, false);
+        final Object thinLockOwner = getThinLockOwner(obj);
+        if (thinLockOwner != null) {
+            /* A thin lock, which must not be inflated just to look at its owner. */
+            return thinLockOwner == Thread.currentThread();
+        }
+        ReentrantLock lockObject = getExistingMonitor(obj);
         return lockObject != null && lockObject.isHeldByCurrentThread();
-
     }
 
     /**
@@ -274,6 +297,14 @@ public class MonitorSupport {
             return;
         }
 
+        final Object thinLockOwner = getThinLockOwner(obj);
+        if (thinLockOwner != null) {
+            if (thinLockOwner != Thread.currentThread()) {
+                throw new IllegalMonitorStateException("Receiver is not locked by the current thread.");
+            }
+            /* Waiting inflates the lock, so nobody waits on an object with a thin lock. */
+            return;
+        }
         /* Make sure the current thread holds the lock on the receiver. */
         ReentrantLock lock = ensureLocked(obj);
         /* Find the wait/notify condition field of the receiver. */
@@ -288,9 +319,14 @@ public class MonitorSupport {
         }
     }
 
-    /** Return the lock of the receiver. */
+    /** Return the lock of the receiver, inflating a thin lock held by the current thread. */
     private ReentrantLock ensureLocked(Object receiver) {
-        ReentrantLock lockObject = getOrCreateMonitor(receiver, false);
+        final Object thinLockOwner = getThinLockOwner(receiver);
+        if (thinLockOwner != null && thinLockOwner != Thread.currentThread()) {
+            /* Locked by another thread, whose thin lock must not be inflated. */
+            throw new IllegalMonitorStateException("Receiver is not locked by the current thread.");
+        }
+        ReentrantLock lockObject = thinLockOwner != null ? getOrCreateMonitor(receiver, true) : getExistingMonitor(receiver);
         /*
          * If the monitor field is null then it has not been locked by this thread. If there is a
          * monitor, make sure it is locked by this thread.
@@ -301,67 +337,156 @@ public class MonitorSupport {
         return lockObject;
     }
 
-    /* Method is public so that white-box test cases can use it. */
-    private ReentrantLock getOrCreateMonitor(Object obj, boolean createIfNotExisting) {
+    private static int getMonitorOffset(Object obj) {
         final DynamicHub hub = ObjectHeader.readDynamicHubFromObject(obj);
-        final int monitorOffset = hub.getMonitorOffset();
+        return hub.getMonitorOffset();
+    }
+
+    /** Read a monitor slot, which holds {@code null}, a thin lock owner, or a lock. */
+    private static Object readMonitorField(Object obj, int monitorOffset) {
+        return KnownIntrinsics.convertUnknownValue(BarrieredAccess.readObject(obj, monitorOffset), Object.class);
+    }
+
+    /** Returns the owner of the thin lock of an object, or null if it does not have a thin lock. */
+    private static Object getThinLockOwner(Object obj) {
+        final int monitorOffset = getMonitorOffset(obj);
+        if (monitorOffset == 0) {
+            return null;
+        }
+        final Object existing = readMonitorField(obj, monitorOffset);
+        return existing instanceof Thread ? existing : null;
+    }
+
+    /**
+     * Returns the lock of an object if it has one, without inflating a thin lock or creating a
+     * lock.
+     */
+    private ReentrantLock getExistingMonitor(Object obj) {
+        final int monitorOffset = getMonitorOffset(obj);
+        if (monitorOffset != 0) {
+            final Object existing = readMonitorField(obj, monitorOffset);
+            return existing instanceof ReentrantLock ? (ReentrantLock) existing : null;
+        }
+        return getOrCreateMonitor(obj, false);
+    }
+
+    /*
+     * Returns the lock of an object, inflating a thin lock, and creating a new lock for an unlocked
+     * object if createIfNotExisting is true.
+     */
+    private ReentrantLock getOrCreateMonitor(Object obj, boolean createIfNotExisting) {
+        final int monitorOffset = getMonitorOffset(obj);
         if (monitorOffset != 0) {
             /* The common case: memory for the monitor reserved in the object. */
-            final ReentrantLock existingMonitor = KnownIntrinsics.convertUnknownValue(BarrieredAccess.readObject(obj, monitorOffset), ReentrantLock.class);
-            if (existingMonitor != null || !createIfNotExisting) {
-                return existingMonitor;
-            }
-            /* Atomically put a new lock in place of the null at the monitorOffset. */
-            final ReentrantLock newMonitor = new ReentrantLock();
-            if (UnsafeAccess.UNSAFE.compareAndSwapObject(obj, monitorOffset, null, newMonitor)) {
-                return newMonitor;
+            while (true) {
+                final Object existing = readMonitorField(obj, monitorOffset);
+                if (existing instanceof ReentrantLock) {
+                    return (ReentrantLock) existing;
+                }
+                if (existing == null && !createIfNotExisting) {
+                    return null;
+                }
+                /* Inflate: a new lock, held by the owner of the thin lock if there is one. */
+                final ReentrantLock newMonitor = new ReentrantLock();
+                if (existing != null) {
+                    newMonitor.lock();
+                    getSync(newMonitor).setExclusiveOwnerThread((Thread) existing);
+                }
+                /* Atomically put the new lock in place of the thin lock at the monitorOffset. */
+                if (UnsafeAccess.UNSAFE.compareAndSwapObject(obj, monitorOffset, existing, newMonitor)) {
+                    return newMonitor;
+                }
+                /* The thin lock was released, acquired, or inflated by another thread: retry. */
             }
-            /* We lost the race, use the lock some other thread installed. */
-            return KnownIntrinsics.convertUnknownValue(BarrieredAccess.readObject(obj, monitorOffset), ReentrantLock.class);
         } else {
             /* No memory reserved for a lock in the object, fall back to our secondary storage. */
-            /*
-             * Lock the monitor map and maybe add a monitor for this object. This serialization
-             * might be a scalability problem.
-             */
-            additionalMonitorsLock.lock();
+            final int stripe = additionalMonitors.stripeOf(obj);
+            additionalMonitors.lock(stripe);
             try {
-                final ReentrantLock existingEntry = additionalMonitors.get(obj);
+                final ReentrantLock existingEntry = additionalMonitors.get(stripe, obj);
                 if (existingEntry != null || !createIfNotExisting) {
                     return existingEntry;
                 }
                 final ReentrantLock newEntry = new ReentrantLock();
-                final ReentrantLock previousEntry = additionalMonitors.put(obj, newEntry);
+                final ReentrantLock previousEntry = additionalMonitors.put(stripe, obj, newEntry);
                 VMError.guarantee(previousEntry == null, "MonitorSupport.getOrCreateMonitor: Replaced monitor");
                 return newEntry;
             } finally {
-                additionalMonitorsLock.unlock();
+                additionalMonitors.unlock(stripe);
             }
         }
     }
 
     public ReentrantLock getMonitorForTesting(Object obj) {
-        return getOrCreateMonitor(obj, false);
+        return getExistingMonitor(obj);
     }
 
     private Condition getOrCreateCondition(Object obj, ReentrantLock lock, boolean createIfNotExisting) {
         /* No memory reserved for a condition in the object, use secondary storage. */
-        /*
-         * Lock the condition map and maybe add a condition for this object. This serialization
-         * might be a scalability problem.
-         */
-        additionalConditionsLock.lock();
+        final int stripe = additionalConditions.stripeOf(obj);
+        additionalConditions.lock(stripe);
         try {
-            final Condition existingEntry = additionalConditions.get(obj);
+            final Condition existingEntry = additionalConditions.get(stripe, obj);
             if (existingEntry != null || !createIfNotExisting) {
                 return existingEntry;
             }
             final Condition newEntry = lock.newCondition();
-            final Condition previousEntry = additionalConditions.put(obj, newEntry);
+            final Condition previousEntry = additionalConditions.put(stripe, obj, newEntry);
             VMError.guarantee(previousEntry == null, "MonitorSupport.getOrCreateCondition: Replaced condition");
             return newEntry;
         } finally {
-            additionalConditionsLock.unlock();
+            additionalConditions.unlock(stripe);
+        }
+    }
+
+    /**
+     * A weak-keyed map that is split into stripes by the hash code of the keys. Each stripe is a
+     * {@link WeakHashMap} with its own lock, so threads that synchronize on different objects
+     * rarely contend for the same stripe. A stripe expunges the entries of collected keys when it
+     * is next accessed, once the collector has enqueued their references.
+     */
+    private static final class StripedWeakHashMap<V> {
+
+        private final Map<Object, V>[] maps;
+        private final ReentrantLock[] locks;
+        private final int stripeShift;
+
+        @SuppressWarnings("unchecked")
+        StripedWeakHashMap(int stripeCount) {
+            assert Integer.bitCount(stripeCount) == 1 : "The number of stripes must be a power of 2.";
+            maps = new Map[stripeCount];
+            locks = new ReentrantLock[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                maps[i] = new WeakHashMap<>();
+                locks[i] = new ReentrantLock();
+            }
+            stripeShift = Integer.SIZE - Integer.numberOfTrailingZeros(stripeCount);
+        }
+
+        /*
+         * The stripe is selected by the high bits of a multiplicative hash, because the WeakHashMap
+         * of the stripe selects its buckets by the low bits of the hash code.
+         */
+        int stripeOf(Object key) {
+            return stripeShift == Integer.SIZE ? 0 : (key.hashCode() * 0x9E3779B9) >>> stripeShift;
+        }
+
+        void lock(int stripe) {
+            locks[stripe].lock();
+        }
+
+        void unlock(int stripe) {
+            locks[stripe].unlock();
+        }
+
+        V get(int stripe, Object key) {
+            assert locks[stripe].isHeldByCurrentThread();
+            return maps[stripe].get(key);
+        }
+
+        V put(int stripe, Object key, V value) {
+            assert locks[stripe].isHeldByCurrentThread();
+            return maps[stripe].put(key, value);
         }
     }
 }
@@ -129,6 +129,10 @@ public class SubstrateOptions {
         }
     };
 
+    @Option(help = "Map the image heap of each isolate copy-on-write from the image file instead of copying it, where supported. Requires SpawnIsolates. " +
+                    "The image file stays open while the process runs and must not be modified in place.")//
+    public static final HostedOptionKey<Boolean> MapImageHeapFromFile = new HostedOptionKey<>(false);
+
     @Option(help = "Trace VMOperation execution.")//
     public static final RuntimeOptionKey<Boolean> TraceVMOperations = new RuntimeOptionKey<>(false);
 
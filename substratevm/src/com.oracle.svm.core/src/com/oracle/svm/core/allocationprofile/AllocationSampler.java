@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.allocationprofile;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.c.function.CodePointer;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.jdk.StackTraceBuilder;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+import com.oracle.svm.core.stack.JavaStackWalker;
+import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
+import com.oracle.svm.core.threadlocal.FastThreadLocalInt;
+import com.oracle.svm.core.threadlocal.FastThreadLocalLong;
+
+//Checkstyle: stop
+import sun.misc.Signal;
+//Checkstyle: resume
+
+/**
+ * A sampling allocation profiler. Unlike {@link AllocationSite}, which counts every allocation in
+ * code instrumented at image build time, this profiler is only notified when a thread refills its
+ * thread-local allocation buffer. Every thread counts the bytes it allocated in the buffer before
+ * each refill, and whenever more than {@link #getSamplingInterval() the sampling interval} have
+ * accumulated, the stack of the allocation that caused the refill is recorded and charged with all
+ * the accumulated bytes. At most {@link Options#AllocationSamplingMaxStacks} distinct stacks are
+ * recorded; the bytes of samples with further stacks are charged to a single
+ * {@value #OTHER_STACKS} entry.
+ * <p>
+ * Sampling can be switched on and off at run time. The results are written in the collapsed stack
+ * format (one line per distinct stack, frames from the outermost to the innermost separated by
+ * semicolons, followed by the allocated type and the estimated bytes) that flame graph tools
+ * consume.
+ */
+public final class AllocationSampler {
+
+    public static class Options {
+        @Option(help = "Include the sampling allocation profiler in the image")//
+        public static final HostedOptionKey<Boolean> AllocationSampling = new HostedOptionKey<>(false);
+
+        @Option(help = "Sample an allocation every time a thread has allocated this many bytes, 0 to disable sampling")//
+        public static final RuntimeOptionKey<Long> AllocationSamplingInterval = new RuntimeOptionKey<>(0L);
+
+        @Option(help = "The maximum number of frames recorded for a sampled allocation")//
+        public static final RuntimeOptionKey<Integer> AllocationSamplingMaxDepth = new RuntimeOptionKey<>(64);
+
+        @Option(help = "The maximum number of distinct stacks recorded, further samples are only counted in total")//
+        public static final RuntimeOptionKey<Integer> AllocationSamplingMaxStacks = new RuntimeOptionKey<>(10000);
+
+        @Option(help = "File to which the allocation samples are written, or the log if empty")//
+        public static final RuntimeOptionKey<String> AllocationSamplingOutput = new RuntimeOptionKey<>("");
+
+        @Option(help = "Name of a signal, for example TRAP, on which the allocation samples are written, or none if empty")//
+        public static final RuntimeOptionKey<String> AllocationSamplingDumpSignal = new RuntimeOptionKey<>("");
+    }
+
+    /** The bytes allocated by the current thread since its last sample. */
+    private static final FastThreadLocalLong bytesSinceSample = FastThreadLocalFactory.createLong();
+
+    /** Set while the current thread records a sample, so that its own allocations are ignored. */
+    private static final FastThreadLocalInt inSampler = FastThreadLocalFactory.createInt();
+
+    private static final ConcurrentMap<Sample, AtomicLong> samples = new ConcurrentHashMap<>();
+
+    /** The name under which the bytes of samples that exceed the maximum number of stacks appear. */
+    private static final String OTHER_STACKS = "[other stacks]";
+
+    /** The bytes of samples that were not recorded because the maximum number of stacks was reached. */
+    private static final AtomicLong otherStacksBytes = new AtomicLong();
+
+    /** The sampling interval set at run time, or a negative value to use the option value. */
+    private static volatile long samplingIntervalOverride = -1;
+
+    private AllocationSampler() {
+    }
+
+    @Fold
+    public static boolean isSupported() {
+        return Options.AllocationSampling.getValue();
+    }
+
+    /** The current sampling interval in bytes, where 0 means that sampling is disabled. */
+    public static long getSamplingInterval() {
+        long override = samplingIntervalOverride;
+        return override >= 0 ? override : Options.AllocationSamplingInterval.getValue();
+    }
+
+    /** Switches sampling on with the given interval in bytes, or off if the interval is 0. */
+    public static void setSamplingInterval(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Sampling interval must not be negative: " + bytes);
+        }
+        samplingIntervalOverride = bytes;
+    }
+
+    /** Drops all samples recorded so far. */
+    public static void reset() {
+        samples.clear();
+        otherStacksBytes.set(0);
+    }
+
+    /**
+     * Notifies the sampler that the current thread allocated the given number of bytes since its
+     * previous slow-path allocation, including the object. The stack is walked starting at the
+     * given frame, which should be the frame of the allocating method. Must only be called where
+     * allocation is allowed.
+     */
+    public static void afterSlowPathAllocation(Object obj, UnsignedWord bytes, Pointer sp, CodePointer ip) {
+        if (!isSupported()) {
+            return;
+        }
+        long interval = getSamplingInterval();
+        if (interval <= 0 || inSampler.get() != 0) {
+            return;
+        }
+        long accumulated = bytesSinceSample.get() + bytes.rawValue();
+        if (accumulated < interval) {
+            bytesSinceSample.set(accumulated);
+            return;
+        }
+        bytesSinceSample.set(0);
+
+        inSampler.set(1);
+        try {
+            StackTraceBuilder stackTraceBuilder = new StackTraceBuilder(false);
+            JavaStackWalker.walkCurrentThread(sp, ip, stackTraceBuilder);
+            StackTraceElement[] trace = stackTraceBuilder.getTrace();
+            int maxDepth = Options.AllocationSamplingMaxDepth.getValue();
+            if (maxDepth >= 0 && trace.length > maxDepth) {
+                trace = Arrays.copyOf(trace, maxDepth);
+            }
+            Sample sample = new Sample(obj.getClass(), trace);
+            AtomicLong sampledBytes = samples.get(sample);
+            if (sampledBytes == null && samples.size() >= Options.AllocationSamplingMaxStacks.getValue()) {
+                otherStacksBytes.addAndGet(accumulated);
+                return;
+            }
+            if (sampledBytes == null) {
+                AtomicLong newSampledBytes = new AtomicLong();
+                sampledBytes = samples.putIfAbsent(sample, newSampledBytes);
+                if (sampledBytes == null) {
+                    sampledBytes = newSampledBytes;
+                }
+            }
+            sampledBytes.addAndGet(accumulated);
+        } finally {
+            inSampler.set(0);
+        }
+    }
+
+    /** Writes the samples recorded so far to the configured output. */
+    public static void dumpSamples() {
+        if (samples.isEmpty() && otherStacksBytes.get() == 0) {
+            return;
+        }
+        inSampler.set(1);
+        try {
+            String output = Options.AllocationSamplingOutput.getValue();
+            if (output.isEmpty()) {
+                Log log = Log.log();
+                for (String line : collapsedStacks()) {
+                    log.string(line).newline();
+                }
+                log.flush();
+            } else {
+                try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+                    for (String line : collapsedStacks()) {
+                        writer.println(line);
+                    }
+                } catch (IOException e) {
+                    Log.log().string("Writing allocation samples to ").string(output).string(" failed: ").string(e.getMessage()).newline();
+                }
+            }
+        } finally {
+            inSampler.set(0);
+        }
+    }
+
+    private static List<String> collapsedStacks() {
+        List<Sample> sorted = new ArrayList<>(samples.keySet());
+        sorted.sort((s1, s2) -> Long.compare(samples.get(s2).get(), samples.get(s1).get()));
+
+        List<String> lines = new ArrayList<>(sorted.size());
+        StringBuilder line = new StringBuilder();
+        for (Sample sample : sorted) {
+            line.setLength(0);
+            for (int i = sample.trace.length - 1; i >= 0; i--) {
+                StackTraceElement frame = sample.trace[i];
+                line.append(frame.getClassName()).append('.').append(frame.getMethodName()).append(';');
+            }
+            line.append(sample.type.getName()).append(' ').append(samples.get(sample).get());
+            lines.add(line.toString());
+        }
+        long otherBytes = otherStacksBytes.get();
+        if (otherBytes > 0) {
+            lines.add(OTHER_STACKS + " " + otherBytes);
+        }
+        return lines;
+    }
+
+    static void installDumpSignalHandler() {
+        String signal = Options.AllocationSamplingDumpSignal.getValue();
+        if (!signal.isEmpty()) {
+            Signal.handle(new Signal(signal), s -> dumpSamples());
+        }
+    }
+
+    /** A distinct allocated type and allocating stack. */
+    private static final class Sample {
+        final Class<?> type;
+        final StackTraceElement[] trace;
+        final int hashCode;
+
+        Sample(Class<?> type, StackTraceElement[] trace) {
+            this.type = type;
+            this.trace = trace;
+            this.hashCode = 31 * type.hashCode() + Arrays.hashCode(trace);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Sample)) {
+                return false;
+            }
+            Sample other = (Sample) obj;
+            return type == other.type && Arrays.equals(trace, other.trace);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
+
+@AutomaticFeature
+class AllocationSamplingFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return AllocationSampler.isSupported();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        RuntimeSupport.getRuntimeSupport().addStartupHook(AllocationSampler::installDumpSignalHandler);
+        RuntimeSupport.getRuntimeSupport().addShutdownHook(AllocationSampler::dumpSamples);
+    }
+}
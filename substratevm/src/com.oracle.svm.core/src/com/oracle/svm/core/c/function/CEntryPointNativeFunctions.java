@@ -39,6 +39,7 @@ import com.oracle.svm.core.annotate.Uninterruptible;
 import com.oracle.svm.core.c.CHeader;
 import com.oracle.svm.core.c.function.CEntryPointOptions.NoEpilogue;
 import com.oracle.svm.core.c.function.CEntryPointOptions.NoPrologue;
+import com.oracle.svm.core.os.ImageHeapPool;
 
 @CHeader(value = GraalIsolateHeader.class)
 public final class CEntryPointNativeFunctions {
@@ -165,6 +166,18 @@ public final class CEntryPointNativeFunctions {
         return result;
     }
 
+    @Uninterruptible(reason = UNINTERRUPTIBLE_REASON)
+    @CEntryPoint(name = "fill_isolate_pool", documentation = {
+                    "Prepares the image heaps for up to the passed number of isolates in advance, so",
+                    "that subsequent calls to create_isolate can use them without mapping and",
+                    "copying the image heap. The number is limited by the pool size that was chosen",
+                    "when building the image (option IsolatePoolSize).",
+                    "Returns the number of prepared image heaps that are available."})
+    @CEntryPointOptions(prologue = NoPrologue.class, epilogue = NoEpilogue.class, nameTransformation = NameTransformation.class)
+    public static int fillIsolatePool(int count) {
+        return ImageHeapPool.fill(count);
+    }
+
     private CEntryPointNativeFunctions() {
     }
 }
@@ -279,6 +279,37 @@ public class FrameInfoQueryResult {
         return new StackTraceElement(className, sourceMethodName, sourceFileName, sourceLineNumber);
     }
 
+    /**
+     * Returns the name of the class of the method, for debugging purposes only. Unlike
+     * {@link #getSourceReference()}, this does not allocate.
+     */
+    public String getSourceClassName() {
+        return sourceClassName != null ? sourceClassName : "";
+    }
+
+    /**
+     * Returns the name of the method, for debugging purposes only.
+     */
+    public String getSourceMethodName() {
+        return sourceMethodName != null ? sourceMethodName : "";
+    }
+
+    /**
+     * Returns the name of the source file of the method, or {@code null} if it is not known, for
+     * debugging purposes only.
+     */
+    public String getSourceFileName() {
+        return sourceFileName;
+    }
+
+    /**
+     * Returns the source line number, or a negative value as in {@link StackTraceElement} if it is
+     * not known, for debugging purposes only.
+     */
+    public int getSourceLineNumber() {
+        return sourceLineNumber;
+    }
+
     private boolean isNativeMethod() {
         return sourceLineNumber == -2;
     }
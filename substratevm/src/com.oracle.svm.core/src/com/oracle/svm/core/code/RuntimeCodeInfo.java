@@ -24,18 +24,24 @@
  */
 package com.oracle.svm.core.code;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.graalvm.compiler.options.Option;
 import org.graalvm.nativeimage.Feature;
 import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.IsolateThread;
 import org.graalvm.nativeimage.Platform;
 import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.c.function.CEntryPointContext;
 import org.graalvm.nativeimage.c.function.CodePointer;
 import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.MemoryWalker;
 import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.NeverInline;
 import com.oracle.svm.core.annotate.Uninterruptible;
 import com.oracle.svm.core.deopt.Deoptimizer;
 import com.oracle.svm.core.deopt.SubstrateInstalledCode;
@@ -45,7 +51,11 @@ import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.log.StringBuilderLog;
 import com.oracle.svm.core.option.RuntimeOptionKey;
 import com.oracle.svm.core.os.CommittedMemoryProvider;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.stack.JavaStackWalker;
+import com.oracle.svm.core.stack.StackFrameVisitor;
 import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.thread.VMThreads;
 import com.oracle.svm.core.util.Counter;
 import com.oracle.svm.core.util.RingBuffer;
 
@@ -54,6 +64,9 @@ public class RuntimeCodeInfo {
     public static class Options {
         @Option(help = "Print logging information for runtime code cache modifications")//
         public static final RuntimeOptionKey<Boolean> TraceCodeCache = new RuntimeOptionKey<>(false);
+
+        @Option(help = "Maximum size in bytes of the code of runtime compiled methods. The methods least recently installed or seen on a stack are evicted to stay below it. 0 means unlimited.")//
+        public static final RuntimeOptionKey<Long> MaxRuntimeCodeCacheSize = new RuntimeOptionKey<>(0L);
     }
 
     private final RingBuffer<String> recentCodeCacheOperations = new RingBuffer<>();
@@ -63,9 +76,15 @@ public class RuntimeCodeInfo {
     private final Counter lookupMethodCount = new Counter(counters, "lookupMethod", "");
     private final Counter addMethodCount = new Counter(counters, "addMethod", "");
     private final Counter invalidateMethodCount = new Counter(counters, "invalidateMethod", "");
+    private final Counter evictMethodCount = new Counter(counters, "evictMethod", "");
 
     static final String INFO_ADD = "Add";
     static final String INFO_INVALIDATE = "Invalidate";
+    static final String INFO_EVICT = "Evict";
+
+    static final String EVICTION_REASON = "Evicted from the full runtime code cache";
+    /** Eviction frees 1/EVICTION_HEADROOM of the limit beyond what is needed right away. */
+    private static final int EVICTION_HEADROOM = 8;
 
     private static final int INITIAL_TABLE_SIZE = 100;
 
@@ -73,6 +92,16 @@ public class RuntimeCodeInfo {
     private int numMethods;
     private PinnedAllocator tablePin;
 
+    /** The total size of the code of the methods in the table. */
+    private long usedBytes;
+    /** The number of methods evicted because the code cache was full. */
+    private long evictedMethods;
+    /**
+     * Advanced every time a method is added. Lookups stamp the method they find with it, so the
+     * methods with the oldest stamps have not been seen on a stack for the longest time.
+     */
+    private long useEpoch;
+
     @Platforms(Platform.HOSTED_ONLY.class)
     public RuntimeCodeInfo() {
     }
@@ -85,10 +114,10 @@ public class RuntimeCodeInfo {
     /**
      * Looking up a method is lock-free: it is called frequently during stack walking, so locking or
      * even a {@link VMOperation} would be too slow. The lookup must access the {@link #methodInfos}
-     * array, which is modified non-atomically when adding or removing methods. All modifications
-     * are done from within a {@link VMOperation}. Making this method {@link Uninterruptible}
-     * ensures that we see one consistent snapshot of the array, without the possibility for a
-     * concurrent modification.
+     * array, which is modified in place when adding or removing methods. All modifications are done
+     * from within a {@link VMOperation}, i.e., at a safepoint. Making this method
+     * {@link Uninterruptible} ensures that we see one consistent snapshot of the array, without the
+     * possibility for a concurrent modification.
      */
     @Uninterruptible(reason = "methodInfos is accessed without holding a lock, so must not be interrupted by a safepoint that can add/remove code")
     private RuntimeMethodInfo lookupMethodUninterruptible(CodePointer ip) {
@@ -100,6 +129,7 @@ public class RuntimeCodeInfo {
         int idx = binarySearch(methodInfos, 0, numMethods, ip);
         if (idx >= 0) {
             /* Exact hit, ip is the begin of the method. */
+            methodInfos[idx].lastUseEpoch = useEpoch;
             return methodInfos[idx];
         }
 
@@ -117,6 +147,7 @@ public class RuntimeCodeInfo {
             return null;
         }
 
+        methodInfo.lastUseEpoch = useEpoch;
         return methodInfo;
     }
 
@@ -142,15 +173,20 @@ public class RuntimeCodeInfo {
     }
 
     public void addMethod(RuntimeMethodInfo methodInfo) {
+        List<SubstrateInstalledCode> evictedCode = new ArrayList<>();
         VMOperation.enqueueBlockingSafepoint("AddMethod", () -> {
             InstalledCodeObserverSupport.activateObservers(methodInfo.codeObserverHandles);
             long num = logMethodOperation(methodInfo, INFO_ADD);
-            addMethodOperation(methodInfo);
+            addMethodOperation(methodInfo, evictedCode);
             logMethodOperationEnd(num);
         });
+        /* The owners of evicted code can run arbitrary code, so they are told after the safepoint. */
+        for (SubstrateInstalledCode installedCode : evictedCode) {
+            installedCode.onEvicted(EVICTION_REASON);
+        }
     }
 
-    private void addMethodOperation(RuntimeMethodInfo methodInfo) {
+    private void addMethodOperation(RuntimeMethodInfo methodInfo, List<SubstrateInstalledCode> evictedCode) {
         VMOperation.guaranteeInProgress("Modifying code tables that are used by the GC");
         addMethodCount.inc();
         assert verifyTable();
@@ -160,6 +196,10 @@ public class RuntimeCodeInfo {
             Log.log().string("]").newline();
         }
 
+        useEpoch++;
+        methodInfo.lastUseEpoch = useEpoch;
+        evictColdMethods(methodInfo.getCodeSize().rawValue(), evictedCode);
+
         if (methodInfos == null || numMethods >= methodInfos.length) {
             enlargeTable();
             assert verifyTable();
@@ -172,13 +212,103 @@ public class RuntimeCodeInfo {
         System.arraycopy(methodInfos, insertionPoint, methodInfos, insertionPoint + 1, numMethods - insertionPoint);
         numMethods++;
         methodInfos[insertionPoint] = methodInfo;
+        usedBytes += methodInfo.getCodeSize().rawValue();
+
+        if (Options.TraceCodeCache.getValue()) {
+            logTable();
+        }
+        assert verifyTable();
+    }
+
+    /**
+     * Make room for a method of the given code size by evicting the least recently used methods, if
+     * the code cache is limited. A method counts as used when a lookup finds it. Lookups happen
+     * during the stack walks of the GC, of exception unwinding and of deoptimization, and all stacks
+     * are walked right here, so methods with frames on a stack are never evicted. Otherwise the
+     * recency is only approximate: it is the last time a method was installed or seen on a stack,
+     * not the last time it was called.
+     *
+     * The methods are ordered by recency once, and enough of them are evicted to get some headroom
+     * below the limit, so that the next installations do not have to evict again. They are then
+     * removed from the table in a single pass.
+     */
+    private void evictColdMethods(long neededBytes, List<SubstrateInstalledCode> evictedCode) {
+        final long maxBytes = Options.MaxRuntimeCodeCacheSize.getValue();
+        if (maxBytes <= 0 || usedBytes + neededBytes <= maxBytes || numMethods == 0) {
+            return;
+        }
+        markMethodsOnStacks();
+
+        RuntimeMethodInfo[] candidates = Arrays.copyOf(methodInfos, numMethods);
+        Arrays.sort(candidates, (a, b) -> Long.compare(a.lastUseEpoch, b.lastUseEpoch));
+        long targetBytes = maxBytes - maxBytes / EVICTION_HEADROOM - neededBytes;
+        long remainingBytes = usedBytes;
+        int numVictims = 0;
+        /* Methods that were used in the current epoch are on a stack and must stay. */
+        while (numVictims < candidates.length && remainingBytes > targetBytes && candidates[numVictims].lastUseEpoch < useEpoch) {
+            remainingBytes -= candidates[numVictims].getCodeSize().rawValue();
+            numVictims++;
+        }
+        if (numVictims == 0) {
+            /* Everything is in use, so the cache has to grow beyond the limit. */
+            return;
+        }
+
+        for (int i = 0; i < numVictims; i++) {
+            RuntimeMethodInfo victim = candidates[i];
+            evictMethodCount.inc();
+            evictedMethods++;
+            long num = logMethodOperation(victim, INFO_EVICT);
+            if (Options.TraceCodeCache.getValue()) {
+                Log.log().string("[" + INFO_EVICT + " method: ");
+                logMethod(Log.log(), victim);
+                Log.log().string("]").newline();
+            }
+            SubstrateInstalledCode installedCode = makeNonEntrant(victim);
+            if (installedCode != null) {
+                evictedCode.add(installedCode);
+            }
+            /* The victim has no frame on any stack, so there is nothing to deoptimize. */
+            assert victim.lastUseEpoch < useEpoch;
+            logMethodOperationEnd(num);
+        }
 
+        Arrays.sort(candidates, 0, numVictims, (a, b) -> Long.compareUnsigned(a.getCodeStart().rawValue(), b.getCodeStart().rawValue()));
+        int next = 0;
+        int kept = 0;
+        for (int i = 0; i < numMethods; i++) {
+            if (next < numVictims && methodInfos[i] == candidates[next]) {
+                next++;
+            } else {
+                methodInfos[kept++] = methodInfos[i];
+            }
+        }
+        assert next == numVictims : "all victims must be in table";
+        Arrays.fill(methodInfos, kept, numMethods, null);
+        numMethods = kept;
+
+        for (int i = 0; i < numVictims; i++) {
+            releaseMethod(candidates[i]);
+        }
         if (Options.TraceCodeCache.getValue()) {
             logTable();
         }
         assert verifyTable();
     }
 
+    @NeverInline("Starts a stack walk in the caller frame")
+    private static void markMethodsOnStacks() {
+        /* The stack walks look up, and therefore stamp, the code of every frame. */
+        final StackFrameVisitor visitor = (sp, ip, deoptimizedFrame) -> true;
+        for (IsolateThread vmThread = VMThreads.firstThread(); VMThreads.isNonNullThread(vmThread); vmThread = VMThreads.nextThread(vmThread)) {
+            if (vmThread == CEntryPointContext.getCurrentIsolateThread()) {
+                JavaStackWalker.walkCurrentThread(KnownIntrinsics.readCallerStackPointer(), KnownIntrinsics.readReturnAddress(), visitor);
+            } else {
+                JavaStackWalker.walkThread(vmThread, visitor);
+            }
+        }
+    }
+
     private void enlargeTable() {
         VMOperation.guaranteeInProgress("Modifying code tables that are used by the GC");
         RuntimeMethodInfo[] oldMethodInfos = methodInfos;
@@ -223,18 +353,7 @@ public class RuntimeCodeInfo {
             Log.log().string("]").newline();
         }
 
-        SubstrateInstalledCode installedCode = methodInfo.installedCode.get();
-        if (installedCode != null) {
-            assert !installedCode.isValid() || methodInfo.getCodeStart().rawValue() == installedCode.getAddress();
-            /*
-             * Until this point, the InstalledCode is valid. It can be invoked, and frames can be on
-             * the stack. All the metadata must be valid until this point. Make it non-entrant,
-             * i.e., ensure it cannot be invoked any more.
-             */
-            installedCode.clearAddress();
-        }
-
-        InstalledCodeObserverSupport.removeObservers(methodInfo.codeObserverHandles);
+        makeNonEntrant(methodInfo);
 
         /*
          * Deoptimize all invocations that are on the stack. This performs a stack walk, so all
@@ -253,6 +372,34 @@ public class RuntimeCodeInfo {
         numMethods--;
         methodInfos[numMethods] = null;
 
+        releaseMethod(methodInfo);
+
+        if (Options.TraceCodeCache.getValue()) {
+            logTable();
+        }
+        assert verifyTable();
+    }
+
+    private static SubstrateInstalledCode makeNonEntrant(RuntimeMethodInfo methodInfo) {
+        SubstrateInstalledCode installedCode = methodInfo.installedCode.get();
+        if (installedCode != null) {
+            assert !installedCode.isValid() || methodInfo.getCodeStart().rawValue() == installedCode.getAddress();
+            /*
+             * Until this point, the InstalledCode is valid. It can be invoked, and frames can be on
+             * the stack. All the metadata must be valid until this point. Make it non-entrant,
+             * i.e., ensure it cannot be invoked any more.
+             */
+            installedCode.clearAddress();
+        }
+
+        InstalledCodeObserverSupport.removeObservers(methodInfo.codeObserverHandles);
+        return installedCode;
+    }
+
+    /** Frees the code and the metadata of a method that has already been removed from the table. */
+    private void releaseMethod(RuntimeMethodInfo methodInfo) {
+        usedBytes -= methodInfo.getCodeSize().rawValue();
+
         Heap.getHeap().getGC().unregisterObjectReferenceWalker(methodInfo.constantsWalker);
 
         /*
@@ -277,11 +424,6 @@ public class RuntimeCodeInfo {
 
         methodInfo.allocator.release();
         CommittedMemoryProvider.get().free(methodInfo.getCodeStart(), methodInfo.getCodeSize(), CommittedMemoryProvider.UNALIGNED, true);
-
-        if (Options.TraceCodeCache.getValue()) {
-            logTable();
-        }
-        assert verifyTable();
     }
 
     @Uninterruptible(reason = "called from uninterruptible code")
@@ -357,7 +499,7 @@ public class RuntimeCodeInfo {
 
     public boolean walkRuntimeMethods(MemoryWalker.Visitor visitor) {
         VMOperation.guaranteeInProgress("Modifying code tables that are used by the GC");
-        boolean continueVisiting = true;
+        boolean continueVisiting = visitor.visitRuntimeCodeCache(this, ImageSingletons.lookup(RuntimeCodeInfo.MemoryWalkerAccessImpl.class));
         for (int i = 0; (continueVisiting && (i < numMethods)); i += 1) {
             continueVisiting = visitor.visitRuntimeCompiledMethod(methodInfos[i], ImageSingletons.lookup(RuntimeCodeInfo.MemoryWalkerAccessImpl.class));
         }
@@ -365,7 +507,7 @@ public class RuntimeCodeInfo {
     }
 
     /** Methods for a MemoryWalker to access runtime compiled code. */
-    public static final class MemoryWalkerAccessImpl implements MemoryWalker.RuntimeCompiledMethodAccess<RuntimeMethodInfo> {
+    public static final class MemoryWalkerAccessImpl implements MemoryWalker.RuntimeCompiledMethodAccess<RuntimeMethodInfo>, MemoryWalker.RuntimeCodeCacheAccess<RuntimeCodeInfo> {
 
         /** A private constructor used only to make up the singleton instance. */
         @Platforms(Platform.HOSTED_ONLY.class)
@@ -396,6 +538,28 @@ public class RuntimeCodeInfo {
         public String getName(RuntimeMethodInfo runtimeMethod) {
             return runtimeMethod.getName();
         }
+
+        /* Methods on the code cache as a whole. */
+
+        @Override
+        public UnsignedWord getUsedBytes(RuntimeCodeInfo codeCache) {
+            return WordFactory.unsigned(codeCache.usedBytes);
+        }
+
+        @Override
+        public UnsignedWord getCapacityBytes(RuntimeCodeInfo codeCache) {
+            return WordFactory.unsigned(Math.max(0L, Options.MaxRuntimeCodeCacheSize.getValue()));
+        }
+
+        @Override
+        public long getMethodCount(RuntimeCodeInfo codeCache) {
+            return codeCache.numMethods;
+        }
+
+        @Override
+        public long getEvictedMethodCount(RuntimeCodeInfo codeCache) {
+            return codeCache.evictedMethods;
+        }
     }
 }
 
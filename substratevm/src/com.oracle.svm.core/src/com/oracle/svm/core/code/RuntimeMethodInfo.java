@@ -84,6 +84,12 @@ public final class RuntimeMethodInfo extends AbstractCodeInfo {
 
     protected InstalledCodeObserver.InstalledCodeObserverHandle[] codeObserverHandles;
 
+    /**
+     * The {@link RuntimeCodeInfo} use epoch in which the code was last found by a lookup, e.g.,
+     * during a stack walk. The code cache evicts the methods with the oldest epochs first.
+     */
+    protected long lastUseEpoch;
+
     private RuntimeMethodInfo() {
         throw shouldNotReachHere("Must be allocated with PinnedAllocator");
     }
@@ -42,6 +42,12 @@ public interface SubstrateInstalledCode {
 
     void invalidate();
 
+    /**
+     * Called after the code cache evicted this code to make room for other code. The address has
+     * already been cleared when this method is called, outside of the safepoint that evicted it.
+     */
+    void onEvicted(CharSequence reason);
+
     SubstrateSpeculationLog getSpeculationLog();
 
     /**
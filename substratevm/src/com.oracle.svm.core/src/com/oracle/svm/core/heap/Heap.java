@@ -73,6 +73,12 @@ public abstract class Heap {
     /** Walk all the Objects in the Heap, passing each to the visitor. */
     public abstract void walkObjects(ObjectVisitor visitor);
 
+    /**
+     * Walk all the Objects in the Heap, passing each to the visitor, from within a VMOperation that
+     * is already in progress.
+     */
+    public abstract void walkObjectsInVMOperation(ObjectVisitor visitor);
+
     /** Return a list of all the classes in the heap. */
     public abstract List<Class<?>> getClassList();
 
@@ -89,4 +95,10 @@ public abstract class Heap {
 
     /** Get the MemoryMXBean for this heap. */
     public abstract MemoryMXBean getMemoryMXBean();
+
+    /**
+     * Release the native memory of the heap when the isolate is torn down. The memory of the heap
+     * itself is released with the isolate. Only the current thread is still running.
+     */
+    public abstract void tearDown();
 }
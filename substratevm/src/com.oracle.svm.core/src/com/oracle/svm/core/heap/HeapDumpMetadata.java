@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.heap;
+
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+
+import com.oracle.svm.core.annotate.UnknownObjectField;
+
+/**
+ * The field layouts of all types in the image, as needed by the {@link HeapDumpWriter}. The
+ * metadata is computed from the hosted fields at image build time. The fields of the type with ID
+ * {@code t} are at the indices {@code typeFieldStarts[t]} (inclusive) to
+ * {@code typeFieldStarts[t + 1]} (exclusive) of the field arrays. The instance fields declared by
+ * the type come first, followed by its static fields starting at {@code typeStaticFieldStarts[t]}.
+ */
+public final class HeapDumpMetadata {
+
+    @UnknownObjectField(types = {int[].class}) private int[] typeFieldStarts;
+    @UnknownObjectField(types = {int[].class}) private int[] typeStaticFieldStarts;
+    /** Index of the field name in {@link #names}. */
+    @UnknownObjectField(types = {int[].class}) private int[] fieldNameIndices;
+    /** Offset of an instance field, or offset into the static fields arrays for a static field. */
+    @UnknownObjectField(types = {int[].class}) private int[] fieldLocations;
+    /** The HPROF basic type of the field. */
+    @UnknownObjectField(types = {byte[].class}) private byte[] fieldTypes;
+    /** The distinct field names. */
+    @UnknownObjectField(types = {String[].class}) private String[] names;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public HeapDumpMetadata() {
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public void setData(int[] typeFieldStarts, int[] typeStaticFieldStarts, int[] fieldNameIndices, int[] fieldLocations, byte[] fieldTypes, String[] names) {
+        this.typeFieldStarts = typeFieldStarts;
+        this.typeStaticFieldStarts = typeStaticFieldStarts;
+        this.fieldNameIndices = fieldNameIndices;
+        this.fieldLocations = fieldLocations;
+        this.fieldTypes = fieldTypes;
+        this.names = names;
+    }
+
+    static HeapDumpMetadata singleton() {
+        return ImageSingletons.lookup(HeapDumpMetadata.class);
+    }
+
+    int getInstanceFieldStart(int typeID) {
+        return typeFieldStarts[typeID];
+    }
+
+    int getStaticFieldStart(int typeID) {
+        return typeStaticFieldStarts[typeID];
+    }
+
+    int getStaticFieldEnd(int typeID) {
+        return typeFieldStarts[typeID + 1];
+    }
+
+    String getFieldName(int field) {
+        return names[fieldNameIndices[field]];
+    }
+
+    int getFieldLocation(int field) {
+        return fieldLocations[field];
+    }
+
+    byte getFieldType(int field) {
+        return fieldTypes[field];
+    }
+
+    int getNameCount() {
+        return names.length;
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+}
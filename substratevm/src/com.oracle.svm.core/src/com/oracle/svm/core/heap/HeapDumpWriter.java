@@ -0,0 +1,919 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.heap;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.nativeimage.c.function.CEntryPointContext;
+import org.graalvm.nativeimage.c.function.CodePointer;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.CompilerCommandPlugin;
+import com.oracle.svm.core.MemoryUtil;
+import com.oracle.svm.core.StaticFieldsSupport;
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.SubstrateUtil;
+import com.oracle.svm.core.VMInspection;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.NeverInline;
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.code.AbstractCodeInfo;
+import com.oracle.svm.core.code.CodeInfoTable;
+import com.oracle.svm.core.code.FrameInfoDecoder.FrameInfoQueryResultAllocator;
+import com.oracle.svm.core.code.FrameInfoDecoder.ValueInfoAllocator;
+import com.oracle.svm.core.code.FrameInfoQueryResult;
+import com.oracle.svm.core.code.FrameInfoQueryResult.ValueInfo;
+import com.oracle.svm.core.code.ReusableTypeReader;
+import com.oracle.svm.core.deopt.DeoptimizedFrame;
+import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.stack.JavaStackWalker;
+import com.oracle.svm.core.stack.StackFrameVisitor;
+import com.oracle.svm.core.thread.JavaThreads;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.thread.VMThreads;
+
+/**
+ * Writes the heap, including the image heap, in the HPROF binary format that heap analysis tools
+ * read. The whole dump is written in one VMOperation, so that objects do not move while they are
+ * written, and without allocating, so that no collection can be triggered. The output is staged in
+ * a fixed-size native buffer that is written to the file whenever it is full, so the memory needed
+ * does not depend on the size of the heap.
+ * <p>
+ * Field layouts come from the {@link HeapDumpMetadata} computed at image build time. Image heap
+ * objects are never collected, so they are reported as roots, as are the object references on the
+ * stacks of all threads. Every thread gets a stack trace with one frame per physical frame, named
+ * after the innermost method at its instruction pointer, so that the stack roots can be attributed
+ * to their frames.
+ * <p>
+ * Everything that is needed to dump the heap on OutOfMemoryError is allocated at startup, so that
+ * the dump does not allocate once the heap is exhausted.
+ */
+public final class HeapDumpWriter {
+
+    public static class Options {
+        @Option(help = "Dump the heap when the first OutOfMemoryError is thrown. Requires AllowVMInspection.")//
+        public static final RuntimeOptionKey<Boolean> HeapDumpOnOutOfMemoryError = new RuntimeOptionKey<>(false);
+
+        @Option(help = "Directory or file to which the heap is dumped on OutOfMemoryError, the working directory if empty. The file must not exist.")//
+        public static final RuntimeOptionKey<String> HeapDumpPath = new RuntimeOptionKey<>("");
+    }
+
+    /** Implemented by operating-system specific code. */
+    public interface OutputSupport {
+        /** Writes the bytes to the file without allocating. Returns false if writing failed. */
+        boolean write(FileDescriptor fd, Pointer bytes, UnsignedWord length);
+
+        /**
+         * Creates a new file and stores its descriptor in {@code fd} without allocating. Returns
+         * false if the file could not be created, for example because it already exists.
+         */
+        boolean create(FileDescriptor fd, CCharPointer path);
+
+        /** Closes the file created by {@link #create} without allocating. */
+        void close(FileDescriptor fd);
+
+        /** Returns the ID of the current process, which is part of the default file name. */
+        int getProcessID();
+    }
+
+    /* Record tags. */
+    private static final int TAG_STRING = 0x01;
+    private static final int TAG_LOAD_CLASS = 0x02;
+    private static final int TAG_STACK_FRAME = 0x04;
+    private static final int TAG_STACK_TRACE = 0x05;
+    private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int TAG_HEAP_DUMP_END = 0x2C;
+
+    /* Heap dump sub-record tags. */
+    private static final int TAG_ROOT_UNKNOWN = 0xFF;
+    private static final int TAG_ROOT_JAVA_FRAME = 0x03;
+    private static final int TAG_ROOT_STICKY_CLASS = 0x05;
+    private static final int TAG_ROOT_THREAD_OBJECT = 0x08;
+    private static final int TAG_CLASS_DUMP = 0x20;
+    private static final int TAG_INSTANCE_DUMP = 0x21;
+    private static final int TAG_OBJECT_ARRAY_DUMP = 0x22;
+    private static final int TAG_PRIMITIVE_ARRAY_DUMP = 0x23;
+
+    /* Basic types of fields and array elements. */
+    public static final byte TYPE_OBJECT = 2;
+    public static final byte TYPE_BOOLEAN = 4;
+    public static final byte TYPE_CHAR = 5;
+    public static final byte TYPE_FLOAT = 6;
+    public static final byte TYPE_DOUBLE = 7;
+    public static final byte TYPE_BYTE = 8;
+    public static final byte TYPE_SHORT = 9;
+    public static final byte TYPE_INT = 10;
+    public static final byte TYPE_LONG = 11;
+
+    private static final String FORMAT_NAME = "JAVA PROFILE 1.0.2";
+    private static final int ID_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final int ARRAY_DUMP_HEADER_SIZE = 1 + ID_SIZE + 4 + 4 + ID_SIZE;
+    private static final long MAX_RECORD_LENGTH = 0xFFFFFFFFL;
+    /** The serial of the empty stack trace that all objects refer to. */
+    private static final int STACK_TRACE_SERIAL = 1;
+    /* Line numbers of stack frames that are not known. */
+    private static final int LINE_UNKNOWN = -1;
+    private static final int LINE_NATIVE = -3;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final AtomicBoolean dumpedOnOutOfMemoryError = new AtomicBoolean();
+
+    /* Prepared at startup if the heap is dumped on OutOfMemoryError. */
+    private static HeapDumpWriter outOfMemoryErrorWriter;
+    private static String outOfMemoryErrorPath;
+    private static CCharPointer outOfMemoryErrorPathCString;
+
+    @Fold
+    public static boolean isSupported() {
+        return VMInspection.isEnabled();
+    }
+
+    /**
+     * Writes a heap dump to the stream. If {@code gcBefore} is true, a full collection is done
+     * first so that only live objects are dumped.
+     *
+     * @return true if the heap dump was written successfully.
+     */
+    public static boolean dumpHeap(FileOutputStream outputStream, boolean gcBefore) {
+        if (gcBefore) {
+            Heap.getHeap().getGC().collectCompletely("HeapDump");
+        }
+        Pointer buffer = UnmanagedMemory.malloc(BUFFER_SIZE);
+        if (buffer.isNull()) {
+            return false;
+        }
+        try {
+            return new HeapDumpWriter(SubstrateUtil.getFileDescriptor(outputStream), buffer).write();
+        } finally {
+            UnmanagedMemory.free(buffer);
+        }
+    }
+
+    /**
+     * Prepares the heap dump on OutOfMemoryError if {@link Options#HeapDumpOnOutOfMemoryError} is
+     * set. The file name is determined now, but the file is only created when the heap is dumped.
+     */
+    static void prepareDumpOnOutOfMemoryError() {
+        if (!Options.HeapDumpOnOutOfMemoryError.getValue()) {
+            return;
+        }
+        String pathOption = Options.HeapDumpPath.getValue();
+        Path path = Paths.get(pathOption.isEmpty() ? "." : pathOption);
+        if (Files.isDirectory(path)) {
+            path = path.resolve("svm-heapdump-" + ImageSingletons.lookup(OutputSupport.class).getProcessID() + ".hprof");
+        }
+        byte[] pathBytes = path.toString().getBytes(StandardCharsets.UTF_8);
+        Pointer buffer = UnmanagedMemory.malloc(BUFFER_SIZE);
+        CCharPointer pathCString = UnmanagedMemory.malloc(pathBytes.length + 1);
+        if (buffer.isNull() || pathCString.isNull()) {
+            UnmanagedMemory.free(buffer);
+            UnmanagedMemory.free(pathCString);
+            Log.log().string("Cannot prepare the heap dump on OutOfMemoryError: out of native memory").newline();
+            return;
+        }
+        for (int i = 0; i < pathBytes.length; i++) {
+            pathCString.write(i, pathBytes[i]);
+        }
+        pathCString.write(pathBytes.length, (byte) 0);
+        /* Neither the buffer nor the path are ever freed. */
+        outOfMemoryErrorPath = path.toString();
+        outOfMemoryErrorPathCString = pathCString;
+        outOfMemoryErrorWriter = new HeapDumpWriter(new FileDescriptor(), buffer);
+    }
+
+    /**
+     * Dumps the heap if requested by {@link Options#HeapDumpOnOutOfMemoryError}, but only for the
+     * first OutOfMemoryError. Does not allocate.
+     */
+    public static void onOutOfMemoryError() {
+        if (!isSupported()) {
+            return;
+        }
+        HeapDumpWriter writer = outOfMemoryErrorWriter;
+        if (writer == null || !dumpedOnOutOfMemoryError.compareAndSet(false, true)) {
+            return;
+        }
+        Log log = Log.log();
+        log.string("Dumping heap to ").string(outOfMemoryErrorPath).string(" ...").newline();
+        OutputSupport output = ImageSingletons.lookup(OutputSupport.class);
+        if (!output.create(writer.fd, outOfMemoryErrorPathCString)) {
+            log.string("Heap dump failed: cannot create ").string(outOfMemoryErrorPath).newline();
+            return;
+        }
+        boolean success;
+        try {
+            success = writer.write();
+        } finally {
+            output.close(writer.fd);
+        }
+        if (!success) {
+            log.string("Heap dump failed").newline();
+        }
+    }
+
+    private final FileDescriptor fd;
+    private final Pointer buffer;
+    private int position;
+    /** Position of the open heap dump segment in the buffer, or -1 if no segment is open. */
+    private int segmentStart;
+    private boolean failed;
+
+    /** The serial of the thread whose stack is walked, starting at 1. */
+    private int threadSerial;
+    /** The number of frames of the current thread that have been visited so far. */
+    private int frameNumber;
+
+    private final HeapDumpMetadata metadata;
+    private final boolean compressedReferences;
+    private final HeapDumpOperation operation;
+    private final ClassRecordsVisitor classRecordsVisitor;
+    private final HeapRecordsVisitor heapRecordsVisitor;
+    private final StackFramesVisitor stackFramesVisitor;
+    private final StackRootsVisitor stackRootsVisitor;
+
+    private HeapDumpWriter(FileDescriptor fd, Pointer buffer) {
+        this.fd = fd;
+        this.buffer = buffer;
+        this.segmentStart = -1;
+        this.metadata = HeapDumpMetadata.singleton();
+        this.compressedReferences = ReferenceAccess.singleton().haveCompressedReferences();
+        this.operation = new HeapDumpOperation(this);
+        this.classRecordsVisitor = new ClassRecordsVisitor();
+        this.heapRecordsVisitor = new HeapRecordsVisitor();
+        this.stackFramesVisitor = new StackFramesVisitor();
+        this.stackRootsVisitor = new StackRootsVisitor();
+    }
+
+    /** Writes the heap dump to the file. Does not allocate. */
+    private boolean write() {
+        position = 0;
+        segmentStart = -1;
+        failed = false;
+        writeFileHeader(System.currentTimeMillis());
+        operation.enqueue();
+        return !failed;
+    }
+
+    private static final class HeapDumpOperation extends VMOperation {
+        private final HeapDumpWriter writer;
+
+        HeapDumpOperation(HeapDumpWriter writer) {
+            super("HeapDump", CallerEffect.BLOCKS_CALLER, SystemEffect.CAUSES_SAFEPOINT);
+            this.writer = writer;
+        }
+
+        @Override
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Objects must not move while the heap is dumped.")
+        public void operate() {
+            writer.writeHeapDump();
+        }
+    }
+
+    private void writeHeapDump() {
+        /* All objects refer to the same empty stack trace. */
+        writeRecordHeader(TAG_STACK_TRACE, 4 + 4 + 4);
+        writeU4(STACK_TRACE_SERIAL);
+        writeU4(0);
+        writeU4(0);
+
+        for (int i = 0; i < metadata.getNameCount(); i++) {
+            writeString(metadata.getName(i), false);
+        }
+        /* All classes are in the image heap. */
+        NativeImageInfo.walkNativeImageHeap(classRecordsVisitor);
+
+        writeThreads();
+        /* The dump is already a VMOperation, so the heap must not be walked in another one. */
+        Heap.getHeap().walkObjectsInVMOperation(heapRecordsVisitor);
+
+        writeRecordHeader(TAG_HEAP_DUMP_END, 0);
+        flush();
+    }
+
+    private void writeFileHeader(long timestamp) {
+        for (int i = 0; i < FORMAT_NAME.length(); i++) {
+            writeU1(FORMAT_NAME.charAt(i));
+        }
+        writeU1(0);
+        writeU4(ID_SIZE);
+        writeU8(timestamp);
+    }
+
+    private final class ClassRecordsVisitor implements ObjectVisitor {
+        @Override
+        public boolean visitObject(Object o) {
+            if (o instanceof Class) {
+                DynamicHub hub = DynamicHub.fromClass((Class<?>) o);
+                writeString(hub.getName(), true);
+                writeRecordHeader(TAG_LOAD_CLASS, 4 + ID_SIZE + 4 + ID_SIZE);
+                writeU4(hub.getTypeID() + 1);
+                writeObjectId(hub);
+                writeU4(STACK_TRACE_SERIAL);
+                writeObjectId(hub.getName());
+            }
+            return true;
+        }
+    }
+
+    private final class HeapRecordsVisitor implements ObjectVisitor {
+        @Override
+        public boolean visitObject(Object o) {
+            if (isImageHeapObject(o)) {
+                beginSubRecord(1 + ID_SIZE);
+                writeU1(TAG_ROOT_UNKNOWN);
+                writeObjectId(o);
+            }
+            DynamicHub hub = KnownIntrinsics.readHub(o);
+            if (o instanceof Class) {
+                writeClassDump(DynamicHub.fromClass((Class<?>) o));
+            } else if (hub.isInstanceClass()) {
+                writeInstanceDump(o, hub);
+            } else if (LayoutEncoding.isObjectArray(hub.getLayoutEncoding())) {
+                writeObjectArrayDump(o, hub);
+            } else if (LayoutEncoding.isPrimitiveArray(hub.getLayoutEncoding())) {
+                writePrimitiveArrayDump(o, hub);
+            }
+            return true;
+        }
+    }
+
+    /** Writes a STACK FRAME record, and the string with its name, for every frame. */
+    private final class StackFramesVisitor implements StackFrameVisitor {
+        private final ReusableTypeReader frameInfoReader = new ReusableTypeReader();
+        private final SingleFrameInfoQueryResultAllocator frameInfoAllocator = new SingleFrameInfoQueryResultAllocator();
+        private final NullValueInfoAllocator valueInfoAllocator = new NullValueInfoAllocator();
+
+        @Override
+        public boolean visitFrame(Pointer sp, CodePointer ip, DeoptimizedFrame deoptimizedFrame) {
+            FrameInfoQueryResult frameInfo = null;
+            if (deoptimizedFrame != null) {
+                frameInfo = deoptimizedFrame.getTopFrame().getFrameInfo();
+            } else {
+                AbstractCodeInfo codeInfo = CodeInfoTable.lookupCodeInfo(ip);
+                if (codeInfo != null) {
+                    frameInfoReader.reset();
+                    long entryOffset = codeInfo.initFrameInfoReader(ip, frameInfoReader);
+                    if (entryOffset >= 0) {
+                        frameInfoAllocator.reload();
+                        /* The first frame is the innermost inlined method. */
+                        frameInfo = codeInfo.nextFrameInfo(entryOffset, frameInfoReader, frameInfoAllocator, valueInfoAllocator, true);
+                    }
+                }
+            }
+            writeStackFrame(frameId(threadSerial, frameNumber), frameInfo);
+            frameNumber++;
+            return true;
+        }
+    }
+
+    /** Writes a ROOT JAVA FRAME sub-record for every object reference in a frame. */
+    private final class StackRootsVisitor implements StackFrameVisitor, ObjectReferenceVisitor {
+        @Override
+        public boolean visitFrame(Pointer sp, CodePointer ip, DeoptimizedFrame deoptimizedFrame) {
+            boolean result = CodeInfoTable.visitObjectReferences(sp, ip, deoptimizedFrame, this);
+            frameNumber++;
+            return result;
+        }
+
+        @Override
+        public boolean visitObjectReference(Pointer objRef, boolean compressed) {
+            Word address = ReferenceAccess.singleton().readObjectAsUntrackedPointer(objRef, compressed);
+            if (address.isNonNull()) {
+                beginSubRecord(1 + ID_SIZE + 4 + 4);
+                writeU1(TAG_ROOT_JAVA_FRAME);
+                writeU8(address.rawValue());
+                writeU4(threadSerial);
+                writeU4(frameNumber);
+            }
+            return true;
+        }
+    }
+
+    private static final class SingleFrameInfoQueryResultAllocator implements FrameInfoQueryResultAllocator {
+        private final FrameInfoQueryResult frameInfoQueryResult = new FrameInfoQueryResult();
+        private boolean fired;
+
+        void reload() {
+            fired = false;
+        }
+
+        @Override
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Objects must not move while the heap is dumped.")
+        public FrameInfoQueryResult newFrameInfoQueryResult() {
+            if (fired) {
+                return null;
+            }
+            fired = true;
+            frameInfoQueryResult.init();
+            return frameInfoQueryResult;
+        }
+    }
+
+    /** The values of frames are not needed. */
+    private static final class NullValueInfoAllocator implements ValueInfoAllocator {
+        @Override
+        public ValueInfo newValueInfo() {
+            return null;
+        }
+
+        @Override
+        public ValueInfo[] newValueInfoArray(int len) {
+            return null;
+        }
+
+        @Override
+        public ValueInfo[][] newValueInfoArrayArray(int len) {
+            return null;
+        }
+
+        @Override
+        public void decodeConstant(ValueInfo valueInfo, Object[] frameInfoObjectConstants) {
+        }
+    }
+
+    /**
+     * Writes the stack traces of all threads, followed by the thread objects and stack roots of all
+     * threads. Both walk the same frames, so that the frame numbers of the roots match.
+     */
+    @NeverInline("Starts the stack walk in the caller frame.")
+    private void writeThreads() {
+        Pointer sp = KnownIntrinsics.readCallerStackPointer();
+        CodePointer ip = KnownIntrinsics.readReturnAddress();
+        for (int pass = 0; pass < 2; pass++) {
+            boolean stackTraces = pass == 0;
+            if (SubstrateOptions.MultiThreaded.getValue()) {
+                int serial = 1;
+                for (IsolateThread vmThread = VMThreads.firstThread(); VMThreads.isNonNullThread(vmThread); vmThread = VMThreads.nextThread(vmThread)) {
+                    writeThread(vmThread, serial++, stackTraces, sp, ip);
+                }
+            } else {
+                writeThread(CEntryPointContext.getCurrentIsolateThread(), 1, stackTraces, sp, ip);
+            }
+        }
+    }
+
+    private void writeThread(IsolateThread vmThread, int serial, boolean stackTrace, Pointer sp, CodePointer ip) {
+        threadSerial = serial;
+        frameNumber = 0;
+        if (!stackTrace) {
+            Thread thread = SubstrateOptions.MultiThreaded.getValue() ? JavaThreads.singleton().fromVMThread(vmThread) : Thread.currentThread();
+            beginSubRecord(1 + ID_SIZE + 4 + 4);
+            writeU1(TAG_ROOT_THREAD_OBJECT);
+            writeObjectId(thread);
+            writeU4(serial);
+            writeU4(stackTraceSerial(serial));
+        }
+        StackFrameVisitor visitor = stackTrace ? stackFramesVisitor : stackRootsVisitor;
+        if (vmThread == CEntryPointContext.getCurrentIsolateThread()) {
+            JavaStackWalker.walkCurrentThread(sp, ip, visitor);
+        } else {
+            JavaStackWalker.walkThread(vmThread, visitor);
+        }
+        if (stackTrace) {
+            writeRecordHeader(TAG_STACK_TRACE, 4 + 4 + 4 + frameNumber * ID_SIZE);
+            writeU4(stackTraceSerial(serial));
+            writeU4(serial);
+            writeU4(frameNumber);
+            for (int i = 0; i < frameNumber; i++) {
+                writeU8(frameId(serial, i));
+            }
+        }
+    }
+
+    private static int stackTraceSerial(int threadSerial) {
+        return STACK_TRACE_SERIAL + threadSerial;
+    }
+
+    /**
+     * Frames are not objects, so they get synthetic IDs. The IDs are odd so that they cannot be
+     * mistaken for objects. A frame's ID is also the ID of the string with its name, and the ID plus
+     * 2 is that of the string with its source file name.
+     */
+    private static long frameId(int threadSerial, int frameNumber) {
+        return ((((long) threadSerial << 32) | frameNumber) << 2) | 1;
+    }
+
+    private void writeStackFrame(long frameId, FrameInfoQueryResult frameInfo) {
+        String className = frameInfo != null ? frameInfo.getSourceClassName() : "";
+        String methodName = frameInfo != null ? frameInfo.getSourceMethodName() : "<unknown>";
+        String fileName = frameInfo != null ? frameInfo.getSourceFileName() : null;
+        int lineNumber = frameInfo != null ? frameInfo.getSourceLineNumber() : LINE_UNKNOWN;
+
+        /* The class name is part of the method name, since frames do not refer to classes here. */
+        int nameLength = stringLength(className) + (className.isEmpty() ? 0 : 1) + stringLength(methodName);
+        writeRecordHeader(TAG_STRING, ID_SIZE + nameLength);
+        writeU8(frameId);
+        if (!className.isEmpty()) {
+            writeStringBytes(className, false);
+            writeU1('.');
+        }
+        writeStringBytes(methodName, false);
+        if (fileName != null) {
+            writeRecordHeader(TAG_STRING, ID_SIZE + stringLength(fileName));
+            writeU8(frameId + 2);
+            writeStringBytes(fileName, false);
+        }
+
+        writeRecordHeader(TAG_STACK_FRAME, 4 * ID_SIZE + 4 + 4);
+        writeU8(frameId);
+        writeU8(frameId);
+        /* No signature. */
+        writeU8(0);
+        writeU8(fileName != null ? frameId + 2 : 0);
+        /* No class serial, see above. */
+        writeU4(0);
+        writeU4(lineNumber == -2 ? LINE_NATIVE : lineNumber < 0 ? LINE_UNKNOWN : lineNumber);
+    }
+
+    private void writeClassDump(DynamicHub hub) {
+        int typeID = hub.getTypeID();
+        int instanceStart = metadata.getInstanceFieldStart(typeID);
+        int staticStart = metadata.getStaticFieldStart(typeID);
+        int staticEnd = metadata.getStaticFieldEnd(typeID);
+
+        long size = 1 + ID_SIZE + 4 + 6 * ID_SIZE + 4 + 2 + 2 + 2 + (staticStart - instanceStart) * (ID_SIZE + 1);
+        for (int field = staticStart; field < staticEnd; field++) {
+            size += ID_SIZE + 1 + valueSize(metadata.getFieldType(field));
+        }
+
+        beginSubRecord(1 + ID_SIZE);
+        writeU1(TAG_ROOT_STICKY_CLASS);
+        writeObjectId(hub);
+
+        beginSubRecord(size);
+        writeU1(TAG_CLASS_DUMP);
+        writeObjectId(hub);
+        writeU4(STACK_TRACE_SERIAL);
+        writeObjectId(hub.getSuperHub());
+        /* Class loader, signers, protection domain, and two reserved IDs. */
+        for (int i = 0; i < 5; i++) {
+            writeU8(0);
+        }
+        writeU4(LayoutEncoding.isInstance(hub.getLayoutEncoding()) ? (int) LayoutEncoding.getInstanceSize(hub.getLayoutEncoding()).rawValue() : 0);
+        /* Constant pool. */
+        writeU2(0);
+
+        writeU2(staticEnd - staticStart);
+        for (int field = staticStart; field < staticEnd; field++) {
+            byte type = metadata.getFieldType(field);
+            writeObjectId(metadata.getFieldName(field));
+            writeU1(type);
+            Object fieldsArray = type == TYPE_OBJECT ? StaticFieldsSupport.getStaticObjectFields() : StaticFieldsSupport.getStaticPrimitiveFields();
+            writeValue(Word.objectToUntrackedPointer(fieldsArray).add(metadata.getFieldLocation(field)), type);
+        }
+
+        writeU2(staticStart - instanceStart);
+        for (int field = instanceStart; field < staticStart; field++) {
+            writeObjectId(metadata.getFieldName(field));
+            writeU1(metadata.getFieldType(field));
+        }
+    }
+
+    private void writeInstanceDump(Object o, DynamicHub hub) {
+        long fieldBytes = 0;
+        for (DynamicHub cur = hub; cur != null; cur = cur.getSuperHub()) {
+            int typeID = cur.getTypeID();
+            for (int field = metadata.getInstanceFieldStart(typeID); field < metadata.getStaticFieldStart(typeID); field++) {
+                fieldBytes += valueSize(metadata.getFieldType(field));
+            }
+        }
+
+        beginSubRecord(1 + ID_SIZE + 4 + ID_SIZE + 4 + fieldBytes);
+        writeU1(TAG_INSTANCE_DUMP);
+        writeObjectId(o);
+        writeU4(STACK_TRACE_SERIAL);
+        writeObjectId(hub);
+        writeU4((int) fieldBytes);
+        /* The fields of the class come first, followed by those of its superclasses. */
+        Pointer objectStart = Word.objectToUntrackedPointer(o);
+        for (DynamicHub cur = hub; cur != null; cur = cur.getSuperHub()) {
+            int typeID = cur.getTypeID();
+            for (int field = metadata.getInstanceFieldStart(typeID); field < metadata.getStaticFieldStart(typeID); field++) {
+                writeValue(objectStart.add(metadata.getFieldLocation(field)), metadata.getFieldType(field));
+            }
+        }
+    }
+
+    private void writeObjectArrayDump(Object o, DynamicHub hub) {
+        int encoding = hub.getLayoutEncoding();
+        int length = truncatedArrayLength(o, ID_SIZE);
+
+        beginSubRecord(ARRAY_DUMP_HEADER_SIZE + (long) length * ID_SIZE);
+        writeU1(TAG_OBJECT_ARRAY_DUMP);
+        writeObjectId(o);
+        writeU4(STACK_TRACE_SERIAL);
+        writeU4(length);
+        writeObjectId(hub);
+        Pointer objectStart = Word.objectToUntrackedPointer(o);
+        for (int i = 0; i < length; i++) {
+            writeValue(objectStart.add(LayoutEncoding.getArrayElementOffset(encoding, i)), TYPE_OBJECT);
+        }
+    }
+
+    private void writePrimitiveArrayDump(Object o, DynamicHub hub) {
+        byte type = primitiveType(hub.getComponentHub());
+        int elementSize = valueSize(type);
+        int length = truncatedArrayLength(o, elementSize);
+
+        /* Like the object array header, but with the element type instead of the class. */
+        beginSubRecord(ARRAY_DUMP_HEADER_SIZE - ID_SIZE + 1 + (long) length * elementSize);
+        writeU1(TAG_PRIMITIVE_ARRAY_DUMP);
+        writeObjectId(o);
+        writeU4(STACK_TRACE_SERIAL);
+        writeU4(length);
+        writeU1(type);
+        Pointer elements = Word.objectToUntrackedPointer(o).add(LayoutEncoding.getArrayBaseOffset(hub.getLayoutEncoding()));
+        if (elementSize == 1) {
+            writeBytes(elements, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                writeValue(elements.add(i * elementSize), type);
+            }
+        }
+    }
+
+    /** Arrays too large for a single record are truncated, like HotSpot does. */
+    private static int truncatedArrayLength(Object array, int elementSize) {
+        int length = KnownIntrinsics.readArrayLength(array);
+        long maxLength = (MAX_RECORD_LENGTH - ARRAY_DUMP_HEADER_SIZE) / elementSize;
+        return length > maxLength ? (int) maxLength : length;
+    }
+
+    private void writeValue(Pointer address, byte type) {
+        switch (type) {
+            case TYPE_OBJECT:
+                writeU8(ReferenceAccess.singleton().readObjectAsUntrackedPointer(address, compressedReferences).rawValue());
+                break;
+            case TYPE_BOOLEAN:
+            case TYPE_BYTE:
+                writeU1(address.readByte(0));
+                break;
+            case TYPE_CHAR:
+            case TYPE_SHORT:
+                writeU2(address.readShort(0));
+                break;
+            case TYPE_FLOAT:
+            case TYPE_INT:
+                writeU4(address.readInt(0));
+                break;
+            case TYPE_DOUBLE:
+            case TYPE_LONG:
+                writeU8(address.readLong(0));
+                break;
+            default:
+                failed = true;
+        }
+    }
+
+    private static int valueSize(byte type) {
+        switch (type) {
+            case TYPE_OBJECT:
+                return ID_SIZE;
+            case TYPE_BOOLEAN:
+            case TYPE_BYTE:
+                return 1;
+            case TYPE_CHAR:
+            case TYPE_SHORT:
+                return 2;
+            case TYPE_FLOAT:
+            case TYPE_INT:
+                return 4;
+            default:
+                return 8;
+        }
+    }
+
+    private static byte primitiveType(DynamicHub componentHub) {
+        Class<?> c = componentHub.asClass();
+        if (c == boolean.class) {
+            return TYPE_BOOLEAN;
+        } else if (c == byte.class) {
+            return TYPE_BYTE;
+        } else if (c == char.class) {
+            return TYPE_CHAR;
+        } else if (c == short.class) {
+            return TYPE_SHORT;
+        } else if (c == int.class) {
+            return TYPE_INT;
+        } else if (c == float.class) {
+            return TYPE_FLOAT;
+        } else if (c == double.class) {
+            return TYPE_DOUBLE;
+        } else {
+            return TYPE_LONG;
+        }
+    }
+
+    private static boolean isImageHeapObject(Object o) {
+        return NativeImageInfo.isObjectInReadOnlyPrimitivePartition(o) || NativeImageInfo.isObjectInReadOnlyReferencePartition(o) ||
+                        NativeImageInfo.isObjectInWritablePrimitivePartition(o) || NativeImageInfo.isObjectInWritableReferencePartition(o);
+    }
+
+    /*
+     * Records are written to the buffer. A heap dump segment is always opened at the beginning of
+     * a sub-record that fits into the buffer, and closed before the buffer is written to the file,
+     * so that its length can be filled in once it is known. Sub-records that are larger than the
+     * buffer get a segment of their own whose length is known in advance.
+     */
+
+    private void writeRecordHeader(int tag, int length) {
+        closeSegment();
+        writeU1(tag);
+        writeU4(0);
+        writeU4(length);
+    }
+
+    private void beginSubRecord(long size) {
+        if (segmentStart >= 0 && position + size <= BUFFER_SIZE) {
+            return;
+        }
+        closeSegment();
+        if (position + RECORD_HEADER_SIZE + size > BUFFER_SIZE) {
+            flush();
+        }
+        if (RECORD_HEADER_SIZE + size <= BUFFER_SIZE) {
+            int start = position;
+            writeRecordHeader(TAG_HEAP_DUMP_SEGMENT, 0);
+            segmentStart = start;
+        } else {
+            writeRecordHeader(TAG_HEAP_DUMP_SEGMENT, (int) size);
+        }
+    }
+
+    private void closeSegment() {
+        if (segmentStart >= 0) {
+            int length = position - segmentStart - RECORD_HEADER_SIZE;
+            int end = position;
+            segmentStart = -1;
+            position -= length + 4;
+            writeU4(length);
+            position = end;
+        }
+    }
+
+    private void writeString(String value, boolean className) {
+        writeRecordHeader(TAG_STRING, ID_SIZE + stringLength(value));
+        writeObjectId(value);
+        writeStringBytes(value, className);
+    }
+
+    /** The length of the string in modified UTF-8. */
+    private static int stringLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c < 0x80 && c != 0 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+
+    private void writeStringBytes(String value, boolean className) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (className && c == '.') {
+                /* Class names are written in their internal form. */
+                c = '/';
+            }
+            /* Modified UTF-8, like in class files. */
+            if (c < 0x80 && c != 0) {
+                writeU1(c);
+            } else if (c < 0x800) {
+                writeU1(0xC0 | (c >> 6));
+                writeU1(0x80 | (c & 0x3F));
+            } else {
+                writeU1(0xE0 | (c >> 12));
+                writeU1(0x80 | ((c >> 6) & 0x3F));
+                writeU1(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeObjectId(Object o) {
+        writeU8(o == null ? 0 : Word.objectToUntrackedPointer(o).rawValue());
+    }
+
+    private void writeU1(int value) {
+        ensureCapacity(1);
+        buffer.writeByte(position, (byte) value);
+        position += 1;
+    }
+
+    private void writeU2(int value) {
+        ensureCapacity(2);
+        buffer.writeByte(position, (byte) (value >> 8));
+        buffer.writeByte(position + 1, (byte) value);
+        position += 2;
+    }
+
+    private void writeU4(int value) {
+        ensureCapacity(4);
+        for (int i = 0; i < 4; i++) {
+            buffer.writeByte(position + i, (byte) (value >> (24 - 8 * i)));
+        }
+        position += 4;
+    }
+
+    private void writeU8(long value) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer.writeByte(position + i, (byte) (value >> (56 - 8 * i)));
+        }
+        position += 8;
+    }
+
+    private void writeBytes(Pointer bytes, int length) {
+        int written = 0;
+        while (written < length) {
+            ensureCapacity(1);
+            int chunk = Math.min(length - written, BUFFER_SIZE - position);
+            MemoryUtil.copyConjointMemoryAtomic(bytes.add(written), buffer.add(position), WordFactory.unsigned(chunk));
+            position += chunk;
+            written += chunk;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (position + size > BUFFER_SIZE) {
+            assert segmentStart < 0 : "segment must fit into the buffer";
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (position > 0 && !failed) {
+            failed = !ImageSingletons.lookup(OutputSupport.class).write(fd, buffer, WordFactory.unsigned(position));
+        }
+        position = 0;
+    }
+}
+
+@AutomaticFeature
+class HeapDumpWriterFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return HeapDumpWriter.isSupported();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        /* Invoked by VMInspection when the heap dump signal is received. */
+        RuntimeSupport.getRuntimeSupport().addCommandPlugin(new DumpHeapCommand());
+        RuntimeSupport.getRuntimeSupport().addStartupHook(HeapDumpWriter::prepareDumpOnOutOfMemoryError);
+    }
+}
+
+class DumpHeapCommand implements CompilerCommandPlugin {
+    @Override
+    public String name() {
+        return "HeapDump.dumpHeap(FileOutputStream, Boolean)Boolean";
+    }
+
+    @Override
+    public Object apply(Object[] args) {
+        return HeapDumpWriter.dumpHeap((FileOutputStream) args[0], (Boolean) args[1]);
+    }
+}
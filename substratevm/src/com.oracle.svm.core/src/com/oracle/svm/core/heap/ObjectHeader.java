@@ -166,6 +166,16 @@ public abstract class ObjectHeader {
     @Platforms(Platform.HOSTED_ONLY.class)
     public abstract long setBootImageOnLong(long l);
 
+    /**
+     * A special method for use during native image construction, for the objects whose reference
+     * fields can be written at run time. By default, these are like all other native image heap
+     * objects.
+     */
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public long setBootImageWithRememberedSetOnLong(long l) {
+        return setBootImageOnLong(l);
+    }
+
     /** Objects are aligned by default. This marks them as unaligned. */
     protected abstract void setUnaligned(Object o);
 
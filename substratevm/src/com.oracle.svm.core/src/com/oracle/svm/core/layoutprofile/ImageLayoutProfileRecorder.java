@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.layoutprofile;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.code.CodeInfoTable;
+import com.oracle.svm.core.code.ImageCodeInfo;
+import com.oracle.svm.core.heap.NativeImageInfo;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+import com.oracle.svm.core.os.VirtualMemoryProvider;
+
+/**
+ * Records which pages of the image code and of the image heap a training run has touched, so that
+ * a later image build can place the methods and objects on these pages next to each other, see
+ * the hosted {@code ImageLayoutProfile}.
+ * <p>
+ * The touched pages are the pages that are mapped in the page table of the process at exit, as
+ * reported by {@code /proc/self/pagemap}. This is only meaningful for memory that the image does
+ * not copy eagerly: an image built with SpawnIsolates must also be built with
+ * -H:+MapImageHeapFromFile, so that it maps its image heap from the image file.
+ * <p>
+ * A present page has not necessarily been touched: on a page fault, the kernel can read ahead and
+ * map neighbouring pages of the file, up to 64 KB with fault-around. The recording image therefore
+ * advises random access for the code and the image heap at startup, which disables read-ahead and,
+ * on kernels that honor the advice for fault-around, also the mapping of neighbouring pages. On
+ * other kernels, the profile can still list untouched pages next to touched ones.
+ * <p>
+ * The profile only has offsets. The build of the recording image writes a layout map next to the
+ * image, {@code <image>.layoutmap}, which the later build uses to find the methods and objects at
+ * these offsets.
+ * <p>
+ * The profile is a text file. It states the page size, and for each region (the code and the four
+ * groups of image heap partitions) the size of the region and the touched ranges as offsets
+ * relative to the start of the region:
+ *
+ * <pre>
+ * pagesize 4096
+ * region text 1234567
+ * 0 4000
+ * 8096 12192
+ * region readOnlyPrimitive 345678
+ * ...
+ * </pre>
+ */
+public final class ImageLayoutProfileRecorder {
+
+    public static class Options {
+        @Option(help = "Record the image code and image heap pages that are touched until the image exits, for use with -H:ImageLayoutProfile= and -H:ImageLayoutMap= in a later build. " +
+                        "The image advises random access for these pages, but kernels that ignore this advice on page faults map up to 64 KB around each touched page, which are then recorded as touched too.")//
+        public static final HostedOptionKey<Boolean> RecordImageLayoutProfile = new HostedOptionKey<>(false);
+
+        @Option(help = "File to which the image layout profile is written.")//
+        public static final RuntimeOptionKey<String> ImageLayoutProfileOutput = new RuntimeOptionKey<>("image-layout.profile");
+    }
+
+    public static final String REGION_TEXT = "text";
+    public static final String REGION_READ_ONLY_PRIMITIVE = "readOnlyPrimitive";
+    public static final String REGION_READ_ONLY_REFERENCE = "readOnlyReference";
+    public static final String REGION_WRITABLE_PRIMITIVE = "writablePrimitive";
+    public static final String REGION_WRITABLE_REFERENCE = "writableReference";
+
+    private static final String PAGEMAP = "/proc/self/pagemap";
+    private static final int PAGEMAP_ENTRY_SIZE = 8;
+    private static final long PAGEMAP_PRESENT = 1L << 63;
+    private static final long PAGEMAP_SWAPPED = 1L << 62;
+
+    private ImageLayoutProfileRecorder() {
+    }
+
+    @Fold
+    public static boolean isEnabled() {
+        return Options.RecordImageLayoutProfile.getValue();
+    }
+
+    /** Keep the kernel from mapping pages next to the touched ones, which would be recorded too. */
+    static void adviseRandomAccess() {
+        long pageSize = VirtualMemoryProvider.get().getGranularity().rawValue();
+        ImageCodeInfo imageCode = CodeInfoTable.getImageCodeCache();
+        adviseRandomAccess(pageSize, imageCode.getCodeStart().rawValue(), imageCode.getCodeSize().rawValue());
+        adviseHeapRandomAccess(pageSize, NativeImageInfo.firstReadOnlyPrimitiveObject, NativeImageInfo.lastReadOnlyPrimitiveObject);
+        adviseHeapRandomAccess(pageSize, NativeImageInfo.firstReadOnlyReferenceObject, NativeImageInfo.lastReadOnlyReferenceObject);
+        adviseHeapRandomAccess(pageSize, NativeImageInfo.firstWritablePrimitiveObject, NativeImageInfo.lastWritablePrimitiveObject);
+        adviseHeapRandomAccess(pageSize, NativeImageInfo.firstWritableReferenceObject, NativeImageInfo.lastWritableReferenceObject);
+    }
+
+    private static void adviseHeapRandomAccess(long pageSize, Object first, Object last) {
+        if (first != null && last != null) {
+            long start = Word.objectToUntrackedPointer(first).rawValue();
+            adviseRandomAccess(pageSize, start, LayoutEncoding.getObjectEnd(last).rawValue() - start);
+        }
+    }
+
+    private static void adviseRandomAccess(long pageSize, long start, long size) {
+        if (size <= 0) {
+            return;
+        }
+        long alignedStart = start / pageSize * pageSize;
+        long alignedEnd = (start + size + pageSize - 1) / pageSize * pageSize;
+        if (VirtualMemoryProvider.get().adviseRandomAccess(WordFactory.pointer(alignedStart), WordFactory.unsigned(alignedEnd - alignedStart)) != 0) {
+            Log.log().string("Advising random access for the image layout profile failed, the profile can include untouched pages.").newline();
+        }
+    }
+
+    static void dump() {
+        String output = Options.ImageLayoutProfileOutput.getValue();
+        try (RandomAccessFile pagemap = new RandomAccessFile(PAGEMAP, "r");
+                        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+            long pageSize = VirtualMemoryProvider.get().getGranularity().rawValue();
+            writer.println("pagesize " + pageSize);
+
+            ImageCodeInfo imageCode = CodeInfoTable.getImageCodeCache();
+            writeRegion(writer, pagemap, pageSize, REGION_TEXT, imageCode.getCodeStart().rawValue(), imageCode.getCodeSize().rawValue());
+            writeHeapRegion(writer, pagemap, pageSize, REGION_READ_ONLY_PRIMITIVE, NativeImageInfo.firstReadOnlyPrimitiveObject, NativeImageInfo.lastReadOnlyPrimitiveObject);
+            writeHeapRegion(writer, pagemap, pageSize, REGION_READ_ONLY_REFERENCE, NativeImageInfo.firstReadOnlyReferenceObject, NativeImageInfo.lastReadOnlyReferenceObject);
+            writeHeapRegion(writer, pagemap, pageSize, REGION_WRITABLE_PRIMITIVE, NativeImageInfo.firstWritablePrimitiveObject, NativeImageInfo.lastWritablePrimitiveObject);
+            writeHeapRegion(writer, pagemap, pageSize, REGION_WRITABLE_REFERENCE, NativeImageInfo.firstWritableReferenceObject, NativeImageInfo.lastWritableReferenceObject);
+        } catch (IOException e) {
+            Log.log().string("Writing the image layout profile to ").string(output).string(" failed: ").string(e.getMessage()).newline();
+        }
+    }
+
+    private static void writeHeapRegion(PrintWriter writer, RandomAccessFile pagemap, long pageSize, String name, Object first, Object last) throws IOException {
+        if (first == null || last == null) {
+            writer.println("region " + name + " 0");
+            return;
+        }
+        long start = Word.objectToUntrackedPointer(first).rawValue();
+        long end = LayoutEncoding.getObjectEnd(last).rawValue();
+        writeRegion(writer, pagemap, pageSize, name, start, end - start);
+    }
+
+    private static void writeRegion(PrintWriter writer, RandomAccessFile pagemap, long pageSize, String name, long start, long size) throws IOException {
+        writer.println("region " + name + " " + size);
+        if (size <= 0) {
+            return;
+        }
+        long firstPage = start / pageSize;
+        long lastPage = (start + size - 1) / pageSize;
+        ByteBuffer entries = ByteBuffer.allocate((int) ((lastPage - firstPage + 1) * PAGEMAP_ENTRY_SIZE)).order(ByteOrder.nativeOrder());
+        pagemap.seek(firstPage * PAGEMAP_ENTRY_SIZE);
+        pagemap.readFully(entries.array());
+
+        long rangeStart = -1;
+        for (long page = firstPage; page <= lastPage; page++) {
+            long entry = entries.getLong((int) ((page - firstPage) * PAGEMAP_ENTRY_SIZE));
+            boolean touched = (entry & (PAGEMAP_PRESENT | PAGEMAP_SWAPPED)) != 0;
+            long pageStart = Math.max(0, page * pageSize - start);
+            if (touched && rangeStart < 0) {
+                rangeStart = pageStart;
+            } else if (!touched && rangeStart >= 0) {
+                writer.println(rangeStart + " " + pageStart);
+                rangeStart = -1;
+            }
+        }
+        if (rangeStart >= 0) {
+            writer.println(rangeStart + " " + size);
+        }
+    }
+}
+
+@AutomaticFeature
+class ImageLayoutProfileRecorderFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return ImageLayoutProfileRecorder.isEnabled();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        RuntimeSupport.getRuntimeSupport().addStartupHook(ImageLayoutProfileRecorder::adviseRandomAccess);
+        RuntimeSupport.getRuntimeSupport().addShutdownHook(ImageLayoutProfileRecorder::dump);
+    }
+}
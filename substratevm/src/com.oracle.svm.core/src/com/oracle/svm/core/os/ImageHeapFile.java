@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.os;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.c.type.WordPointer;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.annotate.Uninterruptible;
+
+/**
+ * Locates the image heap within the file of the image, so that the image heap of an isolate can
+ * be {@linkplain VirtualMemoryProvider#mapFile mapped} copy-on-write instead of being copied. Clean
+ * pages of such a mapping are backed by the page cache and therefore shared between isolates and
+ * between processes of the same image.
+ */
+public interface ImageHeapFile {
+
+    @Fold
+    static boolean isSupported() {
+        return SubstrateOptions.SpawnIsolates.getValue() && SubstrateOptions.MapImageHeapFromFile.getValue() && ImageSingletons.contains(ImageHeapFile.class);
+    }
+
+    @Fold
+    static ImageHeapFile get() {
+        return ImageSingletons.lookup(ImageHeapFile.class);
+    }
+
+    /**
+     * Provides an open handle of the image file and the offset of the beginning of the image heap
+     * within it. The handle remains valid for the lifetime of the process.
+     *
+     * @return true on success, or false if the image heap cannot be mapped from the file, in which
+     *         case the output parameters are undefined.
+     */
+    @Uninterruptible(reason = "Still being initialized.")
+    boolean locate(WordPointer fileHandle, WordPointer fileOffset);
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.os;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.type.WordPointer;
+import org.graalvm.word.LocationIdentity;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.PointerBase;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.c.CGlobalData;
+import com.oracle.svm.core.c.CGlobalDataFactory;
+import com.oracle.svm.core.c.function.CEntryPointErrors;
+import com.oracle.svm.core.config.ConfigurationValues;
+import com.oracle.svm.core.option.HostedOptionKey;
+
+/**
+ * A process-wide pool of image heap copies that are ready to be used by a new isolate. Creating an
+ * isolate normally commits memory for the image heap and copies all of it. An isolate that is torn
+ * down instead only restores its writable pages and returns its image heap here, so that the next
+ * isolate can start with it right away. The pool can also be {@linkplain #fill filled} in advance.
+ *
+ * The pool is a fixed number of slots in C global data, which are claimed and released with atomic
+ * operations because isolates are created and torn down concurrently and there is no isolate that
+ * could own a lock.
+ */
+public final class ImageHeapPool {
+    public static class Options {
+        @Option(help = "Number of image heaps of torn down isolates that are kept for reuse by new isolates. Requires SpawnIsolates.")//
+        public static final HostedOptionKey<Integer> IsolatePoolSize = new HostedOptionKey<>(0);
+    }
+
+    private static final CGlobalData<Pointer> SLOTS = CGlobalDataFactory.createBytes(() -> Math.max(1, Options.IsolatePoolSize.getValue()) * ConfigurationValues.getTarget().wordSize);
+
+    @Fold
+    public static boolean isEnabled() {
+        return SubstrateOptions.SpawnIsolates.getValue() && Options.IsolatePoolSize.getValue() > 0;
+    }
+
+    @Fold
+    static int size() {
+        return Options.IsolatePoolSize.getValue();
+    }
+
+    @Fold
+    static int slotSize() {
+        return ConfigurationValues.getTarget().wordSize;
+    }
+
+    /** Removes an image heap from the pool, or returns null if the pool is empty. */
+    @Uninterruptible(reason = "Still being initialized.")
+    static Pointer take() {
+        if (!isEnabled()) {
+            return WordFactory.nullPointer();
+        }
+        Pointer slots = SLOTS.get();
+        for (int i = 0; i < size(); i++) {
+            int offset = i * slotSize();
+            Word heap = slots.readWord(offset);
+            if (heap.isNonNull() && slots.logicCompareAndSwapWord(offset, heap, WordFactory.nullPointer(), LocationIdentity.ANY_LOCATION)) {
+                return heap;
+            }
+        }
+        return WordFactory.nullPointer();
+    }
+
+    /**
+     * Adds an image heap that is in its initial state to the pool.
+     *
+     * @return true if the pool took the image heap, false if the pool is full and the caller still
+     *         owns it.
+     */
+    @Uninterruptible(reason = "Tear-down in progress.")
+    static boolean offer(PointerBase heap) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Pointer slots = SLOTS.get();
+        for (int i = 0; i < size(); i++) {
+            int offset = i * slotSize();
+            if (slots.readWord(offset).isNull() && slots.logicCompareAndSwapWord(offset, WordFactory.nullPointer(), heap, LocationIdentity.ANY_LOCATION)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the number of image heaps that are currently in the pool. */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    public static int available() {
+        int count = 0;
+        if (isEnabled()) {
+            Pointer slots = SLOTS.get();
+            for (int i = 0; i < size(); i++) {
+                if (slots.readWord(i * slotSize()).isNonNull()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Maps image heaps until the pool holds at least the requested number of them, or is full.
+     *
+     * @return the number of image heaps in the pool.
+     */
+    @Uninterruptible(reason = "Called without an isolate.")
+    public static int fill(int count) {
+        int target = Math.min(count, size());
+        WordPointer heapPointer = StackValue.get(WordPointer.class);
+        while (available() < target) {
+            if (OSCommittedMemoryProvider.mapImageHeap(heapPointer) != CEntryPointErrors.NO_ERROR) {
+                break;
+            }
+            Pointer heap = heapPointer.read();
+            if (!offer(heap)) {
+                OSCommittedMemoryProvider.unmapImageHeap(heap);
+                break;
+            }
+        }
+        return available();
+    }
+
+    private ImageHeapPool() {
+    }
+}
@@ -24,6 +24,8 @@
  */
 package com.oracle.svm.core.os;
 
+import static com.oracle.svm.core.Isolates.IMAGE_HEAP_RELOCATABLE_BEGIN;
+import static com.oracle.svm.core.Isolates.IMAGE_HEAP_RELOCATABLE_END;
 import static com.oracle.svm.core.Isolates.IMAGE_HEAP_WRITABLE_BEGIN;
 import static com.oracle.svm.core.Isolates.IMAGE_HEAP_WRITABLE_END;
 import static org.graalvm.word.WordFactory.nullPointer;
@@ -31,6 +33,7 @@ import static org.graalvm.word.WordFactory.nullPointer;
 import org.graalvm.compiler.word.Word;
 import org.graalvm.nativeimage.Feature;
 import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.StackValue;
 import org.graalvm.nativeimage.c.function.CEntryPointContext;
 import org.graalvm.nativeimage.c.type.WordPointer;
 import org.graalvm.word.Pointer;
@@ -70,20 +73,41 @@ public class OSCommittedMemoryProvider implements CommittedMemoryProvider {
             return CEntryPointErrors.NO_ERROR;
         }
 
+        Pointer pooledHeap = ImageHeapPool.take();
+        if (pooledHeap.isNonNull()) {
+            isolatePointer.write(pooledHeap);
+            return CEntryPointErrors.NO_ERROR;
+        }
+        return mapImageHeap(isolatePointer);
+    }
+
+    /**
+     * Creates a private copy of the image heap, either by mapping it copy-on-write from the image
+     * file or by committing memory and copying the image heap into it, and protects all pages
+     * outside of the writable part.
+     */
+    @Uninterruptible(reason = "Still being initialized.")
+    static int mapImageHeap(WordPointer heapPointer) {
         Word begin = Isolates.IMAGE_HEAP_BEGIN.get();
         Word size = Isolates.IMAGE_HEAP_END.get().subtract(begin);
 
-        Pointer heap = VirtualMemoryProvider.get().commit(nullPointer(), size, Access.READ | Access.WRITE);
+        Pointer heap = nullPointer();
+        if (ImageHeapFile.isSupported()) {
+            heap = mapImageHeapFromFile(begin, size);
+        }
         if (heap.isNull()) {
-            return CEntryPointErrors.MAP_HEAP_FAILED;
+            heap = VirtualMemoryProvider.get().commit(nullPointer(), size, Access.READ | Access.WRITE);
+            if (heap.isNull()) {
+                return CEntryPointErrors.MAP_HEAP_FAILED;
+            }
+            MemoryUtil.copyConjointMemoryAtomic(begin, heap, size);
         }
 
-        MemoryUtil.copyConjointMemoryAtomic(begin, heap, size);
-
-        UnsignedWord pageSize = getGranularity();
+        UnsignedWord pageSize = VirtualMemoryProvider.get().getGranularity();
         UnsignedWord writableBeginPageOffset = UnsignedUtils.roundDown(IMAGE_HEAP_WRITABLE_BEGIN.get().subtract(begin), pageSize);
         if (writableBeginPageOffset.aboveThan(0)) {
             if (VirtualMemoryProvider.get().protect(heap, writableBeginPageOffset, Access.READ) != 0) {
+                unmapImageHeap(heap);
                 return CEntryPointErrors.PROTECT_HEAP_FAILED;
             }
         }
@@ -92,14 +116,71 @@ public class OSCommittedMemoryProvider implements CommittedMemoryProvider {
             Pointer afterWritableBoundary = heap.add(writableEndPageOffset);
             Word afterWritableSize = size.subtract(writableEndPageOffset);
             if (VirtualMemoryProvider.get().protect(afterWritableBoundary, afterWritableSize, Access.READ) != 0) {
+                unmapImageHeap(heap);
                 return CEntryPointErrors.PROTECT_HEAP_FAILED;
             }
         }
 
-        isolatePointer.write(heap);
+        heapPointer.write(heap);
         return CEntryPointErrors.NO_ERROR;
     }
 
+    @Uninterruptible(reason = "Still being initialized.")
+    private static Pointer mapImageHeapFromFile(Word begin, Word size) {
+        WordPointer fileHandle = StackValue.get(WordPointer.class);
+        WordPointer fileOffset = StackValue.get(WordPointer.class);
+        if (!ImageHeapFile.get().locate(fileHandle, fileOffset)) {
+            return nullPointer();
+        }
+        Pointer heap = VirtualMemoryProvider.get().mapFile(nullPointer(), size, fileHandle.read(), fileOffset.read(), Access.READ | Access.WRITE);
+        if (heap.isNull()) {
+            return nullPointer();
+        }
+        /*
+         * The dynamic linker has patched the pointers in the relocatable partition in memory, but
+         * not in the file, so these pages must be copied. The partition is page-aligned.
+         */
+        UnsignedWord relocatableBeginOffset = IMAGE_HEAP_RELOCATABLE_BEGIN.get().subtract(begin);
+        UnsignedWord relocatableSize = IMAGE_HEAP_RELOCATABLE_END.get().subtract(IMAGE_HEAP_RELOCATABLE_BEGIN.get());
+        MemoryUtil.copyConjointMemoryAtomic(begin.add(relocatableBeginOffset), heap.add(relocatableBeginOffset), relocatableSize);
+        return heap;
+    }
+
+    /**
+     * Restores the writable pages of an image heap copy to their initial contents. The other pages
+     * are read-only and cannot have changed. When possible, the pages are mapped from the image
+     * file again, which also discards the private copies of the modified pages.
+     *
+     * @return true on success, or false if the image heap copy must be discarded.
+     */
+    @Uninterruptible(reason = "Tear-down in progress.")
+    static boolean resetImageHeap(Pointer heap) {
+        Word begin = Isolates.IMAGE_HEAP_BEGIN.get();
+        Word size = Isolates.IMAGE_HEAP_END.get().subtract(begin);
+        UnsignedWord pageSize = VirtualMemoryProvider.get().getGranularity();
+        UnsignedWord writableBeginPageOffset = UnsignedUtils.roundDown(IMAGE_HEAP_WRITABLE_BEGIN.get().subtract(begin), pageSize);
+        UnsignedWord writableEndPageOffset = UnsignedUtils.min(UnsignedUtils.roundUp(IMAGE_HEAP_WRITABLE_END.get().subtract(begin), pageSize), size);
+        UnsignedWord writableSize = writableEndPageOffset.subtract(writableBeginPageOffset);
+        if (ImageHeapFile.isSupported()) {
+            WordPointer fileHandle = StackValue.get(WordPointer.class);
+            WordPointer fileOffset = StackValue.get(WordPointer.class);
+            if (ImageHeapFile.get().locate(fileHandle, fileOffset)) {
+                Pointer writableBegin = heap.add(writableBeginPageOffset);
+                UnsignedWord writableFileOffset = ((UnsignedWord) fileOffset.read()).add(writableBeginPageOffset);
+                /* A failed fixed mapping can leave the range unmapped, so do not fall back. */
+                return VirtualMemoryProvider.get().mapFile(writableBegin, writableSize, fileHandle.read(), writableFileOffset, Access.READ | Access.WRITE).isNonNull();
+            }
+        }
+        MemoryUtil.copyConjointMemoryAtomic(begin.add(writableBeginPageOffset), heap.add(writableBeginPageOffset), writableSize);
+        return true;
+    }
+
+    @Uninterruptible(reason = "Tear-down in progress.")
+    static int unmapImageHeap(PointerBase heap) {
+        Word size = Isolates.IMAGE_HEAP_END.get().subtract(Isolates.IMAGE_HEAP_BEGIN.get());
+        return VirtualMemoryProvider.get().free(heap, size);
+    }
+
     @Override
     @Uninterruptible(reason = "Tear-down in progress.")
     public int tearDown() {
@@ -107,9 +188,11 @@ public class OSCommittedMemoryProvider implements CommittedMemoryProvider {
             return CEntryPointErrors.NO_ERROR;
         }
 
-        PointerBase heapBase = Isolates.getHeapBase(CEntryPointContext.getCurrentIsolate());
-        Word size = Isolates.IMAGE_HEAP_END.get().subtract(Isolates.IMAGE_HEAP_BEGIN.get());
-        if (VirtualMemoryProvider.get().free(heapBase, size) != 0) {
+        Pointer heapBase = (Pointer) Isolates.getHeapBase(CEntryPointContext.getCurrentIsolate());
+        if (ImageHeapPool.isEnabled() && resetImageHeap(heapBase) && ImageHeapPool.offer(heapBase)) {
+            return CEntryPointErrors.NO_ERROR;
+        }
+        if (unmapImageHeap(heapBase) != 0) {
             return CEntryPointErrors.MAP_HEAP_FAILED;
         }
         return CEntryPointErrors.NO_ERROR;
@@ -32,6 +32,8 @@ import org.graalvm.word.UnsignedWord;
 import org.graalvm.word.WordBase;
 import org.graalvm.word.WordFactory;
 
+import com.oracle.svm.core.annotate.Uninterruptible;
+
 /**
  * Primitive operations for low-level virtual memory management.
  */
@@ -153,6 +155,37 @@ public interface VirtualMemoryProvider {
      */
     int uncommit(PointerBase start, UnsignedWord nbytes);
 
+    /**
+     * Advise that a committed address range is worth backing with large pages, which reduces the
+     * number of TLB misses when the range is accessed. This is only a hint: the memory contents and
+     * access modes do not change, and implementations without support for large pages ignore it.
+     *
+     * @param start The start of the address range, which must be a multiple of the
+     *            {@linkplain #getGranularity() granularity}.
+     * @param nbytes The size in bytes of the address range, which is rounded up to a multiple of
+     *            the {@linkplain #getGranularity() granularity}.
+     * @return 0 when successful or ignored, or a non-zero implementation-specific error code.
+     */
+    @Uninterruptible(reason = "May be called from uninterruptible code.", mayBeInlined = true)
+    default int adviseLargePages(@SuppressWarnings("unused") PointerBase start, @SuppressWarnings("unused") UnsignedWord nbytes) {
+        return 0;
+    }
+
+    /**
+     * Advise that an address range is accessed in random order, so that a page fault maps as few
+     * pages next to the faulting page as possible. This is only a hint: the memory contents and
+     * access modes do not change, and implementations without support for it ignore it.
+     *
+     * @param start The start of the address range, which must be a multiple of the
+     *            {@linkplain #getGranularity() granularity}.
+     * @param nbytes The size in bytes of the address range, which is rounded up to a multiple of
+     *            the {@linkplain #getGranularity() granularity}.
+     * @return 0 when successful or ignored, or a non-zero implementation-specific error code.
+     */
+    default int adviseRandomAccess(@SuppressWarnings("unused") PointerBase start, @SuppressWarnings("unused") UnsignedWord nbytes) {
+        return 0;
+    }
+
     /**
      * Free an entire reserved address range (which may be committed or partially committed). No
      * subrange of a reserved range and no non-reserved range must be specified, or undefined
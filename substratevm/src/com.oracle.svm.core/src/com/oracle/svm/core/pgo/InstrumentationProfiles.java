@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.pgo;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+
+import com.oracle.svm.core.ImageProfiles;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.UnknownObjectField;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+
+/**
+ * The {@link ImageProfiles} of an image whose ahead-of-time compiled code was instrumented with
+ * profiling counters. The code increments the counters directly in the {@link #counterChunks}
+ * arrays, which are allocated during compilation and live in the writable image heap. At exit, the
+ * non-zero counters are written to a file that a later image build reads back with
+ * {@code -H:InstrumentationProfile=}.
+ * <p>
+ * Each line of the profile is the count followed by the tab-separated key of the counter, which
+ * names the method, the bytecode index and what is counted, see the hosted
+ * {@code ProfileInstrumentationPlugin}.
+ */
+public final class InstrumentationProfiles extends ImageProfiles {
+
+    public static class Options {
+        @Option(help = "Instrument compiled code with branch, invoke and receiver type counters, and write them to a profile at exit.")//
+        public static final HostedOptionKey<Boolean> ProfileInstrumentation = new HostedOptionKey<>(false);
+
+        @Option(help = "File to which the profile of an instrumented image is written.")//
+        public static final RuntimeOptionKey<String> ProfileInstrumentationOutput = new RuntimeOptionKey<>("default.iprof");
+    }
+
+    /** The number of counters in each of the {@link #counterChunks}. */
+    public static final int CHUNK_LENGTH = 4096;
+
+    /**
+     * The counters, in chunks of {@link #CHUNK_LENGTH} so that compiled code can reference them
+     * before the total number of counters is known. Set late during image generation.
+     */
+    @UnknownObjectField(types = {long[][].class}) private long[][] counterChunks;
+
+    /** The keys of the counters, by counter number. Set late during image generation. */
+    @UnknownObjectField(types = {String[].class}) private String[] counterKeys;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    InstrumentationProfiles() {
+    }
+
+    @Fold
+    public static boolean isEnabled() {
+        return Options.ProfileInstrumentation.getValue();
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public static InstrumentationProfiles singleton() {
+        return (InstrumentationProfiles) ImageSingletons.lookup(ImageProfiles.class);
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public void setCounters(long[][] newCounterChunks, String[] newCounterKeys) {
+        this.counterChunks = newCounterChunks;
+        this.counterKeys = newCounterKeys;
+    }
+
+    @Override
+    protected String computeProfiles() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < counterKeys.length; i++) {
+            long count = counterChunks[i / CHUNK_LENGTH][i % CHUNK_LENGTH];
+            if (count != 0) {
+                result.append(count).append('\t').append(counterKeys[i]).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    static void dump() {
+        String output = Options.ProfileInstrumentationOutput.getValue();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+            writer.write(dumpProfiles());
+        } catch (IOException e) {
+            Log.log().string("Writing the instrumentation profile to ").string(output).string(" failed: ").string(e.getMessage()).newline();
+        }
+    }
+}
+
+@AutomaticFeature
+class InstrumentationProfilesFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return InstrumentationProfiles.isEnabled();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(ImageProfiles.class, new InstrumentationProfiles());
+        RuntimeSupport.getRuntimeSupport().addShutdownHook(InstrumentationProfiles::dump);
+    }
+
+    @Override
+    public void beforeAnalysis(BeforeAnalysisAccess access) {
+        /* The counter chunks are only referenced from compiled code. */
+        access.registerAsInHeap(long[].class);
+    }
+}
@@ -421,9 +421,13 @@ public final class Safepoint {
 
             Statistics.reset();
             Statistics.setStartNanos();
-            requestSafepoints(reason);
-            waitForSafepoints(reason);
+            final long requestNanos = System.nanoTime();
+            final int requested = requestSafepoints(reason);
+            final IsolateThread laggard = waitForSafepoints(reason);
             Statistics.setFrozenNanos();
+            if (VMOperationHistory.isEnabled()) {
+                VMOperationHistory.singleton().safepointReached(requestNanos, requested, laggard);
+            }
 
             isFrozen = true;
         }
@@ -442,13 +446,18 @@ public final class Safepoint {
             return vmThread == CEntryPointContext.getCurrentIsolateThread();
         }
 
-        /** Send each of the threads (except myself) a request to come to a safepoint. */
-        private static void requestSafepoints(String reason) {
+        /**
+         * Send each of the threads (except myself) a request to come to a safepoint.
+         *
+         * @return The number of threads that were sent a request.
+         */
+        private static int requestSafepoints(String reason) {
             final Log trace = Log.noopLog().string("[Safepoint.Master.requestSafepoints:  reason: ").string(reason);
             Safepoint.getMutex().assertIsLocked("Lock should be held by the time I request a safepoint.");
 
             // Walk the threads list and ask each thread (except myself) to come to a safepoint.
             // TODO: Do I always bring *all* threads to a safepoint? Could I stop some of them?
+            int result = 0;
             for (IsolateThread vmThread = VMThreads.firstThread(); VMThreads.isNonNullThread(vmThread); vmThread = VMThreads.nextThread(vmThread)) {
                 if (isMyself(vmThread)) {
                     continue;
@@ -465,21 +474,29 @@ public final class Safepoint {
                 setSafepointRequested(vmThread, SafepointRequestValues.ENTER);
                 setSafepointRequestedValueBeforeSafepoint(vmThread, saved);
                 Statistics.incRequested();
+                result += 1;
             }
             trace.string("  returns");
             if (trace.isEnabled() && Statistics.Options.GatherSafepointStatistics.getValue()) {
                 trace.string(" with requests: ").signed(Statistics.getRequested());
             }
             trace.string("]").newline();
+            return result;
         }
 
-        /** Wait for there to be no threads (except myself) still waiting to reach a safepoint. */
-
-        private static void waitForSafepoints(String reason) {
+        /**
+         * Wait for there to be no threads (except myself) still waiting to reach a safepoint.
+         *
+         * @return One of the threads that had not reached the safepoint when I looked for the last
+         *         time before all had, i.e., one of the last to arrive, or null if all threads had
+         *         already reached it when I first looked.
+         */
+        private static IsolateThread waitForSafepoints(String reason) {
             final Log trace = Log.noopLog().string("[Safepoint.Master.waitForSafepoints:  reason: ").string(reason).newline();
             Safepoint.getMutex().assertIsLocked("Should hold mutex while waiting for safepoints.");
             final long startNanos = System.nanoTime();
             long loopNanos = startNanos;
+            IsolateThread laggard = WordFactory.nullPointer();
 
             for (int loopCount = 1; /* return */; loopCount += 1) {
                 int atSafepoint = 0;
@@ -522,6 +539,7 @@ public final class Safepoint {
                         }
 
                         notAtSafepoint += 1;
+                        laggard = vmThread;
                     }
                 }
                 if (notAtSafepoint == 0) {
@@ -530,7 +548,7 @@ public final class Safepoint {
                         trace.string(" with installed: ").signed(Statistics.getInstalled());
                     }
                     trace.string("]").newline();
-                    return;
+                    return laggard;
                 }
 
                 trace.string("  loopCount: ").signed(loopCount)
@@ -135,6 +135,7 @@ public abstract class VMOperation extends VMOperationControl.AllocationFreeStack
     private void operateUnderIndicator() {
         final VMOperationControl control = ImageSingletons.lookup(VMOperationControl.class);
         final VMOperation previousInProgress = control.getInProgress();
+        final long startNanos = VMOperationHistory.isEnabled() ? System.nanoTime() : 0L;
         try {
             executingVMThread = CEntryPointContext.getCurrentIsolateThread();
             control.setInProgress(this);
@@ -142,6 +143,9 @@ public abstract class VMOperation extends VMOperationControl.AllocationFreeStack
         } finally {
             control.setInProgress(previousInProgress);
             executingVMThread = WordFactory.nullPointer();
+            if (VMOperationHistory.isEnabled()) {
+                VMOperationHistory.singleton().operationCompleted(this, startNanos, previousInProgress != null);
+            }
         }
     }
 
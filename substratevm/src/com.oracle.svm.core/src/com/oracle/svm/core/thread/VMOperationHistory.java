@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+import com.oracle.svm.core.util.TimeUtils;
+
+//Checkstyle: stop
+import sun.misc.Signal;
+//Checkstyle: resume
+
+/**
+ * A history of the most recent {@link VMOperation}s: for each operation, how long it took to bring
+ * the other threads to a safepoint, which thread was among the last to arrive, and how long the
+ * operation itself ran. That tells a long pause caused by a slow operation, e.g., a collection, apart from one
+ * caused by a thread that took long to reach a safepoint check.
+ * <p>
+ * The records are kept in a ring buffer that is allocated at image build time. Only the thread
+ * that holds the VMOperation lock adds records, so adding one neither allocates nor locks. Readers
+ * do not lock either: each slot carries a version that is odd while the slot is written, and a
+ * reader discards a slot whose version changed while it was read.
+ */
+public final class VMOperationHistory {
+
+    public static class Options {
+        @Option(help = "Number of recent VMOperations for which latencies are recorded, 0 to record none.")//
+        public static final HostedOptionKey<Integer> VMOperationHistorySize = new HostedOptionKey<>(0);
+
+        @Option(help = "Name of a signal, for example TRAP, on which the VMOperation history is written to the log, or none if empty.")//
+        public static final RuntimeOptionKey<String> VMOperationHistoryDumpSignal = new RuntimeOptionKey<>("");
+    }
+
+    @Fold
+    public static boolean isEnabled() {
+        return Options.VMOperationHistorySize.getValue() > 0;
+    }
+
+    @Fold
+    public static VMOperationHistory singleton() {
+        return ImageSingletons.lookup(VMOperationHistory.class);
+    }
+
+    /** The sequence number of the next record. */
+    private final AtomicLong nextSequence;
+    /** For each slot, 2 * sequence + 1 while the record is written, 2 * sequence + 2 after. */
+    private final AtomicLongArray versions;
+    private final String[] names;
+    private final long[] startNanos;
+    private final long[] timeToSafepointNanos;
+    private final long[] operationNanos;
+    private final int[] safepointThreads;
+    private final long[] laggardThreadIds;
+
+    /*
+     * The safepoint that was reached last, to be charged to the next outermost operation that
+     * completes. Operations that are nested in another one run in the safepoint of the outer
+     * operation, so they leave it to the outer one. The fields are only accessed by the thread that
+     * holds the VMOperation lock.
+     */
+    private boolean pendingSafepoint;
+    private long pendingTimeToSafepointNanos;
+    private int pendingSafepointThreads;
+    private long pendingLaggardThreadId;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    VMOperationHistory(int size) {
+        nextSequence = new AtomicLong(0);
+        versions = new AtomicLongArray(size);
+        names = new String[size];
+        startNanos = new long[size];
+        timeToSafepointNanos = new long[size];
+        operationNanos = new long[size];
+        safepointThreads = new int[size];
+        laggardThreadIds = new long[size];
+    }
+
+    /**
+     * Called when all other threads have reached the safepoint that was requested at requestNanos.
+     *
+     * @param threads the number of threads that were asked to come to the safepoint
+     * @param laggard one of the threads that had not reached the safepoint when it was checked
+     *            for the last time before all threads had, or null if none of the threads had to
+     *            be waited for
+     */
+    void safepointReached(long requestNanos, int threads, IsolateThread laggard) {
+        pendingSafepoint = true;
+        pendingTimeToSafepointNanos = TimeUtils.nanoSecondsSince(requestNanos);
+        pendingSafepointThreads = threads;
+        pendingLaggardThreadId = -1L;
+        if (VMThreads.isNonNullThread(laggard)) {
+            Thread thread = JavaThreads.currentThread.get(laggard);
+            if (thread != null) {
+                pendingLaggardThreadId = thread.getId();
+            }
+        }
+    }
+
+    /**
+     * Called when an operation that started at operationStartNanos has completed.
+     *
+     * @param nested whether the operation ran within another operation
+     */
+    void operationCompleted(VMOperation operation, long operationStartNanos, boolean nested) {
+        final long elapsed = TimeUtils.nanoSecondsSince(operationStartNanos);
+        final long sequence = nextSequence.get();
+        final int slot = (int) (sequence % names.length);
+        versions.set(slot, 2 * sequence + 1);
+        names[slot] = operation.getName();
+        startNanos[slot] = operationStartNanos;
+        operationNanos[slot] = elapsed;
+        if (pendingSafepoint && !nested) {
+            timeToSafepointNanos[slot] = pendingTimeToSafepointNanos;
+            safepointThreads[slot] = pendingSafepointThreads;
+            laggardThreadIds[slot] = pendingLaggardThreadId;
+            pendingSafepoint = false;
+        } else {
+            /*
+             * The operation did not need a safepoint, or ran in one that was reached before, e.g.,
+             * that of the operation it is nested in.
+             */
+            timeToSafepointNanos[slot] = 0L;
+            safepointThreads[slot] = 0;
+            laggardThreadIds[slot] = -1L;
+        }
+        versions.set(slot, 2 * sequence + 2);
+        nextSequence.set(sequence + 1);
+    }
+
+    /** A snapshot of the recorded operations, from the oldest to the most recent. */
+    public List<Record> getRecords() {
+        final List<Record> result = new ArrayList<>(names.length);
+        final long next = nextSequence.get();
+        for (long sequence = Math.max(0L, next - names.length); sequence < next; sequence++) {
+            final int slot = (int) (sequence % names.length);
+            final long version = versions.get(slot);
+            if (version != 2 * sequence + 2) {
+                /* Overwritten since, or still being written. */
+                continue;
+            }
+            final Record record = new Record(names[slot], startNanos[slot], timeToSafepointNanos[slot], operationNanos[slot], safepointThreads[slot], laggardThreadIds[slot]);
+            if (versions.get(slot) == version) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /** Write the recorded operations and a summary to the log. */
+    public void dump(Log log) {
+        final List<Record> records = getRecords();
+        long maxTimeToSafepoint = 0L;
+        long maxOperation = 0L;
+        long totalTimeToSafepoint = 0L;
+        long totalOperation = 0L;
+        log.string("[VMOperationHistory:").newline();
+        for (Record record : records) {
+            log.string("  ").string(record.getName())
+                            .string("  startNanos: ").signed(record.getStartNanos())
+                            .string("  timeToSafepointNanos: ").signed(record.getTimeToSafepointNanos())
+                            .string("  operationNanos: ").signed(record.getOperationNanos())
+                            .string("  safepointThreads: ").signed(record.getSafepointThreads())
+                            .string("  laggardThreadId: ").signed(record.getLaggardThreadId())
+                            .newline();
+            maxTimeToSafepoint = Math.max(maxTimeToSafepoint, record.getTimeToSafepointNanos());
+            maxOperation = Math.max(maxOperation, record.getOperationNanos());
+            totalTimeToSafepoint += record.getTimeToSafepointNanos();
+            totalOperation += record.getOperationNanos();
+        }
+        log.string("  operations: ").signed(records.size())
+                        .string("  totalTimeToSafepointNanos: ").signed(totalTimeToSafepoint)
+                        .string("  maxTimeToSafepointNanos: ").signed(maxTimeToSafepoint)
+                        .string("  totalOperationNanos: ").signed(totalOperation)
+                        .string("  maxOperationNanos: ").signed(maxOperation)
+                        .string("]").newline();
+        log.flush();
+    }
+
+    static void installDumpSignalHandler() {
+        String signal = Options.VMOperationHistoryDumpSignal.getValue();
+        if (!signal.isEmpty()) {
+            Signal.handle(new Signal(signal), s -> singleton().dump(Log.log()));
+        }
+    }
+
+    /** The latencies of one completed VMOperation. */
+    public static final class Record {
+        private final String name;
+        private final long startNanos;
+        private final long timeToSafepointNanos;
+        private final long operationNanos;
+        private final int safepointThreads;
+        private final long laggardThreadId;
+
+        Record(String name, long startNanos, long timeToSafepointNanos, long operationNanos, int safepointThreads, long laggardThreadId) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.timeToSafepointNanos = timeToSafepointNanos;
+            this.operationNanos = operationNanos;
+            this.safepointThreads = safepointThreads;
+            this.laggardThreadId = laggardThreadId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** The {@link System#nanoTime()} at which the operation started. */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * The time from requesting the safepoint in which the operation ran until all threads had
+         * reached it, or 0 if the operation did not bring the system to a safepoint itself.
+         */
+        public long getTimeToSafepointNanos() {
+            return timeToSafepointNanos;
+        }
+
+        public long getOperationNanos() {
+            return operationNanos;
+        }
+
+        /** The number of threads that were brought to the safepoint. */
+        public int getSafepointThreads() {
+            return safepointThreads;
+        }
+
+        /**
+         * The {@link Thread#getId() id} of a thread that was still running when the safepoint was
+         * checked for the last time before all threads had reached it, i.e., one of the threads
+         * that reached it last, or -1 if no thread had to be waited for. The safepoint is checked
+         * by polling, so if several threads arrived between the last two checks, which of them
+         * arrived last is not known.
+         */
+        public long getLaggardThreadId() {
+            return laggardThreadId;
+        }
+    }
+}
+
+@AutomaticFeature
+class VMOperationHistoryFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return VMOperationHistory.isEnabled();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(VMOperationHistory.class, new VMOperationHistory(VMOperationHistory.Options.VMOperationHistorySize.getValue()));
+        RuntimeSupport.getRuntimeSupport().addStartupHook(VMOperationHistory::installDumpSignalHandler);
+    }
+}
@@ -89,6 +89,11 @@ public class SubstrateInstalledCodeImpl extends InstalledCode implements Substra
         CodeInfoTable.invalidateInstalledCode(this);
     }
 
+    @Override
+    public void onEvicted(CharSequence reason) {
+        /* Nothing to do, the code is simply no longer valid. */
+    }
+
     @Override
     public Object executeVarargs(Object... args) throws InvalidInstalledCodeException {
         throw shouldNotReachHere("No implementation in Substrate VM");
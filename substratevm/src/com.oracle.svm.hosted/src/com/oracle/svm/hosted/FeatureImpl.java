@@ -514,6 +514,7 @@ public class FeatureImpl {
         protected final Path imagePath;
         protected final Path tempDirectory;
         protected final NativeImageKind imageKind;
+        protected final List<Path> writtenFiles = new ArrayList<>();
 
         AfterImageWriteAccessImpl(FeatureHandler featureHandler, ImageClassLoader imageClassLoader, HostedUniverse hUniverse, Path imagePath, Path tempDirectory, NativeImageKind imageKind) {
             super(featureHandler, imageClassLoader);
@@ -539,5 +540,14 @@ public class FeatureImpl {
         public NativeImageKind getImageKind() {
             return imageKind;
         }
+
+        /** Records a file that a feature wrote to the output directory along with the image. */
+        public void registerWrittenFile(Path file) {
+            writtenFiles.add(file);
+        }
+
+        public List<Path> getWrittenFiles() {
+            return writtenFiles;
+        }
     }
 }
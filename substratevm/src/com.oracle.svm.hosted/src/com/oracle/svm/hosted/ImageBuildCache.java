@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.options.OptionType;
+import org.graalvm.compiler.options.OptionValues;
+import org.graalvm.nativeimage.Platform;
+
+import com.oracle.graal.pointsto.api.HostVM;
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.SubstrateOptionsParser;
+import com.oracle.svm.core.util.VMError;
+
+/**
+ * Persistent cache of complete image builds. The key of a cache entry is a digest of everything
+ * that determines the result of a build: the contents of the image class path, the arguments passed
+ * to the image builder, the contents of the files and directories named by the options in
+ * {@link #INPUT_FILE_OPTIONS}, the identity of the C compiler, and the class path of the image
+ * builder itself. When a build is requested with a key that is already present in the cache, the
+ * files written by the earlier build are copied to the output directory and the analysis and
+ * compilation are skipped altogether. If the C compiler cannot be identified, the build is not
+ * cached.
+ *
+ * A cache entry contains exactly the files that the image writer and the
+ * {@link org.graalvm.nativeimage.Feature#afterImageWrite features} report as written: the image
+ * and, e.g., its header files. Other files in the output directory are never cached or
+ * overwritten.
+ *
+ * Digests of individual class path entries are remembered for the lifetime of the builder VM, so
+ * that a long running {@link com.oracle.svm.hosted.server.NativeImageBuildServer build server}
+ * only needs to rehash the entries that were modified since the previous build.
+ */
+public final class ImageBuildCache {
+
+    public static class Options {
+        @Option(help = "Directory of a persistent cache of image builds. Builds with unchanged inputs are copied from the cache instead of being rebuilt.", type = OptionType.User)//
+        public static final HostedOptionKey<String> ImageBuildCache = new HostedOptionKey<>("");
+    }
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Hosted options whose values are lists of files or directories that the build reads. They are
+     * matched by name because some of them are declared in projects that this one does not depend
+     * on.
+     */
+    private static final List<String> INPUT_FILE_OPTIONS = Arrays.asList("ReflectionConfigurationFiles", "DynamicProxyConfigurationFiles", "JNIConfigurationFiles", "SubstitutionFiles",
+                    "CLibraryPath", "InstrumentationProfile", "ImageLayoutProfile", "ImageLayoutMap");
+
+    /** Digests of class path entries, valid as long as the size and modification time match. */
+    private static final Map<Path, EntryDigest> entryDigests = new ConcurrentHashMap<>();
+
+    private static final class EntryDigest {
+        final long size;
+        final FileTime lastModified;
+        final byte[] digest;
+
+        EntryDigest(long size, FileTime lastModified, byte[] digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    /** The directory of the cache entry, or {@code null} if the build cannot be cached. */
+    private final Path entryDirectory;
+    private final Path outputDirectory;
+
+    private ImageBuildCache(Path entryDirectory, Path outputDirectory) {
+        this.entryDirectory = entryDirectory;
+        this.outputDirectory = outputDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the cache for a build with the given arguments and image class path, or {@code null}
+     * if no cache directory was specified.
+     */
+    public static ImageBuildCache create(OptionValues options, String[] arguments, String[] classpath) {
+        String cacheDirectory = Options.ImageBuildCache.getValue(options);
+        if (cacheDirectory.isEmpty()) {
+            return null;
+        }
+        Path outputDirectory = NativeImageGenerator.generatedFiles(options);
+        String compilerVersion = compilerVersion();
+        if (compilerVersion == null) {
+            return new ImageBuildCache(null, outputDirectory);
+        }
+        MessageDigest digest = newDigest();
+        update(digest, compilerVersion);
+        for (String argument : arguments) {
+            update(digest, argument);
+            int valueStart = argument.indexOf('=');
+            if (argument.startsWith(SubstrateOptionsParser.HOSTED_OPTION_PREFIX) && valueStart != -1) {
+                String optionName = argument.substring(SubstrateOptionsParser.HOSTED_OPTION_PREFIX.length(), valueStart);
+                if (INPUT_FILE_OPTIONS.contains(optionName)) {
+                    updateWithReferencedFiles(digest, argument.substring(valueStart + 1));
+                }
+            }
+        }
+        /* The default C library path is not passed as an argument. */
+        updateWithReferencedFiles(digest, SubstrateOptions.CLibraryPath.getValue(options));
+        update(digest, System.getProperty("java.vm.version"));
+        for (String entry : classpath) {
+            update(digest, entry);
+            digest.update(entryDigest(Paths.get(entry)));
+        }
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            update(digest, entry);
+            digest.update(entryDigest(Paths.get(entry)));
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return new ImageBuildCache(Paths.get(cacheDirectory).resolve(key.toString()), outputDirectory);
+    }
+
+    /**
+     * Adds the contents of the files and directories named by an option value, which is split at
+     * commas and path separators. Paths that do not exist are ignored, they are already covered by
+     * the argument itself.
+     */
+    private static void updateWithReferencedFiles(MessageDigest digest, String value) {
+        for (String part : value.split("[," + Pattern.quote(File.pathSeparator) + "]")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            Path path;
+            try {
+                path = Paths.get(part);
+            } catch (InvalidPathException ex) {
+                continue;
+            }
+            if (Files.exists(path)) {
+                update(digest, path.toAbsolutePath().toString());
+                digest.update(entryDigest(path));
+            }
+        }
+    }
+
+    /**
+     * Returns the version and configuration that the C compiler reports about itself, or
+     * {@code null} if the compiler cannot be run. The compiler is also the driver of the linker, so
+     * this identifies the toolchain that produces the image.
+     */
+    private static String compilerVersion() {
+        List<String> command = new ArrayList<>();
+        if (Platform.includedIn(Platform.WINDOWS.class)) {
+            /* Without arguments, CL only prints its version. */
+            command.add("CL");
+        } else {
+            command.add("gcc");
+            command.add("-v");
+        }
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                output = reader.lines().collect(Collectors.joining("\n"));
+            }
+            process.waitFor();
+            return output.isEmpty() ? null : output;
+        } catch (IOException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Copies the files of a cached build to the output directory. Returns {@code false} if no build
+     * with the same inputs is in the cache.
+     */
+    public boolean restore(HostVM hostVM) {
+        if (entryDirectory == null) {
+            hostVM.warn("the image is not cached because the C compiler could not be identified");
+            return false;
+        }
+        if (!Files.isDirectory(entryDirectory)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.walk(entryDirectory)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                Path target = outputDirectory.resolve(entryDirectory.relativize(file).toString());
+                Files.createDirectories(target.getParent());
+                Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                /* Make the restored files look like the result of a fresh build. */
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            return true;
+        } catch (IOException ex) {
+            hostVM.warn("could not restore image from the image build cache: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stores the files that a successful build wrote to the output directory. Entries are written to
+     * a temporary directory first and then moved into place, so that concurrent builds never see a
+     * partially written entry.
+     */
+    public void store(HostVM hostVM, List<Path> writtenFiles) {
+        if (entryDirectory == null || Files.isDirectory(entryDirectory)) {
+            return;
+        }
+        List<Path> generated = new ArrayList<>();
+        for (Path file : writtenFiles) {
+            Path absolute = file.toAbsolutePath().normalize();
+            if (!absolute.startsWith(outputDirectory) || !Files.isRegularFile(absolute)) {
+                hostVM.warn("the image is not cached because " + file + " is not a file in the output directory " + outputDirectory);
+                return;
+            }
+            if (!generated.contains(absolute)) {
+                generated.add(absolute);
+            }
+        }
+        Path temporaryDirectory = null;
+        try {
+            Files.createDirectories(entryDirectory.getParent());
+            temporaryDirectory = Files.createTempDirectory(entryDirectory.getParent(), entryDirectory.getFileName() + ".");
+            for (Path file : generated) {
+                Path target = temporaryDirectory.resolve(outputDirectory.relativize(file).toString());
+                Files.createDirectories(target.getParent());
+                Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            Files.move(temporaryDirectory, entryDirectory, StandardCopyOption.ATOMIC_MOVE);
+            temporaryDirectory = null;
+        } catch (IOException ex) {
+            hostVM.warn("could not store image in the image build cache: " + ex.getMessage());
+        } finally {
+            if (temporaryDirectory != null) {
+                deleteQuietly(temporaryDirectory);
+            }
+        }
+    }
+
+    private static byte[] entryDigest(Path entry) {
+        if (Files.isDirectory(entry)) {
+            MessageDigest digest = newDigest();
+            try (Stream<Path> files = Files.walk(entry)) {
+                for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    update(digest, entry.relativize(file).toString());
+                    digest.update(fileDigest(file));
+                }
+            } catch (IOException ex) {
+                throw VMError.shouldNotReachHere(ex);
+            }
+            return digest.digest();
+        } else if (Files.isRegularFile(entry)) {
+            return fileDigest(entry);
+        } else {
+            /* Missing class path entries are ignored by the class loader too. */
+            return new byte[0];
+        }
+    }
+
+    private static byte[] fileDigest(Path file) {
+        try {
+            Path key = file.toAbsolutePath();
+            long size = Files.size(file);
+            FileTime lastModified = Files.getLastModifiedTime(file);
+            EntryDigest cached = entryDigests.get(key);
+            if (cached != null && cached.size == size && cached.lastModified.equals(lastModified)) {
+                return cached.digest;
+            }
+            MessageDigest digest = newDigest();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(file)) {
+                for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            byte[] result = digest.digest();
+            entryDigests.put(key, new EntryDigest(size, lastModified, result));
+            return result;
+        } catch (IOException ex) {
+            throw VMError.shouldNotReachHere(ex);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw VMError.shouldNotReachHere(ex);
+        }
+    }
+
+    private static void deleteQuietly(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted((a, b) -> b.compareTo(a)).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ex) {
+            /* A stale temporary directory does not affect the correctness of the cache. */
+        }
+    }
+}
@@ -160,6 +160,7 @@ import com.oracle.svm.core.graal.meta.SubstrateSnippetReflectionProvider;
 import com.oracle.svm.core.graal.meta.SubstrateStampProvider;
 import com.oracle.svm.core.graal.meta.SubstrateTargetDescription;
 import com.oracle.svm.core.graal.phases.CollectDeoptimizationSourcePositionsPhase;
+import com.oracle.svm.core.graal.phases.CountedLoopSafepointPhase;
 import com.oracle.svm.core.graal.phases.DeadStoreRemovalPhase;
 import com.oracle.svm.core.graal.phases.MethodSafepointInsertionPhase;
 import com.oracle.svm.core.graal.phases.OptimizeExceptionCallsPhase;
@@ -266,6 +267,7 @@ public class NativeImageGenerator {
     private BigBang bigbang;
     private AbstractBootImage image;
     private AtomicBoolean buildStarted = new AtomicBoolean();
+    private ImageBuildCache buildCache;
 
     public NativeImageGenerator(ImageClassLoader loader, HostedOptionProvider optionProvider) {
         this.loader = loader;
@@ -279,6 +281,13 @@ public class NativeImageGenerator {
         optionProvider.getRuntimeValues().put(GraalOptions.EagerSnippets, true);
     }
 
+    /**
+     * Sets the cache that the build is restored from, or stored in if it is not in the cache yet.
+     */
+    public void setBuildCache(ImageBuildCache buildCache) {
+        this.buildCache = buildCache;
+    }
+
     public static Platform defaultPlatform(ClassLoader classLoader) {
         /*
          * We cannot use a regular hosted option for the platform class: The code that instantiates
@@ -514,6 +523,10 @@ public class NativeImageGenerator {
 
                     svmHost = new SVMHost(options, platform, analysisPolicy, loader.getClassLoader());
 
+                    if (buildCache != null && buildCache.restore(svmHost)) {
+                        throw new InterruptImageBuilding("image '" + imageName + "' is up to date, it was restored from the image build cache");
+                    }
+
                     registerEntryPoints(entryPoints);
 
                     /*
@@ -760,32 +773,36 @@ public class NativeImageGenerator {
 
                 /*
                  * Execute analysis reporting here. This code is executed even if unsupported
-                 * features are reported or the analysis fails due to any other reasons.
+                 * features are reported or the analysis fails due to any other reasons. There is
+                 * nothing to report if the analysis did not start, e.g., because the image was
+                 * restored from the image build cache.
                  */
 
-                if (AnalysisReportsOptions.PrintAnalysisCallTree.getValue(options)) {
-                    String reportName = imageName.substring(imageName.lastIndexOf("/") + 1);
-                    CallTreePrinter.print(bigbang, SubstrateOptions.Path.getValue(), reportName);
-                }
+                if (bigbang != null) {
+                    if (AnalysisReportsOptions.PrintAnalysisCallTree.getValue(options)) {
+                        String reportName = imageName.substring(imageName.lastIndexOf("/") + 1);
+                        CallTreePrinter.print(bigbang, SubstrateOptions.Path.getValue(), reportName);
+                    }
 
-                if (AnalysisReportsOptions.PrintImageObjectTree.getValue(options)) {
-                    String reportName = imageName.substring(imageName.lastIndexOf("/") + 1);
-                    ObjectTreePrinter.print(bigbang, SubstrateOptions.Path.getValue(), reportName);
-                }
+                    if (AnalysisReportsOptions.PrintImageObjectTree.getValue(options)) {
+                        String reportName = imageName.substring(imageName.lastIndexOf("/") + 1);
+                        ObjectTreePrinter.print(bigbang, SubstrateOptions.Path.getValue(), reportName);
+                    }
 
-                if (PointstoOptions.ReportAnalysisStatistics.getValue(options)) {
-                    PointsToStats.report(bigbang, imageName.replace("images/", ""));
-                }
+                    if (PointstoOptions.ReportAnalysisStatistics.getValue(options)) {
+                        PointsToStats.report(bigbang, imageName.replace("images/", ""));
+                    }
 
-                if (PointstoOptions.PrintSynchronizedAnalysis.getValue(options)) {
-                    TypeState allSynchronizedTypeState = bigbang.getAllSynchronizedTypeState();
-                    String typesString = allSynchronizedTypeState.closeToAllInstantiated(bigbang) ? "close to all instantiated" : //
-                                    StreamSupport.stream(allSynchronizedTypeState.types().spliterator(), false).map(AnalysisType::getName).collect(Collectors.joining(", "));
-                    System.out.println();
-                    System.out.println("AllSynchronizedTypes");
-                    System.out.println("Synchronized types #: " + allSynchronizedTypeState.typesCount());
-                    System.out.println("Types: " + typesString);
-                    System.out.println();
+                    if (PointstoOptions.PrintSynchronizedAnalysis.getValue(options)) {
+                        TypeState allSynchronizedTypeState = bigbang.getAllSynchronizedTypeState();
+                        String typesString = allSynchronizedTypeState.closeToAllInstantiated(bigbang) ? "close to all instantiated" : //
+                                        StreamSupport.stream(allSynchronizedTypeState.types().spliterator(), false).map(AnalysisType::getName).collect(Collectors.joining(", "));
+                        System.out.println();
+                        System.out.println("AllSynchronizedTypes");
+                        System.out.println("Synchronized types #: " + allSynchronizedTypeState.typesCount());
+                        System.out.println("Types: " + typesString);
+                        System.out.println();
+                    }
                 }
             }
             if (error == null && NativeImageOptions.ReturnAfterAnalysis.getValue()) {
@@ -920,6 +937,14 @@ public class NativeImageGenerator {
 
                 AfterImageWriteAccessImpl afterConfig = new AfterImageWriteAccessImpl(featureHandler, loader, hUniverse, imagePath, tmpDir, image.getBootImageKind());
                 featureHandler.forEachFeature(feature -> feature.afterImageWrite(afterConfig));
+
+                if (buildCache != null) {
+                    List<Path> writtenFiles = new ArrayList<>();
+                    writtenFiles.add(imagePath);
+                    writtenFiles.addAll(image.getWrittenFiles());
+                    writtenFiles.addAll(afterConfig.getWrittenFiles());
+                    buildCache.store(svmHost, writtenFiles);
+                }
             }
         }
     }
@@ -1175,7 +1200,16 @@ public class NativeImageGenerator {
             /*
              * Graal inserts only loop safepoints. We want a SafepointNode also before every return.
              */
-            midTier.findPhase(LoopSafepointInsertionPhase.class).add(new MethodSafepointInsertionPhase());
+            ListIterator<BasePhase<? super MidTierContext>> it = midTier.findPhase(LoopSafepointInsertionPhase.class);
+            it.add(new MethodSafepointInsertionPhase());
+            int safepointInterval = CountedLoopSafepointPhase.Options.CountedLoopSafepointInterval.getValue();
+            int shortLoopMaxIterations = CountedLoopSafepointPhase.Options.ShortCountedLoopMaxIterations.getValue();
+            if (safepointInterval > 1 || shortLoopMaxIterations > 0) {
+                /* Thin out the loop safepoints before they are inserted. */
+                it.previous();
+                it.previous();
+                it.add(new CountedLoopSafepointPhase(safepointInterval, shortLoopMaxIterations));
+            }
         } else {
             /* No need for safepoints when we have only one thread. */
             VMError.guarantee(midTier.removePhase(LoopSafepointInsertionPhase.class));
@@ -91,6 +91,9 @@ public class NativeImageOptions {
     @Option(help = "Print the sizes of the native image heap as the image is built")//
     public static final HostedOptionKey<Boolean> PrintImageHeapPartitionSizes = new HostedOptionKey<>(false);
 
+    @Option(help = "Write the native image heap also sequentially and check that the parallel write produced the same sections")//
+    public static final HostedOptionKey<Boolean> VerifyImageHeapWrite = new HostedOptionKey<>(false);
+
     @Option(help = "Compiles all methods as deoptimization targets for testing")//
     public static final HostedOptionKey<Boolean> DeoptimizeAll = new HostedOptionKey<>(false);
 
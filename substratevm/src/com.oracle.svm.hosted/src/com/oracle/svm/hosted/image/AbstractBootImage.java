@@ -25,6 +25,7 @@
 package com.oracle.svm.hosted.image;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.graalvm.compiler.debug.DebugContext;
@@ -46,6 +47,7 @@ public abstract class AbstractBootImage {
     protected final NativeImageCodeCache codeCache;
     protected final List<HostedMethod> entryPoints;
     protected int resultingImageSize; // for statistical output
+    private final List<Path> writtenFiles = new ArrayList<>();
 
     public enum NativeImageKind {
         SHARED_LIBRARY(false) {
@@ -132,6 +134,16 @@ public abstract class AbstractBootImage {
      */
     public abstract Path write(DebugContext debug, Path outputDirectory, Path tempDirectory, String imageName, BeforeImageWriteAccessImpl config);
 
+    /** Records a file in the output directory that {@link #write} created besides the image. */
+    protected void registerWrittenFile(Path file) {
+        writtenFiles.add(file);
+    }
+
+    /** Returns the files in the output directory that {@link #write} created besides the image. */
+    public List<Path> getWrittenFiles() {
+        return writtenFiles;
+    }
+
     /**
      * Returns the ObjectFile.Section within the image, if any, whose vaddr defines the image's base
      * vaddr.
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.image;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageSingletons;
+
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.heap.HeapDumpMetadata;
+import com.oracle.svm.core.heap.HeapDumpWriter;
+import com.oracle.svm.core.util.VMError;
+import com.oracle.svm.hosted.FeatureImpl.CompilationAccessImpl;
+import com.oracle.svm.hosted.meta.HostedField;
+import com.oracle.svm.hosted.meta.HostedType;
+
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ResolvedJavaField;
+
+/**
+ * Records the layout of the instance and static fields of all types for the heap dump writer.
+ */
+@AutomaticFeature
+class HeapDumpMetadataFeature implements Feature {
+
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return HeapDumpWriter.isSupported();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(HeapDumpMetadata.class, new HeapDumpMetadata());
+    }
+
+    @Override
+    public void beforeCompilation(BeforeCompilationAccess a) {
+        CompilationAccessImpl config = (CompilationAccessImpl) a;
+
+        int numTypes = 0;
+        for (HostedType type : config.getUniverse().getTypes()) {
+            numTypes = Math.max(numTypes, type.getTypeID() + 1);
+        }
+        HostedType[] typesByID = new HostedType[numTypes];
+        for (HostedType type : config.getUniverse().getTypes()) {
+            typesByID[type.getTypeID()] = type;
+        }
+
+        List<HostedField> fields = new ArrayList<>();
+        int[] typeFieldStarts = new int[numTypes + 1];
+        int[] typeStaticFieldStarts = new int[numTypes];
+        for (int typeID = 0; typeID < numTypes; typeID++) {
+            HostedType type = typesByID[typeID];
+            typeFieldStarts[typeID] = fields.size();
+            if (type != null) {
+                for (HostedField field : type.getInstanceFields(false)) {
+                    if (field.hasLocation()) {
+                        fields.add(field);
+                    }
+                }
+            }
+            typeStaticFieldStarts[typeID] = fields.size();
+            if (type != null) {
+                for (ResolvedJavaField field : type.getStaticFields()) {
+                    /* Static fields that are never written are constant-folded and have no storage. */
+                    if (((HostedField) field).hasLocation()) {
+                        fields.add((HostedField) field);
+                    }
+                }
+            }
+        }
+        typeFieldStarts[numTypes] = fields.size();
+
+        Map<String, Integer> nameIndices = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] fieldNameIndices = new int[fields.size()];
+        int[] fieldLocations = new int[fields.size()];
+        byte[] fieldTypes = new byte[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            HostedField field = fields.get(i);
+            fieldNameIndices[i] = nameIndices.computeIfAbsent(field.getName(), name -> {
+                names.add(name);
+                return names.size() - 1;
+            });
+            fieldLocations[i] = field.getLocation();
+            fieldTypes[i] = toHeapDumpType(field.getStorageKind());
+        }
+
+        ImageSingletons.lookup(HeapDumpMetadata.class).setData(typeFieldStarts, typeStaticFieldStarts, fieldNameIndices, fieldLocations, fieldTypes, names.toArray(new String[names.size()]));
+    }
+
+    private static byte toHeapDumpType(JavaKind kind) {
+        switch (kind) {
+            case Object:
+                return HeapDumpWriter.TYPE_OBJECT;
+            case Boolean:
+                return HeapDumpWriter.TYPE_BOOLEAN;
+            case Char:
+                return HeapDumpWriter.TYPE_CHAR;
+            case Float:
+                return HeapDumpWriter.TYPE_FLOAT;
+            case Double:
+                return HeapDumpWriter.TYPE_DOUBLE;
+            case Byte:
+                return HeapDumpWriter.TYPE_BYTE;
+            case Short:
+                return HeapDumpWriter.TYPE_SHORT;
+            case Int:
+                return HeapDumpWriter.TYPE_INT;
+            case Long:
+                return HeapDumpWriter.TYPE_LONG;
+            default:
+                throw VMError.shouldNotReachHere("Unexpected field kind " + kind);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.image;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageSingletons;
+
+import com.oracle.graal.pointsto.api.HostVM;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.layoutprofile.ImageLayoutProfileRecorder;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.util.UserError;
+import com.oracle.svm.hosted.FeatureImpl.AfterImageWriteAccessImpl;
+import com.oracle.svm.hosted.FeatureImpl.BeforeImageWriteAccessImpl;
+import com.oracle.svm.hosted.meta.HostedMethod;
+
+/**
+ * A profile of the image code and image heap pages that a training run of an earlier build of the
+ * image touched, as written by {@link ImageLayoutProfileRecorder}. The profile only has offsets, so
+ * the build that recorded it also writes a layout map next to its image, which lists the offset,
+ * size and identity of every method and image heap object. Together they give the identities of
+ * the methods and objects that were touched, and this build places those first in their section
+ * or partition. Methods and objects that are used at startup then share pages instead of being
+ * spread over the whole image.
+ * <p>
+ * Methods are identified by their signature. Strings are identified by their length and hash code,
+ * classes by their name, and all other objects by their class and their position among the objects
+ * of that class in the order in which they were added to the image heap. The identities therefore
+ * still match when the code or the heap has changed a little since the profile was recorded.
+ * Methods and objects that are not in the profile are placed as if they were not touched.
+ */
+public final class ImageLayoutProfile {
+
+    public static class Options {
+        @Option(help = "Place the methods and image heap objects that are listed as touched in this profile, recorded with -H:+RecordImageLayoutProfile, next to each other.")//
+        public static final HostedOptionKey<String> ImageLayoutProfile = new HostedOptionKey<>("");
+
+        @Option(help = "The layout map <image>.layoutmap that the build recording the profile given with -H:ImageLayoutProfile= wrote next to its image.")//
+        public static final HostedOptionKey<String> ImageLayoutMap = new HostedOptionKey<>("");
+    }
+
+    static final String LAYOUT_MAP_SUFFIX = ".layoutmap";
+
+    /** The touched ranges of one region, sorted and not overlapping. */
+    static final class Region {
+        final long[] starts;
+        final long[] ends;
+
+        Region(List<long[]> ranges) {
+            this.starts = new long[ranges.size()];
+            this.ends = new long[ranges.size()];
+            for (int i = 0; i < ranges.size(); i++) {
+                starts[i] = ranges.get(i)[0];
+                ends[i] = ranges.get(i)[1];
+            }
+        }
+
+        /** Whether any part of [start, start + length) was touched. */
+        boolean isTouched(long start, long length) {
+            int low = 0;
+            int high = starts.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (ends[mid] <= start) {
+                    low = mid + 1;
+                } else if (starts[mid] >= start + length) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final String fileName;
+    /** The identities of the touched methods and objects, per region. */
+    private final Map<String, Set<String>> touched;
+
+    private ImageLayoutProfile(String fileName, Map<String, Set<String>> touched) {
+        this.fileName = fileName;
+        this.touched = touched;
+    }
+
+    public static boolean isPresent() {
+        return ImageSingletons.contains(ImageLayoutProfile.class);
+    }
+
+    public static ImageLayoutProfile singleton() {
+        return ImageSingletons.lookup(ImageLayoutProfile.class);
+    }
+
+    /** The identity of a method in the layout map. */
+    static String methodKey(HostedMethod method) {
+        return method.format("%H.%n(%P)");
+    }
+
+    /**
+     * Returns the identities of the touched methods or objects of a region, or null if the profile
+     * has no information about the region.
+     */
+    Set<String> getTouched(String regionName, HostVM hostVM) {
+        Set<String> result = touched.get(regionName);
+        if (result == null) {
+            hostVM.warn("image layout profile " + fileName + " has no region " + regionName + ", its default layout is kept.");
+        }
+        return result;
+    }
+
+    static ImageLayoutProfile load(String profileFileName, String mapFileName) {
+        Map<String, Region> regions = new HashMap<>();
+        String regionName = null;
+        List<long[]> ranges = new ArrayList<>();
+        for (String line : readLines(profileFileName, "image layout profile")) {
+            String[] parts = line.trim().split(" ");
+            try {
+                if (parts[0].isEmpty() || parts[0].equals("pagesize")) {
+                    continue;
+                } else if (parts[0].equals("region") && parts.length == 3) {
+                    if (regionName != null) {
+                        regions.put(regionName, new Region(ranges));
+                    }
+                    regionName = parts[1];
+                    ranges = new ArrayList<>();
+                } else if (parts.length == 2 && regionName != null) {
+                    ranges.add(new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])});
+                } else {
+                    throw UserError.abort("Malformed line in image layout profile " + profileFileName + ": " + line);
+                }
+            } catch (NumberFormatException e) {
+                throw UserError.abort("Malformed line in image layout profile " + profileFileName + ": " + line);
+            }
+        }
+        if (regionName != null) {
+            regions.put(regionName, new Region(ranges));
+        }
+
+        Map<String, Set<String>> touched = new HashMap<>();
+        Region region = null;
+        Set<String> touchedInRegion = null;
+        for (String line : readLines(mapFileName, "image layout map")) {
+            String[] parts = line.split(" ", 3);
+            try {
+                if (parts[0].isEmpty()) {
+                    continue;
+                } else if (parts[0].equals("region") && parts.length == 2) {
+                    region = regions.get(parts[1]);
+                    touchedInRegion = new HashSet<>();
+                    if (region != null) {
+                        touched.put(parts[1], touchedInRegion);
+                    }
+                } else if (parts.length == 3 && touchedInRegion != null) {
+                    if (region != null && region.isTouched(Long.parseLong(parts[0]), Long.parseLong(parts[1]))) {
+                        touchedInRegion.add(parts[2]);
+                    }
+                } else {
+                    throw UserError.abort("Malformed line in image layout map " + mapFileName + ": " + line);
+                }
+            } catch (NumberFormatException e) {
+                throw UserError.abort("Malformed line in image layout map " + mapFileName + ": " + line);
+            }
+        }
+        return new ImageLayoutProfile(profileFileName, touched);
+    }
+
+    private static List<String> readLines(String fileName, String description) {
+        try {
+            return Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw UserError.abort("Cannot read " + description + " " + fileName + ": " + e.getMessage());
+        }
+    }
+}
+
+@AutomaticFeature
+class ImageLayoutProfileFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return !ImageLayoutProfile.Options.ImageLayoutProfile.getValue().isEmpty();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        if (ImageLayoutProfileRecorder.isEnabled()) {
+            throw UserError.abort("An image layout profile can only be recorded with the default layout, so -H:ImageLayoutProfile= and -H:+RecordImageLayoutProfile cannot be combined.");
+        }
+        String mapFileName = ImageLayoutProfile.Options.ImageLayoutMap.getValue();
+        if (mapFileName.isEmpty()) {
+            throw UserError.abort("-H:ImageLayoutProfile= requires -H:ImageLayoutMap= with the layout map that was written next to the image that recorded the profile.");
+        }
+        ImageSingletons.add(ImageLayoutProfile.class, ImageLayoutProfile.load(ImageLayoutProfile.Options.ImageLayoutProfile.getValue(), mapFileName));
+    }
+}
+
+/**
+ * Writes the layout map of an image that records an {@link ImageLayoutProfile}, so that a later
+ * build can resolve the offsets in the profile to methods and objects.
+ */
+@AutomaticFeature
+class ImageLayoutMapFeature implements Feature {
+    private String layoutMap;
+
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return ImageLayoutProfileRecorder.isEnabled();
+    }
+
+    @Override
+    public void beforeImageWrite(BeforeImageWriteAccess access) {
+        /* The offsets are final once the image is built, before it is written. */
+        AbstractBootImage image = ((BeforeImageWriteAccessImpl) access).getImage();
+        StringWriter result = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(result)) {
+            image.getCodeCache().writeLayoutMap(writer);
+            image.getHeap().writeLayoutMap(writer);
+        }
+        layoutMap = result.toString();
+    }
+
+    @Override
+    public void afterImageWrite(AfterImageWriteAccess access) {
+        Path file = access.getImagePath().resolveSibling(access.getImagePath().getFileName() + ImageLayoutProfile.LAYOUT_MAP_SUFFIX);
+        try {
+            Files.write(file, layoutMap.getBytes(StandardCharsets.UTF_8));
+            ((AfterImageWriteAccessImpl) access).registerWrittenFile(file);
+        } catch (IOException e) {
+            throw UserError.abort("Cannot write image layout map " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -190,7 +190,7 @@ public abstract class NativeBootImage extends AbstractBootImage {
         writer.appendln("#endif");
 
         String fileName = outDir.getFileName().resolve(header.name() + dynamicSuffix).toString();
-        writer.writeFile(fileName, false);
+        registerWrittenFile(writer.writeFile(fileName, false));
     }
 
     /**
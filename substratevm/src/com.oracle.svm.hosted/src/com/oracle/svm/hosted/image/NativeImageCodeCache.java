@@ -24,6 +24,7 @@
  */
 package com.oracle.svm.hosted.image;
 
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -56,6 +57,7 @@ import com.oracle.svm.core.deopt.DeoptEntryInfopoint;
 import com.oracle.svm.core.graal.code.CGlobalDataReference;
 import com.oracle.svm.core.graal.code.SubstrateDataBuilder;
 import com.oracle.svm.core.graal.code.amd64.AMD64InstructionPatcher;
+import com.oracle.svm.core.layoutprofile.ImageLayoutProfileRecorder;
 import com.oracle.svm.core.meta.SubstrateObjectConstant;
 import com.oracle.svm.core.option.HostedOptionKey;
 import com.oracle.svm.core.util.Counter;
@@ -223,6 +225,41 @@ public class NativeImageCodeCache {
         }
     }
 
+    /**
+     * The methods in the order in which they are placed in the text section: in the order of
+     * {@link #compilations} by default, or with the methods that an {@link ImageLayoutProfile}
+     * lists as touched first.
+     */
+    private List<Entry<HostedMethod, CompilationResult>> orderMethodsForLayout() {
+        List<Entry<HostedMethod, CompilationResult>> defaultOrder = new ArrayList<>(compilations.entrySet());
+        if (!ImageLayoutProfile.isPresent()) {
+            return defaultOrder;
+        }
+        Set<String> touched = ImageLayoutProfile.singleton().getTouched(ImageLayoutProfileRecorder.REGION_TEXT, imageHeap.getUniverse().getBigBang().getHostVM());
+        if (touched == null) {
+            return defaultOrder;
+        }
+        List<Entry<HostedMethod, CompilationResult>> hot = new ArrayList<>();
+        List<Entry<HostedMethod, CompilationResult>> cold = new ArrayList<>();
+        for (Entry<HostedMethod, CompilationResult> entry : defaultOrder) {
+            if (touched.contains(ImageLayoutProfile.methodKey(entry.getKey()))) {
+                hot.add(entry);
+            } else {
+                cold.add(entry);
+            }
+        }
+        hot.addAll(cold);
+        return hot;
+    }
+
+    /** Writes the offset, size and identity of every method to the layout map. */
+    void writeLayoutMap(PrintWriter writer) {
+        writer.println("region " + ImageLayoutProfileRecorder.REGION_TEXT);
+        for (Entry<HostedMethod, CompilationResult> entry : compilations.entrySet()) {
+            writer.println(entry.getKey().getCodeAddressOffset() + " " + entry.getValue().getTargetCodeSize() + " " + ImageLayoutProfile.methodKey(entry.getKey()));
+        }
+    }
+
     @SuppressWarnings("try")
     public void layoutMethods(DebugContext debug) {
 
@@ -231,7 +268,7 @@ public class NativeImageCodeCache {
             // Assign a location to all methods.
             assert codeCacheSize == 0;
             HostedMethod firstMethod = null;
-            for (Entry<HostedMethod, CompilationResult> entry : compilations.entrySet()) {
+            for (Entry<HostedMethod, CompilationResult> entry : orderMethodsForLayout()) {
                 HostedMethod method = entry.getKey();
                 if (firstMethod == null) {
                     firstMethod = method;
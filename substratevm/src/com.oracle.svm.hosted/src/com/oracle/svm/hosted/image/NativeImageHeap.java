@@ -26,6 +26,7 @@ package com.oracle.svm.hosted.image;
 
 import static com.oracle.svm.core.util.VMError.shouldNotReachHere;
 
+import java.io.PrintWriter;
 import java.lang.reflect.Array;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
@@ -41,6 +42,7 @@ import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
@@ -64,10 +66,12 @@ import com.oracle.svm.core.config.ConfigurationValues;
 import com.oracle.svm.core.config.ObjectLayout;
 import com.oracle.svm.core.heap.Heap;
 import com.oracle.svm.core.heap.NativeImageInfo;
+import com.oracle.svm.core.heap.ObjectHeader;
 import com.oracle.svm.core.hub.ClassInitializationInfo;
 import com.oracle.svm.core.hub.DynamicHub;
 import com.oracle.svm.core.hub.LayoutEncoding;
 import com.oracle.svm.core.jdk.StringInternSupport;
+import com.oracle.svm.core.layoutprofile.ImageLayoutProfileRecorder;
 import com.oracle.svm.core.meta.SubstrateObjectConstant;
 import com.oracle.svm.core.util.UserError;
 import com.oracle.svm.core.util.VMError;
@@ -148,6 +152,89 @@ public final class NativeImageHeap {
 
         addObjectsPhase.disallow();
         assert addObjectWorklist.isEmpty();
+
+        if (ImageLayoutProfile.isPresent()) {
+            layoutDeferredObjects(ImageLayoutProfile.singleton());
+        }
+    }
+
+    /**
+     * With an {@link ImageLayoutProfile}, objects are not allocated when they are added but only
+     * once the heap is complete. Objects that the profile lists as touched are then allocated at
+     * the beginning of their partition, followed by the untouched objects, both in the order in
+     * which they were added.
+     */
+    private void layoutDeferredObjects(ImageLayoutProfile profile) {
+        layoutDeferredObjects(profile, ImageLayoutProfileRecorder.REGION_READ_ONLY_PRIMITIVE, readOnlyPrimitive);
+        /* At run time, the relocatable partition is part of the read-only reference objects. */
+        layoutDeferredObjects(profile, ImageLayoutProfileRecorder.REGION_READ_ONLY_REFERENCE, readOnlyReference, readOnlyRelocatable);
+        layoutDeferredObjects(profile, ImageLayoutProfileRecorder.REGION_WRITABLE_PRIMITIVE, writablePrimitive);
+        layoutDeferredObjects(profile, ImageLayoutProfileRecorder.REGION_WRITABLE_REFERENCE, writableReference);
+    }
+
+    private void layoutDeferredObjects(ImageLayoutProfile profile, String regionName, HeapPartition... partitions) {
+        Set<String> touched = profile.getTouched(regionName, getUniverse().getBigBang().getHostVM());
+        Map<HostedClass, Integer> ordinals = new HashMap<>();
+        for (HeapPartition partition : partitions) {
+            List<ObjectInfo> cold = new ArrayList<>();
+            for (ObjectInfo info : partition.deferredObjects) {
+                if (touched != null && touched.contains(layoutKey(info, ordinals))) {
+                    info.allocate();
+                } else {
+                    cold.add(info);
+                }
+            }
+            for (ObjectInfo info : cold) {
+                info.allocate();
+            }
+            partition.deferredObjects.clear();
+        }
+    }
+
+    /** Writes the offset, size and identity of every object to the layout map. */
+    void writeLayoutMap(PrintWriter writer) {
+        writeLayoutMap(writer, ImageLayoutProfileRecorder.REGION_READ_ONLY_PRIMITIVE, readOnlyPrimitive);
+        writeLayoutMap(writer, ImageLayoutProfileRecorder.REGION_READ_ONLY_REFERENCE, readOnlyReference, readOnlyRelocatable);
+        writeLayoutMap(writer, ImageLayoutProfileRecorder.REGION_WRITABLE_PRIMITIVE, writablePrimitive);
+        writeLayoutMap(writer, ImageLayoutProfileRecorder.REGION_WRITABLE_REFERENCE, writableReference);
+    }
+
+    private void writeLayoutMap(PrintWriter writer, String regionName, HeapPartition... partitions) {
+        List<HeapPartition> regionPartitions = Arrays.asList(partitions);
+        /* Several objects can be canonicalized to the same ObjectInfo. */
+        Set<ObjectInfo> infos = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ObjectInfo info : objects.values()) {
+            if (regionPartitions.contains(info.getPartition())) {
+                infos.add(info);
+            }
+        }
+        List<ObjectInfo> sorted = new ArrayList<>(infos);
+        sorted.sort((a, b) -> Long.compare(a.getOffsetInSection(), b.getOffsetInSection()));
+
+        writer.println("region " + regionName);
+        /* The offsets are relative to the first object of the region, as in the profile. */
+        long regionStart = sorted.isEmpty() ? 0 : sorted.get(0).getOffsetInSection();
+        Map<HostedClass, Integer> ordinals = new HashMap<>();
+        for (ObjectInfo info : sorted) {
+            writer.println((info.getOffsetInSection() - regionStart) + " " + info.getSize() + " " + layoutKey(info, ordinals));
+        }
+    }
+
+    /**
+     * The identity of an object in an {@link ImageLayoutProfile}. Objects without a natural
+     * identity are numbered per class, so the objects of a region must be passed in the order in
+     * which they were added to the heap, which is also the order of their offsets without a
+     * profile.
+     */
+    private static String layoutKey(ObjectInfo info, Map<HostedClass, Integer> ordinals) {
+        Object object = info.getObject();
+        if (object instanceof String) {
+            return "string " + ((String) object).length() + " " + object.hashCode();
+        } else if (object instanceof DynamicHub) {
+            return "class " + ((DynamicHub) object).getName();
+        }
+        int ordinal = ordinals.merge(info.getClazz(), 1, Integer::sum);
+        return info.getClazz().toJavaName(true) + " #" + ordinal;
     }
 
     void alignRelocatablePartition(long alignment) {
@@ -285,10 +372,37 @@ public final class NativeImageHeap {
     @SuppressWarnings("try")
     public void writeHeap(DebugContext debug, final RelocatableBuffer roBuffer, final RelocatableBuffer rwBuffer) {
         try (Indent perHeapIndent = debug.logAndIndent("BootImageHeap.writeHeap:")) {
-            for (ObjectInfo info : objects.values()) {
+            /*
+             * Objects do not overlap, so they are written in parallel. Canonicalized objects share
+             * their ObjectInfo, which must be written only once. Field values and array elements
+             * go through the object replacers, which are not thread safe, so they are all read
+             * before the parallel write.
+             */
+            Set<ObjectInfo> uniqueObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+            uniqueObjects.addAll(objects.values());
+            List<ObjectValues> resolvedObjects = new ArrayList<>(uniqueObjects.size());
+            for (ObjectInfo info : uniqueObjects) {
                 assert !blacklist.contains(info.getObject());
-                writeObject(info, roBuffer, rwBuffer);
+                resolvedObjects.add(resolveValues(info));
             }
+
+            RelocatableBuffer sequentialRoBuffer = null;
+            RelocatableBuffer sequentialRwBuffer = null;
+            if (NativeImageOptions.VerifyImageHeapWrite.getValue()) {
+                sequentialRoBuffer = roBuffer.copy();
+                sequentialRwBuffer = rwBuffer == roBuffer ? sequentialRoBuffer : rwBuffer.copy();
+                for (ObjectValues values : resolvedObjects) {
+                    writeObject(values, sequentialRoBuffer, sequentialRwBuffer);
+                }
+            }
+            resolvedObjects.parallelStream().forEach(values -> writeObject(values, roBuffer, rwBuffer));
+            if (sequentialRoBuffer != null) {
+                verifySameContent(roBuffer, sequentialRoBuffer);
+                if (rwBuffer != roBuffer) {
+                    verifySameContent(rwBuffer, sequentialRwBuffer);
+                }
+            }
+
             // Only static fields that are writable get written to the native image heap,
             // the read-only static fields have been inlined into the code.
             writeStaticFields(rwBuffer);
@@ -601,7 +715,7 @@ public final class NativeImageHeap {
         for (HostedField field : getUniverse().getFields()) {
             if (Modifier.isStatic(field.getModifiers()) && field.isWritten() && field.isAccessed()) {
                 ObjectInfo fields = (field.getStorageKind() == JavaKind.Object) ? objectFields : primitiveFields;
-                writeField(buffer, fields, field, null, null);
+                writeField(buffer, fields, field, field.readValue(null), null);
             }
         }
     }
@@ -632,9 +746,8 @@ public final class NativeImageHeap {
         return msg.append("    root: ").append(reason).append("\n");
     }
 
-    private void writeField(RelocatableBuffer buffer, ObjectInfo fields, HostedField field, JavaConstant receiver, ObjectInfo info) {
+    private void writeField(RelocatableBuffer buffer, ObjectInfo fields, HostedField field, JavaConstant value, ObjectInfo info) {
         int index = fields.getIntIndexInSection(field.getLocation());
-        JavaConstant value = field.readValue(receiver);
         if (value.getJavaKind() == JavaKind.Object && SubstrateObjectConstant.asObject(value) instanceof RelocatedPointer) {
             addNonDataRelocation(buffer, index, (RelocatedPointer) SubstrateObjectConstant.asObject(value));
         } else {
@@ -684,22 +797,23 @@ public final class NativeImageHeap {
         write(buffer, index, con, info);
     }
 
-    private void writeDynamicHub(RelocatableBuffer buffer, int index, DynamicHub target) {
+    private void writeDynamicHub(RelocatableBuffer buffer, int index, DynamicHub target, boolean rememberedSet) {
         assert target != null : "Null DynamicHub found during native image generation.";
         mustBeReferenceAligned(index);
 
         ObjectInfo targetInfo = objects.get(target);
         assert targetInfo != null : "Unknown object " + target.toString() + " found. Static field or an object referenced from a static field changed during native image generation?";
 
+        ObjectHeader objectHeader = Heap.getHeap().getObjectHeader();
         if (useHeapBase()) {
             // NOTE: we do not apply a shift to the hub reference in the object header because the
             // least significant bits are used for state information
             long targetOffset = targetInfo.getOffsetInSection();
-            long bits = Heap.getHeap().getObjectHeader().setBootImageOnLong(targetOffset);
+            long bits = rememberedSet ? objectHeader.setBootImageWithRememberedSetOnLong(targetOffset) : objectHeader.setBootImageOnLong(targetOffset);
             writeReferenceValue(buffer, index, bits);
         } else {
             // The address of the DynamicHub target will have to be added by the link editor.
-            long objectHeaderBits = Heap.getHeap().getObjectHeader().setBootImageOnLong(0L);
+            long objectHeaderBits = rememberedSet ? objectHeader.setBootImageWithRememberedSetOnLong(0L) : objectHeader.setBootImageOnLong(0L);
             addDirectRelocationWithAddend(buffer, index, target, objectHeaderBits);
         }
     }
@@ -707,15 +821,18 @@ public final class NativeImageHeap {
     private void addDirectRelocationWithoutAddend(RelocatableBuffer buffer, int index, int size, Object target) {
         assert !spawnIsolates() || index >= readOnlyRelocatable.offsetInSection() && index < readOnlyRelocatable.offsetInSection(readOnlyRelocatable.getSize());
         buffer.addDirectRelocationWithoutAddend(index, size, target);
-        if (firstRelocatablePointerOffsetInSection == -1) {
-            firstRelocatablePointerOffsetInSection = index;
-        }
+        recordRelocatablePointer(index);
     }
 
     private void addDirectRelocationWithAddend(RelocatableBuffer buffer, int index, DynamicHub target, long objectHeaderBits) {
         assert !spawnIsolates() || index >= readOnlyRelocatable.offsetInSection() && index < readOnlyRelocatable.offsetInSection(readOnlyRelocatable.getSize());
         buffer.addDirectRelocationWithAddend(index, referenceSize(), objectHeaderBits, target);
-        if (firstRelocatablePointerOffsetInSection == -1) {
+        recordRelocatablePointer(index);
+    }
+
+    /** Remembers the lowest offset of a relocatable pointer, independent of the write order. */
+    private synchronized void recordRelocatablePointer(int index) {
+        if (firstRelocatablePointerOffsetInSection == -1 || index < firstRelocatablePointerOffsetInSection) {
             firstRelocatablePointerOffsetInSection = index;
         }
     }
@@ -840,7 +957,57 @@ public final class NativeImageHeap {
         return info.getPartition().isWritable() ? rwBuffer : roBuffer;
     }
 
-    private void writeObject(ObjectInfo info, final RelocatableBuffer roBuffer, final RelocatableBuffer rwBuffer) {
+    /**
+     * Reads the values that {@link #writeObject} writes for an object. Reading a field or an array
+     * element applies the object replacers, so this is done sequentially.
+     */
+    private ObjectValues resolveValues(ObjectInfo info) {
+        final ObjectValues values = new ObjectValues(info);
+        final HostedClass clazz = info.getClazz();
+        if (clazz.isInstanceClass()) {
+            JavaConstant con = SubstrateObjectConstant.forObject(info.getObject());
+
+            HybridLayout<?> hybridLayout = hybridLayouts.get(clazz);
+            HostedField hybridArrayField = null;
+            HostedField hybridBitsetField = null;
+            if (hybridLayout != null) {
+                hybridArrayField = hybridLayout.getArrayField();
+                values.hybridArray = readObjectField(hybridArrayField, con);
+                hybridBitsetField = hybridLayout.getBitsetField();
+                if (hybridBitsetField != null) {
+                    values.hybridBitSet = (BitSet) readObjectField(hybridBitsetField, con);
+                }
+            }
+
+            HostedField[] instanceFields = clazz.getInstanceFields(true);
+            values.fields = new JavaConstant[instanceFields.length];
+            for (int i = 0; i < instanceFields.length; i++) {
+                HostedField field = instanceFields[i];
+                if (!field.equals(hybridArrayField) && !field.equals(hybridBitsetField) && field.isAccessed()) {
+                    values.fields[i] = field.readValue(con);
+                }
+            }
+
+        } else if (clazz.isArray()) {
+            Object array = info.getObject();
+            if (array instanceof Object[]) {
+                Object[] oarray = (Object[]) array;
+                values.elements = new Object[oarray.length];
+                for (int i = 0; i < oarray.length; i++) {
+                    values.elements[i] = aUniverse.replaceObject(oarray[i]);
+                    assert (oarray[i] instanceof RelocatedPointer) == (values.elements[i] instanceof RelocatedPointer);
+                }
+            }
+
+        } else {
+            throw shouldNotReachHere();
+        }
+        return values;
+    }
+
+    /** Writes an object. Only touches the object itself, so objects can be written in parallel. */
+    private void writeObject(ObjectValues values, final RelocatableBuffer roBuffer, final RelocatableBuffer rwBuffer) {
+        final ObjectInfo info = values.info;
         /*
          * Write a reference from the object to its hub. This lives at layout.getHubOffset() from
          * the object base.
@@ -853,50 +1020,41 @@ public final class NativeImageHeap {
         final HostedClass clazz = info.getClazz();
         final DynamicHub hub = clazz.getHub();
 
-        writeDynamicHub(buffer, indexInSection, hub);
+        /* Only the objects in the writable reference partition can be made to reference others. */
+        writeDynamicHub(buffer, indexInSection, hub, info.getPartition() == writableReference);
 
         if (clazz.isInstanceClass()) {
-            JavaConstant con = SubstrateObjectConstant.forObject(info.getObject());
-
             HybridLayout<?> hybridLayout = hybridLayouts.get(clazz);
-            HostedField hybridArrayField = null;
-            HostedField hybridBitsetField = null;
             int maxBitIndex = -1;
-            Object hybridArray = null;
-            if (hybridLayout != null) {
-                hybridArrayField = hybridLayout.getArrayField();
-                hybridArray = readObjectField(hybridArrayField, con);
-
-                hybridBitsetField = hybridLayout.getBitsetField();
-                if (hybridBitsetField != null) {
-                    BitSet bitSet = (BitSet) readObjectField(hybridBitsetField, con);
-                    if (bitSet != null) {
-                        /*
-                         * Write the bits of the hybrid bit field. The bits are located between the
-                         * array length and the instance fields.
-                         */
-                        int bitsPerByte = Byte.SIZE;
-                        for (int bit = bitSet.nextSetBit(0); bit >= 0; bit = bitSet.nextSetBit(bit + 1)) {
-                            final int index = info.getIntIndexInSection(hybridLayout.getBitFieldOffset()) + bit / bitsPerByte;
-                            if (index > maxBitIndex) {
-                                maxBitIndex = index;
-                            }
-                            int mask = 1 << (bit % bitsPerByte);
-                            assert mask < (1 << bitsPerByte);
-                            buffer.putByte(index, (byte) (buffer.getByte(index) | mask));
-                        }
+            Object hybridArray = values.hybridArray;
+            BitSet bitSet = values.hybridBitSet;
+            if (bitSet != null) {
+                /*
+                 * Write the bits of the hybrid bit field. The bits are located between the array
+                 * length and the instance fields.
+                 */
+                int bitsPerByte = Byte.SIZE;
+                for (int bit = bitSet.nextSetBit(0); bit >= 0; bit = bitSet.nextSetBit(bit + 1)) {
+                    final int index = info.getIntIndexInSection(hybridLayout.getBitFieldOffset()) + bit / bitsPerByte;
+                    if (index > maxBitIndex) {
+                        maxBitIndex = index;
                     }
+                    int mask = 1 << (bit % bitsPerByte);
+                    assert mask < (1 << bitsPerByte);
+                    buffer.putByte(index, (byte) (buffer.getByte(index) | mask));
                 }
             }
 
             /*
              * Write the regular instance fields.
              */
-            for (HostedField field : clazz.getInstanceFields(true)) {
-                if (!field.equals(hybridArrayField) && !field.equals(hybridBitsetField) && field.isAccessed()) {
+            HostedField[] instanceFields = clazz.getInstanceFields(true);
+            for (int i = 0; i < instanceFields.length; i++) {
+                if (values.fields[i] != null) {
+                    HostedField field = instanceFields[i];
                     assert field.getLocation() >= 0;
                     assert info.getIntIndexInSection(field.getLocation()) > maxBitIndex;
-                    writeField(buffer, info, field, con, info);
+                    writeField(buffer, info, field, values.fields[i], info);
                 }
             }
             if (hub.getHashCodeOffset() != 0) {
@@ -922,14 +1080,11 @@ public final class NativeImageHeap {
             int length = Array.getLength(array);
             buffer.putInt(info.getIntIndexInSection(layout.getArrayLengthOffset()), length);
             buffer.putInt(info.getIntIndexInSection(layout.getArrayHashCodeOffset()), info.getIdentityHashCode());
-            if (array instanceof Object[]) {
-                Object[] oarray = (Object[]) array;
-                assert oarray.length == length;
+            if (values.elements != null) {
+                assert values.elements.length == length;
                 for (int i = 0; i < length; i++) {
                     final int elementIndex = info.getIntIndexInSection(layout.getArrayElementOffset(kind, i));
-                    final Object element = aUniverse.replaceObject(oarray[i]);
-                    assert (oarray[i] instanceof RelocatedPointer) == (element instanceof RelocatedPointer);
-                    writeConstant(buffer, elementIndex, kind, element, info);
+                    writeConstant(buffer, elementIndex, kind, values.elements[i], info);
                 }
             } else {
                 for (int i = 0; i < length; i++) {
@@ -944,6 +1099,27 @@ public final class NativeImageHeap {
         }
     }
 
+    /** Checks that a parallel heap write produced the same section as a sequential write. */
+    private static void verifySameContent(RelocatableBuffer parallel, RelocatableBuffer sequential) {
+        byte[] parallelBytes = parallel.getBytes();
+        byte[] sequentialBytes = sequential.getBytes();
+        VMError.guarantee(parallelBytes.length == sequentialBytes.length, "Different sizes of section " + parallel.getName());
+        for (int i = 0; i < parallelBytes.length; i++) {
+            if (parallelBytes[i] != sequentialBytes[i]) {
+                throw VMError.shouldNotReachHere("Parallel and sequential image heap write differ in section " + parallel.getName() + " at offset " + i);
+            }
+        }
+        VMError.guarantee(parallel.mapSize() == sequential.mapSize(), "Different number of relocations in section " + parallel.getName());
+        for (Map.Entry<Integer, RelocatableBuffer.Info> entry : parallel.entrySet()) {
+            RelocatableBuffer.Info p = entry.getValue();
+            RelocatableBuffer.Info s = sequential.getInfo(entry.getKey());
+            if (s == null || p.getRelocationKind() != s.getRelocationKind() || p.getRelocationSize() != s.getRelocationSize() ||
+                            !Objects.equals(p.getExplicitAddend(), s.getExplicitAddend()) || p.getTargetObject() != s.getTargetObject()) {
+                throw VMError.shouldNotReachHere("Parallel and sequential image heap write differ in section " + parallel.getName() + " at relocation " + entry.getKey());
+            }
+        }
+    }
+
     protected HostedUniverse getUniverse() {
         return universe;
     }
@@ -1030,6 +1206,22 @@ public final class NativeImageHeap {
     private final HeapPartition writablePrimitive;
     private final HeapPartition writableReference;
 
+    /** The values of an object, read before the object is written. */
+    static final class ObjectValues {
+
+        ObjectValues(ObjectInfo info) {
+            this.info = info;
+        }
+
+        final ObjectInfo info;
+        /** Instance field values, indexed like the instance fields. Null for fields not written. */
+        JavaConstant[] fields;
+        Object hybridArray;
+        BitSet hybridBitSet;
+        /** Object array elements after object replacement. */
+        Object[] elements;
+    }
+
     static class AddObjectData {
 
         AddObjectData(Object original, boolean parentCanonicalizable, boolean immutableFromParent, Object reason) {
@@ -1161,9 +1353,19 @@ public final class NativeImageHeap {
         void assignToHeapPartition(HeapPartition objectPartition, ObjectLayout layout) {
             assert partition == null;
             partition = objectPartition;
-            offsetInPartition = partition.allocate(this);
-            assert layout.isAligned(offsetInPartition) : "start: " + offsetInPartition + " must be aligned.";
             assert layout.isAligned(size) : "size: " + size + " must be aligned.";
+            if (ImageLayoutProfile.isPresent()) {
+                /* The offset is assigned once all objects are known, see layoutDeferredObjects. */
+                partition.deferredObjects.add(this);
+            } else {
+                allocate();
+            }
+        }
+
+        void allocate() {
+            assert offsetInPartition == -1L;
+            offsetInPartition = partition.allocate(this);
+            assert partition.heap.layout.isAligned(offsetInPartition) : "start: " + offsetInPartition + " must be aligned.";
         }
 
         private final Object object;
@@ -1308,6 +1510,9 @@ public final class NativeImageHeap {
         Object firstAllocatedObject;
         Object lastAllocatedObject;
 
+        /** Objects whose allocation is deferred until the whole heap is known. */
+        final List<ObjectInfo> deferredObjects = new ArrayList<>();
+
         /** The name of the native image section in which this partition lives. */
         private String sectionName;
         /**
@@ -29,7 +29,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.graalvm.compiler.core.common.NumUtil;
 import org.graalvm.nativeimage.c.function.CFunctionPointer;
@@ -46,6 +46,14 @@ public final class RelocatableBuffer {
         return new RelocatableBuffer(name, size, byteOrder);
     }
 
+    /** Returns a buffer with the same name, content and relocations as this one. */
+    public RelocatableBuffer copy() {
+        final RelocatableBuffer result = new RelocatableBuffer(name, size, buffer.order());
+        System.arraycopy(getBytes(), 0, result.getBytes(), 0, getBytes().length);
+        result.map.putAll(map);
+        return result;
+    }
+
     /*
      * Map methods.
      */
@@ -183,7 +191,7 @@ public final class RelocatableBuffer {
         this.size = size;
         final int intSize = NumUtil.safeToInt(size);
         this.buffer = ByteBuffer.wrap(new byte[intSize]).order(byteOrder);
-        this.map = new TreeMap<>();
+        this.map = new ConcurrentSkipListMap<>();
     }
 
     // Immutable fields.
@@ -195,7 +203,7 @@ public final class RelocatableBuffer {
     /** The ByteBuffer itself. */
     protected final ByteBuffer buffer;
     /** The map itself. */
-    private final TreeMap<Integer, RelocatableBuffer.Info> map;
+    private final ConcurrentSkipListMap<Integer, RelocatableBuffer.Info> map;
 
     // Constants.
 
@@ -56,6 +56,7 @@ import com.oracle.graal.pointsto.meta.AnalysisMetaAccess;
 import com.oracle.graal.pointsto.meta.AnalysisMethod;
 import com.oracle.graal.pointsto.meta.AnalysisType;
 import com.oracle.graal.pointsto.meta.AnalysisUniverse;
+import com.oracle.graal.pointsto.results.StaticAnalysisResults;
 import com.oracle.graal.pointsto.results.StaticAnalysisResultsBuilder;
 import com.oracle.graal.pointsto.typestate.TypeState;
 import com.oracle.svm.core.StaticFieldsSupport;
@@ -73,6 +74,7 @@ import com.oracle.svm.core.hub.LayoutEncoding;
 import com.oracle.svm.hosted.HostedConfiguration;
 import com.oracle.svm.hosted.NativeImageOptions;
 import com.oracle.svm.hosted.config.HybridLayout;
+import com.oracle.svm.hosted.pgo.InstrumentationProfile;
 import com.oracle.svm.hosted.substitute.AnnotationSubstitutionProcessor;
 import com.oracle.svm.hosted.substitute.ComputedValueField;
 import com.oracle.svm.hosted.substitute.DeletedMethod;
@@ -298,7 +300,13 @@ public class UniverseBuilder {
     private void buildProfilingInformation() {
         /* Convert profiling information after all types and methods have been created. */
         hUniverse.methods.entrySet().parallelStream()
-                        .forEach(entry -> entry.getValue().staticAnalysisResults = staticAnalysisResultsBuilder.makeResults(entry.getKey()));
+                        .forEach(entry -> {
+                            StaticAnalysisResults results = staticAnalysisResultsBuilder.makeResults(entry.getKey());
+                            if (InstrumentationProfile.isPresent()) {
+                                results = InstrumentationProfile.singleton().apply(entry.getValue(), results);
+                            }
+                            entry.getValue().staticAnalysisResults = results;
+                        });
 
         staticAnalysisResultsBuilder = null;
     }
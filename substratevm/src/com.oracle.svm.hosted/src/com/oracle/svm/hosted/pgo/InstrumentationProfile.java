@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.pgo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.Feature;
+import org.graalvm.nativeimage.ImageSingletons;
+
+import com.oracle.graal.pointsto.results.StaticAnalysisResults;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.pgo.InstrumentationProfiles;
+import com.oracle.svm.core.util.UserError;
+import com.oracle.svm.hosted.meta.HostedMethod;
+
+import jdk.vm.ci.meta.DeoptimizationReason;
+import jdk.vm.ci.meta.JavaMethodProfile;
+import jdk.vm.ci.meta.JavaTypeProfile;
+import jdk.vm.ci.meta.JavaTypeProfile.ProfiledType;
+import jdk.vm.ci.meta.TriState;
+
+/**
+ * The profile that a training run of an image built with {@link InstrumentationProfiles} wrote. It
+ * replaces the static guesses of the {@link StaticAnalysisResults} of a method with the measured
+ * branch probabilities, invocation counts and receiver type distributions, so that the inlining,
+ * devirtualization and block layout decisions of the ahead-of-time compilation are based on them.
+ * <p>
+ * The receiver types of a call site are always the types that the static analysis of this build
+ * found possible, only their probabilities come from the profile. The profile can therefore never
+ * make the compiled code wrong, only slower if it does not fit the code.
+ */
+public final class InstrumentationProfile {
+
+    public static class Options {
+        @Option(help = "Compile the image using the branch, invoke and receiver type profile that an image built with -H:+ProfileInstrumentation wrote.")//
+        public static final HostedOptionKey<String> InstrumentationProfile = new HostedOptionKey<>("");
+    }
+
+    /**
+     * Branch probabilities are kept away from 0 and 1, because the bytecode parser removes code
+     * with probability 0, which ahead-of-time compiled code cannot deoptimize to.
+     */
+    private static final double MIN_PROBABILITY = 0.00001;
+
+    static final class MethodProfile {
+        /** The taken and executed counts of the conditional branches, by bytecode index. */
+        final Map<Integer, long[]> branches = new HashMap<>();
+        /** The invocation counts of the call sites, by bytecode index. */
+        final Map<Integer, Long> invokes = new HashMap<>();
+        /** The invocation counts per receiver type name of the call sites, by bytecode index. */
+        final Map<Integer, Map<String, Long>> receivers = new HashMap<>();
+    }
+
+    private final Map<String, MethodProfile> methods;
+
+    private InstrumentationProfile(Map<String, MethodProfile> methods) {
+        this.methods = methods;
+    }
+
+    public static boolean isPresent() {
+        return ImageSingletons.contains(InstrumentationProfile.class);
+    }
+
+    public static InstrumentationProfile singleton() {
+        return ImageSingletons.lookup(InstrumentationProfile.class);
+    }
+
+    /** Returns the profiling information to compile a method with. */
+    public StaticAnalysisResults apply(HostedMethod method, StaticAnalysisResults staticResults) {
+        MethodProfile profile = methods.get(ProfileInstrumentationPlugin.methodKey(method));
+        return profile == null ? staticResults : new ProfiledResults(staticResults, profile);
+    }
+
+    static InstrumentationProfile load(String fileName) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw UserError.abort("Cannot read instrumentation profile " + fileName + ": " + e.getMessage());
+        }
+        Map<String, MethodProfile> methods = new HashMap<>();
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split("\t");
+            try {
+                if (parts.length < 4) {
+                    throw UserError.abort("Malformed line in instrumentation profile " + fileName + ": " + line);
+                }
+                long count = Long.parseLong(parts[0]);
+                MethodProfile profile = methods.computeIfAbsent(parts[1], key -> new MethodProfile());
+                int bci = Integer.parseInt(parts[2]);
+                String kind = parts[3];
+                if (kind.equals(ProfileInstrumentationPlugin.TAKEN)) {
+                    profile.branches.computeIfAbsent(bci, key -> new long[2])[0] += count;
+                } else if (kind.equals(ProfileInstrumentationPlugin.EXECUTED)) {
+                    profile.branches.computeIfAbsent(bci, key -> new long[2])[1] += count;
+                } else if (kind.equals(ProfileInstrumentationPlugin.INVOKE)) {
+                    profile.invokes.merge(bci, count, Long::sum);
+                } else if (kind.equals(ProfileInstrumentationPlugin.RECEIVER) && parts.length == 5) {
+                    profile.receivers.computeIfAbsent(bci, key -> new HashMap<>()).merge(parts[4], count, Long::sum);
+                } else {
+                    throw UserError.abort("Malformed line in instrumentation profile " + fileName + ": " + line);
+                }
+            } catch (NumberFormatException e) {
+                throw UserError.abort("Malformed line in instrumentation profile " + fileName + ": " + line);
+            }
+        }
+        return new InstrumentationProfile(methods);
+    }
+
+    /** The static analysis results of a method, refined by its measured profile. */
+    static final class ProfiledResults extends StaticAnalysisResults {
+        private final StaticAnalysisResults staticResults;
+        private final MethodProfile profile;
+
+        ProfiledResults(StaticAnalysisResults staticResults, MethodProfile profile) {
+            super(staticResults.getCodeSize(), null, null, null);
+            this.staticResults = staticResults;
+            this.profile = profile;
+        }
+
+        @Override
+        public JavaTypeProfile getParameterTypeProfile(int parameter) {
+            return staticResults.getParameterTypeProfile(parameter);
+        }
+
+        @Override
+        public JavaTypeProfile getResultTypeProfile() {
+            return staticResults.getResultTypeProfile();
+        }
+
+        @Override
+        public JavaTypeProfile getInvokeResultTypeProfile(int bci) {
+            return staticResults.getInvokeResultTypeProfile(bci);
+        }
+
+        @Override
+        public double getBranchTakenProbability(int bci) {
+            long[] counts = profile.branches.get(bci);
+            if (counts == null || counts[1] == 0) {
+                return staticResults.getBranchTakenProbability(bci);
+            }
+            double probability = (double) counts[0] / counts[1];
+            return Math.min(Math.max(probability, MIN_PROBABILITY), 1 - MIN_PROBABILITY);
+        }
+
+        @Override
+        public double[] getSwitchProbabilities(int bci) {
+            return staticResults.getSwitchProbabilities(bci);
+        }
+
+        @Override
+        public JavaTypeProfile getTypeProfile(int bci) {
+            JavaTypeProfile staticProfile = staticResults.getTypeProfile(bci);
+            Map<String, Long> receivers = profile.receivers.get(bci);
+            Long invokes = profile.invokes.get(bci);
+            if (staticProfile == null || receivers == null || invokes == null) {
+                return staticProfile;
+            }
+            ProfiledType[] staticTypes = staticProfile.getTypes();
+            ProfiledType[] types = new ProfiledType[staticTypes.length];
+            for (int i = 0; i < staticTypes.length; i++) {
+                Long count = receivers.get(staticTypes[i].getType().toJavaName());
+                types[i] = new ProfiledType(staticTypes[i].getType(), count == null ? 0 : Math.min(1, (double) count / invokes));
+            }
+            /* Sorts by descending probability. */
+            Arrays.sort(types);
+            return new JavaTypeProfile(staticProfile.getNullSeen(), staticProfile.getNotRecordedProbability(), types);
+        }
+
+        @Override
+        public JavaMethodProfile getMethodProfile(int bci) {
+            return staticResults.getMethodProfile(bci);
+        }
+
+        @Override
+        public TriState getExceptionSeen(int bci) {
+            return staticResults.getExceptionSeen(bci);
+        }
+
+        @Override
+        public TriState getNullSeen(int bci) {
+            return staticResults.getNullSeen(bci);
+        }
+
+        @Override
+        public int getExecutionCount(int bci) {
+            Long invokes = profile.invokes.get(bci);
+            return invokes == null ? staticResults.getExecutionCount(bci) : (int) Math.min(invokes, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int getDeoptimizationCount(DeoptimizationReason reason) {
+            return staticResults.getDeoptimizationCount(reason);
+        }
+
+        @Override
+        public boolean setCompilerIRSize(Class<?> irType, int size) {
+            return staticResults.setCompilerIRSize(irType, size);
+        }
+
+        @Override
+        public int getCompilerIRSize(Class<?> irType) {
+            return staticResults.getCompilerIRSize(irType);
+        }
+    }
+}
+
+@AutomaticFeature
+class InstrumentationProfileFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return !InstrumentationProfile.Options.InstrumentationProfile.getValue().isEmpty();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(InstrumentationProfile.class, InstrumentationProfile.load(InstrumentationProfile.Options.InstrumentationProfile.getValue()));
+    }
+}
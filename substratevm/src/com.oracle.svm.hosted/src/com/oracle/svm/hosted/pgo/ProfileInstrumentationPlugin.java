@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.pgo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.graalvm.compiler.core.common.type.TypeReference;
+import org.graalvm.compiler.nodes.ConstantNode;
+import org.graalvm.compiler.nodes.FrameState;
+import org.graalvm.compiler.nodes.LogicNode;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.calc.AddNode;
+import org.graalvm.compiler.nodes.calc.ConditionalNode;
+import org.graalvm.compiler.nodes.graphbuilderconf.GraphBuilderContext;
+import org.graalvm.compiler.nodes.graphbuilderconf.ProfilingPlugin;
+import org.graalvm.compiler.nodes.java.InstanceOfNode;
+import org.graalvm.compiler.nodes.java.LoadIndexedNode;
+import org.graalvm.compiler.nodes.java.StoreIndexedNode;
+
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.meta.SubstrateObjectConstant;
+import com.oracle.svm.core.pgo.InstrumentationProfiles;
+import com.oracle.svm.hosted.meta.HostedMethod;
+
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.JavaTypeProfile;
+import jdk.vm.ci.meta.JavaTypeProfile.ProfiledType;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+
+/**
+ * Instruments ahead-of-time compiled code with counters while it is parsed. For each conditional
+ * branch, the number of executions and the number of times the branch was taken are counted. For
+ * each call site, the number of invocations is counted, and for virtual calls with a small set of
+ * possible receiver types, the number of invocations for each receiver type.
+ * <p>
+ * The counters are plain {@code long} array elements in the image heap that are incremented
+ * without synchronization, so concurrent increments may get lost. The counters are identified by
+ * a key that is stable across image builds, so that {@link InstrumentationProfile} can map them
+ * back to the bytecodes of the methods.
+ */
+public final class ProfileInstrumentationPlugin implements ProfilingPlugin {
+
+    /** Call sites with more possible receiver types only count the invocations. */
+    static final int MAX_RECEIVER_TYPES = 8;
+
+    static final String TAKEN = "taken";
+    static final String EXECUTED = "executed";
+    static final String INVOKE = "invoke";
+    static final String RECEIVER = "receiver";
+
+    private final List<long[]> counterChunks = new ArrayList<>();
+    private final List<String> counterKeys = new ArrayList<>();
+
+    static String methodKey(ResolvedJavaMethod method) {
+        return method.format("%H.%n(%P)%R");
+    }
+
+    static String counterKey(ResolvedJavaMethod method, int bci, String kind) {
+        return methodKey(method) + '\t' + bci + '\t' + kind;
+    }
+
+    @Override
+    public boolean shouldProfile(GraphBuilderContext builder, ResolvedJavaMethod method) {
+        if (builder.parsingIntrinsic() || !(method instanceof HostedMethod)) {
+            return false;
+        }
+        HostedMethod hMethod = (HostedMethod) method;
+        /*
+         * Deoptimization targets must not get additional state splits. Uninterruptible code can
+         * run before the image heap is accessible.
+         */
+        return !hMethod.isDeoptTarget() && hMethod.getAnnotation(Uninterruptible.class) == null && hMethod.getAnnotation(RestrictHeapAccess.class) == null;
+    }
+
+    @Override
+    public void profileInvoke(GraphBuilderContext builder, ResolvedJavaMethod method, FrameState frameState) {
+        /* Invocations are counted at the call sites, see profileCallSite. */
+    }
+
+    @Override
+    public void profileGoto(GraphBuilderContext builder, ResolvedJavaMethod method, int bci, int targetBci, FrameState frameState) {
+        /* Unconditional jumps do not need a profile. */
+    }
+
+    @Override
+    public void profileIf(GraphBuilderContext builder, ResolvedJavaMethod method, int bci, LogicNode condition, int trueBranchBci, int falseBranchBci, FrameState frameState) {
+        /*
+         * The profile is about the branch to the jump target of the bytecode, while the condition
+         * may have been negated. All conditional branch bytecodes are 3 bytes long.
+         */
+        boolean trueBranchTaken = trueBranchBci != bci + 3;
+        ValueNode taken = builder.add(new ConditionalNode(condition, ConstantNode.forLong(trueBranchTaken ? 1 : 0, builder.getGraph()),
+                        ConstantNode.forLong(trueBranchTaken ? 0 : 1, builder.getGraph())));
+        increment(builder, counterKey(method, bci, TAKEN), taken);
+        increment(builder, counterKey(method, bci, EXECUTED), ConstantNode.forLong(1, builder.getGraph()));
+    }
+
+    /**
+     * Counts the invocations of a call site that is not inlined during parsing, and for virtual
+     * calls the receiver types that the static analysis found possible.
+     */
+    public void profileCallSite(GraphBuilderContext builder, ResolvedJavaMethod method, int bci, ValueNode receiver, JavaTypeProfile staticProfile) {
+        if (bci < 0) {
+            return;
+        }
+        increment(builder, counterKey(method, bci, INVOKE), ConstantNode.forLong(1, builder.getGraph()));
+
+        if (receiver == null || staticProfile == null || staticProfile.getTypes().length <= 1 || staticProfile.getTypes().length > MAX_RECEIVER_TYPES) {
+            return;
+        }
+        for (ProfiledType type : staticProfile.getTypes()) {
+            LogicNode isType = builder.add(InstanceOfNode.create(TypeReference.createExactTrusted(type.getType()), receiver));
+            ValueNode hit = builder.add(new ConditionalNode(isType, ConstantNode.forLong(1, builder.getGraph()), ConstantNode.forLong(0, builder.getGraph())));
+            increment(builder, counterKey(method, bci, RECEIVER) + '\t' + type.getType().toJavaName(), hit);
+        }
+    }
+
+    private void increment(GraphBuilderContext builder, String key, ValueNode delta) {
+        int counter = allocateCounter(key);
+        long[] chunk = getChunk(counter);
+        ValueNode array = builder.add(ConstantNode.forConstant(SubstrateObjectConstant.forObject(chunk), builder.getMetaAccess()));
+        ValueNode index = builder.add(ConstantNode.forInt(counter % InstrumentationProfiles.CHUNK_LENGTH));
+        ValueNode value = builder.add(new LoadIndexedNode(builder.getGraph().getAssumptions(), array, index, null, JavaKind.Long));
+        ValueNode sum = builder.add(new AddNode(value, delta));
+        builder.add(new StoreIndexedNode(array, index, null, null, JavaKind.Long, sum));
+    }
+
+    private synchronized int allocateCounter(String key) {
+        int counter = counterKeys.size();
+        if (counter % InstrumentationProfiles.CHUNK_LENGTH == 0) {
+            counterChunks.add(new long[InstrumentationProfiles.CHUNK_LENGTH]);
+        }
+        counterKeys.add(key);
+        return counter;
+    }
+
+    private synchronized long[] getChunk(int counter) {
+        return counterChunks.get(counter / InstrumentationProfiles.CHUNK_LENGTH);
+    }
+
+    synchronized void publishCounters() {
+        InstrumentationProfiles.singleton().setCounters(counterChunks.toArray(new long[0][]), counterKeys.toArray(new String[0]));
+    }
+}
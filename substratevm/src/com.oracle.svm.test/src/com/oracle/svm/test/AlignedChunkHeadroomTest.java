@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.svm.core.genscavenge.HeapPolicy;
+import com.oracle.svm.core.genscavenge.HeapPolicyOptions;
+import com.oracle.svm.core.option.RuntimeOptionValues;
+
+/**
+ * Checks which unused aligned chunks the collector keeps for future allocation and which it returns
+ * to the operating system.
+ */
+public class AlignedChunkHeadroomTest {
+
+    private static final long MINIMUM_HEAP_SIZE = 64L * 1024 * 1024;
+    private static final long GARBAGE_BYTES = 32L * 1024 * 1024;
+    private static final int GARBAGE_ARRAY_LENGTH = 8 * 1024;
+
+    /** Keeps the garbage arrays from being optimized away. */
+    static volatile byte[] sink;
+
+    @Test
+    public void testHeadroom() {
+        Assert.assertEquals("no headroom by default", 0, (int) HeapPolicyOptions.UnusedAlignedChunkHeadroomPercent.getValue());
+        Assert.assertTrue(GARBAGE_ARRAY_LENGTH < HeapPolicy.TestingBackDoor.getUnalignedObjectSize());
+        UnsignedWord previousMinimumHeapSize = HeapPolicy.setMinimumHeapSize(WordFactory.unsigned(MINIMUM_HEAP_SIZE));
+        try {
+            /* By default, the chunks of the garbage are kept up to the minimum heap size. */
+            allocateGarbage();
+            System.gc();
+            long keptBytes = HeapPolicy.TestingBackDoor.getUnusedChunkBytes();
+            Assert.assertTrue("unused chunks must be kept: " + keptBytes, keptBytes >= GARBAGE_BYTES / 2);
+            Assert.assertTrue("unused chunks beyond the minimum heap size: " + keptBytes, HeapPolicy.TestingBackDoor.getUsedChunkBytes() + keptBytes <= MINIMUM_HEAP_SIZE);
+
+            /* With a headroom, the excess chunks are released after the next collection. */
+            RuntimeOptionValues.singleton().update(HeapPolicyOptions.UnusedAlignedChunkHeadroomPercent, 1);
+            long headroom = HeapPolicy.getMaximumYoungGenerationSize().rawValue() / 100;
+            long chunkSize = HeapPolicy.getAlignedHeapChunkSize().rawValue();
+            Assert.assertTrue("the test needs a headroom of at least two chunks", headroom >= 2 * chunkSize && headroom < keptBytes);
+            System.gc();
+            long headroomBytes = HeapPolicy.TestingBackDoor.getUnusedChunkBytes();
+            Assert.assertTrue("excess chunks must be released: " + headroomBytes, headroomBytes <= headroom);
+            Assert.assertTrue("the headroom must be kept: " + headroomBytes, headroomBytes > headroom - chunkSize);
+        } finally {
+            RuntimeOptionValues.singleton().update(HeapPolicyOptions.UnusedAlignedChunkHeadroomPercent, 0);
+            HeapPolicy.setMinimumHeapSize(previousMinimumHeapSize);
+        }
+    }
+
+    private static void allocateGarbage() {
+        for (long allocated = 0; allocated < GARBAGE_BYTES; allocated += GARBAGE_ARRAY_LENGTH) {
+            sink = new byte[GARBAGE_ARRAY_LENGTH];
+        }
+        sink = null;
+    }
+}
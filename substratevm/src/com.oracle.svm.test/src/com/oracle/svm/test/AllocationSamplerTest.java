@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oracle.svm.core.allocationprofile.AllocationSampler;
+import com.oracle.svm.core.option.RuntimeOptionValues;
+
+/**
+ * Allocates known amounts of memory with the sampling allocation profiler switched on and checks
+ * the collapsed stacks that it writes.
+ */
+public class AllocationSamplerTest {
+
+    private static final long ALLOCATED_BYTES = 32L * 1024 * 1024;
+    private static final int ARRAY_LENGTH = 1024;
+    private static final long SAMPLING_INTERVAL = 64 * 1024;
+
+    /** Keeps the allocated arrays from being optimized away. */
+    static volatile Object sink;
+
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+        /* The condition is folded, so images without the sampler do not contain it. */
+        if (!ImageInfo.inImageRuntimeCode() || !AllocationSampler.isSupported()) {
+            Assume.assumeTrue("requires an image built with -H:+AllocationSampling", false);
+            return;
+        }
+        output = File.createTempFile("svm-allocation-samples-", ".txt");
+        RuntimeOptionValues.singleton().update(AllocationSampler.Options.AllocationSamplingOutput, output.getPath());
+        AllocationSampler.reset();
+    }
+
+    @After
+    public void tearDown() {
+        if (output != null) {
+            AllocationSampler.setSamplingInterval(0);
+            AllocationSampler.reset();
+            RuntimeOptionValues.singleton().update(AllocationSampler.Options.AllocationSamplingOutput, "");
+            output.delete();
+        }
+    }
+
+    @Test
+    public void testAllocatingFrame() throws IOException {
+        AllocationSampler.setSamplingInterval(SAMPLING_INTERVAL);
+        allocateByteArrays();
+        AllocationSampler.setSamplingInterval(0);
+
+        long sampledBytes = 0;
+        for (String line : dumpSamples()) {
+            Assert.assertTrue("not a collapsed stack: " + line, line.matches("([^; ]+;)+\\S+ [0-9]+"));
+            int frame = line.indexOf(AllocationSamplerTest.class.getName() + ".allocateByteArrays;");
+            if (frame >= 0 && type(line).equals(byte[].class.getName())) {
+                /* Frames go from the outermost to the innermost, so the test method comes first. */
+                int caller = line.indexOf(AllocationSamplerTest.class.getName() + ".testAllocatingFrame;");
+                Assert.assertTrue("caller must precede the allocating frame: " + line, caller >= 0 && caller < frame);
+                sampledBytes += bytes(line);
+            }
+        }
+        /* Each sample is charged with all bytes allocated since the previous one. */
+        Assert.assertTrue("too few bytes sampled: " + sampledBytes, sampledBytes >= ALLOCATED_BYTES / 2);
+        Assert.assertTrue("too many bytes sampled: " + sampledBytes, sampledBytes <= ALLOCATED_BYTES * 2);
+    }
+
+    @Test
+    public void testSamplingInterval() throws IOException {
+        /* An interval of 0 switches sampling off. */
+        AllocationSampler.setSamplingInterval(0);
+        allocateByteArrays();
+        Assert.assertEquals(Collections.emptyList(), dumpSamples());
+
+        /* The samples are charged with about all the allocated bytes. */
+        AllocationSampler.setSamplingInterval(ALLOCATED_BYTES / 4);
+        allocateByteArrays();
+        AllocationSampler.setSamplingInterval(0);
+        List<String> lines = dumpSamples();
+        Assert.assertFalse("no samples", lines.isEmpty());
+        long totalBytes = 0;
+        for (String line : lines) {
+            totalBytes += bytes(line);
+        }
+        Assert.assertTrue("too few bytes sampled: " + totalBytes, totalBytes >= ALLOCATED_BYTES / 2);
+        Assert.assertTrue("too many bytes sampled: " + totalBytes, totalBytes <= ALLOCATED_BYTES * 2);
+
+        /* No sample before the thread has allocated more than the interval. */
+        AllocationSampler.setSamplingInterval(ALLOCATED_BYTES * 16);
+        allocateByteArrays();
+        AllocationSampler.setSamplingInterval(0);
+        Assert.assertEquals(Collections.emptyList(), dumpSamples());
+    }
+
+    @Test
+    public void testMaxStacks() throws IOException {
+        int previousMaxStacks = AllocationSampler.Options.AllocationSamplingMaxStacks.getValue();
+        RuntimeOptionValues.singleton().update(AllocationSampler.Options.AllocationSamplingMaxStacks, 1);
+        try {
+            AllocationSampler.setSamplingInterval(SAMPLING_INTERVAL);
+            allocateByteArrays();
+            allocateCharArrays();
+            AllocationSampler.setSamplingInterval(0);
+        } finally {
+            RuntimeOptionValues.singleton().update(AllocationSampler.Options.AllocationSamplingMaxStacks, previousMaxStacks);
+        }
+
+        /* One recorded stack, and the bytes of the samples with other stacks in a single line. */
+        List<String> lines = dumpSamples();
+        Assert.assertEquals(lines.toString(), 2, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).contains(AllocationSamplerTest.class.getName() + ".allocateByteArrays;"));
+        Assert.assertTrue(lines.get(1), lines.get(1).startsWith("[other stacks] "));
+        Assert.assertTrue(lines.get(1), bytes(lines.get(1)) >= ALLOCATED_BYTES / 2);
+    }
+
+    private static void allocateByteArrays() {
+        for (long allocated = 0; allocated < ALLOCATED_BYTES; allocated += ARRAY_LENGTH) {
+            sink = new byte[ARRAY_LENGTH];
+        }
+        sink = null;
+    }
+
+    private static void allocateCharArrays() {
+        for (long allocated = 0; allocated < ALLOCATED_BYTES; allocated += ARRAY_LENGTH * Character.BYTES) {
+            sink = new char[ARRAY_LENGTH];
+        }
+        sink = null;
+    }
+
+    /** Writes the samples and drops them, so that each dump only has the newer samples. */
+    private List<String> dumpSamples() throws IOException {
+        output.delete();
+        AllocationSampler.dumpSamples();
+        AllocationSampler.reset();
+        /* Nothing is written if there are no samples. */
+        if (!output.exists()) {
+            return Collections.emptyList();
+        }
+        return Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static String type(String line) {
+        return line.substring(line.lastIndexOf(';') + 1, line.lastIndexOf(' '));
+    }
+
+    private static long bytes(String line) {
+        return Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+    }
+}
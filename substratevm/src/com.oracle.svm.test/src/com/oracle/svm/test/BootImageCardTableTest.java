@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.oracle.svm.core.genscavenge.BootImageCardTable;
+
+/**
+ * Checks that young objects that are referenced only from the writable part of the native image
+ * heap survive incremental collections with the card remembered set for the native image heap,
+ * which then only visit the native image heap objects on dirty cards. Also checks that the tables
+ * of the remembered set can be freed.
+ */
+public class BootImageCardTableTest {
+
+    private static final int HOLDER_LENGTH = 4 * 1024;
+    private static final int GARBAGE_ARRAYS = 16 * 1024;
+    private static final int GARBAGE_ARRAY_LENGTH = 1024;
+
+    /** Written at run time, so it is in the writable part of the native image heap. */
+    static final Payload[] HOLDER = new Payload[HOLDER_LENGTH];
+
+    /** Keeps the garbage arrays from being optimized away. */
+    static volatile byte[] sink;
+
+    static final class Payload {
+        final int value;
+        final int[] data;
+
+        Payload(int value) {
+            this.value = value;
+            this.data = new int[]{value, ~value};
+        }
+    }
+
+    private static boolean assumeEnabled() {
+        /* The condition is folded, so images without the remembered set do not use the tables. */
+        if (!ImageInfo.inImageRuntimeCode() || !BootImageCardTable.TestingBackDoor.isEnabled()) {
+            Assume.assumeTrue("requires an image built with -H:+BootImageCardRememberedSet", false);
+            return false;
+        }
+        return true;
+    }
+
+    @Test
+    public void testIncrementalCollections() {
+        if (!assumeEnabled()) {
+            return;
+        }
+        BootImageCardTable.TestingBackDoor.collectIncrementally();
+        Assert.assertTrue("the first collection allocates the tables", BootImageCardTable.TestingBackDoor.isInitialized());
+
+        int[] expected = new int[HOLDER_LENGTH];
+        for (int round = 0; round < 4; round++) {
+            /* Replace some of the references, so that only some of the cards are dirty. */
+            for (int i = round; i < HOLDER_LENGTH; i += round + 1) {
+                expected[i] = round * HOLDER_LENGTH + i;
+                HOLDER[i] = new Payload(expected[i]);
+            }
+            allocateGarbage();
+            BootImageCardTable.TestingBackDoor.collectIncrementally();
+            verify(expected);
+        }
+    }
+
+    @Test
+    public void testTearDown() {
+        if (!assumeEnabled()) {
+            return;
+        }
+        BootImageCardTable.TestingBackDoor.collectIncrementally();
+        Assert.assertTrue(BootImageCardTable.TestingBackDoor.isInitialized());
+        BootImageCardTable.TestingBackDoor.tearDown();
+        Assert.assertFalse("the tables must be freed", BootImageCardTable.TestingBackDoor.isInitialized());
+
+        /* Without the tables, the barrier ignores the objects, so the collection visits all. */
+        int[] expected = new int[HOLDER_LENGTH];
+        for (int i = 0; i < HOLDER_LENGTH; i++) {
+            expected[i] = -i;
+            HOLDER[i] = new Payload(expected[i]);
+        }
+        allocateGarbage();
+        BootImageCardTable.TestingBackDoor.collectIncrementally();
+        verify(expected);
+        Assert.assertTrue("the tables are allocated again", BootImageCardTable.TestingBackDoor.isInitialized());
+    }
+
+    private static void verify(int[] expected) {
+        for (int i = 0; i < HOLDER_LENGTH; i++) {
+            Payload payload = HOLDER[i];
+            Assert.assertEquals(expected[i], payload.value);
+            Assert.assertEquals(expected[i], payload.data[0]);
+            Assert.assertEquals(~expected[i], payload.data[1]);
+        }
+    }
+
+    private static void allocateGarbage() {
+        for (int i = 0; i < GARBAGE_ARRAYS; i++) {
+            sink = new byte[GARBAGE_ARRAY_LENGTH];
+        }
+        sink = null;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.WordFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.svm.core.genscavenge.CardTable;
+
+/**
+ * Compares the word-at-a-time search for dirty cards with an entry-at-a-time search, for tables
+ * that are not word-aligned and for start indices and limits that are not multiples of a word, so
+ * that dirty entries are also in the partial words at either end of the searched range.
+ */
+public class CardTableTest {
+
+    private static final int TABLE_ENTRIES = 64;
+    private static final int WORD_ENTRIES = Long.BYTES;
+
+    @Test
+    public void testNextDirtyIndex() {
+        Pointer memory = UnmanagedMemory.malloc(TABLE_ENTRIES + WORD_ENTRIES);
+        try {
+            for (int tableOffset = 0; tableOffset < WORD_ENTRIES; tableOffset += 3) {
+                Pointer table = memory.add(tableOffset);
+                for (int startIndex = 0; startIndex < 2 * WORD_ENTRIES + 1; startIndex++) {
+                    for (int indexLimit = startIndex; indexLimit <= TABLE_ENTRIES; indexLimit++) {
+                        checkNextDirtyIndex(table, startIndex, indexLimit);
+                    }
+                }
+            }
+        } finally {
+            UnmanagedMemory.free(memory);
+        }
+    }
+
+    /**
+     * Dirties each entry in turn, and also the entries just outside of [startIndex .. indexLimit),
+     * which must not be found.
+     */
+    private static void checkNextDirtyIndex(Pointer table, int startIndex, int indexLimit) {
+        for (int dirtyIndex = -1; dirtyIndex < TABLE_ENTRIES; dirtyIndex++) {
+            CardTable.TestingBackDoor.cleanTableToIndex(table, WordFactory.unsigned(TABLE_ENTRIES));
+            if (startIndex > 0) {
+                CardTable.TestingBackDoor.dirtyEntryAtIndex(table, WordFactory.unsigned(startIndex - 1));
+            }
+            if (indexLimit < TABLE_ENTRIES) {
+                CardTable.TestingBackDoor.dirtyEntryAtIndex(table, WordFactory.unsigned(indexLimit));
+            }
+            if (dirtyIndex >= 0) {
+                CardTable.TestingBackDoor.dirtyEntryAtIndex(table, WordFactory.unsigned(dirtyIndex));
+            }
+
+            long expected = indexLimit;
+            for (int index = startIndex; index < indexLimit; index++) {
+                if (CardTable.TestingBackDoor.isDirtyEntryAtIndex(table, WordFactory.unsigned(index))) {
+                    expected = index;
+                    break;
+                }
+            }
+            if (dirtyIndex >= startIndex && dirtyIndex < indexLimit) {
+                Assert.assertEquals(dirtyIndex, expected);
+            }
+            long actual = CardTable.TestingBackDoor.nextDirtyIndex(table, WordFactory.unsigned(startIndex), WordFactory.unsigned(indexLimit)).rawValue();
+            if (expected != actual) {
+                Assert.fail("table " + table.rawValue() + ", start index " + startIndex + ", index limit " + indexLimit + ", dirty index " + dirtyIndex + ": expected " + expected + ", got " + actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Dumps the heap in the HPROF format and parses the written file. Requires an image built with
+ * {@code -H:+AllowVMInspection}; the test is skipped otherwise.
+ */
+public class HeapDumpTest {
+
+    private static final String DUMP_HEAP_COMMAND = "HeapDump.dumpHeap(FileOutputStream, Boolean)Boolean";
+
+    private static final int TAG_STRING = 0x01;
+    private static final int TAG_LOAD_CLASS = 0x02;
+    private static final int TAG_STACK_FRAME = 0x04;
+    private static final int TAG_STACK_TRACE = 0x05;
+    private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int TAG_HEAP_DUMP_END = 0x2C;
+
+    private static final int TAG_ROOT_UNKNOWN = 0xFF;
+    private static final int TAG_ROOT_JAVA_FRAME = 0x03;
+    private static final int TAG_ROOT_STICKY_CLASS = 0x05;
+    private static final int TAG_ROOT_THREAD_OBJECT = 0x08;
+    private static final int TAG_CLASS_DUMP = 0x20;
+    private static final int TAG_INSTANCE_DUMP = 0x21;
+    private static final int TAG_OBJECT_ARRAY_DUMP = 0x22;
+    private static final int TAG_PRIMITIVE_ARRAY_DUMP = 0x23;
+
+    private static final int TYPE_OBJECT = 2;
+
+    static final class DumpedObject {
+        final long value;
+
+        DumpedObject(long value) {
+            this.value = value;
+        }
+    }
+
+    /** The contents of a heap dump that the test checks. */
+    private static final class HeapDump {
+        final Map<Long, String> strings = new HashMap<>();
+        final Map<Long, Long> classNameIds = new HashMap<>();
+        final Set<Long> frameIds = new HashSet<>();
+        final Map<Long, String> frameNames = new HashMap<>();
+        /** Stack trace serial to its frame IDs. */
+        final Map<Integer, long[]> stackTraces = new HashMap<>();
+        /** Thread serial to the serial of its stack trace. */
+        final Map<Integer, Integer> threadStackTraces = new HashMap<>();
+        final Map<Long, Integer> classInstanceSizes = new HashMap<>();
+        final Map<Long, Long> instanceClasses = new HashMap<>();
+        final Set<Long> roots = new HashSet<>();
+        int javaFrameRoots;
+        boolean ended;
+
+        String className(long classId) {
+            Long nameId = classNameIds.get(classId);
+            return nameId == null ? null : strings.get(nameId);
+        }
+    }
+
+    @Test
+    public void testHeapDump() throws IOException {
+        DumpedObject local = new DumpedObject(42);
+        File file = File.createTempFile("svm-heapdump-test-", ".hprof");
+        try {
+            Object result;
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                result = dumpHeap(outputStream);
+            }
+            Assume.assumeNotNull(result);
+            Assert.assertEquals(Boolean.TRUE, result);
+
+            HeapDump dump = parse(file);
+            Assert.assertTrue("missing HEAP DUMP END", dump.ended);
+            Assert.assertEquals(42, local.value);
+
+            /* The local object is in the dump and is referenced from a frame of this method. */
+            long dumpedObjectClass = -1;
+            for (Map.Entry<Long, Long> e : dump.classNameIds.entrySet()) {
+                if (DumpedObject.class.getName().replace('.', '/').equals(dump.strings.get(e.getValue()))) {
+                    dumpedObjectClass = e.getKey();
+                }
+            }
+            Assert.assertNotEquals("missing LOAD CLASS of " + DumpedObject.class.getName(), -1, dumpedObjectClass);
+            Assert.assertTrue("missing instance of " + DumpedObject.class.getName(), dump.instanceClasses.containsValue(dumpedObjectClass));
+
+            /* Every thread has a stack trace, and the current thread's includes this method. */
+            Assert.assertFalse("missing ROOT THREAD OBJECT", dump.threadStackTraces.isEmpty());
+            boolean foundTestFrame = false;
+            for (int stackTraceSerial : dump.threadStackTraces.values()) {
+                long[] frames = dump.stackTraces.get(stackTraceSerial);
+                Assert.assertNotNull("missing STACK TRACE " + stackTraceSerial, frames);
+                for (long frameId : frames) {
+                    Assert.assertTrue("missing STACK FRAME " + frameId, dump.frameIds.contains(frameId));
+                    String name = dump.frameNames.get(frameId);
+                    /* The helper methods of this test might be inlined into the test method. */
+                    if (name != null && name.startsWith(HeapDumpTest.class.getName() + ".")) {
+                        foundTestFrame = true;
+                    }
+                }
+            }
+            Assert.assertTrue("missing frame of the test method", foundTestFrame);
+            Assert.assertTrue("missing ROOT JAVA FRAME", dump.javaFrameRoots > 0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Object dumpHeap(FileOutputStream outputStream) {
+        try {
+            return Compiler.command(new Object[]{DUMP_HEAP_COMMAND, outputStream, false});
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static HeapDump parse(File file) throws IOException {
+        HeapDump dump = new HeapDump();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            StringBuilder format = new StringBuilder();
+            for (int c = in.readUnsignedByte(); c != 0; c = in.readUnsignedByte()) {
+                format.append((char) c);
+            }
+            Assert.assertEquals("JAVA PROFILE 1.0.2", format.toString());
+            Assert.assertEquals(8, in.readInt());
+            in.readLong();
+
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                in.readInt();
+                long length = in.readInt() & 0xFFFFFFFFL;
+                switch (tag) {
+                    case TAG_STRING: {
+                        long id = in.readLong();
+                        byte[] bytes = new byte[(int) length - 8];
+                        in.readFully(bytes);
+                        dump.strings.put(id, new String(bytes, StandardCharsets.UTF_8));
+                        break;
+                    }
+                    case TAG_LOAD_CLASS:
+                        Assert.assertEquals(4 + 8 + 4 + 8, length);
+                        in.readInt();
+                        long classId = in.readLong();
+                        in.readInt();
+                        dump.classNameIds.put(classId, in.readLong());
+                        break;
+                    case TAG_STACK_FRAME: {
+                        Assert.assertEquals(4 * 8 + 4 + 4, length);
+                        long frameId = in.readLong();
+                        long nameId = in.readLong();
+                        in.readLong();
+                        in.readLong();
+                        in.readInt();
+                        in.readInt();
+                        dump.frameIds.add(frameId);
+                        dump.frameNames.put(frameId, dump.strings.get(nameId));
+                        break;
+                    }
+                    case TAG_STACK_TRACE: {
+                        int serial = in.readInt();
+                        in.readInt();
+                        int frameCount = in.readInt();
+                        Assert.assertEquals(4 + 4 + 4 + frameCount * 8L, length);
+                        long[] frames = new long[frameCount];
+                        for (int i = 0; i < frameCount; i++) {
+                            frames[i] = in.readLong();
+                        }
+                        dump.stackTraces.put(serial, frames);
+                        break;
+                    }
+                    case TAG_HEAP_DUMP_SEGMENT:
+                        parseSegment(in, length, dump);
+                        break;
+                    case TAG_HEAP_DUMP_END:
+                        Assert.assertEquals(0, length);
+                        dump.ended = true;
+                        break;
+                    default:
+                        Assert.fail("unexpected record tag " + tag);
+                }
+            }
+        }
+        return dump;
+    }
+
+    private static void parseSegment(DataInputStream in, long length, HeapDump dump) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            int tag = in.readUnsignedByte();
+            long size;
+            switch (tag) {
+                case TAG_ROOT_UNKNOWN:
+                case TAG_ROOT_STICKY_CLASS:
+                    dump.roots.add(in.readLong());
+                    size = 1 + 8;
+                    break;
+                case TAG_ROOT_JAVA_FRAME: {
+                    dump.roots.add(in.readLong());
+                    int threadSerial = in.readInt();
+                    int frameNumber = in.readInt();
+                    Integer stackTraceSerial = dump.threadStackTraces.get(threadSerial);
+                    Assert.assertNotNull("ROOT JAVA FRAME of unknown thread " + threadSerial, stackTraceSerial);
+                    long[] frames = dump.stackTraces.get(stackTraceSerial);
+                    Assert.assertTrue("ROOT JAVA FRAME of unknown frame " + frameNumber, frameNumber >= 0 && frameNumber < frames.length);
+                    dump.javaFrameRoots++;
+                    size = 1 + 8 + 4 + 4;
+                    break;
+                }
+                case TAG_ROOT_THREAD_OBJECT:
+                    dump.roots.add(in.readLong());
+                    dump.threadStackTraces.put(in.readInt(), in.readInt());
+                    size = 1 + 8 + 4 + 4;
+                    break;
+                case TAG_CLASS_DUMP:
+                    size = parseClassDump(in, dump);
+                    break;
+                case TAG_INSTANCE_DUMP: {
+                    long id = in.readLong();
+                    in.readInt();
+                    long classId = in.readLong();
+                    int fieldBytes = in.readInt();
+                    Integer expected = dump.classInstanceSizes.get(classId);
+                    if (expected != null) {
+                        Assert.assertEquals("field bytes of " + dump.className(classId), expected.intValue(), fieldBytes);
+                    }
+                    skip(in, fieldBytes);
+                    dump.instanceClasses.put(id, classId);
+                    size = 1 + 8 + 4 + 8 + 4 + fieldBytes;
+                    break;
+                }
+                case TAG_OBJECT_ARRAY_DUMP: {
+                    in.readLong();
+                    in.readInt();
+                    int arrayLength = in.readInt();
+                    in.readLong();
+                    skip(in, arrayLength * 8L);
+                    size = 1 + 8 + 4 + 4 + 8 + arrayLength * 8L;
+                    break;
+                }
+                case TAG_PRIMITIVE_ARRAY_DUMP: {
+                    in.readLong();
+                    in.readInt();
+                    int arrayLength = in.readInt();
+                    int type = in.readUnsignedByte();
+                    long bytes = (long) arrayLength * valueSize(type);
+                    skip(in, bytes);
+                    size = 1 + 8 + 4 + 4 + 1 + bytes;
+                    break;
+                }
+                default:
+                    Assert.fail("unexpected sub-record tag " + tag);
+                    return;
+            }
+            remaining -= size;
+        }
+        Assert.assertEquals("sub-records must fill the segment exactly", 0, remaining);
+    }
+
+    private static long parseClassDump(DataInputStream in, HeapDump dump) throws IOException {
+        long classId = in.readLong();
+        in.readInt();
+        long superClassId = in.readLong();
+        for (int i = 0; i < 5; i++) {
+            in.readLong();
+        }
+        in.readInt();
+        long size = 1 + 8 + 4 + 6 * 8 + 4;
+
+        int constantPoolSize = in.readUnsignedShort();
+        size += 2;
+        for (int i = 0; i < constantPoolSize; i++) {
+            in.readUnsignedShort();
+            int type = in.readUnsignedByte();
+            skip(in, valueSize(type));
+            size += 2 + 1 + valueSize(type);
+        }
+
+        int staticFields = in.readUnsignedShort();
+        size += 2;
+        for (int i = 0; i < staticFields; i++) {
+            in.readLong();
+            int type = in.readUnsignedByte();
+            skip(in, valueSize(type));
+            size += 8 + 1 + valueSize(type);
+        }
+
+        int instanceFields = in.readUnsignedShort();
+        size += 2;
+        int fieldBytes = 0;
+        for (int i = 0; i < instanceFields; i++) {
+            in.readLong();
+            fieldBytes += valueSize(in.readUnsignedByte());
+            size += 8 + 1;
+        }
+        /* Instances contain the fields of all superclasses, which are dumped before subclasses. */
+        Integer superFieldBytes = dump.classInstanceSizes.get(superClassId);
+        if (superClassId == 0 || superFieldBytes != null) {
+            dump.classInstanceSizes.put(classId, fieldBytes + (superFieldBytes == null ? 0 : superFieldBytes));
+        }
+        return size;
+    }
+
+    private static int valueSize(int type) {
+        switch (type) {
+            case TYPE_OBJECT:
+                return 8;
+            case 4: // boolean
+            case 8: // byte
+                return 1;
+            case 5: // char
+            case 9: // short
+                return 2;
+            case 6: // float
+            case 10: // int
+                return 4;
+            case 7: // double
+            case 11: // long
+                return 8;
+            default:
+                Assert.fail("unexpected basic type " + type);
+                return 0;
+        }
+    }
+
+    private static void skip(DataInputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            int skipped = in.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+}
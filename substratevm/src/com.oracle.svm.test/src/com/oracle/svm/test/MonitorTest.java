@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of {@code synchronized}, {@link Object#wait}, {@link Object#notify} and
+ * {@link Thread#holdsLock}, both for objects that have a monitor slot and for arrays, whose monitors
+ * are kept in a side table.
+ */
+public class MonitorTest {
+
+    private static final int THREADS = 4;
+    private static final int ITERATIONS = 10_000;
+
+    static final class Counter {
+        int value;
+
+        synchronized void increment() {
+            value++;
+        }
+    }
+
+    @Test
+    public void testRecursion() {
+        for (Object lock : new Object[]{new Counter(), new int[1]}) {
+            Assert.assertFalse(Thread.holdsLock(lock));
+            synchronized (lock) {
+                Assert.assertTrue(Thread.holdsLock(lock));
+                synchronized (lock) {
+                    synchronized (lock) {
+                        Assert.assertTrue(Thread.holdsLock(lock));
+                    }
+                    Assert.assertTrue(Thread.holdsLock(lock));
+                }
+                Assert.assertTrue(Thread.holdsLock(lock));
+            }
+            Assert.assertFalse(Thread.holdsLock(lock));
+        }
+    }
+
+    @Test
+    public void testContention() throws InterruptedException {
+        final Counter counter = new Counter();
+        final int[] arrayCounter = new int[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    counter.increment();
+                    synchronized (arrayCounter) {
+                        arrayCounter[0]++;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(THREADS * ITERATIONS, counter.value);
+        Assert.assertEquals(THREADS * ITERATIONS, arrayCounter[0]);
+        Assert.assertFalse(Thread.holdsLock(counter));
+        Assert.assertFalse(Thread.holdsLock(arrayCounter));
+    }
+
+    @Test
+    public void testHoldsLockAcrossThreads() throws InterruptedException {
+        for (Object lock : new Object[]{new Counter(), new int[1]}) {
+            final CountDownLatch locked = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final boolean[] heldByOwner = new boolean[1];
+            Thread owner = new Thread(() -> {
+                synchronized (lock) {
+                    locked.countDown();
+                    awaitUninterruptibly(release);
+                    heldByOwner[0] = Thread.holdsLock(lock);
+                }
+            });
+            owner.start();
+            locked.await();
+            Assert.assertFalse(Thread.holdsLock(lock));
+            try {
+                lock.notify();
+                Assert.fail("notify must fail while another thread holds the lock");
+            } catch (IllegalMonitorStateException expected) {
+            }
+            release.countDown();
+            synchronized (lock) {
+                /* Acquired only once the owner released the lock. */
+                Assert.assertTrue(Thread.holdsLock(lock));
+            }
+            owner.join();
+            Assert.assertTrue(heldByOwner[0]);
+            Assert.assertFalse(Thread.holdsLock(lock));
+        }
+    }
+
+    @Test
+    public void testWaitNotify() throws InterruptedException {
+        for (Object lock : new Object[]{new Counter(), new int[1]}) {
+            final boolean[] ready = new boolean[1];
+            final CountDownLatch waiting = new CountDownLatch(1);
+            Thread waiter = new Thread(() -> {
+                synchronized (lock) {
+                    waiting.countDown();
+                    while (!ready[0]) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                    Assert.assertTrue(Thread.holdsLock(lock));
+                }
+            });
+            waiter.start();
+            waiting.await();
+            synchronized (lock) {
+                ready[0] = true;
+                lock.notifyAll();
+            }
+            waiter.join(TimeUnit.SECONDS.toMillis(30));
+            Assert.assertFalse(waiter.isAlive());
+        }
+    }
+
+    @Test
+    public void testTimedWaitAndNotifyWithoutWaiters() throws InterruptedException {
+        for (Object lock : new Object[]{new Counter(), new int[1]}) {
+            synchronized (lock) {
+                /* Nobody waits, so notify must neither fail nor block. */
+                lock.notify();
+                lock.notifyAll();
+                lock.wait(1);
+                Assert.assertTrue(Thread.holdsLock(lock));
+                synchronized (lock) {
+                    lock.wait(1);
+                    Assert.assertTrue(Thread.holdsLock(lock));
+                }
+            }
+            Assert.assertFalse(Thread.holdsLock(lock));
+        }
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testWaitWithoutLock() throws InterruptedException {
+        new Counter().wait(1);
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testNotifyWithoutLock() {
+        new Counter().notify();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                /* Retry. */
+            }
+        }
+    }
+}
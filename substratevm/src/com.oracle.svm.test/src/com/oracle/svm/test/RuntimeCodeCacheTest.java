@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.graalvm.compiler.code.CompilationResult;
+import org.graalvm.compiler.debug.DebugContext;
+import org.graalvm.nativeimage.ImageInfo;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.c.function.CFunctionPointer;
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.word.PointerBase;
+import org.graalvm.word.WordFactory;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.oracle.svm.core.MemoryWalker;
+import com.oracle.svm.core.annotate.InvokeJavaFunctionPointer;
+import com.oracle.svm.core.code.RuntimeCodeInfo;
+import com.oracle.svm.core.graal.meta.InstalledCodeBuilder;
+import com.oracle.svm.core.option.RuntimeOptionValues;
+import com.oracle.svm.graal.SubstrateGraalUtils;
+import com.oracle.svm.graal.hosted.GraalFeature;
+import com.oracle.svm.graal.meta.SubstrateInstalledCodeImpl;
+import com.oracle.svm.graal.meta.SubstrateMethod;
+import com.oracle.svm.hosted.FeatureImpl.BeforeAnalysisAccessImpl;
+
+/**
+ * Installs more runtime compiled code than fits into a code cache limited with
+ * {@link RuntimeCodeInfo.Options#MaxRuntimeCodeCacheSize}. Requires an image built with
+ * {@code -H:Features=com.oracle.svm.test.RuntimeCodeCacheTest$TestFeature} and Truffle on the
+ * image builder class path; the test is skipped otherwise.
+ */
+public class RuntimeCodeCacheTest {
+
+    /** The number of copies of {@link #square} that are installed while the cache is full. */
+    private static final int NUM_COPIES = 12;
+    /** The number of copies of {@link #square} that fit into the cache next to the other code. */
+    private static final int COPIES_IN_CACHE = 3;
+
+    /** Prepares the test methods for runtime compilation. */
+    public static class TestFeature implements Feature {
+
+        @Override
+        public List<Class<? extends Feature>> getRequiredFeatures() {
+            return Arrays.asList(GraalFeature.class);
+        }
+
+        @Override
+        public void beforeAnalysis(BeforeAnalysisAccess a) {
+            BeforeAnalysisAccessImpl access = (BeforeAnalysisAccessImpl) a;
+            GraalFeature graalFeature = ImageSingletons.lookup(GraalFeature.class);
+            try {
+                SubstrateMethod callCallback = graalFeature.prepareMethodForRuntimeCompilation(RuntimeCodeCacheTest.class.getDeclaredMethod("callCallback", Runnable.class), access);
+                SubstrateMethod square = graalFeature.prepareMethodForRuntimeCompilation(RuntimeCodeCacheTest.class.getDeclaredMethod("square", int.class), access);
+                ImageSingletons.add(TestMethods.class, new TestMethods(callCallback, square));
+            } catch (NoSuchMethodException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+
+    static final class TestMethods {
+        final SubstrateMethod callCallback;
+        final SubstrateMethod square;
+
+        TestMethods(SubstrateMethod callCallback, SubstrateMethod square) {
+            this.callCallback = callCallback;
+            this.square = square;
+        }
+    }
+
+    /** Runtime compiled, so that the compiled code has a frame while the callback runs. */
+    static int callCallback(Runnable callback) {
+        callback.run();
+        return 42;
+    }
+
+    /** Runtime compiled many times to fill the code cache. */
+    static int square(int x) {
+        return x * x;
+    }
+
+    interface CallCallbackFunctionPointer extends CFunctionPointer {
+        @InvokeJavaFunctionPointer
+        int invoke(Runnable callback);
+    }
+
+    interface SquareFunctionPointer extends CFunctionPointer {
+        @InvokeJavaFunctionPointer
+        int invoke(int x);
+    }
+
+    /** Remembers why the code was evicted. */
+    static final class TestInstalledCode extends SubstrateInstalledCodeImpl {
+        CharSequence evictionReason;
+
+        TestInstalledCode(SubstrateMethod method) {
+            super(method);
+        }
+
+        @Override
+        public void onEvicted(CharSequence reason) {
+            Assert.assertNull("evicted twice", evictionReason);
+            evictionReason = reason;
+        }
+    }
+
+    /** Reads the counters of the runtime code cache. Must not allocate. */
+    static final class CodeCacheCounters implements MemoryWalker.Visitor {
+        long usedBytes;
+        long capacityBytes;
+        long methodCount;
+        long evictedMethodCount;
+
+        static CodeCacheCounters read() {
+            CodeCacheCounters counters = new CodeCacheCounters();
+            MemoryWalker.getMemoryWalker().visitMemory(counters);
+            return counters;
+        }
+
+        @Override
+        public <T> boolean visitRuntimeCodeCache(T runtimeCodeCache, MemoryWalker.RuntimeCodeCacheAccess<T> access) {
+            usedBytes = access.getUsedBytes(runtimeCodeCache).rawValue();
+            capacityBytes = access.getCapacityBytes(runtimeCodeCache).rawValue();
+            methodCount = access.getMethodCount(runtimeCodeCache);
+            evictedMethodCount = access.getEvictedMethodCount(runtimeCodeCache);
+            return true;
+        }
+
+        @Override
+        public <T> boolean visitNativeImageHeapRegion(T bootImageHeapRegion, MemoryWalker.NativeImageHeapRegionAccess<T> access) {
+            return true;
+        }
+
+        @Override
+        public <T extends PointerBase> boolean visitHeapChunk(T heapChunk, MemoryWalker.HeapChunkAccess<T> access) {
+            return true;
+        }
+
+        @Override
+        public <T> boolean visitImageCode(T imageCode, MemoryWalker.ImageCodeAccess<T> access) {
+            return true;
+        }
+
+        @Override
+        public <T> boolean visitRuntimeCompiledMethod(T runtimeMethod, MemoryWalker.RuntimeCompiledMethodAccess<T> access) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        /* The condition is folded, so images without the feature do not contain the compiler. */
+        if (!ImageInfo.inImageRuntimeCode() || !ImageSingletons.contains(TestMethods.class)) {
+            Assume.assumeTrue("requires an image built with " + TestFeature.class.getName(), false);
+            return;
+        }
+        TestMethods methods = ImageSingletons.lookup(TestMethods.class);
+        List<TestInstalledCode> installed = new ArrayList<>();
+        try {
+            CodeCacheCounters initial = CodeCacheCounters.read();
+            Assert.assertEquals("the code cache must not be limited by default", 0, initial.capacityBytes);
+
+            TestInstalledCode callCallbackCode = install(methods.callCallback, installed);
+            CallCallbackFunctionPointer callCallbackPointer = WordFactory.pointer(callCallbackCode.getEntryPoint());
+            TestInstalledCode[] copies = new TestInstalledCode[NUM_COPIES];
+            int result = callCallbackPointer.invoke(() -> fillCache(methods.square, callCallbackCode, copies, installed, initial));
+            Assert.assertEquals(42, result);
+
+            /* The code that had a frame on the stack was not evicted and can still be called. */
+            Assert.assertTrue(callCallbackCode.isValid());
+            Assert.assertNull(callCallbackCode.evictionReason);
+            Assert.assertEquals(42, callCallbackPointer.invoke(() -> {
+            }));
+        } finally {
+            RuntimeOptionValues.singleton().update(RuntimeCodeInfo.Options.MaxRuntimeCodeCacheSize, 0L);
+            for (TestInstalledCode code : installed) {
+                code.invalidate();
+            }
+        }
+        Assert.assertEquals(0, CodeCacheCounters.read().capacityBytes);
+    }
+
+    /** Called from the runtime compiled {@link #callCallback}, so its code is on the stack. */
+    private static void fillCache(SubstrateMethod square, TestInstalledCode callCallbackCode, TestInstalledCode[] copies, List<TestInstalledCode> installed, CodeCacheCounters initial) {
+        CodeCacheCounters beforeCopies = CodeCacheCounters.read();
+        Assert.assertEquals(initial.methodCount + 1, beforeCopies.methodCount);
+        copies[0] = install(square, installed);
+        CodeCacheCounters afterFirstCopy = CodeCacheCounters.read();
+        long copySize = afterFirstCopy.usedBytes - beforeCopies.usedBytes;
+        Assert.assertTrue(copySize > 0);
+
+        long capacity = afterFirstCopy.usedBytes + (COPIES_IN_CACHE - 1) * copySize;
+        RuntimeOptionValues.singleton().update(RuntimeCodeInfo.Options.MaxRuntimeCodeCacheSize, capacity);
+        for (int i = 1; i < NUM_COPIES; i++) {
+            copies[i] = install(square, installed);
+            Assert.assertTrue("code with a frame on the stack must not be evicted", callCallbackCode.isValid());
+        }
+
+        int numEvicted = 0;
+        for (int i = 0; i < NUM_COPIES; i++) {
+            TestInstalledCode copy = copies[i];
+            if (copy.evictionReason != null) {
+                /* The least recently installed copies are evicted first. */
+                Assert.assertEquals("evicted copies must be the oldest ones", i, numEvicted);
+                Assert.assertFalse(copy.isValid());
+                numEvicted++;
+            } else {
+                Assert.assertTrue(copy.isValid());
+                SquareFunctionPointer squarePointer = WordFactory.pointer(copy.getEntryPoint());
+                Assert.assertEquals(49, squarePointer.invoke(7));
+            }
+        }
+        Assert.assertTrue("the cache must have been full", numEvicted > 0);
+        Assert.assertTrue("the most recently installed copy must be kept", copies[NUM_COPIES - 1].isValid());
+
+        CodeCacheCounters full = CodeCacheCounters.read();
+        int numKept = NUM_COPIES - numEvicted;
+        Assert.assertEquals(capacity, full.capacityBytes);
+        Assert.assertEquals(initial.evictedMethodCount + numEvicted, full.evictedMethodCount);
+        Assert.assertEquals(beforeCopies.methodCount + numKept, full.methodCount);
+        Assert.assertEquals(beforeCopies.usedBytes + numKept * copySize, full.usedBytes);
+        Assert.assertTrue("the used bytes must stay within the capacity", full.usedBytes <= full.capacityBytes);
+    }
+
+    private static TestInstalledCode install(SubstrateMethod method, List<TestInstalledCode> installed) {
+        CompilationResult result = SubstrateGraalUtils.compile(DebugContext.DISABLED, method);
+        TestInstalledCode installedCode = new TestInstalledCode(method);
+        new InstalledCodeBuilder(method, result, installedCode, null).install();
+        installed.add(installedCode);
+        Assert.assertTrue(installedCode.isValid());
+        return installedCode;
+    }
+}
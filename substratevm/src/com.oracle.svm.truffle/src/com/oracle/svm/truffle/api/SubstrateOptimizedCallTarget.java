@@ -96,6 +96,11 @@ public class SubstrateOptimizedCallTarget extends OptimizedCallTarget implements
         this.address = 0;
     }
 
+    @Override
+    public void onEvicted(CharSequence reason) {
+        onCodeEvicted(reason);
+    }
+
     @Override
     public Object doInvoke(Object[] args) {
         /*
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+#include <stdio.h>
+#include <stdlib.h>
+#include <time.h>
+#include "libcinterfacetutorial.h"
+
+/*
+ * Measures how many isolates per second can be created, entered once, and torn down again. With
+ * a non-zero pool size, the pool is filled before the measurement so that the first iterations do
+ * not have to map the image heap either.
+ */
+
+static double now_seconds(void) {
+  struct timespec ts;
+  clock_gettime(CLOCK_MONOTONIC, &ts);
+  return ts.tv_sec + ts.tv_nsec / 1e9;
+}
+
+static int run(int iterations) {
+  int i;
+  for (i = 0; i < iterations; i++) {
+    graal_isolate_t *isolate = NULL;
+    if (graal_create_isolate(NULL, &isolate) != 0) {
+      fprintf(stderr, "error on isolate creation\n");
+      return 1;
+    }
+    if (graal_tear_down_isolate(isolate) != 0) {
+      fprintf(stderr, "error on isolate tear-down\n");
+      return 1;
+    }
+  }
+  return 0;
+}
+
+int main(int argc, char **argv) {
+  int iterations = argc > 1 ? atoi(argv[1]) : 10000;
+  int warmup = iterations / 10;
+  int prefill = argc > 2 ? atoi(argv[2]) : 1;
+
+  if (prefill > 0) {
+    printf("isolate pool: %d image heaps prepared\n", graal_fill_isolate_pool(prefill));
+  }
+  if (run(warmup) != 0) {
+    return 1;
+  }
+  double start = now_seconds();
+  if (run(iterations) != 0) {
+    return 1;
+  }
+  double elapsed = now_seconds() - start;
+  printf("isolate create/tear-down: %d iterations in %.3f s, %.1f us/iteration, %.0f isolates/s\n",
+         iterations, elapsed, elapsed * 1e6 / iterations, iterations / elapsed);
+  return 0;
+}
@@ -39,6 +39,7 @@ import org.graalvm.nativeimage.Feature;
 import org.graalvm.nativeimage.Platform;
 
 import com.oracle.svm.core.util.UserError;
+import com.oracle.svm.hosted.FeatureImpl.AfterImageWriteAccessImpl;
 import com.oracle.svm.hosted.FeatureImpl.BeforeImageWriteAccessImpl;
 import com.oracle.svm.hosted.NativeImageOptions;
 
@@ -60,6 +61,7 @@ public class PolyglotNativeAPIFeature implements Feature {
             Path destination = imagePath.getParent().resolve(headerFile);
             try {
                 Files.copy(source, destination, REPLACE_EXISTING);
+                ((AfterImageWriteAccessImpl) access).registerWrittenFile(destination);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }